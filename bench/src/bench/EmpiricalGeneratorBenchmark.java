@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package bench;
+
+import generator.EmpiricalGenerator;
+import generator.MTRandom;
+
+import java.util.concurrent.TimeUnit;
+
+import math.EmpiricalDistribution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks drawing from an {@link EmpiricalGenerator} loaded from
+ * the shipped workload cdf files.
+ * Run from the top of the tree so the workloads directory is found.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EmpiricalGeneratorBenchmark {
+
+    /**
+     * The directory holding the workloads directory.
+     */
+    @Param({"./"})
+    private String workloadDir;
+
+    /**
+     * The workload to draw from.
+     */
+    @Param({"aludra", "csedns", "email", "girtab", "msg-mmp1", "msg-mx10",
+            "msg-store1", "newman", "scf", "search", "shell", "www"})
+    private String workload;
+
+    /**
+     * Which of the workload's distributions to draw from.
+     */
+    @Param({"arrival", "service"})
+    private String distribution;
+
+    /**
+     * The generator under test.
+     */
+    private EmpiricalGenerator generator;
+
+    /**
+     * Loads the distribution.
+     */
+    @Setup
+    public void setup() {
+        String fileName = this.workloadDir + "workloads/" + this.workload
+                          + "." + this.distribution + ".cdf";
+        EmpiricalDistribution cdf
+            = EmpiricalDistribution.loadDistribution(fileName, 1e-3);
+        this.generator = new EmpiricalGenerator(new MTRandom(1), cdf,
+                                                this.distribution);
+    }
+
+    /**
+     * Draws the next value.
+     *
+     * @return the value
+     */
+    @Benchmark
+    public double next() {
+        return this.generator.next();
+    }
+
+}
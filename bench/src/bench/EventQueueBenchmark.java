@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.AbstractEvent;
+import core.Event;
+import core.EventQueue;
+import core.EventQueue.QueueType;
+
+/**
+ * Benchmarks adding, polling and cancelling events in an {@link EventQueue}.
+ * The queue is held at a fixed size, as it is in a running simulation
+ * where every processed event schedules about one new event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventQueueBenchmark {
+
+    /**
+     * The number of precomputed interevent times (a power of two).
+     */
+    private static final int N_DELAYS = 1 << 16;
+
+    /**
+     * The number of events held in the queue.
+     * A 1000-server data center keeps a few thousand events pending.
+     */
+    @Param({"100", "1000", "10000", "100000"})
+    private int queueSize;
+
+    /**
+     * The data structure backing the queue.
+     */
+    @Param({"HEAP", "CALENDAR"})
+    private QueueType queueType;
+
+    /**
+     * The queue under test.
+     */
+    private EventQueue queue;
+
+    /**
+     * Exponentially distributed delays to schedule events with.
+     */
+    private double[] delays;
+
+    /**
+     * The next delay to use.
+     */
+    private int nextDelay;
+
+    /**
+     * The time of the last polled event.
+     */
+    private double now;
+
+    /**
+     * An event whose time can be changed so it can be requeued.
+     */
+    private static final class BenchmarkEvent extends AbstractEvent {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new BenchmarkEvent.
+         *
+         * @param theTime - the time of the event
+         */
+        public BenchmarkEvent(final double theTime) {
+            super(theTime, null);
+        }
+
+        /**
+         * Moves the event to a new time.
+         *
+         * @param theTime - the new time of the event
+         */
+        public void setTime(final double theTime) {
+            this.time = theTime;
+        }
+
+        @Override
+        public void process() {
+        }
+
+    }
+
+    /**
+     * Fills the queue to its steady size.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        this.delays = new double[N_DELAYS];
+        for (int i = 0; i < N_DELAYS; i++) {
+            // Mean interevent time of one per event in the queue
+            this.delays[i] = -Math.log(1.0 - random.nextDouble())
+                             * this.queueSize;
+        }
+        this.nextDelay = 0;
+        this.now = 0.0d;
+        this.queue = new EventQueue(this.queueType);
+        for (int i = 0; i < this.queueSize; i++) {
+            this.queue.addEvent(new BenchmarkEvent(this.nextDelay()));
+        }
+    }
+
+    /**
+     * Gets the next precomputed delay.
+     *
+     * @return the delay
+     */
+    private double nextDelay() {
+        double delay = this.delays[this.nextDelay];
+        this.nextDelay = (this.nextDelay + 1) & (N_DELAYS - 1);
+
+        return delay;
+    }
+
+    /**
+     * Polls the earliest event and schedules it again in the future
+     * (the classic hold operation).
+     *
+     * @return the polled event
+     */
+    @Benchmark
+    public Event pollAndAdd() {
+        BenchmarkEvent event = (BenchmarkEvent) this.queue.nextEvent();
+        this.now = event.getTime();
+        event.setTime(this.now + this.nextDelay());
+        this.queue.addEvent(event);
+
+        return event;
+    }
+
+    /**
+     * Schedules an event and cancels it again, as happens when
+     * a job's finish time is recalculated.
+     *
+     * @return the cancelled event
+     */
+    @Benchmark
+    public Event addAndCancel() {
+        BenchmarkEvent event = new BenchmarkEvent(this.now
+                                                  + this.nextDelay());
+        this.queue.addEvent(event);
+        this.queue.cancelEvent(event);
+
+        return event;
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.Experiment;
+import experiment.PowerCappingExperiment;
+
+/**
+ * Benchmarks the end-to-end event rate of {@link PowerCappingExperiment}.
+ * Each invocation sets up a fresh experiment (not timed) and runs it for
+ * a fixed number of events. The events counter reports events per second.
+ * Run from the top of the tree so the workloads directory is found.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ExperimentBenchmark {
+
+    /**
+     * The number of events to run each experiment for.
+     */
+    private static final int N_EVENTS = 1000000;
+
+    /**
+     * The directory holding the workloads directory.
+     */
+    @Param({"./"})
+    private String workloadDir;
+
+    /**
+     * The workload to simulate.
+     */
+    @Param({"csedns"})
+    private String workload;
+
+    /**
+     * The number of servers in the data center.
+     */
+    @Param({"10", "100", "1000"})
+    private int nServers;
+
+    /**
+     * The experiment to run.
+     */
+    private Experiment experiment;
+
+    /**
+     * Counts processed events so JMH reports them as a rate.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class EventCounter {
+
+        /**
+         * The number of events processed.
+         */
+        public long events;
+
+    }
+
+    /**
+     * Sets up a fresh experiment.
+     */
+    @Setup(Level.Invocation)
+    public void setup() {
+        this.experiment = new PowerCappingExperiment().createExperiment(
+                                this.workloadDir,
+                                this.workload,
+                                this.nServers);
+        this.experiment.setEventLimit(N_EVENTS);
+    }
+
+    /**
+     * Runs the experiment for a fixed number of events
+     * (or until it converges, if that happens first).
+     *
+     * @param counter - counts the processed events
+     */
+    @Benchmark
+    public void run(final EventCounter counter) {
+        this.experiment.run();
+        counter.events += this.experiment.getNEventsSimulated();
+    }
+
+}
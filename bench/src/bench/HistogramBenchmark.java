@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stat.Histogram;
+
+/**
+ * Benchmarks adding samples to and reading quantiles from a
+ * {@link Histogram}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HistogramBenchmark {
+
+    /**
+     * The number of precomputed samples (a power of two).
+     */
+    private static final int N_SAMPLES = 1 << 16;
+
+    /**
+     * The number of bins in the histogram.
+     * Experiments use thousands of bins.
+     */
+    @Param({"100", "5000", "50000"})
+    private int nBins;
+
+    /**
+     * The histogram under test.
+     */
+    private Histogram histogram;
+
+    /**
+     * Exponentially distributed samples to add.
+     */
+    private double[] samples;
+
+    /**
+     * The next sample to add.
+     */
+    private int nextSample;
+
+    /**
+     * Creates the histogram and fills it with samples.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        this.samples = new double[N_SAMPLES];
+        for (int i = 0; i < N_SAMPLES; i++) {
+            this.samples[i] = -Math.log(1.0 - random.nextDouble());
+        }
+        this.histogram = new Histogram(this.nBins, 0.0, 10.0);
+        for (int i = 0; i < N_SAMPLES; i++) {
+            this.histogram.addSample(this.samples[i]);
+        }
+        this.nextSample = 0;
+    }
+
+    /**
+     * Adds a sample to the histogram.
+     */
+    @Benchmark
+    public void addSample() {
+        this.histogram.addSample(this.samples[this.nextSample]);
+        this.nextSample = (this.nextSample + 1) & (N_SAMPLES - 1);
+    }
+
+    /**
+     * Gets the 95th percentile of an unchanging histogram.
+     *
+     * @return the 95th percentile
+     */
+    @Benchmark
+    public double getQuantile() {
+        return this.histogram.getQuantile(.95);
+    }
+
+    /**
+     * Adds a sample then gets the 95th percentile, which
+     * forces the histogram to rebuild its cdf.
+     *
+     * @return the 95th percentile
+     */
+    @Benchmark
+    public double addSampleAndGetQuantile() {
+        this.addSample();
+
+        return this.histogram.getQuantile(.95);
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package bench;
+
+import generator.MTRandom;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stat.Sequence;
+
+/**
+ * Benchmarks {@link Sequence#calculateLagSpacing(int, int, double)},
+ * which runs once per statistic at the end of calibration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SequenceBenchmark {
+
+    /**
+     * The maximum lag spacing, as used by Statistic.
+     */
+    private static final int MAX_LAG_SPACING = 40;
+
+    /**
+     * The maximum run, as used by Statistic.
+     */
+    private static final int MAX_RUN = 50;
+
+    /**
+     * The confidence of the runs test, as used by Statistic.
+     */
+    private static final double LAG_CONFIDENCE = .99;
+
+    /**
+     * The number of calibration samples in the sequence.
+     */
+    @Param({"5000", "50000"})
+    private int nSamples;
+
+    /**
+     * The autocorrelation of successive samples.
+     * Correlated samples (like response times) need a larger lag spacing,
+     * so more spacings are tried.
+     */
+    @Param({"0.0", "0.9"})
+    private double correlation;
+
+    /**
+     * The sequence under test.
+     */
+    private Sequence sequence;
+
+    /**
+     * Fills the sequence with an autoregressive series.
+     */
+    @Setup
+    public void setup() {
+        MTRandom random = new MTRandom(1);
+        this.sequence = new Sequence();
+        double value = 0.0d;
+        for (int i = 0; i < this.nSamples; i++) {
+            value = this.correlation * value + random.nextDouble();
+            this.sequence.insert(value);
+        }
+    }
+
+    /**
+     * Calculates the lag spacing of the sequence.
+     *
+     * @return the lag spacing
+     */
+    @Benchmark
+    public int calculateLagSpacing() {
+        return this.sequence.calculateLagSpacing(MAX_LAG_SPACING,
+                                                 MAX_RUN,
+                                                 LAG_CONFIDENCE);
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package bench;
+
+import generator.ConstantGenerator;
+import generator.MTRandom;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Job;
+import datacenter.Server;
+
+/**
+ * Benchmarks {@link Server#getPower()} for servers of different sizes
+ * with half of their cores busy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerPowerBenchmark {
+
+    /**
+     * The number of cores per socket.
+     */
+    private static final int CORES_PER_SOCKET = 4;
+
+    /**
+     * The number of sockets in the server.
+     */
+    @Param({"1", "32", "72"})
+    private int nSockets;
+
+    /**
+     * The server under test.
+     */
+    private Server server;
+
+    /**
+     * Creates the server and starts jobs on half its cores.
+     */
+    @Setup
+    public void setup() {
+        MTRandom random = new MTRandom(1);
+        Experiment experiment = new Experiment("Server power benchmark",
+                                               random,
+                                               new ExperimentInput(),
+                                               new ExperimentOutput());
+        ConstantGenerator generator = new ConstantGenerator(random, 1.0);
+        this.server = new Server(this.nSockets, CORES_PER_SOCKET, experiment,
+                                 generator, generator);
+        int nJobs = this.nSockets * CORES_PER_SOCKET / 2;
+        for (int i = 0; i < nJobs; i++) {
+            this.server.insertJob(0.0, new Job(1.0, experiment.nextJobId()));
+        }
+    }
+
+    /**
+     * Gets the power of the server.
+     *
+     * @return the power of the server
+     */
+    @Benchmark
+    public double getPower() {
+        return this.server.getPower();
+    }
+
+}
@@ -53,6 +53,17 @@ public abstract class AbstractEvent
     /** The experiment the even is associated with. */
     private Experiment experiment;
 
+    /**
+     * The order in which the event was added to the event queue.
+     * Breaks ties between events that occur at the same time.
+     */
+    private long sequenceNumber;
+
+    /**
+     * The position of the event in its event set, -1 if not queued.
+     */
+    private int queueIndex;
+
     /**
      * A constructor for subclasses to use.
      * @param theTime - The time the event occurs at
@@ -62,6 +73,17 @@ public abstract class AbstractEvent
                          final Experiment anExperiment) {
         this.time = theTime;
         this.experiment = anExperiment;
+        this.queueIndex = -1;
+    }
+
+    /**
+     * Resets the event so it can be reused.
+     * @param theTime - The time the event occurs at
+     */
+    protected final void resetEvent(final double theTime) {
+        this.time = theTime;
+        this.sequenceNumber = 0;
+        this.queueIndex = -1;
     }
 
     /**
@@ -81,17 +103,55 @@ public abstract class AbstractEvent
         return this.experiment;
     }
 
+    /**
+     * Get the sequence number the event queue assigned the event.
+     * @return the sequence number of the event
+     */
+    public final long getSequenceNumber() {
+        return this.sequenceNumber;
+    }
+
+    /**
+     * Set the sequence number of the event.
+     * @param theSequenceNumber - the sequence number of the event
+     */
+    public final void setSequenceNumber(final long theSequenceNumber) {
+        this.sequenceNumber = theSequenceNumber;
+    }
+
+    /**
+     * Get the position of the event in its event set.
+     * @return the position of the event, or -1 if it isn't queued
+     */
+    public final int getQueueIndex() {
+        return this.queueIndex;
+    }
+
+    /**
+     * Set the position of the event in its event set.
+     * @param theQueueIndex - the position of the event, or -1
+     */
+    public final void setQueueIndex(final int theQueueIndex) {
+        this.queueIndex = theQueueIndex;
+    }
+
     /**
      * Checks if an event takes place before or after this one.
+     * Events at the same time are ordered by when they were queued.
      * @param otherEvent - the event to compare to this one
      * @return the value of
-     * {@link java.lang.Double#compareTo(Double anotherDouble)}
-     * comparing the times of the two events
+     * {@link java.lang.Double#compare(double, double)}
+     * comparing the times of the two events, or of
+     * {@link java.lang.Long#compare(long, long)} comparing
+     * their sequence numbers if the times are equal
      */
     public final int compareTo(final Event otherEvent) {
-        Double thisTime = this.time;
-        Double otherTime = new Double(otherEvent.getTime());
-        return thisTime.compareTo(otherTime);
+        int timeOrder = Double.compare(this.time, otherEvent.getTime());
+        if (timeOrder != 0) {
+            return timeOrder;
+        }
+        return Long.compare(this.sequenceNumber,
+                            otherEvent.getSequenceNumber());
     }
 
 }
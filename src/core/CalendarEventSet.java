@@ -0,0 +1,395 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package core;
+
+import java.util.ArrayList;
+
+/**
+ * An EventSet implemented as a calendar queue (R. Brown, "Calendar Queues:
+ * A Fast O(1) Priority Queue Implementation for the Simulation Event Set
+ * Problem", CACM 1988).
+ *
+ * Time is divided into slots of a fixed width. Slots map round robin onto
+ * a "year" of buckets and each bucket keeps its events sorted. As long as
+ * the bucket width matches the spacing of pending events, adding and polling
+ * events are amortized O(1). The number of buckets doubles or halves with
+ * the number of pending events and the bucket width is re-estimated from
+ * the earliest pending events each time.
+ */
+public final class CalendarEventSet implements EventSet {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The smallest number of buckets the calendar shrinks to. */
+    private static final int MIN_BUCKETS = 2;
+
+    /** The number of earliest events sampled to pick the bucket width. */
+    private static final int WIDTH_SAMPLE_SIZE = 25;
+
+    /** The bucket width (in seconds) before there are events to sample. */
+    private static final double DEFAULT_BUCKET_WIDTH = 1.0;
+
+    /** Bucket widths are this many times the average event spacing. */
+    private static final double WIDTH_SPACING_FACTOR = 3.0;
+
+    /**
+     * The buckets of the calendar.
+     * Each bucket is sorted latest event first so the earliest is removed
+     * from the end.
+     */
+    private ArrayList<ArrayList<Event>> buckets;
+
+    /** The number of buckets in the calendar (always a power of two). */
+    private int nBuckets;
+
+    /** The span of time (in seconds) covered by each slot. */
+    private double bucketWidth;
+
+    /**
+     * The slot currently being dequeued from.
+     * No pending event is in an earlier slot.
+     */
+    private long currentSlot;
+
+    /** The number of events in the calendar. */
+    private int size;
+
+    /**
+     * Creates a new, empty CalendarEventSet.
+     */
+    public CalendarEventSet() {
+        this.size = 0;
+        this.currentSlot = 0;
+        this.rebuild(MIN_BUCKETS, DEFAULT_BUCKET_WIDTH);
+    }
+
+    @Override
+    public void add(final Event event) {
+        long slot = this.slotOf(event.getTime());
+        insertSorted(this.bucketOf(slot), event);
+        if (this.size == 0 || slot < this.currentSlot) {
+            this.currentSlot = slot;
+        }
+        this.size++;
+
+        if (this.size > 2 * this.nBuckets) {
+            this.resize(2 * this.nBuckets);
+        }
+    }
+
+    @Override
+    public Event poll() {
+        Event event = this.pollEarliest();
+
+        if (event != null
+                && this.nBuckets > MIN_BUCKETS
+                && this.size < this.nBuckets / 2) {
+            this.resize(this.nBuckets / 2);
+        }
+
+        return event;
+    }
+
+    @Override
+    public Event peek() {
+        ArrayList<Event> bucket = this.findEarliestBucket();
+        if (bucket == null) {
+            return null;
+        }
+
+        return last(bucket);
+    }
+
+    @Override
+    public boolean remove(final Event event) {
+        long slot = this.slotOf(event.getTime());
+        ArrayList<Event> bucket = this.bucketOf(slot);
+        int index = findSorted(bucket, event);
+        if (index < 0) {
+            return false;
+        }
+
+        bucket.remove(index);
+        this.size--;
+
+        if (this.nBuckets > MIN_BUCKETS && this.size < this.nBuckets / 2) {
+            this.resize(this.nBuckets / 2);
+        }
+
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Event[] toArray() {
+        Event[] events = new Event[this.size];
+        int index = 0;
+        for (int i = 0; i < this.buckets.size(); i++) {
+            ArrayList<Event> bucket = this.buckets.get(i);
+            for (int j = 0; j < bucket.size(); j++) {
+                events[index] = bucket.get(j);
+                index++;
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Get and remove the earliest event without resizing the calendar.
+     *
+     * @return the earliest event, or null if there are no events
+     */
+    private Event pollEarliest() {
+        ArrayList<Event> bucket = this.findEarliestBucket();
+        if (bucket == null) {
+            return null;
+        }
+
+        this.size--;
+
+        return bucket.remove(bucket.size() - 1);
+    }
+
+    /**
+     * Find the bucket holding the earliest event, moving the current slot
+     * up to that event.
+     *
+     * @return the bucket with the earliest event at its end,
+     * or null if there are no events
+     */
+    private ArrayList<Event> findEarliestBucket() {
+        if (this.size == 0) {
+            return null;
+        }
+
+        // Walk at most one year of buckets looking for the current slot
+        for (int i = 0; i < this.nBuckets; i++) {
+            ArrayList<Event> bucket = this.bucketOf(this.currentSlot);
+            if (!bucket.isEmpty()
+                    && this.slotOf(last(bucket).getTime())
+                       <= this.currentSlot) {
+                return bucket;
+            }
+            this.currentSlot++;
+        }
+
+        // The next event is more than a year away, jump straight to it
+        ArrayList<Event> earliestBucket = null;
+        for (int i = 0; i < this.nBuckets; i++) {
+            ArrayList<Event> bucket = this.buckets.get(i);
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            if (earliestBucket == null
+                    || last(bucket).compareTo(last(earliestBucket)) < 0) {
+                earliestBucket = bucket;
+            }
+        }
+        this.currentSlot = this.slotOf(last(earliestBucket).getTime());
+
+        return earliestBucket;
+    }
+
+    /**
+     * Changes the number of buckets and re-estimates the bucket width.
+     *
+     * @param newNBuckets - the new number of buckets
+     */
+    private void resize(final int newNBuckets) {
+        // The earliest events give the spacing of upcoming events
+        int nSamples = Math.min(this.size, WIDTH_SAMPLE_SIZE);
+        Event[] samples = new Event[nSamples];
+        for (int i = 0; i < nSamples; i++) {
+            samples[i] = this.pollEarliest();
+        }
+
+        ArrayList<Event> pending = new ArrayList<Event>(this.size + nSamples);
+        for (int i = 0; i < this.nBuckets; i++) {
+            pending.addAll(this.buckets.get(i));
+        }
+
+        this.rebuild(newNBuckets, estimateWidth(samples, this.bucketWidth));
+        this.size = 0;
+        for (int i = 0; i < nSamples; i++) {
+            this.add(samples[i]);
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            this.add(pending.get(i));
+        }
+    }
+
+    /**
+     * Replaces the buckets with new, empty ones.
+     *
+     * @param newNBuckets - the number of buckets
+     * @param newBucketWidth - the width of each slot (in seconds)
+     */
+    private void rebuild(final int newNBuckets, final double newBucketWidth) {
+        this.nBuckets = newNBuckets;
+        this.bucketWidth = newBucketWidth;
+        this.buckets = new ArrayList<ArrayList<Event>>(newNBuckets);
+        for (int i = 0; i < newNBuckets; i++) {
+            this.buckets.add(new ArrayList<Event>());
+        }
+    }
+
+    /**
+     * Estimates a bucket width from time ordered events.
+     * Uses the average separation, ignoring separations more than twice the
+     * average so a few distant events don't stretch the buckets.
+     *
+     * @param samples - the earliest events in time order
+     * @param currentWidth - the width to keep if it can't be estimated
+     * @return the new bucket width
+     */
+    private static double estimateWidth(final Event[] samples,
+                                        final double currentWidth) {
+        if (samples.length < 2) {
+            return currentWidth;
+        }
+
+        double span = samples[samples.length - 1].getTime()
+                      - samples[0].getTime();
+        double averageGap = span / (samples.length - 1);
+
+        double trimmedSpan = 0.0d;
+        int trimmedGaps = 0;
+        for (int i = 1; i < samples.length; i++) {
+            double gap = samples[i].getTime() - samples[i - 1].getTime();
+            if (gap <= 2 * averageGap) {
+                trimmedSpan += gap;
+                trimmedGaps++;
+            }
+        }
+
+        double width = WIDTH_SPACING_FACTOR * trimmedSpan / trimmedGaps;
+        if (!(width > 0) || Double.isInfinite(width)) {
+            return currentWidth;
+        }
+
+        return width;
+    }
+
+    /**
+     * Get the slot a time falls in.
+     *
+     * @param time - the time
+     * @return the slot of the time
+     */
+    private long slotOf(final double time) {
+        return (long) Math.floor(time / this.bucketWidth);
+    }
+
+    /**
+     * Get the bucket a slot maps onto.
+     *
+     * @param slot - the slot
+     * @return the bucket for the slot
+     */
+    private ArrayList<Event> bucketOf(final long slot) {
+        return this.buckets.get((int) (slot & (this.nBuckets - 1)));
+    }
+
+    /**
+     * Get the earliest event of a non-empty bucket.
+     *
+     * @param bucket - the bucket
+     * @return the earliest event in the bucket
+     */
+    private static Event last(final ArrayList<Event> bucket) {
+        return bucket.get(bucket.size() - 1);
+    }
+
+    /**
+     * Inserts an event into a bucket sorted latest first.
+     *
+     * @param bucket - the bucket
+     * @param event - the event to insert
+     */
+    private static void insertSorted(final ArrayList<Event> bucket,
+                                     final Event event) {
+        int low = 0;
+        int high = bucket.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bucket.get(mid).compareTo(event) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        bucket.add(low, event);
+    }
+
+    /**
+     * Finds an event in a bucket sorted latest first.
+     *
+     * @param bucket - the bucket
+     * @param event - the event to find
+     * @return the index of the event, or -1 if it isn't in the bucket
+     */
+    private static int findSorted(final ArrayList<Event> bucket,
+                                  final Event event) {
+        int low = 0;
+        int high = bucket.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Event midEvent = bucket.get(mid);
+            if (midEvent == event) {
+                return mid;
+            }
+            int order = midEvent.compareTo(event);
+            if (order > 0) {
+                low = mid + 1;
+            } else if (order < 0) {
+                high = mid - 1;
+            } else {
+                break;
+            }
+        }
+
+        // Fall back to a scan if the event wasn't where its order says
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i) == event) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+}
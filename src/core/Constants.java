@@ -161,6 +161,12 @@ public final class Constants {
     /** The minimum number of samples to converge a statistic. */
     public static final long MINIMUM_CONVERGE_SAMPLES = 10;
 
+    /**
+     * The fraction of the estimated samples left until a statistic
+     * converges to wait before checking it again.
+     */
+    public static final double CONVERGENCE_CHECK_FRACTION = .5;
+
     /** The maximum stride length between samples before giving up. */
     public static final int GIVE_UP_STRIDE = 100;
 
@@ -61,6 +61,34 @@ public interface Event {
      */
     int compareTo(Event otherEvent);
 
+    /**
+     * Get the sequence number the event queue assigned the event.
+     * Events with equal times are ordered by this number.
+     * @return the sequence number of the event
+     */
+    long getSequenceNumber();
+
+    /**
+     * Set the sequence number of the event.
+     * This is called by the event queue when the event is added.
+     * @param sequenceNumber - the sequence number of the event
+     */
+    void setSequenceNumber(long sequenceNumber);
+
+    /**
+     * Get the position of the event in its event set.
+     * Lets the event set find the event without searching for it.
+     * @return the position of the event, or -1 if it isn't queued
+     */
+    int getQueueIndex();
+
+    /**
+     * Set the position of the event in its event set.
+     * This is called by the event set as the event moves.
+     * @param queueIndex - the position of the event, or -1 if it isn't queued
+     */
+    void setQueueIndex(int queueIndex);
+
     /**
      * This function is called when the event occurs.
      * It is overridden by implementing classes to implement
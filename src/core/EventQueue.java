@@ -31,13 +31,16 @@
 
 package core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.PriorityQueue;
 
 /**
  * The EvenQueue manages events in the discrete event simulation.
  * The events are ordered by when they occur in time, so the
  * head of the queue represents the next event to occur.
+ * Events which occur at the same time are ordered by when they were added.
  *
  * @author David Meisner (meisner@umich.edu)
  */
@@ -49,15 +52,89 @@ public final class EventQueue implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
-     * The queue of events. Events are time ordered in a priority queue.
+     * The data structures available to hold pending events.
+     * All of them order events identically.
      */
-    private PriorityQueue<Event> queue;
+    public static enum QueueType {
+        /** A binary heap. O(log n) to add, get and cancel events. */
+        HEAP,
+
+        /** A calendar queue. Amortized O(1) to add and get events. */
+        CALENDAR
+    };
 
     /**
-     * Creates a new EventQueue.
+     * The data structure currently holding events.
+     */
+    private QueueType queueType;
+
+    /**
+     * The pending events.
+     * Only the events themselves are serialized, not the data structure.
+     */
+    private transient EventSet queue;
+
+    /**
+     * The sequence number to give the next added event.
+     */
+    private long nextSequenceNumber;
+
+    /**
+     * Creates a new EventQueue backed by a heap.
      */
     public EventQueue() {
-        this.queue = new PriorityQueue<Event>();
+        this(QueueType.HEAP);
+    }
+
+    /**
+     * Creates a new EventQueue.
+     * @param theQueueType - the data structure to hold events in
+     */
+    public EventQueue(final QueueType theQueueType) {
+        this.queueType = theQueueType;
+        this.queue = createEventSet(theQueueType);
+        this.nextSequenceNumber = 0;
+    }
+
+    /**
+     * Creates an empty set of events.
+     * @param type - the data structure to use
+     * @return the empty set of events
+     */
+    private static EventSet createEventSet(final QueueType type) {
+        if (type == QueueType.CALENDAR) {
+            return new CalendarEventSet();
+        }
+
+        return new HeapEventSet();
+    }
+
+    /**
+     * Changes the data structure holding events.
+     * Events already in the queue are moved to the new one.
+     * @param theQueueType - the data structure to hold events in
+     */
+    public void setQueueType(final QueueType theQueueType) {
+        if (theQueueType == this.queueType) {
+            return;
+        }
+
+        EventSet newQueue = createEventSet(theQueueType);
+        Event event = this.queue.poll();
+        while (event != null) {
+            newQueue.add(event);
+            event = this.queue.poll();
+        }
+        this.queue = newQueue;
+        this.queueType = theQueueType;
+    }
+
+    /**
+     * Get the data structure holding events.
+     * @return the data structure holding events
+     */
+    public QueueType getQueueType() {
+        return this.queueType;
     }
 
     /**
@@ -68,12 +145,22 @@ public final class EventQueue implements Serializable {
         return this.queue.poll();
     }
 
+    /**
+     * Get the next event from the queue without removing it.
+     * @return the next event, or null if the queue is empty
+     */
+    public Event peekEvent() {
+        return this.queue.peek();
+    }
+
     /**
      * Add an event to the event queue.
      * This event will now happen sometime in the future.
      * @param event - the event to add
      */
     public void addEvent(final Event event) {
+        event.setSequenceNumber(this.nextSequenceNumber);
+        this.nextSequenceNumber++;
         this.queue.add(event);
     }
 
@@ -84,7 +171,7 @@ public final class EventQueue implements Serializable {
     public void cancelEvent(final Event event) {
         boolean removeWorked = this.queue.remove(event);
         // Make sure the event was actually removed
-        if (!removeWorked || this.queue.contains(event)) {
+        if (!removeWorked) {
             // TODO - we have a loop where a Timeout event will try
             // to remove itself while it is in process,
             // so cancel will fail
@@ -101,4 +188,40 @@ public final class EventQueue implements Serializable {
         return this.queue.size();
     }
 
+    /**
+     * Serializes the queue as a flat list of its pending events, leaving
+     * out the data structure holding them.
+     *
+     * @param out - the stream to write to
+     * @throws IOException - if the queue can't be written
+     */
+    private void writeObject(final ObjectOutputStream out)
+            throws IOException {
+        out.defaultWriteObject();
+        Event[] events = this.queue.toArray();
+        out.writeInt(events.length);
+        for (int i = 0; i < events.length; i++) {
+            out.writeObject(events[i]);
+        }
+    }
+
+    /**
+     * Deserializes the queue, rebuilding the data structure from its
+     * pending events. Events keep their sequence numbers, so they are
+     * processed in the same order as before.
+     *
+     * @param in - the stream to read from
+     * @throws IOException - if the queue can't be read
+     * @throws ClassNotFoundException - if an event's class is unknown
+     */
+    private void readObject(final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.queue = createEventSet(this.queueType);
+        int nEvents = in.readInt();
+        for (int i = 0; i < nEvents; i++) {
+            this.queue.add((Event) in.readObject());
+        }
+    }
+
 }
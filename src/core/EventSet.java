@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package core;
+
+import java.io.Serializable;
+
+/**
+ * A set of pending events which the {@link EventQueue} stores its
+ * events in. Implementations must hand events back in the order given by
+ * {@link Event#compareTo(Event)}, so that every implementation produces
+ * exactly the same simulation.
+ */
+public interface EventSet extends Serializable {
+
+    /**
+     * Add an event to the set.
+     * @param event - the event to add
+     */
+    void add(Event event);
+
+    /**
+     * Get and remove the earliest event in the set.
+     * @return the earliest event, or null if the set is empty
+     */
+    Event poll();
+
+    /**
+     * Get the earliest event in the set without removing it.
+     * @return the earliest event, or null if the set is empty
+     */
+    Event peek();
+
+    /**
+     * Remove an event from the set.
+     * @param event - the event to remove
+     * @return if the event was in the set and was removed
+     */
+    boolean remove(Event event);
+
+    /**
+     * Get the number of events in the set.
+     * @return the number of events in the set
+     */
+    int size();
+
+    /**
+     * Get the events in the set, in no particular order.
+     * @return a new array of the events in the set
+     */
+    Event[] toArray();
+
+}
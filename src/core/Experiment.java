@@ -32,9 +32,22 @@
 
 package core;
 
+import generator.Generator;
 import generator.MTRandom;
+import generator.RandomStreams;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -93,6 +106,12 @@ public final class Experiment implements Serializable, Cloneable {
      */
     private MTRandom random;
 
+    /**
+     * Independent random number streams for the experiment's servers,
+     * reseeded along with the experiment.
+     */
+    private RandomStreams randomStreams;
+
     /**
      * A flag determining if this experiment should stop once it
      * reaches steady state. Used to just run the characterization phase
@@ -102,14 +121,117 @@ public final class Experiment implements Serializable, Cloneable {
 
     /**
      * A flag indicating the simulation should stop at the next possible step.
+     * Volatile since other threads stop the simulation.
+     */
+    private volatile boolean stop;
+
+    /**
+     * The id to give the next job created in this experiment.
+     */
+    private long nextJobId;
+
+    /**
+     * If jobs and job events are recycled once they're done with.
+     */
+    private boolean recycleObjects;
+
+    /**
+     * If time weighted statistics only receive samples when their
+     * value changes.
+     */
+    private boolean changeDrivenStats;
+
+    /**
+     * Finished jobs waiting to be reused.
+     */
+    private transient ArrayList<Job> jobPool;
+
+    /**
+     * Processed arrival events waiting to be reused.
+     */
+    private transient ArrayList<JobArrivalEvent> arrivalEventPool;
+
+    /**
+     * Processed finish events waiting to be reused.
+     */
+    private transient ArrayList<JobFinishEvent> finishEventPool;
+
+    /**
+     * If the experiment is currently inside {@link #run()}.
+     */
+    private transient boolean running;
+
+    /**
+     * Set by another thread to ask the simulation thread for a copy of
+     * the statistics at the next event boundary.
+     */
+    private transient volatile boolean statsSnapshotRequested;
+
+    /**
+     * The copy of the statistics made for another thread, if any.
+     */
+    private transient StatisticsCollection statsSnapshot;
+
+    /**
+     * The number of partitions the servers are split into, each run by
+     * its own thread. With one partition the experiment runs sequentially.
+     */
+    private int nPartitions;
+
+    /**
+     * The longest stretch of simulated time (in seconds) partitions run
+     * for between synchronizations.
+     */
+    private double partitionWindow;
+
+    /**
+     * While set, {@link #getStats()} returns these statistics, which record
+     * samples for a parallel run, instead of the experiment's statistics.
      */
-    private boolean stop;
+    private transient StatisticsCollection recordingStats;
+
+    /**
+     * The number of processed events at which progress is next printed.
+     */
+    private long printSamples;
+
+    /**
+     * Each partition of a parallel run numbers its jobs from its index
+     * shifted by this many bits, so job ids stay unique.
+     */
+    private static final int PARTITION_JOB_ID_SHIFT = 40;
 
     /**
      * If flag is set, we're running search workload. Scale all service stats by 10 to converge faster.
      */ 	 
     private boolean searchWorkload;
 
+    /** The buffer size (in bytes) used reading and writing checkpoints. */
+    private static final int CHECKPOINT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * If the servers have been primed with arrivals, so running again
+     * (e.g., after restoring from a checkpoint) resumes the simulation.
+     */
+    private boolean started;
+
+    /**
+     * The number of events between periodic checkpoints, or 0 for none.
+     */
+    private long checkpointInterval;
+
+    /** The file periodic checkpoints are written to. */
+    private String checkpointFile;
+
+    /** The number of processed events to write the next checkpoint at. */
+    private long nextCheckpoint;
+
+    /**
+     * Set by another thread to ask the simulation thread to write a
+     * checkpoint to this file at the next event boundary.
+     */
+    private transient volatile String checkpointRequest;
+
     /**
      * Constructs a new experiment.
      *
@@ -123,7 +245,11 @@ public final class Experiment implements Serializable, Cloneable {
                       final ExperimentInput theExperimentInput,
                       final ExperimentOutput thExperimentOutput) {
         this.stop = false;
+        this.nextJobId = 0;
+        this.recycleObjects = false;
+        this.changeDrivenStats = false;
         this.random = aRandom;
+        this.randomStreams = new RandomStreams(1);
         this.currentTime = 0.0d;
         this.eventLimit = 0;
         this.experimentName = theExperimentName;
@@ -132,6 +258,35 @@ public final class Experiment implements Serializable, Cloneable {
         this.eventQueue = new EventQueue();
         this.stopAtSteadyState = false;
 	this.searchWorkload = false;
+        this.nPartitions = 1;
+        this.partitionWindow = 1.0d;
+        this.started = false;
+        this.checkpointInterval = 0;
+        this.checkpointFile = null;
+        this.nextCheckpoint = 0;
+    }
+
+    /**
+     * Constructs one partition of a parallel run of an experiment.
+     * The partition shares the experiment's input, but has its own event
+     * queue, jobs and output.
+     *
+     * @param parent - the experiment being run in parallel
+     * @param partition - the index of the partition
+     * @param partitionOutput - the output the partition records samples in
+     */
+    Experiment(final Experiment parent,
+               final int partition,
+               final ExperimentOutput partitionOutput) {
+        this(parent.experimentName,
+             parent.random,
+             parent.experimentInput,
+             partitionOutput);
+        this.eventQueue.setQueueType(parent.getEventQueueType());
+        this.recycleObjects = parent.recycleObjects;
+        this.searchWorkload = parent.searchWorkload;
+        this.nextJobId = ((long) partition + 1) << PARTITION_JOB_ID_SHIFT;
+        this.dataCenter = parent.experimentInput.getDataCenter();
     }
 
     public void setSearchWorkload(final boolean search) {
@@ -142,6 +297,80 @@ public final class Experiment implements Serializable, Cloneable {
 	return this.searchWorkload;
     }
 
+    /**
+     * Sets the data structure the experiment keeps pending events in.
+     * Events already scheduled are kept.
+     *
+     * @param queueType - the data structure to keep events in
+     */
+    public void setEventQueueType(final EventQueue.QueueType queueType) {
+        this.eventQueue.setQueueType(queueType);
+    }
+
+    /**
+     * Gets the data structure the experiment keeps pending events in.
+     *
+     * @return the data structure pending events are kept in
+     */
+    public EventQueue.QueueType getEventQueueType() {
+        return this.eventQueue.getQueueType();
+    }
+
+    /**
+     * Sets the number of partitions the servers are split into, each
+     * simulated by its own thread. Servers in different partitions must
+     * only interact through events the experiment itself schedules (such
+     * as power cap recalculations), which become synchronization points.
+     * This needs UNIFORM cluster scheduling and servers that don't share
+     * generators across partitions (see {@link #getRandomStreams()}).
+     * The statistics match a sequential run
+     * of the same experiment, provided no two events in different
+     * partitions happen at exactly the same time.
+     *
+     * @param thePartitions - the number of partitions, 1 to run sequentially
+     */
+    public void setPartitions(final int thePartitions) {
+        if (thePartitions < 1) {
+            Sim.fatalError("Need at least one partition, not "
+                           + thePartitions);
+        }
+        this.nPartitions = thePartitions;
+    }
+
+    /**
+     * Gets the number of partitions the servers are split into.
+     *
+     * @return the number of partitions
+     */
+    public int getPartitions() {
+        return this.nPartitions;
+    }
+
+    /**
+     * Sets the longest stretch of simulated time partitions run for
+     * between synchronizations. Shorter windows check for convergence
+     * more often, longer ones synchronize less.
+     *
+     * @param window - the window length (in seconds)
+     */
+    public void setPartitionWindow(final double window) {
+        if (!(window > 0)) {
+            Sim.fatalError("Partition window must be positive, not "
+                           + window);
+        }
+        this.partitionWindow = window;
+    }
+
+    /**
+     * Gets the longest stretch of simulated time partitions run for
+     * between synchronizations.
+     *
+     * @return the window length (in seconds)
+     */
+    public double getPartitionWindow() {
+        return this.partitionWindow;
+    }
+
     /**
      * Sets the random seed for this experiment's random number generator.
      * @param newSeed - the random seed for this experiment's
@@ -149,6 +378,20 @@ public final class Experiment implements Serializable, Cloneable {
      */
     public void setSeed(final long newSeed) {
         this.random.setSeed(newSeed);
+        this.randomStreams.setSeed(newSeed);
+    }
+
+    /**
+     * Gets the experiment's per-server random number streams, which are
+     * seeded with 1 until {@link #setSeed(long)} is called. Giving each
+     * server's generators their own streams makes results independent of
+     * the order servers' events are interleaved in, which partitioned
+     * runs require.
+     *
+     * @return the experiment's random number streams
+     */
+    public RandomStreams getRandomStreams() {
+        return this.randomStreams;
     }
 
     /**
@@ -199,9 +442,363 @@ public final class Experiment implements Serializable, Cloneable {
      * @return the statistics collection for the experiment
      */
     public StatisticsCollection getStats() {
+        if (this.recordingStats != null) {
+            return this.recordingStats;
+        }
+
         return this.exprimentOutput.getStats();
     }
 
+    /**
+     * Has {@link #getStats()} return statistics that record samples for a
+     * parallel run, or the experiment's statistics again.
+     *
+     * @param stats - the recording statistics, or null
+     */
+    void setRecordingStats(final StatisticsCollection stats) {
+        this.recordingStats = stats;
+    }
+
+    /**
+     * Gets a copy of the statistics collection that is safe to use while
+     * the experiment runs in another thread. If the experiment is running,
+     * this waits for the simulation thread to copy the statistics between
+     * two events.
+     *
+     * @return a copy of the statistics collection for the experiment
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public synchronized StatisticsCollection getStatsSnapshot()
+            throws InterruptedException {
+        if (this.running) {
+            this.statsSnapshot = null;
+            this.statsSnapshotRequested = true;
+            while (this.statsSnapshot == null && this.running) {
+                this.wait();
+            }
+            this.statsSnapshotRequested = false;
+            if (this.statsSnapshot != null) {
+                StatisticsCollection snapshot = this.statsSnapshot;
+                this.statsSnapshot = null;
+                return snapshot;
+            }
+        }
+
+        return deepCopy(this.getStats());
+    }
+
+    /**
+     * Copies the statistics for a waiting {@link #getStatsSnapshot()}.
+     */
+    private synchronized void takeStatsSnapshot() {
+        this.statsSnapshot = deepCopy(this.getStats());
+        this.statsSnapshotRequested = false;
+        this.notifyAll();
+    }
+
+    /**
+     * Marks whether the experiment is inside {@link #run()}.
+     *
+     * @param isRunning - if the experiment is running
+     */
+    private synchronized void setRunning(final boolean isRunning) {
+        this.running = isRunning;
+        this.notifyAll();
+    }
+
+    /**
+     * Makes an independent copy of this experiment, including its
+     * datacenter, generators and statistics. The copy shares no state
+     * with this experiment, so the two can run in different threads.
+     *
+     * @return a copy of the experiment
+     */
+    public Experiment copy() {
+        return deepCopy(this);
+    }
+
+    /**
+     * Copies an object graph by serializing it.
+     *
+     * @param <T> - the type of the object
+     * @param object - the object to copy
+     * @return a copy of the object
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> T deepCopy(final T object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(object);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            T copy = (T) in.readObject();
+            in.close();
+            return copy;
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't copy " + object + ": " + e);
+        } catch (ClassNotFoundException e) {
+            Sim.fatalError("Couldn't copy " + object + ": " + e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the full state of the simulation (events, datacenter,
+     * generators and statistics) to a file, which
+     * {@link #restore(String)} resumes from. If the experiment is
+     * running in another thread, this waits for the simulation thread to
+     * write the checkpoint between two events.
+     *
+     * @param fileName - the file to write the checkpoint to
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public synchronized void checkpoint(final String fileName)
+            throws InterruptedException {
+        if (this.running) {
+            if (this.nPartitions > 1) {
+                Sim.fatalError("Can't checkpoint a partitioned run");
+            }
+            this.checkpointRequest = fileName;
+            while (this.checkpointRequest != null && this.running) {
+                this.wait();
+            }
+            if (this.checkpointRequest == null) {
+                return;
+            }
+            this.checkpointRequest = null;
+        }
+
+        this.writeCheckpoint(fileName);
+    }
+
+    /**
+     * Writes a checkpoint every so many events while the experiment runs.
+     * Each checkpoint replaces the last one.
+     *
+     * @param nEvents - the number of events between checkpoints,
+     * or 0 for no periodic checkpoints
+     * @param fileName - the file to write checkpoints to
+     */
+    public void setCheckpointInterval(final long nEvents,
+                                      final String fileName) {
+        this.checkpointInterval = nEvents;
+        this.checkpointFile = fileName;
+        this.nextCheckpoint = this.nEventsProccessed + nEvents;
+    }
+
+    /**
+     * Reads an experiment back from a checkpoint. Running the restored
+     * experiment continues the simulation from where the checkpoint was
+     * written. Each call makes a new independent experiment, so one
+     * checkpoint (e.g., of a calibrated experiment) can start many runs.
+     *
+     * @param fileName - the checkpoint file
+     * @return the experiment, ready to resume
+     */
+    public static Experiment restore(final String fileName) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(fileName),
+                                            CHECKPOINT_BUFFER_SIZE));
+            try {
+                return (Experiment) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't restore " + fileName + ": " + e);
+        } catch (ClassNotFoundException e) {
+            Sim.fatalError("Couldn't restore " + fileName + ": " + e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes a checkpoint. It is written to a temporary file first, so a
+     * crash while writing leaves the previous checkpoint intact.
+     *
+     * @param fileName - the file to write the checkpoint to
+     */
+    private void writeCheckpoint(final String fileName) {
+        File file = new File(fileName);
+        File partial = new File(fileName + ".tmp");
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(partial),
+                                             CHECKPOINT_BUFFER_SIZE));
+            try {
+                out.writeObject(this);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't write checkpoint " + fileName + ": "
+                    + e);
+        }
+
+        if ((file.exists() && !file.delete()) || !partial.renameTo(file)) {
+            Sim.fatalError("Couldn't replace checkpoint " + fileName);
+        }
+    }
+
+    /**
+     * Writes a checkpoint for a waiting {@link #checkpoint(String)}.
+     */
+    private synchronized void takeRequestedCheckpoint() {
+        this.writeCheckpoint(this.checkpointRequest);
+        this.checkpointRequest = null;
+        this.notifyAll();
+    }
+
+    /**
+     * Sets if jobs and job events are recycled once they're done with,
+     * instead of being left for the garbage collector.
+     * A job is recycled after its finish event is processed, so nothing
+     * may hold on to a job or a job event after that point.
+     *
+     * @param recycle - if jobs and job events should be recycled
+     */
+    public void setRecycleObjects(final boolean recycle) {
+        this.recycleObjects = recycle;
+    }
+
+    /**
+     * Gets if jobs and job events are recycled.
+     *
+     * @return if jobs and job events are recycled
+     */
+    public boolean getRecycleObjects() {
+        return this.recycleObjects;
+    }
+
+    /**
+     * Sets if time weighted statistics (cluster power) only receive
+     * samples when their value changes, instead of after every event. Windows the values span
+     * are completed when they next change, so window averages are
+     * added to the statistics later than in a per-event run.
+     *
+     * @param driven - if time weighted statistics are change-driven
+     */
+    public void setChangeDrivenStatistics(final boolean driven) {
+        this.changeDrivenStats = driven;
+    }
+
+    /**
+     * Gets if time weighted statistics only receive samples when their
+     * value changes.
+     *
+     * @return if time weighted statistics are change-driven
+     */
+    public boolean getChangeDrivenStatistics() {
+        return this.changeDrivenStats;
+    }
+
+    /**
+     * Creates a new job, reusing a finished one if recycling.
+     *
+     * @param size - the size of the job in seconds
+     * @return the new job
+     */
+    public Job createJob(final double size) {
+        if (this.recycleObjects && this.jobPool != null
+                && !this.jobPool.isEmpty()) {
+            Job job = this.jobPool.remove(this.jobPool.size() - 1);
+            job.reset(size, this.nextJobId());
+            return job;
+        }
+
+        return new Job(size, this.nextJobId());
+    }
+
+    /**
+     * Creates a job arrival event, reusing a processed one if recycling.
+     *
+     * @param time - the time the job arrives
+     * @param job - the job that arrives
+     * @param server - the server the job arrives at
+     * @return the arrival event
+     */
+    public JobArrivalEvent createJobArrivalEvent(final double time,
+                                                 final Job job,
+                                                 final Server server) {
+        if (this.recycleObjects && this.arrivalEventPool != null
+                && !this.arrivalEventPool.isEmpty()) {
+            JobArrivalEvent event = this.arrivalEventPool.remove(
+                                        this.arrivalEventPool.size() - 1);
+            event.reset(time, job, server);
+            return event;
+        }
+
+        return new JobArrivalEvent(time, this, job, server);
+    }
+
+    /**
+     * Creates a job finish event, reusing a processed one if recycling.
+     *
+     * @param time - the time the job finishes
+     * @param job - the finishing job
+     * @param server - the server the job finishes on
+     * @param finishTimeSet - the time the finish time was calculated
+     * @param finishSpeed - the normalized speed at which the job finishes
+     * @return the finish event
+     */
+    public JobFinishEvent createJobFinishEvent(final double time,
+                                               final Job job,
+                                               final Server server,
+                                               final double finishTimeSet,
+                                               final double finishSpeed) {
+        if (this.recycleObjects && this.finishEventPool != null
+                && !this.finishEventPool.isEmpty()) {
+            JobFinishEvent event = this.finishEventPool.remove(
+                                       this.finishEventPool.size() - 1);
+            event.reset(time, job, server, finishTimeSet, finishSpeed);
+            return event;
+        }
+
+        return new JobFinishEvent(time, this, job, server,
+                                  finishTimeSet, finishSpeed);
+    }
+
+    /**
+     * Puts a processed job event (and, for a finish, its job)
+     * in the pools for reuse.
+     *
+     * @param event - the processed event
+     */
+    void recycle(final Event event) {
+        if (this.jobPool == null) {
+            this.jobPool = new ArrayList<Job>();
+            this.arrivalEventPool = new ArrayList<JobArrivalEvent>();
+            this.finishEventPool = new ArrayList<JobFinishEvent>();
+        }
+
+        if (event instanceof JobArrivalEvent) {
+            this.arrivalEventPool.add((JobArrivalEvent) event);
+        } else if (event instanceof JobFinishEvent) {
+            JobFinishEvent finishEvent = (JobFinishEvent) event;
+            // Only recycle the job if this was its last finish event
+            Job job = finishEvent.getJob();
+            if (job.getJobFinishEvent() == finishEvent) {
+                this.jobPool.add(job);
+            }
+            this.finishEventPool.add(finishEvent);
+        }
+    }
+
+    /**
+     * Gets the id for a new job in this experiment.
+     * Ids are unique within an experiment.
+     *
+     * @return the id for the new job
+     */
+    public long nextJobId() {
+        return this.nextJobId++;
+    }
+
     /**
      * Sets a limit on the number of events the experiment will process.
      *
@@ -214,65 +811,209 @@ public final class Experiment implements Serializable, Cloneable {
     /**
      * Runs the experiment.
      * The builk of simulation happens in this.
+     * Files the generators read (e.g., traces) are closed when the run
+     * ends, and reopened where they left off if it runs again.
      */
     public void run() {
-        this.initialize();
+        this.setRunning(true);
+        try {
+            this.runEvents();
+        } finally {
+            this.closeGenerators();
+            this.setRunning(false);
+        }
+    }
+
+    /**
+     * Closes any files the servers' generators hold open.
+     */
+    private void closeGenerators() {
+        if (this.dataCenter == null) {
+            return;
+        }
+
+        Vector<Server> servers = this.dataCenter.getServers();
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            Generator[] generators = {server.getArrivalGenerator(),
+                                      server.getServiceGenerator()};
+            for (Generator generator : generators) {
+                if (generator != null) {
+                    generator.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes events until the experiment is done.
+     */
+    private void runEvents() {
+        boolean resuming = this.started;
+        if (this.nPartitions > 1) {
+            if (resuming || this.checkpointInterval > 0) {
+                Sim.fatalError("Partitioned runs can't be checkpointed");
+            }
+            // The partitions prime their own servers
+            this.dataCenter = this.experimentInput.getDataCenter();
+        } else if (!resuming) {
+            this.initialize();
+        }
+        this.started = true;
+        this.dataCenter.setChangeDrivenStatistics(this.changeDrivenStats);
+        this.getStats().setTimeWeightedChangeDriven(this.changeDrivenStats);
         long startTime = System.currentTimeMillis();
 
-        this.nEventsProccessed = 0;
         //Sim.printBanner();
-        System.out.println("Starting simulation");
-        //TODO fix magic numbers
-        //int orderOfMag = 5;
-        long printSamples = 100000;//(long) Math.pow(10, orderOfMag);
-        while (!stop) {
-            Event currentEvent = this.eventQueue.nextEvent();
-            this.currentTime = currentEvent.getTime();
-            currentEvent.process();
-            this.nEventsProccessed++;
-	    //Added by wongdani
-	    this.dataCenter.updateStatistics(this.currentTime);
-            if (this.nEventsProccessed > printSamples) {
-                System.out.println("Processed " + this.nEventsProccessed
-                            + " events");
-                Iterator<Statistic> statIter = this.exprimentOutput.getStats()
-                        .getAllStats();
-                while (statIter.hasNext()) {
-                    Statistic currentStat = statIter.next();
-                    if (!currentStat.isConverged()) {
-                        System.out.println("Still waiting for "
-                                + currentStat.getStatName()
-                                + " at mean converge of "
-                                + currentStat.getMeanAccuracy()
-                                + " and quantile converge of "
-                                + currentStat.getQuantileAccuracy());
-                        currentStat.printStatInfo();
-                    }
+        if (resuming) {
+            System.out.println("Resuming simulation after "
+                    + this.nEventsProccessed + " events");
+        } else {
+            this.nEventsProccessed = 0;
+            System.out.println("Starting simulation");
+            //TODO fix magic numbers
+            //int orderOfMag = 5;
+            this.printSamples = 100000;//(long) Math.pow(10, orderOfMag);
+        }
+        if (this.nPartitions > 1) {
+            new PartitionedEngine(this).run();
+        } else {
+            while (!stop) {
+                Event currentEvent = this.eventQueue.nextEvent();
+                this.currentTime = currentEvent.getTime();
+                currentEvent.process();
+                if (this.recycleObjects) {
+                    this.recycle(currentEvent);
+                }
+                if (this.eventProcessed(this.currentTime)) {
+                    break;
+                }
+            }
+        }
+
+        if (this.changeDrivenStats) {
+            this.getStats().advanceTimeWeightedStats(this.currentTime);
+        }
+
+        long endTime = System.currentTimeMillis();
+        double execTime = (endTime - startTime) / 1000.0;
+        System.out.println("The experiment took " + execTime
+                        + " seconds to run");
+    }
+
+    /**
+     * Does the bookkeeping after an event: updates the datacenter's
+     * statistics, prints progress and checks if the experiment is done.
+     *
+     * @param time - the time of the event
+     * @return if the experiment should stop
+     */
+    boolean eventProcessed(final double time) {
+        this.currentTime = time;
+        this.nEventsProccessed++;
+        //Added by wongdani
+        this.dataCenter.updateStatistics(this.currentTime);
+        if (this.statsSnapshotRequested) {
+            this.takeStatsSnapshot();
+        }
+        if (this.checkpointRequest != null) {
+            this.takeRequestedCheckpoint();
+        }
+        if (this.checkpointInterval > 0
+                && this.nEventsProccessed >= this.nextCheckpoint) {
+            this.writeCheckpoint(this.checkpointFile);
+            this.nextCheckpoint += this.checkpointInterval;
+        }
+        if (this.nEventsProccessed > this.printSamples) {
+            System.out.println("Processed " + this.nEventsProccessed
+                        + " events");
+            Iterator<Statistic> statIter = this.exprimentOutput.getStats()
+                    .getAllStats();
+            while (statIter.hasNext()) {
+                Statistic currentStat = statIter.next();
+                if (!currentStat.isConverged()) {
+                    System.out.println("Still waiting for "
+                            + currentStat.getStatName()
+                            + " at mean converge of "
+                            + currentStat.getMeanAccuracy()
+                            + " and quantile converge of "
+                            + currentStat.getQuantileAccuracy());
+                    currentStat.printStatInfo();
                 }
-                //orderOfMag++;
-                printSamples += 100000;//(long) Math.pow(10, orderOfMag);
             }
+            //orderOfMag++;
+            printSamples += 100000;//(long) Math.pow(10, orderOfMag);
+        }
 
-            if (this.getStats().allStatsConverged()) {
+        // Statistics only need checking once they've taken enough samples
+        StatisticsCollection stats = this.getStats();
+        if (stats.isConvergenceCheckDue()) {
+            if (stats.checkConvergence()) {
                 System.out.println("Ending from convergence");
-                break;
+                return true;
             }
 
-            if (this.getStats().allStatsSteadyState()
-                    && this.stopAtSteadyState) {
+            if (this.stopAtSteadyState && stats.allStatsSteadyState()) {
                 System.out.println("Halting at steady state");
-                break;
+                return true;
             }
+        }
+
+        if (eventLimit > 0 && nEventsProccessed > eventLimit) {
+            return true;
+        }
 
-            if (eventLimit > 0 && nEventsProccessed > eventLimit) {
-                break;
+        return false;
+    }
+
+    /**
+     * Processes this experiment's events that happen before a time,
+     * recording them for a parallel run.
+     *
+     * @param endTime - events at or after this time are left queued
+     * @param log - the log to record the events in
+     * @param partition - the partition of the datacenter to read power
+     * changes from
+     */
+    void processUntil(final double endTime,
+                      final PartitionLog log,
+                      final int partition) {
+        while (true) {
+            Event event = this.eventQueue.peekEvent();
+            if (event == null || event.getTime() >= endTime) {
+                return;
             }
+            this.eventQueue.nextEvent();
+            this.currentTime = event.getTime();
+            event.process();
+            if (this.recycleObjects) {
+                this.recycle(event);
+            }
+            log.endEvent(this.currentTime, this.dataCenter, partition);
         }
+    }
 
-        long endTime = System.currentTimeMillis();
-        double execTime = (endTime - startTime) / 1000.0;
-        System.out.println("The experiment took " + execTime
-                        + " seconds to run");
+    /**
+     * Gets the time of this experiment's next event.
+     *
+     * @return the time of the next event, or infinity if there are none
+     */
+    double getNextEventTime() {
+        Event event = this.eventQueue.peekEvent();
+        if (event == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return event.getTime();
+    }
+
+    /**
+     * Checks if the experiment has been asked to stop.
+     *
+     * @return if the experiment has been asked to stop
+     */
+    boolean isStopped() {
+        return this.stop;
     }
 
     /**
@@ -320,8 +1061,55 @@ public final class Experiment implements Serializable, Cloneable {
             Statistic stat = stats.next();
             stat.setJustBins(true);
         }
+        this.runUntilSteadyState();
+    }
+
+    /**
+     * Runs the experiment until every statistic has warmed up and
+     * calibrated its lag spacing and histogram bins, but no further.
+     * Unlike {@link #runToSteadyState()}, the statistics are fully
+     * calibrated, so the experiment can be {@link #fork(long) forked}
+     * into replications that skip warm up and calibration.
+     */
+    public void calibrate() {
+        this.runUntilSteadyState();
+    }
+
+    /**
+     * Makes a replication of a calibrated experiment that starts from
+     * its current, warmed up state. The replication gets its own seed,
+     * keeps the statistics' lag spacing and histogram bins, and throws
+     * away the steady state samples taken so far, so running it only
+     * runs the steady state phase. Replications forked from the same
+     * experiment can be combined.
+     *
+     * @param seed - the seed of the replication
+     * @return the replication, ready to run
+     */
+    public Experiment fork(final long seed) {
+        if (!this.started || !this.getStats().allStatsSteadyState()) {
+            Sim.fatalError("Can only fork an experiment in steady state");
+        }
+
+        Experiment replication = this.copy();
+        replication.setSeed(seed);
+        replication.stop = false;
+        replication.getStats().restartSteadyState(replication.currentTime);
+
+        return replication;
+    }
+
+    /**
+     * Runs the experiment until all its statistics are in steady state.
+     */
+    private void runUntilSteadyState() {
         this.stopAtSteadyState = true;
-        this.run();
+        try {
+            this.run();
+        } finally {
+            // Running again (e.g., from a checkpoint) goes on to converge
+            this.stopAtSteadyState = false;
+        }
     }
 
     /**
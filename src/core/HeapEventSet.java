@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * An EventSet backed by a binary heap.
+ * Each event remembers its slot in the heap, so adding, polling and
+ * cancelling events are all O(log n).
+ */
+public final class HeapEventSet implements EventSet {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The initial capacity of the heap. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The heap of events. The earliest event is at index 0 and the
+     * children of index i are at 2i + 1 and 2i + 2.
+     */
+    private Event[] heap;
+
+    /** The number of events in the heap. */
+    private int size;
+
+    /**
+     * Creates a new, empty HeapEventSet.
+     */
+    public HeapEventSet() {
+        this.heap = new Event[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    @Override
+    public void add(final Event event) {
+        if (this.size == this.heap.length) {
+            Event[] newHeap = new Event[2 * this.heap.length];
+            System.arraycopy(this.heap, 0, newHeap, 0, this.size);
+            this.heap = newHeap;
+        }
+
+        this.size++;
+        this.siftUp(this.size - 1, event);
+    }
+
+    @Override
+    public Event poll() {
+        if (this.size == 0) {
+            return null;
+        }
+
+        Event event = this.heap[0];
+        this.removeAt(0);
+
+        return event;
+    }
+
+    @Override
+    public Event peek() {
+        if (this.size == 0) {
+            return null;
+        }
+
+        return this.heap[0];
+    }
+
+    @Override
+    public boolean remove(final Event event) {
+        int index = event.getQueueIndex();
+        if (index < 0 || index >= this.size || this.heap[index] != event) {
+            return false;
+        }
+
+        this.removeAt(index);
+
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Event[] toArray() {
+        return Arrays.copyOf(this.heap, this.size);
+    }
+
+    /**
+     * Removes the event at an index of the heap.
+     *
+     * @param index - the index of the event to remove
+     */
+    private void removeAt(final int index) {
+        this.heap[index].setQueueIndex(-1);
+        this.size--;
+        Event last = this.heap[this.size];
+        this.heap[this.size] = null;
+
+        if (index == this.size) {
+            return;
+        }
+
+        this.siftDown(index, last);
+        if (this.heap[index] == last) {
+            this.siftUp(index, last);
+        }
+    }
+
+    /**
+     * Places an event at an index, moving it up until its parent is earlier.
+     *
+     * @param startIndex - the index to start at
+     * @param event - the event to place
+     */
+    private void siftUp(final int startIndex, final Event event) {
+        int index = startIndex;
+        while (index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            Event parent = this.heap[parentIndex];
+            if (event.compareTo(parent) >= 0) {
+                break;
+            }
+            this.place(index, parent);
+            index = parentIndex;
+        }
+        this.place(index, event);
+    }
+
+    /**
+     * Places an event at an index, moving it down until its children
+     * are later.
+     *
+     * @param startIndex - the index to start at
+     * @param event - the event to place
+     */
+    private void siftDown(final int startIndex, final Event event) {
+        int index = startIndex;
+        int half = this.size >>> 1;
+        while (index < half) {
+            int childIndex = 2 * index + 1;
+            Event child = this.heap[childIndex];
+            int rightIndex = childIndex + 1;
+            if (rightIndex < this.size
+                    && this.heap[rightIndex].compareTo(child) < 0) {
+                childIndex = rightIndex;
+                child = this.heap[rightIndex];
+            }
+            if (event.compareTo(child) <= 0) {
+                break;
+            }
+            this.place(index, child);
+            index = childIndex;
+        }
+        this.place(index, event);
+    }
+
+    /**
+     * Puts an event in a heap slot and tells the event where it is.
+     *
+     * @param index - the heap slot
+     * @param event - the event
+     */
+    private void place(final int index, final Event event) {
+        this.heap[index] = event;
+        event.setQueueIndex(index);
+    }
+
+}
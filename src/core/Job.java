@@ -31,6 +31,11 @@
 
 package core;
 
+import java.io.Serializable;
+
+import datacenter.Core;
+import datacenter.Socket;
+
 /**
  * A job is the basic unit of work that servers process.
  * The amount of "work" they represent is quantified in seconds.
@@ -40,7 +45,12 @@ package core;
  *
  * @author David Meisner (meisner@umich.edu)
  */
-public class Job {
+public class Job implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
 
     /**
      * When the job arrived in the system This variable should be set only once.
@@ -80,11 +90,6 @@ public class Job {
      */
     private double amountDelayed;
 
-    /**
-     * A static incrementing variable for creating job IDs.
-     */
-    private static long currentId;
-
 //    /**
 //     *
 //     */
@@ -101,18 +106,43 @@ public class Job {
      */
     private double lastResumeTime;
 
+    /**
+     * The socket the job is running on, null if it isn't running.
+     */
+    private Socket socket;
+
+    /**
+     * The core the job is running on, null if it isn't running.
+     */
+    private Core core;
+
     /**
      * Constructs a new job.
      * @param theJobSize - The size of the job in seconds.
+     * @param theJobId - The id of the job, unique within its experiment.
+     */
+    public Job(final double theJobSize, final long theJobId) {
+        this.reset(theJobSize, theJobId);
+    }
+
+    /**
+     * Resets the job so it can be reused as a new job.
+     * @param theJobSize - The size of the job in seconds.
+     * @param theJobId - The id of the job, unique within its experiment.
      */
-    public Job(final double theJobSize) {
+    final void reset(final double theJobSize, final long theJobId) {
+        this.arrivalTime = 0.0;
+        this.startTime = 0.0;
+        this.finishTime = 0.0;
         this.amountCompleted = 0.0;
         this.amountDelayed = 0.0;
         this.jobSize = theJobSize;
-        this.jobId = assignId();
+        this.jobId = theJobId;
 //        this.atLimit = false;
         this.jobFinishEvent = null;
         this.lastResumeTime = 0.0;
+        this.socket = null;
+        this.core = null;
     }
 
 //    public void setAtLimit(boolean atLimit) {
@@ -155,17 +185,6 @@ public class Job {
         return this.amountCompleted;
     }
 
-    /**
-     * Assigns an id to this job.
-     * Increments the current id for future jobs.
-     * @return the id assigned to the calling job
-     */
-    private long assignId() {
-        long toReturn = Job.currentId;
-        Job.currentId++;
-        return toReturn;
-    }
-
     /**
      * Gets the job id of the job.
      * @return the job's job id
@@ -310,4 +329,36 @@ public class Job {
         return this.lastResumeTime;
     }
 
+    /**
+     * Sets the socket the job is running on.
+     * @param aSocket - the socket, or null if the job isn't running
+     */
+    public final void setSocket(final Socket aSocket) {
+        this.socket = aSocket;
+    }
+
+    /**
+     * Gets the socket the job is running on.
+     * @return the socket, or null if the job isn't running
+     */
+    public final Socket getSocket() {
+        return this.socket;
+    }
+
+    /**
+     * Sets the core the job is running on.
+     * @param aCore - the core, or null if the job isn't running
+     */
+    public final void setCore(final Core aCore) {
+        this.core = aCore;
+    }
+
+    /**
+     * Gets the core the job is running on.
+     * @return the core, or null if the job isn't running
+     */
+    public final Core getCore() {
+        return this.core;
+    }
+
 }
@@ -74,6 +74,20 @@ public final class JobArrivalEvent extends JobEvent {
         this.clusterScheduler = dataCenter.getClusterScheduler();
     }
 
+    /**
+     * Resets the event so it can be reused for another arrival.
+     *
+     * @param time - the time the job arrives
+     * @param job = the job that arrives
+     * @param aServer - the server the job arrives at
+     */
+    void reset(final double time, final Job job, final Server aServer) {
+        this.resetJobEvent(time, job);
+        this.server = aServer;
+        this.dataCenter = getExperiment().getDataCenter();
+        this.clusterScheduler = dataCenter.getClusterScheduler();
+    }
+
     /**
      * Has the job arrive at a server.
      */
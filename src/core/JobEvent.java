@@ -63,6 +63,17 @@ public abstract class JobEvent extends AbstractEvent {
         this.job = aJob;
     }
 
+    /**
+     * Resets the event so it can be reused.
+     *
+     * @param time - the time the event takes place
+     * @param aJob - the job related to the event
+     */
+    protected final void resetJobEvent(final double time, final Job aJob) {
+        this.resetEvent(time);
+        this.job = aJob;
+    }
+
     /**
      * Get the job of the event.
      *
@@ -87,6 +87,27 @@ public final class JobFinishEvent extends JobEvent {
         this.finishingSpeed = theFinishSpeed;
     }
 
+    /**
+     * Resets the event so it can be reused for another job.
+     *
+     * @param time - the time the job finishes
+     * @param job - the finishing job
+     * @param aServer - the server the job finished on
+     * @param theFinishTimeSet - double check this
+     * @param theFinishSpeed - the normalized speed at which the job finishes
+     */
+    void reset(final double time,
+               final Job job,
+               final Server aServer,
+               final double theFinishTimeSet,
+               final double theFinishSpeed) {
+        this.resetJobEvent(time, job);
+        this.server = aServer;
+        job.setJobFinishEvent(this);
+        this.finishTimeSet = theFinishTimeSet;
+        this.finishingSpeed = theFinishSpeed;
+    }
+
     // TODO (meisner@umich.edu) Figure out exactly how this works
     /**
      * ...
@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package core;
+
+import stat.Statistic;
+import datacenter.DataCenter;
+
+/**
+ * A record of the events one partition of a parallel run processed in a
+ * window of time: when each event happened, the samples it added to
+ * statistics and the new power of the servers it changed. Replaying the
+ * records of all partitions in time order reproduces the statistics of a
+ * sequential run.
+ */
+final class PartitionLog implements DataCenter.PowerChangeLog {
+
+    /** The initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The number of events recorded. */
+    private int nEvents;
+
+    /** The time of each event. */
+    private double[] eventTimes;
+
+    /** The end of each event's samples. */
+    private int[] sampleEnds;
+
+    /** The end of each event's power readings. */
+    private int[] powerEnds;
+
+    /** The number of samples recorded. */
+    private int nSamples;
+
+    /** The statistic each sample is for. */
+    private Statistic[] sampleStats;
+
+    /** The value of each sample. */
+    private double[] sampleValues;
+
+    /** The number of power readings recorded. */
+    private int nPowers;
+
+    /** The server of each power reading. */
+    private int[] powerServers;
+
+    /** The value of each power reading (in watts). */
+    private double[] powerValues;
+
+    /**
+     * Logs whose samples recorded outside of any event are moved into
+     * this log's events as they end, or null.
+     */
+    private PartitionLog[] looseSampleSources;
+
+    /**
+     * Creates an empty PartitionLog.
+     */
+    PartitionLog() {
+        this.eventTimes = new double[INITIAL_CAPACITY];
+        this.sampleEnds = new int[INITIAL_CAPACITY];
+        this.powerEnds = new int[INITIAL_CAPACITY];
+        this.sampleStats = new Statistic[INITIAL_CAPACITY];
+        this.sampleValues = new double[INITIAL_CAPACITY];
+        this.powerServers = new int[INITIAL_CAPACITY];
+        this.powerValues = new double[INITIAL_CAPACITY];
+        this.clear();
+    }
+
+    /**
+     * Empties the log.
+     */
+    void clear() {
+        this.nEvents = 0;
+        this.nSamples = 0;
+        this.nPowers = 0;
+    }
+
+    /**
+     * Sets the logs whose samples recorded outside of any event are moved
+     * into this log each time one of its events ends.
+     *
+     * @param sources - the logs, or null
+     */
+    void setLooseSampleSources(final PartitionLog[] sources) {
+        this.looseSampleSources = sources;
+    }
+
+    /**
+     * Records a sample.
+     *
+     * @param stat - the statistic the sample is for
+     * @param value - the value of the sample
+     */
+    void addSample(final Statistic stat, final double value) {
+        if (this.nSamples == this.sampleValues.length) {
+            int capacity = 2 * this.nSamples;
+            Statistic[] newStats = new Statistic[capacity];
+            System.arraycopy(this.sampleStats, 0, newStats, 0, this.nSamples);
+            this.sampleStats = newStats;
+            double[] newValues = new double[capacity];
+            System.arraycopy(this.sampleValues, 0,
+                             newValues, 0, this.nSamples);
+            this.sampleValues = newValues;
+        }
+        this.sampleStats[this.nSamples] = stat;
+        this.sampleValues[this.nSamples] = value;
+        this.nSamples++;
+    }
+
+    @Override
+    public void logServerPower(final int serverIndex, final double power) {
+        if (this.nPowers == this.powerValues.length) {
+            int capacity = 2 * this.nPowers;
+            int[] newServers = new int[capacity];
+            System.arraycopy(this.powerServers, 0,
+                             newServers, 0, this.nPowers);
+            this.powerServers = newServers;
+            double[] newValues = new double[capacity];
+            System.arraycopy(this.powerValues, 0, newValues, 0, this.nPowers);
+            this.powerValues = newValues;
+        }
+        this.powerServers[this.nPowers] = serverIndex;
+        this.powerValues[this.nPowers] = power;
+        this.nPowers++;
+    }
+
+    /**
+     * Ends the record of an event, reading the power of the servers
+     * it changed.
+     *
+     * @param time - the time of the event
+     * @param dataCenter - the datacenter to read power changes from
+     * @param partition - the partition to read power changes from
+     */
+    void endEvent(final double time,
+                  final DataCenter dataCenter,
+                  final int partition) {
+        if (this.looseSampleSources != null) {
+            for (int i = 0; i < this.looseSampleSources.length; i++) {
+                this.moveLooseSamples(this.looseSampleSources[i]);
+            }
+        }
+        dataCenter.readPowerChanges(partition, this);
+
+        if (this.nEvents == this.eventTimes.length) {
+            int capacity = 2 * this.nEvents;
+            double[] newTimes = new double[capacity];
+            System.arraycopy(this.eventTimes, 0, newTimes, 0, this.nEvents);
+            this.eventTimes = newTimes;
+            int[] newSampleEnds = new int[capacity];
+            System.arraycopy(this.sampleEnds, 0,
+                             newSampleEnds, 0, this.nEvents);
+            this.sampleEnds = newSampleEnds;
+            int[] newPowerEnds = new int[capacity];
+            System.arraycopy(this.powerEnds, 0, newPowerEnds, 0, this.nEvents);
+            this.powerEnds = newPowerEnds;
+        }
+        this.eventTimes[this.nEvents] = time;
+        this.sampleEnds[this.nEvents] = this.nSamples;
+        this.powerEnds[this.nEvents] = this.nPowers;
+        this.nEvents++;
+    }
+
+    /**
+     * Moves the samples another log recorded after its last event
+     * into this log.
+     *
+     * @param other - the other log
+     */
+    private void moveLooseSamples(final PartitionLog other) {
+        int start = other.getLooseSampleStart();
+        for (int i = start; i < other.nSamples; i++) {
+            this.addSample(other.sampleStats[i], other.sampleValues[i]);
+        }
+        other.nSamples = start;
+    }
+
+    /**
+     * Gets where the samples recorded after the last event start.
+     *
+     * @return the index of the first sample after the last event
+     */
+    private int getLooseSampleStart() {
+        if (this.nEvents == 0) {
+            return 0;
+        }
+
+        return this.sampleEnds[this.nEvents - 1];
+    }
+
+    /**
+     * Gets the number of events recorded.
+     *
+     * @return the number of events
+     */
+    int getNEvents() {
+        return this.nEvents;
+    }
+
+    /**
+     * Gets the time of an event.
+     *
+     * @param event - the index of the event
+     * @return the time of the event
+     */
+    double getEventTime(final int event) {
+        return this.eventTimes[event];
+    }
+
+    /**
+     * Adds an event's samples to their statistics and its power readings
+     * to the datacenter's running total.
+     *
+     * @param event - the index of the event
+     * @param dataCenter - the datacenter to give the power readings to
+     */
+    void replayEvent(final int event, final DataCenter dataCenter) {
+        int sampleStart = 0;
+        int powerStart = 0;
+        if (event > 0) {
+            sampleStart = this.sampleEnds[event - 1];
+            powerStart = this.powerEnds[event - 1];
+        }
+
+        for (int i = sampleStart; i < this.sampleEnds[event]; i++) {
+            this.sampleStats[i].addSample(this.sampleValues[i]);
+        }
+        for (int i = powerStart; i < this.powerEnds[event]; i++) {
+            dataCenter.setServerPower(this.powerServers[i],
+                                      this.powerValues[i]);
+        }
+    }
+
+    /**
+     * Adds the samples recorded after the last event to their statistics.
+     */
+    void replayLooseSamples() {
+        for (int i = this.getLooseSampleStart(); i < this.nSamples; i++) {
+            this.sampleStats[i].addSample(this.sampleValues[i]);
+        }
+    }
+
+}
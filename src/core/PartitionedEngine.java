@@ -0,0 +1,484 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package core;
+
+import generator.Generator;
+import generator.TraceGenerator;
+
+import java.util.IdentityHashMap;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import stat.Statistic;
+import stat.StatisticsCollection;
+import core.Constants.StatName;
+import datacenter.DataCenter;
+import datacenter.DataCenter.ClusterScheduler;
+import datacenter.Server;
+
+/**
+ * Runs an experiment's servers in parallel, one partition of servers per
+ * thread. Under UNIFORM scheduling a job never leaves the server it
+ * arrived at, so partitions only interact through the experiment's own
+ * events (e.g., power capping). The partitions run conservatively up to
+ * the next such event or the end of a window, whichever is first, and
+ * the experiment's events run alone at these barriers.
+ *
+ * Partitions don't add to the experiment's statistics directly. They
+ * record each event's samples and power changes, and the records are
+ * merged in time order while the partitions run the next window, so
+ * the statistics see the same samples in the same order as a
+ * sequential run.
+ */
+final class PartitionedEngine {
+
+    /** The experiment being run. */
+    private Experiment experiment;
+
+    /** The datacenter being simulated. */
+    private DataCenter dataCenter;
+
+    /** The partitions of the datacenter's servers. */
+    private Partition[] partitions;
+
+    /** Records the experiment's own events at the barriers. */
+    private Partition barrier;
+
+    /** The futures of the partitions' current window. */
+    private Future<?>[] futures;
+
+    /**
+     * Creates a PartitionedEngine for an experiment.
+     *
+     * @param anExperiment - the experiment to run
+     */
+    PartitionedEngine(final Experiment anExperiment) {
+        this.experiment = anExperiment;
+        this.dataCenter = anExperiment.getDataCenter();
+    }
+
+    /**
+     * Runs the experiment until it is done.
+     */
+    void run() {
+        this.setUp();
+        ExecutorService executor
+            = Executors.newFixedThreadPool(this.partitions.length);
+        try {
+            this.primeServers();
+            this.runWindows(executor);
+        } finally {
+            executor.shutdownNow();
+            this.tearDown();
+        }
+    }
+
+    /**
+     * Splits the servers into partitions and gives each partition its
+     * own experiment to schedule events in.
+     */
+    private void setUp() {
+        ClusterScheduler scheduler = this.dataCenter.getClusterScheduler();
+        if (scheduler != null && scheduler != ClusterScheduler.UNIFORM) {
+            Sim.fatalError("Partitioned runs need UNIFORM scheduling");
+        }
+
+        // Server statistics would be read after the partitions moved on
+        if (this.experiment.getChangeDrivenStatistics()) {
+            Sim.fatalError("Partitioned runs don't support"
+                           + " change-driven statistics");
+        }
+
+        Vector<Server> servers = this.dataCenter.getServers();
+        int nServers = servers.size();
+        int nPartitions = Math.min(this.experiment.getPartitions(), nServers);
+        if (nPartitions < 1) {
+            Sim.fatalError("Partitioned runs need at least one server");
+        }
+
+        // Contiguous blocks keep the partitions' samples in server order
+        int[] serverPartitions = new int[nServers];
+        for (int i = 0; i < nServers; i++) {
+            serverPartitions[i] = (int) ((long) i * nPartitions / nServers);
+        }
+        this.checkGenerators(servers, serverPartitions);
+
+        this.partitions = new Partition[nPartitions];
+        this.futures = new Future<?>[nPartitions];
+        for (int i = 0; i < nPartitions; i++) {
+            Partition partition = new Partition(i);
+            ExperimentOutput output = new ExperimentOutput();
+            this.addRecorders(partition, output.getStats());
+            partition.experiment
+                = new Experiment(this.experiment, i, output);
+            this.partitions[i] = partition;
+        }
+        this.barrier = new Partition(DataCenter.NO_PARTITION);
+        this.barrier.experiment = this.experiment;
+        this.barrier.recorders = new StatisticsCollection();
+        this.addRecorders(this.barrier, this.barrier.recorders);
+
+        for (int i = 0; i < nServers; i++) {
+            Partition partition = this.partitions[serverPartitions[i]];
+            partition.servers.add(servers.get(i));
+            servers.get(i).setExperiment(partition.experiment);
+        }
+        this.dataCenter.setPartitions(serverPartitions, nPartitions);
+    }
+
+    /**
+     * Checks that no random number generator is drawn from by servers
+     * in different partitions. A shared generator would make the result
+     * depend on how the threads interleave.
+     *
+     * @param servers - the servers of the datacenter
+     * @param serverPartitions - the partition of each server
+     */
+    private void checkGenerators(final Vector<Server> servers,
+                                 final int[] serverPartitions) {
+        IdentityHashMap<Object, Integer> owners
+            = new IdentityHashMap<Object, Integer>();
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            Generator[] generators = {server.getArrivalGenerator(),
+                                      server.getServiceGenerator()};
+            for (Generator generator : generators) {
+                if (generator == null) {
+                    continue;
+                }
+                Object reader = null;
+                if (generator instanceof TraceGenerator) {
+                    reader = ((TraceGenerator) generator).getReader();
+                }
+                Object[] sources = {generator, generator.getRandom(), reader};
+                for (Object source : sources) {
+                    if (source == null) {
+                        continue;
+                    }
+                    Integer owner = owners.put(source, serverPartitions[i]);
+                    if (owner != null && owner != serverPartitions[i]) {
+                        Sim.fatalError("Servers in different partitions"
+                                + " share a random number generator,"
+                                + " give each server its own generators");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a recorder for each of the experiment's statistics to a
+     * collection.
+     *
+     * @param partition - the partition the recorders record for
+     * @param recorders - the collection to add the recorders to
+     */
+    private void addRecorders(final Partition partition,
+                              final StatisticsCollection recorders) {
+        StatisticsCollection stats = this.experiment.getOutput().getStats();
+        for (StatName name : StatName.values()) {
+            Statistic stat = stats.getStat(name);
+            if (stat.getStatName() == name) {
+                recorders.addStatistic(name,
+                        new SampleRecorder(name, stat, partition));
+            }
+        }
+    }
+
+    /**
+     * Schedules the first arrival at every server, in the same order as
+     * a sequential run.
+     */
+    private void primeServers() {
+        for (int i = 0; i < this.partitions.length; i++) {
+            Partition partition = this.partitions[i];
+            for (int j = 0; j < partition.servers.size(); j++) {
+                partition.servers.get(j).createNewArrival(0.0);
+            }
+            partition.log.replayLooseSamples();
+            partition.log.clear();
+        }
+    }
+
+    /**
+     * Runs windows until the experiment is done.
+     * While the records of one window are merged, the partitions already
+     * run the next.
+     *
+     * @param executor - the executor to run the partitions in
+     */
+    private void runWindows(final ExecutorService executor) {
+        int window = 0;
+        double end = this.getWindowEnd(0.0);
+        this.startWindow(executor, window, end);
+        while (true) {
+            this.awaitWindow();
+
+            // The experiment's own events run alone at the barrier
+            PartitionLog[] logs = new PartitionLog[this.partitions.length];
+            for (int i = 0; i < this.partitions.length; i++) {
+                logs[i] = this.partitions[i].log;
+            }
+            this.barrier.useLog(window);
+            this.barrier.log.setLooseSampleSources(logs);
+            this.experiment.setRecordingStats(this.barrier.recorders);
+            try {
+                this.experiment.processUntil(Math.nextUp(end),
+                        this.barrier.log, DataCenter.NO_PARTITION);
+            } finally {
+                this.experiment.setRecordingStats(null);
+                this.barrier.log.setLooseSampleSources(null);
+            }
+
+            boolean more = !this.experiment.isStopped();
+            if (more) {
+                end = this.getWindowEnd(end);
+                this.startWindow(executor, window + 1, end);
+            }
+            boolean done = this.merge(logs, this.barrier.log);
+            if (done || !more) {
+                if (more) {
+                    this.awaitWindow();
+                }
+                return;
+            }
+            window++;
+        }
+    }
+
+    /**
+     * Gets the end of the window starting at a time.
+     *
+     * @param start - the start of the window
+     * @return the end of the window
+     */
+    private double getWindowEnd(final double start) {
+        return Math.min(start + this.experiment.getPartitionWindow(),
+                        this.experiment.getNextEventTime());
+    }
+
+    /**
+     * Starts the partitions running a window.
+     *
+     * @param executor - the executor to run the partitions in
+     * @param window - the number of the window
+     * @param end - the end of the window
+     */
+    private void startWindow(final ExecutorService executor,
+                             final int window,
+                             final double end) {
+        this.dataCenter.setPartitionedUpdates(true);
+        for (int i = 0; i < this.partitions.length; i++) {
+            this.partitions[i].useLog(window);
+            this.partitions[i].endTime = end;
+            this.futures[i] = executor.submit(this.partitions[i]);
+        }
+    }
+
+    /**
+     * Waits for the partitions to finish their window.
+     */
+    private void awaitWindow() {
+        try {
+            for (int i = 0; i < this.futures.length; i++) {
+                this.futures[i].get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while waiting for the partitions");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            this.dataCenter.setPartitionedUpdates(false);
+        }
+    }
+
+    /**
+     * Replays a window's records into the experiment's statistics in
+     * time order. Events at the same time are replayed in partition
+     * order, and the barrier's events last.
+     *
+     * @param logs - the partitions' records of the window
+     * @param barrierLog - the barrier's records of the window
+     * @return if the experiment is done
+     */
+    private boolean merge(final PartitionLog[] logs,
+                          final PartitionLog barrierLog) {
+        int[] next = new int[logs.length];
+        while (true) {
+            int earliest = -1;
+            double earliestTime = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < logs.length; i++) {
+                if (next[i] < logs[i].getNEvents()
+                        && logs[i].getEventTime(next[i]) < earliestTime) {
+                    earliest = i;
+                    earliestTime = logs[i].getEventTime(next[i]);
+                }
+            }
+            if (earliest < 0) {
+                break;
+            }
+
+            logs[earliest].replayEvent(next[earliest], this.dataCenter);
+            next[earliest]++;
+            if (this.experiment.eventProcessed(earliestTime)) {
+                return true;
+            }
+        }
+
+        for (int i = 0; i < barrierLog.getNEvents(); i++) {
+            barrierLog.replayEvent(i, this.dataCenter);
+            if (this.experiment.eventProcessed(barrierLog.getEventTime(i))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Puts the servers back in the experiment and stops partitioning the
+     * datacenter.
+     */
+    private void tearDown() {
+        for (int i = 0; i < this.partitions.length; i++) {
+            Vector<Server> servers = this.partitions[i].servers;
+            for (int j = 0; j < servers.size(); j++) {
+                servers.get(j).setExperiment(this.experiment);
+            }
+        }
+        this.dataCenter.setPartitions(null, 0);
+        this.experiment.setRecordingStats(null);
+    }
+
+    /**
+     * A partition of the servers and the experiment that schedules their
+     * events.
+     */
+    private static final class Partition implements Callable<Object> {
+
+        /** The index of the partition. */
+        private int index;
+
+        /** The experiment scheduling the partition's events. */
+        private Experiment experiment;
+
+        /** The servers in the partition. */
+        private Vector<Server> servers;
+
+        /** The records of the partition's last two windows. */
+        private PartitionLog[] logs;
+
+        /** The log currently recording. */
+        private PartitionLog log;
+
+        /** The recorders the experiment adds samples to, if shared. */
+        private StatisticsCollection recorders;
+
+        /** The end of the window being run. */
+        private double endTime;
+
+        /**
+         * Creates a new Partition.
+         *
+         * @param theIndex - the index of the partition
+         */
+        Partition(final int theIndex) {
+            this.index = theIndex;
+            this.servers = new Vector<Server>();
+            this.logs = new PartitionLog[] {new PartitionLog(),
+                                            new PartitionLog()};
+            this.log = this.logs[0];
+        }
+
+        /**
+         * Switches to the (emptied) log for a window. The logs alternate
+         * so the last window's records can be merged while this one runs.
+         *
+         * @param window - the number of the window
+         */
+        void useLog(final int window) {
+            this.log = this.logs[window & 1];
+            this.log.clear();
+        }
+
+        /**
+         * Runs the partition's events to the end of the window.
+         *
+         * @return nothing
+         */
+        public Object call() {
+            this.experiment.processUntil(this.endTime, this.log, this.index);
+            return null;
+        }
+    }
+
+    /**
+     * Stands in for a statistic in a partition, recording its samples
+     * so they can be added to the statistic in time order.
+     */
+    private static final class SampleRecorder extends Statistic {
+
+        /** The Serialization id. */
+        private static final long serialVersionUID = 1L;
+
+        /** The statistic the samples are for. */
+        private transient Statistic target;
+
+        /** The partition recording the samples. */
+        private transient Partition partition;
+
+        /**
+         * Creates a new SampleRecorder.
+         *
+         * @param name - the name of the statistic
+         * @param theTarget - the statistic the samples are for
+         * @param thePartition - the partition recording the samples
+         */
+        SampleRecorder(final StatName name,
+                       final Statistic theTarget,
+                       final Partition thePartition) {
+            super(null, name, 0, 0, 0, 0);
+            this.target = theTarget;
+            this.partition = thePartition;
+        }
+
+        @Override
+        public void addSample(final double value) {
+            this.partition.log.addSample(this.target, value);
+        }
+    }
+
+}
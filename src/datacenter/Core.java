@@ -146,14 +146,23 @@ public final class Core implements Powerable, Serializable {
      */
     private boolean paused;
 
+    /**
+     * The index of the core within its socket.
+     */
+    private int socketIndex;
+
     /**
      * Constructs a new Core.
      *
      * @param anExperiment - the experiment the core is part of
      * @param aSocket - the socket the core is part of
+     * @param theSocketIndex - the index of the core within its socket
      */
-    public Core(final Experiment anExperiment, final Socket aSocket) {
+    public Core(final Experiment anExperiment,
+                final Socket aSocket,
+                final int theSocketIndex) {
         this.experiment = anExperiment;
+        this.socketIndex = theSocketIndex;
         // Core starts without a job
         this.job = null;
         this.socket = aSocket;
@@ -171,6 +180,22 @@ public final class Core implements Powerable, Serializable {
         this.paused = false;
     }
 
+    /**
+     * Gets the index of the core within its socket.
+     * @return the index of the core within its socket
+     */
+    public int getSocketIndex() {
+        return this.socketIndex;
+    }
+
+    /**
+     * Moves the core to another experiment.
+     * @param anExperiment - the experiment the core is now part of
+     */
+    void setExperiment(final Experiment anExperiment) {
+        this.experiment = anExperiment;
+    }
+
     /**
      * Sets the power management currently used by the core.
      * @param policy - the power management policy used by the core
@@ -202,6 +227,7 @@ public final class Core implements Powerable, Serializable {
 
         // Assign job to core
         this.job = aJob;
+        this.socket.getServer().markPowerChanged();
 
         if (this.powerState == PowerState.TRANSITIONINGG_TO_LOW_POWER_IDLE) {
             // We need to interrupt transitioning to low power idle
@@ -224,8 +250,8 @@ public final class Core implements Powerable, Serializable {
             double slowdown = (1 - alpha) + alpha / this.speed;
             double finishTime = time + this.job.getSize() * slowdown; //used to be divide?
             Server server = this.socket.getServer();
-            JobFinishEvent finishEvent = new JobFinishEvent(finishTime,
-                    experiment, aJob, server, time, this.speed);
+            JobFinishEvent finishEvent = this.experiment
+                    .createJobFinishEvent(finishTime, aJob, server, time, this.speed);
             aJob.setLastResumeTime(time);
             this.experiment.addEvent(finishEvent);
             // Core now goes into full power state
@@ -257,6 +283,7 @@ public final class Core implements Powerable, Serializable {
 
         // Null signifies the core is idle
         this.job = null;
+        this.socket.getServer().markPowerChanged();
 
         // If no job is waiting, we can begin transitioning to a low power state
         if (!jobWaiting) {
@@ -330,6 +357,7 @@ public final class Core implements Powerable, Serializable {
      */
     public void enterPark(final double time) {
         this.powerState = PowerState.LOW_POWER_IDLE;
+        this.socket.getServer().markPowerChanged();
     }
 
     /**
@@ -342,13 +370,17 @@ public final class Core implements Powerable, Serializable {
             Sim.fatalError("Job is null when trying to go to active");
         }
 
-        double finishTime = time + this.job.getSize();
+        // Run the job at the speed the core was set to while it was parked
+        double alpha = .9;
+        double slowdown = (1 - alpha) + alpha / this.speed;
+        double finishTime = time + this.job.getSize() * slowdown;
         Server server = this.socket.getServer();
-        JobFinishEvent finishEvent = new JobFinishEvent(finishTime, experiment,
-                job, server, time, this.speed);
+        JobFinishEvent finishEvent = this.experiment
+                    .createJobFinishEvent(finishTime, job, server, time, this.speed);
         job.setLastResumeTime(time);
         this.experiment.addEvent(finishEvent);
         this.powerState = PowerState.ACTIVE;
+        this.socket.getServer().markPowerChanged();
     }
 
     /**
@@ -360,7 +392,9 @@ public final class Core implements Powerable, Serializable {
     public void setDvfsSpeed(final double time, final double theSpeed) {
         this.speed = theSpeed;
         // Figure out it's new completion time
-        if (this.job != null) {
+        // A job waiting for the core to exit park has no finish event yet,
+        // exitPark schedules one with the slowdown of the new speed
+        if (this.job != null && this.powerState == PowerState.ACTIVE) {
 
             JobFinishEvent finishEvent = this.job.getJobFinishEvent();
             this.experiment.cancelEvent(finishEvent);
@@ -380,8 +414,8 @@ public final class Core implements Powerable, Serializable {
 		+ (theJob.getSize() - theJob.getAmountCompleted())
 		* slowdown; // Originally divide?? Incorrect??
 
-            JobFinishEvent newFinishEvent = new JobFinishEvent(finishTime,
-                    this.experiment, finishEvent.getJob(),
+            JobFinishEvent newFinishEvent = this.experiment
+                    .createJobFinishEvent(finishTime, finishEvent.getJob(),
                     this.socket.getServer(), time, this.speed);
             this.experiment.addEvent(newFinishEvent);
         }
@@ -465,8 +499,8 @@ public final class Core implements Powerable, Serializable {
                 Sim.fatalError("time left has been miscalculated");
             }
 
-            JobFinishEvent finishEvent = new JobFinishEvent(finishTime,
-                    experiment, job, server, time, this.speed);
+            JobFinishEvent finishEvent = this.experiment
+                    .createJobFinishEvent(finishTime, job, server, time, this.speed);
             job.setLastResumeTime(time);
             this.experiment.addEvent(finishEvent);
         }
@@ -479,6 +513,7 @@ public final class Core implements Powerable, Serializable {
      */
     public void setIdlePower(final double coreIdlePower) {
         this.idlePower = coreIdlePower;
+        this.socket.getServer().markPowerChanged();
     }
 
     /**
@@ -488,6 +523,7 @@ public final class Core implements Powerable, Serializable {
      */
     public void setParkPower(final double coreParkPower) {
         this.parkPower = coreParkPower;
+        this.socket.getServer().markPowerChanged();
     }
 
     /**
@@ -498,6 +534,7 @@ public final class Core implements Powerable, Serializable {
      */
     public void setActivePower(final double coreDynamicPower) {
         this.dynamicPower = coreDynamicPower;
+        this.socket.getServer().markPowerChanged();
     }
 
     /**
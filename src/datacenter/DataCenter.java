@@ -31,14 +31,13 @@
 package datacenter;
 
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.Vector;
-import java.util.Comparator;
-import java.util.Collections;
 import core.Experiment;
 import stat.TimeWeightedStatistic;
 import core.Constants.TimeWeightedStatName;
 import core.Constants;
+import core.Sim;
 
 /**
  * This class will hold all the physical objects in the datacenter for now.
@@ -62,6 +61,82 @@ public final class DataCenter implements Serializable {
      */
     protected Experiment experiment;
 
+    /**
+     * The last power read from each server, indexed by
+     * {@link Server#getDataCenterIndex()}.
+     */
+    private double[] serverPowers;
+
+    /**
+     * The servers whose power may have changed since the last
+     * statistics update.
+     */
+    private Vector<Server> powerChangedServers;
+
+    /**
+     * The running total of the servers' power (in watts).
+     */
+    private double clusterPower;
+
+    /**
+     * The number of updates since the running total was last
+     * summed from scratch.
+     */
+    private int updatesSinceResum;
+
+    /**
+     * The servers ordered for PACK and PEAK job placement.
+     */
+    private ServerPlacementIndex placementIndex;
+
+    /**
+     * The partition to read power changes from outside of any partition.
+     */
+    public static final int NO_PARTITION = -1;
+
+    /**
+     * The partition of each server in a parallel run, indexed by
+     * {@link Server#getDataCenterIndex()}, or null if not partitioned.
+     */
+    private int[] serverPartitions;
+
+    /**
+     * For each partition, the servers whose power may have changed
+     * since they were last read.
+     */
+    private ArrayList<Vector<Server>> partitionPowerChanged;
+
+    /**
+     * If power changes are noted in the servers' partitions rather than
+     * for the next statistics update.
+     */
+    private boolean partitionedUpdates;
+
+    /**
+     * If statistics are only updated for servers (and the cluster)
+     * whose power changed, rather than after every event.
+     */
+    private boolean changeDrivenStats;
+
+    /** If the cluster power changed since the last statistics update. */
+    private boolean clusterPowerChanged;
+
+    /**
+     * Receives the power of servers read by
+     * {@link DataCenter#readPowerChanges(int, PowerChangeLog)}.
+     */
+    public interface PowerChangeLog {
+
+        /**
+         * Notes the power of a server.
+         *
+         * @param serverIndex - the index of the server in the datacenter
+         * @param power - the power of the server (in watts)
+         */
+        void logServerPower(int serverIndex, double power);
+
+    }
+
     /**
      * The scheduling algorithm for assigning jobs to servers.
      */
@@ -100,6 +175,16 @@ public final class DataCenter implements Serializable {
     public DataCenter(final Experiment anExperiment) {
 	this.experiment = anExperiment;
         this.servers = new Vector<Server>();
+        this.serverPowers = new double[0];
+        this.powerChangedServers = new Vector<Server>();
+        this.clusterPower = 0.0d;
+        this.updatesSinceResum = 0;
+        this.placementIndex = new ServerPlacementIndex(this.servers);
+        this.serverPartitions = null;
+        this.partitionPowerChanged = null;
+        this.partitionedUpdates = false;
+        this.changeDrivenStats = false;
+        this.clusterPowerChanged = true;
     }
 
     /**
@@ -108,7 +193,158 @@ public final class DataCenter implements Serializable {
      * @param server - the server to add
      */
     public void addServer(final Server server) {
+        int index = this.servers.size();
         this.servers.add(server);
+        if (index >= this.serverPowers.length) {
+            double[] newServerPowers
+                = new double[Math.max(2 * this.serverPowers.length, 16)];
+            System.arraycopy(this.serverPowers, 0,
+                             newServerPowers, 0, this.serverPowers.length);
+            this.serverPowers = newServerPowers;
+        }
+        server.setDataCenter(this, index);
+        this.placementIndex.addServer(server);
+    }
+
+    /**
+     * Notes that a server's power may have changed.
+     * The server is re-read at the next statistics update.
+     *
+     * @param server - the server whose power may have changed
+     */
+    void serverPowerChanged(final Server server) {
+        if (this.partitionedUpdates) {
+            int partition = this.serverPartitions[server.getDataCenterIndex()];
+            this.partitionPowerChanged.get(partition).add(server);
+        } else {
+            this.powerChangedServers.add(server);
+        }
+    }
+
+    /**
+     * Notes that a server's load may have changed.
+     * The server is re-filed before the next job placement.
+     *
+     * @param server - the server whose load may have changed
+     */
+    void serverLoadChanged(final Server server) {
+        // Partitions run concurrently, they refile every server at the end
+        if (!this.partitionedUpdates) {
+            this.placementIndex.serverChanged(server);
+        }
+    }
+
+    /**
+     * Splits the servers into partitions that run in different threads.
+     * While partitioned updates are on, each partition's power changes
+     * are kept apart and must be read with
+     * {@link #readPowerChanges(int, PowerChangeLog)}.
+     *
+     * @param theServerPartitions - the partition of each server, in the
+     * order servers were added, or null to stop partitioning
+     * @param nPartitions - the number of partitions
+     */
+    public void setPartitions(final int[] theServerPartitions,
+                              final int nPartitions) {
+        this.partitionedUpdates = false;
+        if (theServerPartitions == null) {
+            this.serverPartitions = null;
+            this.partitionPowerChanged = null;
+            // Load changes weren't filed while partitioned
+            for (int i = 0; i < this.servers.size(); i++) {
+                this.placementIndex.serverChanged(this.servers.get(i));
+            }
+            return;
+        }
+
+        if (theServerPartitions.length != this.servers.size()) {
+            Sim.fatalError("Need a partition for each of the "
+                           + this.servers.size() + " servers");
+        }
+        this.serverPartitions = theServerPartitions.clone();
+        this.partitionPowerChanged
+            = new ArrayList<Vector<Server>>(nPartitions);
+        for (int i = 0; i < nPartitions; i++) {
+            this.partitionPowerChanged.add(new Vector<Server>());
+        }
+    }
+
+    /**
+     * Sets if power changes are noted in the servers' partitions.
+     * Should be on only while the partitions run.
+     *
+     * @param partitioned - if power changes are noted by partition
+     */
+    public void setPartitionedUpdates(final boolean partitioned) {
+        this.partitionedUpdates = partitioned;
+    }
+
+    /**
+     * Reads the power of the servers in a partition whose power may
+     * have changed since they were last read.
+     *
+     * @param partition - the partition, or {@link #NO_PARTITION} for
+     * changes noted while partitioned updates were off
+     * @param log - receives the power of each server read
+     */
+    public void readPowerChanges(final int partition,
+                                 final PowerChangeLog log) {
+        Vector<Server> changed = this.powerChangedServers;
+        if (partition != NO_PARTITION) {
+            changed = this.partitionPowerChanged.get(partition);
+        }
+
+        int nChanged = changed.size();
+        for (int i = 0; i < nChanged; i++) {
+            Server server = changed.get(i);
+            server.clearPowerChanged();
+            log.logServerPower(server.getDataCenterIndex(), server.getPower());
+        }
+        changed.clear();
+    }
+
+    /**
+     * Updates the running total of the servers' power with a new
+     * reading of one server.
+     *
+     * @param serverIndex - the index of the server in the datacenter
+     * @param power - the power of the server (in watts)
+     */
+    public void setServerPower(final int serverIndex, final double power) {
+        if (power != this.serverPowers[serverIndex]) {
+            this.clusterPowerChanged = true;
+        }
+        this.clusterPower += power - this.serverPowers[serverIndex];
+        this.serverPowers[serverIndex] = power;
+    }
+
+    /**
+     * Gets the current power of all the servers in the datacenter (in watts).
+     * Only servers whose power may have changed since the last call are read.
+     *
+     * @return the current power of all the servers (in watts)
+     */
+    public double getClusterPower() {
+        int nChanged = this.powerChangedServers.size();
+        for (int i = 0; i < nChanged; i++) {
+            Server server = this.powerChangedServers.get(i);
+            server.clearPowerChanged();
+            this.setServerPower(server.getDataCenterIndex(), server.getPower());
+        }
+        this.powerChangedServers.clear();
+
+        // Keep rounding error from building up in the running total
+        this.updatesSinceResum++;
+        if (this.updatesSinceResum >= this.servers.size()) {
+            double total = 0.0d;
+            for (int i = 0; i < this.servers.size(); i++) {
+                total += this.serverPowers[i];
+            }
+            this.clusterPower = total;
+            this.updatesSinceResum = 0;
+        }
+
+        return this.clusterPower;
     }
 
     /**
@@ -127,198 +363,144 @@ public final class DataCenter implements Serializable {
      *            - the time the statistics are updated
      */
     public void updateStatistics(final double time) {
-	double clusterPower = 0.0;
-
-	// Update each server's statistics (utilization, power, idleness
-        Iterator<Server> iter = this.servers.iterator();
-	Server server;
-        while (iter.hasNext()) {
-	    server = iter.next();
-	    //server.updateStatistics(time);
-            //iter.next().updateStatistics(time);
-	    clusterPower += server.getPower();
+        if (this.changeDrivenStats) {
+            this.updateChangedStatistics(time);
+            return;
         }
 
 	// Update datacenter level statistics (cluster power)	
         TimeWeightedStatistic clusterPowerStat
             = this.experiment.getStats().getTimeWeightedStat(
                     Constants.TimeWeightedStatName.CLUSTER_POWER);
-        clusterPowerStat.addSample(clusterPower, time);
+        clusterPowerStat.addSample(this.getClusterPower(), time);
     }
 
-   public Server getPackingTargetServer(final Server originalServer){
-
-
-
-	// First sort servers based on efficiency and utilization
-	// Ascending order. Lowest util to highest util
-	Collections.sort(this.servers,new ServerCompareUtilOnly());
-	// Reverse order so highest util and efficiency is first
-	//Collections.reverse(this.servers);
-/*
-	for(int i = 0; i <  this.servers.size(); i++){
-		System.out.print(String.valueOf(servers.get(i).getInstantUtilization()) + "(" + String.valueOf(servers.get(i).getRemainingCapacity()) + ") ");
-	}
-	System.out.print("\n");
-*/
-
-
-   	Iterator<Server> iter = this.servers.iterator();
-	Server server;
-	Server lastActiveServer = originalServer;
-
-	// Ensure at least a single standy-by server is on
-	// if no idle server exists, find first paused server and issue
-	if(numServersIdle() == 0){
-		while(iter.hasNext()){
-			server = iter.next();
-			if( server.isPaused() ){
-			    if ( (server.getJobsInService() > 0) || (server.getQueueLength() > 0) ) {
-				// A server is sleeping and have job. already waking up
-				break;
-			    }
-			    else {
-				// A server is sleeping and have no jobs. 
-				// Send request here to wake up server
-			 	return server;
- 			    }
-			}
-		}
-	}
-
-	iter = this.servers.iterator();
-        while (iter.hasNext()) {
-            server = iter.next();
-	    if( !server.isPaused() )
-		lastActiveServer = server;
-	    if( (server.getRemainingCapacity() > 0) && !server.isPaused())
-		return server;
+    /**
+     * Updates the same statistics as a per-event update (cluster power),
+     * but only if they changed since the last update.
+     *
+     * @param time - the time the update occurs
+     */
+    private void updateChangedStatistics(final double time) {
+        int nChanged = this.powerChangedServers.size();
+        for (int i = 0; i < nChanged; i++) {
+            Server server = this.powerChangedServers.get(i);
+            server.clearPowerChanged();
+            this.setServerPower(server.getDataCenterIndex(), server.getPower());
+        }
+        this.powerChangedServers.clear();
+
+        if (this.clusterPowerChanged) {
+            this.clusterPowerChanged = false;
+            TimeWeightedStatistic clusterPowerStat
+                = this.experiment.getStats().getTimeWeightedStat(
+                        Constants.TimeWeightedStatName.CLUSTER_POWER);
+            clusterPowerStat.addSample(this.getClusterPower(), time);
         }
+    }
+
+    /**
+     * Sets if statistics are only updated when they may have changed.
+     * The cluster power is then only sampled when a server's power
+     * change moved the running total, instead of after every event.
+     *
+     * @param driven - if statistics are only updated on changes
+     */
+    public void setChangeDrivenStatistics(final boolean driven) {
+        this.changeDrivenStats = driven;
+        this.clusterPowerChanged = true;
+    }
 
-	return lastActiveServer;
-
-  }
-
-   class ServerCompareUtilOnly implements Comparator<Server> {
-
-	@Override
-	public int compare(Server s1, Server s2) {
-		return Double.compare(s2.getInstantUtilizationWithQueue(),s1.getInstantUtilizationWithQueue());
-	}
-
-   }
-   class ServerCompare implements Comparator<Server> {
-
-	@Override
-	public int compare(Server s1, Server s2) {
-		
-	    // First compare peak efficiency
-	    // Then compare utilization
-	    if ( Double.compare(s1.getPeakEfficiency(),s2.getPeakEfficiency()) == 0){
-		return Double.compare(s2.getInstantUtilizationWithQueue(),s1.getInstantUtilizationWithQueue());
-	    }
-	    else {
-		return Double.compare(s2.getPeakEfficiency(),s1.getPeakEfficiency()); 	   
-	    }
-	}
-
-   }
-
-   public Server getPeakTargetServer(final Server originalServer){
-
-	// First sort servers based on efficiency and utilization
-	// Ascending order. Lowest util and efficiency to highest util and efficiency
-	Collections.sort(this.servers,new ServerCompare());
-	// Reverse order so highest util and efficiency is first
-	//Collections.reverse(this.servers);
-
-	Server server;
-	Server lowestAbovePeakServer = originalServer;
-	Server lastActiveServer = originalServer;
-   	Iterator<Server> iter = this.servers.iterator();
-
-	// Ensure at least a single standy-by server is on
-	// if no idle server exists, find first paused server and issue
-	if(numServersIdle() == 0){
-		while(iter.hasNext()){
-			server = iter.next();
-			if( server.isPaused() ){
-			    if ( (server.getJobsInService() > 0) || (server.getQueueLength() > 0) ) {
-				// A server is sleeping and have job. already waking up
-				break;
-			    }
-			    else {
-				// A server is sleeping and have no jobs. 
-				// Send request here to wake up server
-			 	return server;
- 			    }
-			}
-		}
-	}
-
-	lowestAbovePeakServer = null;	
-	iter = this.servers.iterator();
-        while (iter.hasNext()) {
-            server = iter.next();
-
-	    if(!server.isPaused())
-		lastActiveServer = server;
-
-	    if(server.isAbovePeakEfficiencyUtilization() ){
-		if(server.getRemainingCapacity() > 0)
-			lowestAbovePeakServer = server; // may not be set if all servers are low/mid EP
-		continue; // Skip issue to above peak. We know there exist some below peak.
-	    }
-	    // At this point, server is below peak, and has highest util and efficiency. Issue here.
-	    //if (server.getRemainingCapacity() > 0) // Sanity check: make sure it has free slots
-	    if(!server.isPaused() && server.getRemainingCapacity() > 0)
-	    	return server; 
+    /**
+     * Picks the server for a job under PACK scheduling.
+     * Servers are considered from highest to lowest utilization
+     * (including queued jobs). If no server is idle, the first paused
+     * server is woken up, unless it is already waking up. Otherwise the
+     * job goes to the first running server with free capacity, or the
+     * last running server if all are full.
+     *
+     * @param originalServer - the server the job arrived at
+     * @return the server to send the job to
+     */
+    public Server getPackingTargetServer(final Server originalServer) {
+        Server server
+            = this.placementIndex.getServerToWake(ClusterScheduler.PACK);
+        if (server != null) {
+            return server;
+        }
+
+        server = this.placementIndex.getFirstAvailableServer(
+                    ClusterScheduler.PACK);
+        if (server != null) {
+            return server;
+        }
+
+        server = this.placementIndex.getLastActiveServer(
+                    ClusterScheduler.PACK);
+        if (server != null) {
+            return server;
+        }
+
+        return originalServer;
+    }
+
+    /**
+     * Picks the server for a job under PEAK scheduling.
+     * Servers are considered from highest to lowest peak efficiency,
+     * then from highest to lowest utilization (including queued jobs).
+     * If no server is idle, the first paused server is woken up, unless
+     * it is already waking up. Otherwise the job goes to the first running
+     * server below peak efficiency with free capacity. Failing that, it
+     * goes to the last server above peak efficiency with free capacity,
+     * or the last running server.
+     *
+     * @param originalServer - the server the job arrived at
+     * @return the server to send the job to
+     */
+    public Server getPeakTargetServer(final Server originalServer) {
+        Server server
+            = this.placementIndex.getServerToWake(ClusterScheduler.PEAK);
+        if (server != null) {
+            return server;
+        }
+
+        server = this.placementIndex.getFirstAvailableServer(
+                    ClusterScheduler.PEAK);
+        if (server != null) {
+            return server;
         }
 
-	// No idle servers under peak left and a idle server is waking up
-	// All servers are running 
-	// 
-	// No servers less than peak efficiency is available.  
-	// A server is already waking up
-	//
-	// 1. Wakeup a server (isPaused() && queue=0
-	// 2. Issue to lowest above peak server
-
-	// Issue to lowest above peak server
-	if(lowestAbovePeakServer != null) {
-		return lowestAbovePeakServer;
-	}else{
-		return lastActiveServer;
-	}
-	
-	//return originalServer;	
-   }
-
-   public boolean allServersAbovePeak(){
-
-	Iterator<Server> iter = this.servers.iterator();
-	Server server;
-	while (iter.hasNext()) {
-		server = iter.next();
-		if ( !server.isAbovePeakEfficiencyUtilization() )
-			return false;
-	}	
-	return true;
-   }
-
-   public int numServersIdle(){
-	int idleServers = 0;
-	Iterator<Server> iter = this.servers.iterator();
-	Server server;
-	while (iter.hasNext()) {
-		server = iter.next();
-		if ( (server.getJobsInService() == 0) && (server.getQueueLength() == 0) && !server.isPaused() ) {
-			// Server is idle if no jobs in system and running
-			idleServers++;
-		}
-	}
-
-	return idleServers;
-   }
+        server = this.placementIndex.getLastAbovePeakServer();
+        if (server != null) {
+            return server;
+        }
+
+        server = this.placementIndex.getLastActiveServer(
+                    ClusterScheduler.PEAK);
+        if (server != null) {
+            return server;
+        }
+
+        return originalServer;
+    }
+
+    /**
+     * Checks if every server is at or above its peak efficiency utilization.
+     *
+     * @return if every server is above its peak efficiency utilization
+     */
+    public boolean allServersAbovePeak() {
+        return this.placementIndex.allServersAbovePeak();
+    }
+
+    /**
+     * Gets the number of servers that are running with no jobs
+     * in service or queued.
+     *
+     * @return the number of idle servers
+     */
+    public int numServersIdle() {
+        return this.placementIndex.getIdleServers();
+    }
 
 }
@@ -210,6 +210,7 @@ public class KnightShiftServer extends Server {
         }
         this.transitioningToActive = true;
         this.knightshiftState = KnightShiftState.TRANSITIONING_TO_ACTIVE;
+        this.markPowerChanged();
         double knightTime = time + extraDelay + this.knightTransitionTime;
         KnightShiftTransitionedToActiveEvent knightEvent
             = new KnightShiftTransitionedToActiveEvent(knightTime,
@@ -234,6 +235,7 @@ public class KnightShiftServer extends Server {
         //}
 
         this.knightshiftState = KnightShiftState.TRANSITIONING_TO_KNIGHT;
+        this.markPowerChanged();
         this.transitioningToKnight = true;
         double knightTime = time + this.knightTransitionTime;
         KnightShiftTransitionedToKnightEvent knightEvent
@@ -285,6 +287,7 @@ public class KnightShiftServer extends Server {
         this.transitioningToActive = false;
         // Server is now fully in the active mode
         this.knightshiftState = KnightShiftState.ACTIVE;
+        this.markPowerChanged();
         // Start all the jobs possible and queue the ones that aren't
 	super.enableSockets(time);
 	//System.out.println("To Main");
@@ -325,6 +328,7 @@ public class KnightShiftServer extends Server {
         // Server is now fully in the knight mode
         this.transitioningToKnight = false;
         this.knightshiftState = KnightShiftState.KNIGHT;
+        this.markPowerChanged();
         this.transitionEvent = null;
     }
 
@@ -92,6 +92,7 @@ public final class NapTransitionEvent extends AbstractEvent {
 		return;
 	}	
         this.server.powerNapState = PowerNapState.TRANSITIONING_TO_NAP;
+        this.server.markPowerChanged();
         this.server.transitioningToNap = true;
         double napTime = this.time + this.server.napTransitionTime;
         PowerNapTransitionedToNapEvent napEvent
@@ -162,6 +162,7 @@ public class PowerNapServer extends Server {
 
             this.transistionToActive(time);
             this.queue.add(job);
+            this.markPowerChanged();
 
             // Job has entered the system
             this.jobsInServerInvariant++;
@@ -170,6 +171,7 @@ public class PowerNapServer extends Server {
                     == PowerNapState.TRANSITIONING_TO_ACTIVE) {
 
             this.queue.add(job);
+            this.markPowerChanged();
             // Job has entered the system
             this.jobsInServerInvariant++;
 
@@ -177,6 +179,7 @@ public class PowerNapServer extends Server {
 
             this.transistionToActive(time);
             this.queue.add(job);
+            this.markPowerChanged();
             // Job has entered the system
             this.jobsInServerInvariant++;
 
@@ -220,6 +223,7 @@ public class PowerNapServer extends Server {
         }
         this.transitioningToActive = true;
         this.powerNapState = PowerNapState.TRANSITIONING_TO_ACTIVE;
+        this.markPowerChanged();
         double napTime = time + extraDelay + this.napTransitionTime;
         PowerNapTransitionedToActiveEvent napEvent
             = new PowerNapTransitionedToActiveEvent(napTime,
@@ -293,6 +297,7 @@ public class PowerNapServer extends Server {
         this.transitioningToActive = false;
         // Server is now fully in the active mode
         this.powerNapState = PowerNapState.ACTIVE;
+        this.markPowerChanged();
         // Start all the jobs possible and queue the ones that aren't
         this.resumeProcessing(time);
 	//System.out.println("Server active");
@@ -326,6 +331,7 @@ public class PowerNapServer extends Server {
         //System.out.println("Server napping");
         this.transitioningToNap = false;
         this.powerNapState = PowerNapState.NAP;
+        this.markPowerChanged();
         this.transitionEvent = null;
     }
 
@@ -33,7 +33,6 @@ package datacenter;
 import generator.Generator;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.ArrayList; 
 import java.util.Iterator;
@@ -98,11 +97,6 @@ public class Server implements Powerable, Serializable {
     private ArrayList<Socket> disabledSockets;
     //private int[] disabledSockets; //0 = active, 1 = disabled
 
-    /**
-     * Map that saves which socket has a job to avoid searching.
-     */
-    protected HashMap<Job, Socket> jobToSocketMap;
-
     /**
      * The experiment the server is running in.
      */
@@ -146,6 +140,29 @@ public class Server implements Powerable, Serializable {
 
     public boolean searchWorkload;
 
+    /**
+     * The datacenter this server is part of.
+     * Null if the server isn't part of a datacenter.
+     */
+    private DataCenter dataCenter;
+
+    /**
+     * The index of this server in its datacenter.
+     */
+    private int dataCenterIndex;
+
+    /**
+     * If the server's power may have changed since the datacenter
+     * last read it.
+     */
+    private boolean powerChanged;
+
+    /**
+     * If the server's load may have changed since the datacenter
+     * last read it for job placement.
+     */
+    private boolean loadChanged;
+
 
     /**
      * Creates a new server.
@@ -172,7 +189,6 @@ public class Server implements Powerable, Serializable {
             sockets.add(new Socket(experiment, this, theCoresPerSocket));
 	    //disabledsockets.get(i) = 0;
         }
-        this.jobToSocketMap = new HashMap<Job, Socket>();
         this.scheduler = Scheduler.BIN_PACK;
         this.jobsInServerInvariant = 0;
         this.paused = false;
@@ -186,6 +202,7 @@ public class Server implements Powerable, Serializable {
      */
     public final void pause() {
         this.paused = true;
+        this.markPowerChanged();
     }
 
     /**
@@ -193,6 +210,66 @@ public class Server implements Powerable, Serializable {
      */
     public final void unpause() {
         this.paused = false;
+        this.markPowerChanged();
+    }
+
+    /**
+     * Sets the datacenter this server is part of.
+     *
+     * @param theDataCenter - the datacenter
+     * @param index - the index of the server in the datacenter
+     */
+    final void setDataCenter(final DataCenter theDataCenter,
+                             final int index) {
+        this.dataCenter = theDataCenter;
+        this.dataCenterIndex = index;
+        this.powerChanged = false;
+        this.loadChanged = false;
+        this.markPowerChanged();
+    }
+
+    /**
+     * Gets the index of this server in its datacenter.
+     *
+     * @return the index of this server in its datacenter
+     */
+    final int getDataCenterIndex() {
+        return this.dataCenterIndex;
+    }
+
+    /**
+     * Tells the server its datacenter has read its current power.
+     */
+    final void clearPowerChanged() {
+        this.powerChanged = false;
+    }
+
+    /**
+     * Tells the server its datacenter has read its current load.
+     */
+    final void clearLoadChanged() {
+        this.loadChanged = false;
+    }
+
+    /**
+     * Notes that the server's power or load may have changed.
+     * Must be called whenever anything {@link #getPower()} depends on
+     * changes, and whenever the server's jobs, queue, capacity or paused
+     * state change, so the datacenter's cluster power and job placement
+     * stay up to date.
+     */
+    public final void markPowerChanged() {
+        if (this.dataCenter == null) {
+            return;
+        }
+        if (!this.powerChanged) {
+            this.powerChanged = true;
+            this.dataCenter.serverPowerChanged(this);
+        }
+        if (!this.loadChanged) {
+            this.loadChanged = true;
+            this.dataCenter.serverLoadChanged(this);
+        }
     }
 
 
@@ -222,12 +299,11 @@ public class Server implements Powerable, Serializable {
                                 StatName.GENERATED_SERVICE_TIME);
         serviceStat.addSample(serviceTime);
 
-        Job job = new Job(serviceTime);
+        Job job = this.experiment.createJob(serviceTime);
         JobArrivalEvent jobArrivalEvent
-                = new JobArrivalEvent(arrivalTime,
-                                      experiment,
-                                      job,
-                                      this);
+                = this.experiment.createJobArrivalEvent(arrivalTime,
+                                                        job,
+                                                        this);
         this.experiment.addEvent(jobArrivalEvent);
     }
 
@@ -262,6 +338,7 @@ public class Server implements Powerable, Serializable {
         // Job has entered the system
         this.jobsInServerInvariant++;
         checkInvariants();
+        this.markPowerChanged();
     }
 
     /**
@@ -445,7 +522,7 @@ public class Server implements Powerable, Serializable {
 
         job.markStart(time);
         targetSocket.insertJob(time, job);
-        this.jobToSocketMap.put(job, targetSocket);
+        job.setSocket(targetSocket);
     }
 
     /**
@@ -458,7 +535,8 @@ public class Server implements Powerable, Serializable {
     public void removeJob(final double time, final Job job) {
 
         // Remove the job from the socket it is running on
-        Socket socket = this.jobToSocketMap.remove(job);
+        Socket socket = job.getSocket();
+        job.setSocket(null);
 
         // Error check we could resolve which socket the job was on
         if (socket == null) {
@@ -480,6 +558,7 @@ public class Server implements Powerable, Serializable {
         // Job has left the systems
         this.jobsInServerInvariant--;
         this.checkInvariants();
+        this.markPowerChanged();
     }
 
     /**
@@ -515,6 +594,41 @@ public class Server implements Powerable, Serializable {
         return this.experiment;
     }
 
+    /**
+     * Moves the server, its sockets and cores to another experiment.
+     * Events the server schedules from then on go to the new experiment.
+     * Used to hand a server to one partition of a parallel run.
+     *
+     * @param anExperiment - the experiment the server is now part of
+     */
+    public void setExperiment(final Experiment anExperiment) {
+        this.experiment = anExperiment;
+        for (int i = 0; i < this.sockets.size(); i++) {
+            this.sockets.get(i).setExperiment(anExperiment);
+        }
+        for (int i = 0; i < this.disabledSockets.size(); i++) {
+            this.disabledSockets.get(i).setExperiment(anExperiment);
+        }
+    }
+
+    /**
+     * Get the generator of the server's interarrival times.
+     *
+     * @return the interarrival time generator
+     */
+    public Generator getArrivalGenerator() {
+        return this.arrivalGenerator;
+    }
+
+    /**
+     * Get the generator of the server's job service times.
+     *
+     * @return the service time generator
+     */
+    public Generator getServiceGenerator() {
+        return this.serviceGenerator;
+    }
+
     /**
      * Get the sockets this server has.
      *
@@ -618,6 +732,7 @@ public class Server implements Powerable, Serializable {
      */
     public void resumeProcessing(final double time) {
         this.paused = false;
+        this.markPowerChanged();
 
         for (int i = 0; i < this.sockets.size(); i++) {
             this.sockets.get(i).resumeProcessing(time);
@@ -636,6 +751,7 @@ public class Server implements Powerable, Serializable {
      */
     public void pauseProcessing(final double time) {
         this.paused = true;
+        this.markPowerChanged();
 
         for (int i = 0; i < this.sockets.size(); i++) {
             this.sockets.get(i).pauseProcessing(time);
@@ -743,6 +859,7 @@ public class Server implements Powerable, Serializable {
 		    break;
 	    }
 	}
+        this.markPowerChanged();
     }
 
     /**
@@ -757,6 +874,7 @@ public class Server implements Powerable, Serializable {
 	    this.sockets.add(it.next());
 	    it.remove();
 	}
+        this.markPowerChanged();
     }
 
     /**
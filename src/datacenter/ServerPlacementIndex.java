@@ -0,0 +1,466 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package datacenter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import datacenter.DataCenter.ClusterScheduler;
+
+/**
+ * Keeps a datacenter's servers ordered for PACK and PEAK job placement.
+ * Servers tell the index when their load changes (through
+ * {@link Server#markPowerChanged()}), and the index re-files only those
+ * servers before the next placement decision, so placement costs
+ * O(log n) per changed server instead of a sort of every server.
+ * Servers that tie in the ordering are ordered by when they were added
+ * to the datacenter.
+ */
+final class ServerPlacementIndex implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The servers in the datacenter, indexed by
+     * {@link Server#getDataCenterIndex()}.
+     */
+    private Vector<Server> servers;
+
+    /**
+     * The servers whose load may have changed since the index was
+     * last updated.
+     */
+    private Vector<Server> changedServers;
+
+    /**
+     * Each server's utilization (including its queue) when last filed.
+     */
+    private double[] utilization;
+
+    /**
+     * Each server's peak efficiency when last filed.
+     */
+    private double[] peakEfficiency;
+
+    /**
+     * If each server was paused when last filed.
+     */
+    private boolean[] paused;
+
+    /**
+     * If each server had free capacity when last filed.
+     */
+    private boolean[] hasCapacity;
+
+    /**
+     * If each server was idle (running with no jobs) when last filed.
+     */
+    private boolean[] idle;
+
+    /**
+     * If each server was at or above its peak efficiency utilization
+     * when last filed.
+     */
+    private boolean[] abovePeak;
+
+    /**
+     * The number of idle servers.
+     */
+    private int nIdle;
+
+    /**
+     * The number of servers below their peak efficiency utilization.
+     */
+    private int nBelowPeak;
+
+    /**
+     * The placement order the sorted sets are built for,
+     * or null if they haven't been built.
+     */
+    private ClusterScheduler ordering;
+
+    /**
+     * Paused servers, in placement order.
+     */
+    private TreeSet<Server> pausedServers;
+
+    /**
+     * Running servers, in placement order.
+     */
+    private TreeSet<Server> activeServers;
+
+    /**
+     * Running servers that can take a job, in placement order.
+     * For PEAK placement this excludes servers above peak efficiency.
+     */
+    private TreeSet<Server> availableServers;
+
+    /**
+     * Servers above peak efficiency with free capacity, in placement order.
+     * Only used for PEAK placement.
+     */
+    private TreeSet<Server> abovePeakServers;
+
+    /**
+     * Creates a new, empty placement index.
+     *
+     * @param theServers - the datacenter's servers
+     */
+    ServerPlacementIndex(final Vector<Server> theServers) {
+        this.servers = theServers;
+        this.changedServers = new Vector<Server>();
+        this.utilization = new double[0];
+        this.peakEfficiency = new double[0];
+        this.paused = new boolean[0];
+        this.hasCapacity = new boolean[0];
+        this.idle = new boolean[0];
+        this.abovePeak = new boolean[0];
+        this.nIdle = 0;
+        this.nBelowPeak = 0;
+        this.ordering = null;
+    }
+
+    /**
+     * Makes room for a server newly added to the datacenter.
+     * The server is filed when it is next marked as changed.
+     *
+     * @param server - the server
+     */
+    void addServer(final Server server) {
+        int index = server.getDataCenterIndex();
+        if (index >= this.utilization.length) {
+            int capacity = Math.max(2 * this.utilization.length, 16);
+            this.utilization = Arrays.copyOf(this.utilization,
+                                                       capacity);
+            this.peakEfficiency
+                = Arrays.copyOf(this.peakEfficiency, capacity);
+            this.paused = Arrays.copyOf(this.paused, capacity);
+            this.hasCapacity = Arrays.copyOf(this.hasCapacity,
+                                                       capacity);
+            this.idle = Arrays.copyOf(this.idle, capacity);
+            this.abovePeak = Arrays.copyOf(this.abovePeak,
+                                                     capacity);
+        }
+
+        // Until it is filed, the server counts as neither idle
+        // nor below peak
+        this.idle[index] = false;
+        this.abovePeak[index] = true;
+    }
+
+    /**
+     * Notes that a server's load may have changed.
+     *
+     * @param server - the server
+     */
+    void serverChanged(final Server server) {
+        this.changedServers.add(server);
+    }
+
+    /**
+     * Gets the number of servers that are running with no jobs.
+     *
+     * @return the number of idle servers
+     */
+    int getIdleServers() {
+        this.update();
+        return this.nIdle;
+    }
+
+    /**
+     * Checks if every server is at or above its peak efficiency utilization.
+     *
+     * @return if every server is above its peak efficiency utilization
+     */
+    boolean allServersAbovePeak() {
+        this.update();
+        return this.nBelowPeak == 0;
+    }
+
+    /**
+     * Gets the paused server placement would wake up, if any.
+     * This is the first paused server in placement order, provided no
+     * server is idle and that server isn't already waking up for a job.
+     *
+     * @param scheduler - the placement order to use
+     * @return the server to wake, or null if none should be woken
+     */
+    Server getServerToWake(final ClusterScheduler scheduler) {
+        this.order(scheduler);
+        if (this.nIdle != 0 || this.pausedServers.isEmpty()) {
+            return null;
+        }
+
+        Server server = this.pausedServers.first();
+        if (server.getJobsInService() > 0 || server.getQueueLength() > 0) {
+            // The server is already waking up
+            return null;
+        }
+
+        return server;
+    }
+
+    /**
+     * Gets the first running server in placement order that can take a job.
+     * For PEAK placement, servers above peak efficiency are skipped.
+     *
+     * @param scheduler - the placement order to use
+     * @return the server, or null if there is none
+     */
+    Server getFirstAvailableServer(final ClusterScheduler scheduler) {
+        this.order(scheduler);
+        if (this.availableServers.isEmpty()) {
+            return null;
+        }
+
+        return this.availableServers.first();
+    }
+
+    /**
+     * Gets the last server above peak efficiency with free capacity,
+     * in PEAK placement order.
+     *
+     * @return the server, or null if there is none
+     */
+    Server getLastAbovePeakServer() {
+        this.order(ClusterScheduler.PEAK);
+        if (this.abovePeakServers.isEmpty()) {
+            return null;
+        }
+
+        return this.abovePeakServers.last();
+    }
+
+    /**
+     * Gets the last running server in placement order.
+     *
+     * @param scheduler - the placement order to use
+     * @return the server, or null if every server is paused
+     */
+    Server getLastActiveServer(final ClusterScheduler scheduler) {
+        this.order(scheduler);
+        if (this.activeServers.isEmpty()) {
+            return null;
+        }
+
+        return this.activeServers.last();
+    }
+
+    /**
+     * Brings the index up to date and makes sure the sorted sets are
+     * built for a placement order.
+     *
+     * @param scheduler - the placement order (PACK or PEAK)
+     */
+    private void order(final ClusterScheduler scheduler) {
+        this.update();
+        if (this.ordering == scheduler) {
+            return;
+        }
+
+        Comparator<Server> comparator;
+        if (scheduler == ClusterScheduler.PACK) {
+            comparator = new UtilizationOrder();
+        } else {
+            comparator = new PeakEfficiencyOrder();
+        }
+        this.ordering = scheduler;
+        this.pausedServers = new TreeSet<Server>(comparator);
+        this.activeServers = new TreeSet<Server>(comparator);
+        this.availableServers = new TreeSet<Server>(comparator);
+        this.abovePeakServers = new TreeSet<Server>(comparator);
+        for (int i = 0; i < this.servers.size(); i++) {
+            this.file(this.servers.get(i));
+        }
+    }
+
+    /**
+     * Re-files every server whose load may have changed.
+     */
+    private void update() {
+        int nChanged = this.changedServers.size();
+        for (int i = 0; i < nChanged; i++) {
+            Server server = this.changedServers.get(i);
+            server.clearLoadChanged();
+            this.unfile(server);
+            this.refresh(server);
+            this.file(server);
+        }
+        this.changedServers.clear();
+    }
+
+    /**
+     * Re-reads a server's cached state and updates the counts.
+     *
+     * @param server - the server
+     */
+    private void refresh(final Server server) {
+        int index = server.getDataCenterIndex();
+        if (this.idle[index]) {
+            this.nIdle--;
+        }
+        if (!this.abovePeak[index]) {
+            this.nBelowPeak--;
+        }
+
+        this.utilization[index] = server.getInstantUtilizationWithQueue();
+        this.peakEfficiency[index] = server.getPeakEfficiency();
+        this.paused[index] = server.isPaused();
+        this.hasCapacity[index] = server.getRemainingCapacity() > 0;
+        this.idle[index] = server.getJobsInService() == 0
+                           && server.getQueueLength() == 0
+                           && !server.isPaused();
+        this.abovePeak[index] = server.isAbovePeakEfficiencyUtilization();
+
+        if (this.idle[index]) {
+            this.nIdle++;
+        }
+        if (!this.abovePeak[index]) {
+            this.nBelowPeak++;
+        }
+    }
+
+    /**
+     * Adds a server to the sorted sets it belongs in, using its cached state.
+     *
+     * @param server - the server
+     */
+    private void file(final Server server) {
+        if (this.ordering == null) {
+            return;
+        }
+
+        int index = server.getDataCenterIndex();
+        if (this.paused[index]) {
+            this.pausedServers.add(server);
+        } else {
+            this.activeServers.add(server);
+        }
+
+        boolean peak = this.ordering == ClusterScheduler.PEAK;
+        if (!this.paused[index] && this.hasCapacity[index]
+                && !(peak && this.abovePeak[index])) {
+            this.availableServers.add(server);
+        }
+        if (peak && this.abovePeak[index] && this.hasCapacity[index]) {
+            this.abovePeakServers.add(server);
+        }
+    }
+
+    /**
+     * Removes a server from the sorted sets.
+     * This must happen before its cached state changes.
+     *
+     * @param server - the server
+     */
+    private void unfile(final Server server) {
+        if (this.ordering == null) {
+            return;
+        }
+
+        this.pausedServers.remove(server);
+        this.activeServers.remove(server);
+        this.availableServers.remove(server);
+        this.abovePeakServers.remove(server);
+    }
+
+    /**
+     * Breaks ties by the order servers were added to the datacenter.
+     *
+     * @param s1 - the first server
+     * @param s2 - the second server
+     * @return the comparison of the servers' datacenter indices
+     */
+    private static int compareIndex(final Server s1, final Server s2) {
+        return Integer.compare(s1.getDataCenterIndex(),
+                               s2.getDataCenterIndex());
+    }
+
+    /**
+     * PACK order: highest utilization (including queue) first.
+     */
+    private final class UtilizationOrder
+        implements Comparator<Server>, Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compare(final Server s1, final Server s2) {
+            int c = Double.compare(
+                        utilization[s2.getDataCenterIndex()],
+                        utilization[s1.getDataCenterIndex()]);
+            if (c != 0) {
+                return c;
+            }
+
+            return compareIndex(s1, s2);
+        }
+
+    }
+
+    /**
+     * PEAK order: highest peak efficiency first,
+     * then highest utilization (including queue).
+     */
+    private final class PeakEfficiencyOrder
+        implements Comparator<Server>, Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compare(final Server s1, final Server s2) {
+            int c = Double.compare(
+                        peakEfficiency[s2.getDataCenterIndex()],
+                        peakEfficiency[s1.getDataCenterIndex()]);
+            if (c != 0) {
+                return c;
+            }
+            c = Double.compare(utilization[s2.getDataCenterIndex()],
+                               utilization[s1.getDataCenterIndex()]);
+            if (c != 0) {
+                return c;
+            }
+
+            return compareIndex(s1, s2);
+        }
+
+    }
+
+}
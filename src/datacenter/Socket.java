@@ -31,7 +31,6 @@
 package datacenter;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -71,12 +70,6 @@ public final class Socket implements Powerable, Serializable {
      */
     private Experiment experiment;
 
-    /**
-     * A mapping of jobs to cores.
-     * This allows bookeeping of cores when jobs finish.
-     */
-    private HashMap<Job, Core> jobToCoreMap;
-
     /**
      * Available socket power states.
      */
@@ -128,14 +121,35 @@ public final class Socket implements Powerable, Serializable {
     private SocketPowerState powerState;
 
     /**
-     * Cores are available to process jobs.
+     * The cores of the socket, indexed by {@link Core#getSocketIndex()}.
+     */
+    private Core[] cores;
+
+    /**
+     * Which cores are busy processing a job, indexed like {@link #cores}.
+     */
+    private boolean[] busyCores;
+
+    /**
+     * The number of cores that are busy processing a job.
+     */
+    private int nBusyCores;
+
+    /**
+     * A circular queue of the indices of cores that are available to
+     * process jobs. Cores are handed out in the order they became free.
+     */
+    private int[] availableCores;
+
+    /**
+     * The position of the first available core in {@link #availableCores}.
      */
-    private Vector<Core> availableCores;
+    private int availableHead;
 
     /**
-     *  Cores that are busy processing a job.
+     * The number of cores that are available to process jobs.
      */
-    private Vector<Core> busyCores;
+    private int nAvailableCores;
 
     /**
      * A temporary queue for jobs while a socket is transitioning.
@@ -172,15 +186,18 @@ public final class Socket implements Powerable, Serializable {
         this.server = aServer;
         this.nCores = theNCores;
 
-        this.jobToCoreMap = new HashMap<Job, Core>();
-        this.availableCores = new Vector<Core>();
-        this.busyCores = new Vector<Core>();
+        this.cores = new Core[nCores];
+        this.busyCores = new boolean[nCores];
+        this.nBusyCores = 0;
+        this.availableCores = new int[nCores];
+        this.availableHead = 0;
+        this.nAvailableCores = 0;
         this.transitionQueue = new Vector<Job>();
 
         // Create nCores Cores and put them on the free list
         for (int i = 0; i < nCores; i++) {
-            Core core = new Core(experiment, this);
-            this.availableCores.add(core);
+            this.cores[i] = new Core(experiment, this, i);
+            this.makeCoreAvailable(i);
         }
 
         this.powerPolicy = SocketPowerPolicy.NO_MANAGEMENT;
@@ -195,15 +212,20 @@ public final class Socket implements Powerable, Serializable {
      * @param job - the job being inserted
      */
     public void insertJob(final double time, final Job job) {
+        this.server.markPowerChanged();
 
         if (this.powerState == SocketPowerState.ACTIVE) {
             // Pick the first core off the available cores
-            Core core = this.availableCores.remove(0);
+            int coreIndex = this.availableCores[this.availableHead];
+            this.availableHead = (this.availableHead + 1) % this.nCores;
+            this.nAvailableCores--;
+            Core core = this.cores[coreIndex];
             core.insertJob(time, job);
-            this.busyCores.add(core);
+            this.busyCores[coreIndex] = true;
+            this.nBusyCores++;
 
             // Save the core the job is on so we can remove it later
-            this.jobToCoreMap.put(job, core);
+            job.setCore(core);
         } else if (this.powerState
                    == SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE) {
             this.transitionQueue.add(job);
@@ -244,9 +266,11 @@ public final class Socket implements Powerable, Serializable {
     public void removeJob(final double time,
                           final Job job,
                           final boolean jobWaiting) {
+        this.server.markPowerChanged();
 
         // Find out which socket this job was running on
-        Core core = this.jobToCoreMap.remove(job);
+        Core core = job.getCore();
+        job.setCore(null);
 
         // Error check we got a real socket
         if (core == null) {
@@ -256,17 +280,20 @@ public final class Socket implements Powerable, Serializable {
         core.removeJob(time, job, jobWaiting);
 
         // Mark that the job is no longer busy
-        boolean found = this.busyCores.remove(core);
+        int coreIndex = core.getSocketIndex();
+        boolean found = this.busyCores[coreIndex];
 
         // Error check the socket was considered busy
         if (!found) {
             Sim.fatalError("Could take core off the busy list");
         }
+        this.busyCores[coreIndex] = false;
+        this.nBusyCores--;
 
         // Core is now available
-        this.availableCores.add(core);
+        this.makeCoreAvailable(coreIndex);
 
-        if (this.busyCores.size() == 0 && !jobWaiting) {
+        if (this.nBusyCores == 0 && !jobWaiting) {
             if (this.powerPolicy == SocketPowerPolicy.SOCKET_PARKING) {
                 this.powerState
                     = SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE;
@@ -283,13 +310,24 @@ public final class Socket implements Powerable, Serializable {
         }
     }
 
+    /**
+     * Puts a core at the back of the available cores.
+     *
+     * @param coreIndex - the index of the core
+     */
+    private void makeCoreAvailable(final int coreIndex) {
+        int tail = (this.availableHead + this.nAvailableCores) % this.nCores;
+        this.availableCores[tail] = coreIndex;
+        this.nAvailableCores++;
+    }
+
     /**
      * Gets the number of cores that have slots for jobs.
      *
      * @return the number of cores that are available for jobs
      */
     public int getRemainingCapacity() {
-        return this.availableCores.size() - this.transitionQueue.size();
+        return this.nAvailableCores - this.transitionQueue.size();
     }
 
     /**
@@ -307,23 +345,36 @@ public final class Socket implements Powerable, Serializable {
      * @return the instant utilization of the core
      */
     public double getInstantUtilization() {
-        return ((double) this.busyCores.size() + this.transitionQueue.size())
+        return ((double) this.nBusyCores + this.transitionQueue.size())
                 / this.nCores;
     }
 
     /**
      * Gets an Vector of cores on this socket.
+     * This builds a new Vector on every call, so iterate with
+     * {@link #getCore(int)} where speed matters.
      *
      * @return a vector of the cores on the socket
      */
     public Vector<Core> getCores() {
-        Vector<Core> combined = new Vector<Core>();
-        combined.addAll(this.availableCores);
-        combined.addAll(this.busyCores);
+        Vector<Core> combined = new Vector<Core>(this.nCores);
+        for (int i = 0; i < this.nCores; i++) {
+            combined.add(this.cores[i]);
+        }
 
         return combined;
     }
 
+    /**
+     * Gets a core of this socket.
+     *
+     * @param index - the index of the core (0 to total capacity - 1)
+     * @return the core
+     */
+    public Core getCore(final int index) {
+        return this.cores[index];
+    }
+
     /**
      * Gets the server the socket is on.
      *
@@ -333,13 +384,25 @@ public final class Socket implements Powerable, Serializable {
         return this.server;
     }
 
+    /**
+     * Moves the socket and its cores to another experiment.
+     *
+     * @param anExperiment - the experiment the socket is now part of
+     */
+    void setExperiment(final Experiment anExperiment) {
+        this.experiment = anExperiment;
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].setExperiment(anExperiment);
+        }
+    }
+
     /**
      * Get the number of jobs being serviced.
      *
      * @return The number of jobs being serviced
      */
     public int getJobsInService() {
-        return this.busyCores.size();
+        return this.nBusyCores;
     }
 
     /**
@@ -348,11 +411,8 @@ public final class Socket implements Powerable, Serializable {
      * @param corePowerPolicy - the power management policy to use on the cores
      */
     public void setCorePolicy(final CorePowerPolicy corePowerPolicy) {
-        Vector<Core> cores = this.getCores();
-        Iterator<Core> iter = cores.iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setPowerPolicy(corePowerPolicy);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].setPowerPolicy(corePowerPolicy);
         }
     }
 
@@ -370,11 +430,12 @@ public final class Socket implements Powerable, Serializable {
      * @param time - the time the socket is put into park
      */
     public void enterPark(final double time) {
-        if (this.busyCores.size() != 0) {
+        if (this.nBusyCores != 0) {
             Sim.fatalError("Socket tried to enter park when it shouldn't have");
         }
 
         this.powerState = SocketPowerState.LOW_POWER_IDLE;
+        this.server.markPowerChanged();
     }
 
     /**
@@ -384,6 +445,7 @@ public final class Socket implements Powerable, Serializable {
      */
     public void exitPark(final double time) {
         this.powerState = SocketPowerState.ACTIVE;
+        this.server.markPowerChanged();
         Iterator<Job> iter = this.transitionQueue.iterator();
         while (iter.hasNext()) {
             Job job = iter.next();
@@ -407,11 +469,8 @@ public final class Socket implements Powerable, Serializable {
      * @param time - the time the socket processing is paused
      */
     public void pauseProcessing(final double time) {
-        Vector<Core> cores = this.getCores();
-        Iterator<Core> iter = cores.iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.pauseProcessing(time);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].pauseProcessing(time);
         }
     }
 
@@ -421,11 +480,8 @@ public final class Socket implements Powerable, Serializable {
      * @param time - the time the socket resumes processing
      */
     public void resumeProcessing(final double time) {
-        Vector<Core> cores = this.getCores();
-        Iterator<Core> iter = cores.iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.resumeProcessing(time);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].resumeProcessing(time);
         }
     }
 
@@ -453,10 +509,8 @@ public final class Socket implements Powerable, Serializable {
      * @param coreHaltPower - the idle power of the socket's cores (in watts)
      */
     public void setCoreIdlePower(final double coreHaltPower) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setIdlePower(coreHaltPower);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].setIdlePower(coreHaltPower);
         }
     }
 
@@ -466,10 +520,8 @@ public final class Socket implements Powerable, Serializable {
      * @param coreParkPower - the power of the socket's cores whil parked
      */
     public void setCoreParkPower(final double coreParkPower) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setParkPower(coreParkPower);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].setParkPower(coreParkPower);
         }
     }
 
@@ -480,10 +532,8 @@ public final class Socket implements Powerable, Serializable {
      * socket's cores (in watts)
      */
     public void setCoreActivePower(final double coreActivePower) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setActivePower(coreActivePower);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].setActivePower(coreActivePower);
         }
     }
 
@@ -494,9 +544,8 @@ public final class Socket implements Powerable, Serializable {
      * @param speed - the speed to set the cores to (relative to 1.0)
      */
     public void setDvfsSpeed(final double time, final double speed) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            iter.next().setDvfsSpeed(time, speed);
+        for (int i = 0; i < this.nCores; i++) {
+            this.cores[i].setDvfsSpeed(time, speed);
         }
     }
 
@@ -519,11 +568,8 @@ public final class Socket implements Powerable, Serializable {
         double idlePower = 0.0d;
         if (this.powerState == SocketPowerState.ACTIVE) {
 
-            Iterator<Core> coreIter = this.getCores().iterator();
-            while (coreIter.hasNext()) {
-                Core core = coreIter.next();
-                double corePower = core.getIdlePower();
-                idlePower += corePower;
+            for (int i = 0; i < this.nCores; i++) {
+                idlePower += this.cores[i].getIdlePower();
             }
             idlePower += Constants.SOCKET_IDLE_POWER;
 
@@ -556,11 +602,8 @@ public final class Socket implements Powerable, Serializable {
 
         double dynamicPower = 0.0d;
 
-        Iterator<Core> coreIter = this.getCores().iterator();
-        while (coreIter.hasNext()) {
-            Core core = coreIter.next();
-            double corePower = core.getDynamicPower();
-            dynamicPower += corePower;
+        for (int i = 0; i < this.nCores; i++) {
+            dynamicPower += this.cores[i].getDynamicPower();
         }
 
         return dynamicPower;
@@ -577,11 +620,8 @@ public final class Socket implements Powerable, Serializable {
 
         double dynamicPower = 0.0d;
 
-        Iterator<Core> coreIter = this.getCores().iterator();
-        while (coreIter.hasNext()) {
-            Core core = coreIter.next();
-            double corePower = core.getMaxDynamicPower();
-            dynamicPower += corePower;
+        for (int i = 0; i < this.nCores; i++) {
+            dynamicPower += this.cores[i].getMaxDynamicPower();
         }
 
         return dynamicPower;
@@ -33,6 +33,7 @@ package experiment;
 
 import generator.EmpiricalGenerator;
 import generator.MTRandom;
+import generator.RandomStreams;
 import math.EmpiricalDistribution;
 import core.Experiment;
 import core.ExperimentInput;
@@ -53,6 +54,85 @@ public class PowerCappingExperiment {
 	}
 	
 	public void run(String workloadDir, String workload, int nServers) {
+		run(workloadDir, workload, nServers, 0);
+	}
+
+	/**
+	 * Runs the power capping experiment with its servers split into
+	 * partitions that are simulated in parallel.
+	 *
+	 * @param workloadDir - the directory holding the workloads directory
+	 * @param workload - the name of the workload
+	 * @param nServers - the number of servers in the data center
+	 * @param partitions - the number of partitions, or 0 to run
+	 * sequentially with generators shared by all servers
+	 */
+	public void run(String workloadDir, String workload, int nServers, int partitions) {
+
+		Experiment experiment = createExperiment(workloadDir, workload, nServers, partitions);
+
+		// run the experiment
+		experiment.run();
+
+		// display results
+		System.out.println("====== Results ======");
+		double responseTimeMean = experiment.getStats().getStat(StatName.SOJOURN_TIME).getAverage();
+		System.out.println("Response Mean: " + responseTimeMean);
+		double responseTime95th = experiment.getStats().getStat(StatName.SOJOURN_TIME).getQuantile(.95);
+		System.out.println("Response 95: " + responseTime95th);
+		double averageServerLevelCap = experiment.getStats().getStat(StatName.SERVER_LEVEL_CAP).getAverage();
+		System.out.println("Average Server Cap : " + averageServerLevelCap);
+		double averageUtilization = experiment.getStats().getTimeWeightedStat(TimeWeightedStatName.SERVER_UTILIZATION).getAverage();
+		System.out.println("Average Utilization : " + averageUtilization);
+	}//End run()
+
+	/**
+	 * Sets up the power capping experiment without running it.
+	 *
+	 * @param workloadDir - the directory holding the workloads directory
+	 * @param workload - the name of the workload
+	 * @param nServers - the number of servers in the data center
+	 * @return the experiment, ready to run
+	 */
+	public Experiment createExperiment(String workloadDir, String workload, int nServers) {
+		return createExperiment(workloadDir, workload, nServers, 0);
+	}
+
+	/**
+	 * Sets up the power capping experiment without running it.
+	 * Partitioned runs give each server its own generators, so the
+	 * results are the same for any number of partitions.
+	 *
+	 * @param workloadDir - the directory holding the workloads directory
+	 * @param workload - the name of the workload
+	 * @param nServers - the number of servers in the data center
+	 * @param partitions - the number of partitions, or 0 to run
+	 * sequentially with generators shared by all servers
+	 * @return the experiment, ready to run
+	 */
+	public Experiment createExperiment(String workloadDir, String workload, int nServers, int partitions) {
+		return createExperiment(workloadDir, workload, nServers, partitions,
+				.5, 65, CorePowerPolicy.NO_MANAGEMENT, SocketPowerPolicy.NO_MANAGEMENT);
+	}
+
+	/**
+	 * Sets up a power capping experiment for an arbitrary load, cap and
+	 * power management policy without running it.
+	 *
+	 * @param workloadDir - the directory holding the workloads directory
+	 * @param workload - the name of the workload
+	 * @param nServers - the number of servers in the data center
+	 * @param partitions - the number of partitions, or 0 to run
+	 * sequentially with generators shared by all servers
+	 * @param targetRho - the utilization the arrivals are scaled to
+	 * @param capPerServer - the power cap, in watts per server
+	 * @param corePolicy - the power management policy of the cores
+	 * @param socketPolicy - the power management policy of the sockets
+	 * @return the experiment, ready to run
+	 */
+	public Experiment createExperiment(String workloadDir, String workload, int nServers, int partitions,
+			double targetRho, double capPerServer,
+			CorePowerPolicy corePolicy, SocketPowerPolicy socketPolicy) {
 
 		// service file
 		String arrivalFile = workloadDir+"workloads/"+workload+".arrival.cdf";
@@ -61,7 +141,6 @@ public class PowerCappingExperiment {
 		// specify distribution
 		int cores = 4;
 		int sockets = 1;
-		double targetRho = .5;
 		
 		EmpiricalDistribution arrivalDistribution = EmpiricalDistribution.loadDistribution(arrivalFile, 1e-3);
 		EmpiricalDistribution serviceDistribution = EmpiricalDistribution.loadDistribution(serviceFile, 1e-3);
@@ -100,21 +179,29 @@ public class PowerCappingExperiment {
 		//experimentOutput.addTimeWeightedOutput(TimeWeightedStatName.SERVER_POWER, .01, .5, .01, 50000, .001);
 		//experimentOutput.addTimeWeightedOutput(TimeWeightedStatName.SERVER_UTILIZATION, .01, .5, .01, 50000, .001);
 		Experiment experiment = new Experiment("Power capping test", rand, experimentInput, experimentOutput);
+		if (partitions > 0) {
+			experiment.setPartitions(partitions);
+		}
 		
 		// setup datacenter
 		DataCenter dataCenter = new DataCenter(experiment);
 		
 		double capPeriod = 1.0;
-		double globalCap = 65*nServers;
+		double globalCap = capPerServer*nServers;
 		double maxPower = 100*nServers;
 		double minPower = 59*nServers;
 		PowerCappingEnforcer enforcer = new PowerCappingEnforcer(experiment, capPeriod, globalCap, maxPower, minPower);
 		for(int i = 0; i < nServers; i++) {
+			if (partitions > 0) {
+				RandomStreams streams = experiment.getRandomStreams();
+				arrivalGenerator = new EmpiricalGenerator(streams.getStream(i, RandomStreams.ARRIVAL_STREAM), arrivalDistribution, "arrival", arrivalScale);
+				serviceGenerator = new EmpiricalGenerator(streams.getStream(i, RandomStreams.SERVICE_STREAM), serviceDistribution, "service", 1.0);
+			}
 			Server server = new Server(sockets, cores, experiment, arrivalGenerator, serviceGenerator);
 //			Server server = new PowerNapServer(sockets, cores, experiment, arrivalGenerator, serviceGenerator, 0.001, 5);
 
-			server.setSocketPolicy(SocketPowerPolicy.NO_MANAGEMENT);
-			server.setCorePolicy(CorePowerPolicy.NO_MANAGEMENT);	
+			server.setSocketPolicy(socketPolicy);
+			server.setCorePolicy(corePolicy);
 			double coreActivePower = 40 * (4.0/5)/cores;
 			double coreHaltPower = coreActivePower*.2;
 			double coreParkPower = 0;
@@ -134,24 +221,16 @@ public class PowerCappingExperiment {
 		
 		experimentInput.setDataCenter(dataCenter);
 
-		// run the experiment
-		experiment.run();
-
-		// display results
-		System.out.println("====== Results ======");
-		double responseTimeMean = experiment.getStats().getStat(StatName.SOJOURN_TIME).getAverage();
-		System.out.println("Response Mean: " + responseTimeMean);
-		double responseTime95th = experiment.getStats().getStat(StatName.SOJOURN_TIME).getQuantile(.95);
-		System.out.println("Response 95: " + responseTime95th);
-		double averageServerLevelCap = experiment.getStats().getStat(StatName.SERVER_LEVEL_CAP).getAverage();
-		System.out.println("Average Server Cap : " + averageServerLevelCap);
-		double averageUtilization = experiment.getStats().getTimeWeightedStat(TimeWeightedStatName.SERVER_UTILIZATION).getAverage();
-		System.out.println("Average Utilization : " + averageUtilization);
-	}//End run()
+		return experiment;
+	}//End createExperiment()
 	
 	public static void main(String[] args) {
 		PowerCappingExperiment exp  = new PowerCappingExperiment();
-		exp.run(args[0],args[1],Integer.valueOf(args[2]));
+		int partitions = 0;
+		if (args.length > 3) {
+			partitions = Integer.valueOf(args[3]);
+		}
+		exp.run(args[0],args[1],Integer.valueOf(args[2]),partitions);
 	}
 	
 }//End PowerCappingExperiment
@@ -30,6 +30,8 @@
  */
 package generator;
 
+import java.util.Random;
+
 /**
  * Generates a constant number.
  *
@@ -51,7 +53,7 @@ public final class ConstantGenerator extends Generator {
      * @param mtRandom - the random number generator
      * @param theValue - the value to return
      */
-    public ConstantGenerator(final MTRandom mtRandom, final double theValue) {
+    public ConstantGenerator(final Random mtRandom, final double theValue) {
         super(mtRandom);
         this.value = theValue;
     }
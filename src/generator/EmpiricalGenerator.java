@@ -30,6 +30,8 @@
  */
 package generator;
 
+import java.util.Random;
+
 import math.EmpiricalDistribution;
 
 /**
@@ -60,7 +62,7 @@ public class EmpiricalGenerator extends Generator {
      * get uniform random number from.
      * @param aCdf - the empirical distribution to draw from
      */
-    public EmpiricalGenerator(final MTRandom mtRandom,
+    public EmpiricalGenerator(final Random mtRandom,
                               final EmpiricalDistribution aCdf) {
         this(mtRandom, aCdf, "");
     }
@@ -73,7 +75,7 @@ public class EmpiricalGenerator extends Generator {
      * @param aCdf - the empirical distribution to draw from
      * @param theName - the name of the distribution
      */
-    public EmpiricalGenerator(final MTRandom mtRandom,
+    public EmpiricalGenerator(final Random mtRandom,
                               final EmpiricalDistribution aCdf,
                               final String theName) {
         super(mtRandom);
@@ -92,7 +94,7 @@ public class EmpiricalGenerator extends Generator {
    * @param theScale - a scaling factor to modulate the distribution by
    * (random numbers are multiplied by this scaling factor)
    */
-  public EmpiricalGenerator(final MTRandom mtRandom,
+  public EmpiricalGenerator(final Random mtRandom,
                             final EmpiricalDistribution aCdf,
                             final String theName,
                             final double theScale) {
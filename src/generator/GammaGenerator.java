@@ -56,7 +56,7 @@ public class GammaGenerator extends Generator {
      * @param theK - the gamma distribution's k parameter
      * @param theTheta - the gamma distribution's theta parameter
      */
-    public GammaGenerator(final MTRandom generator,
+    public GammaGenerator(final Random generator,
                           final double theK,
                           final double theTheta) {
         super(generator);
@@ -31,6 +31,7 @@
 package generator;
 
 import java.io.Serializable;
+import java.util.Random;
 
 /**
  * A Generator creates sequences of number based on distributions
@@ -46,17 +47,26 @@ public abstract class Generator implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** The random number generator to feed this generator. */
-    protected MTRandom generator;
+    protected Random generator;
 
     /**
      * Creates a new Generator.
      *
      * @param aGenerator - the random number generator to feed this generator.
      */
-    public Generator(final MTRandom aGenerator) {
+    public Generator(final Random aGenerator) {
         this.generator = aGenerator;
     }
 
+    /**
+     * Get the random number generator feeding this generator.
+     *
+     * @return the random number generator feeding this generator
+     */
+    public final Random getRandom() {
+        return this.generator;
+    }
+
     /**
      * Get the name of the generator.
      *
@@ -70,4 +80,11 @@ public abstract class Generator implements Serializable {
      * @return the next values
      */
     public abstract double next();
+
+    /**
+     * Releases any files the generator holds open. The generator can
+     * still be used afterwards, and opens them again if it needs to.
+     */
+    public void close() {
+    }
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package generator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import core.Sim;
+
+/**
+ * Splits an experiment's seed into independent random number streams,
+ * one for each generator of each server. Server i's streams start
+ * i * 2^192 numbers into the sequence of the seed, and generator j of a
+ * server starts j * 2^128 numbers into the server's, so streams never
+ * overlap. A stream only depends on the seed and its (server,
+ * generator) index, not on the order streams are made in or which
+ * thread uses them, so results are reproducible however the servers
+ * are partitioned.
+ *
+ * Reseeding re-derives every stream handed out so far in place, so
+ * generators already holding them pick up the new seed (e.g., when an
+ * experiment is replicated with a new seed).
+ */
+public final class RandomStreams implements Serializable {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 1L;
+
+    /** The index of the arrival generator's stream in a server. */
+    public static final int ARRIVAL_STREAM = 0;
+
+    /** The index of the service generator's stream in a server. */
+    public static final int SERVICE_STREAM = 1;
+
+    /** The seed the streams are derived from. */
+    private long seed;
+
+    /** If the streams produce antithetic variates. */
+    private boolean antithetic;
+
+    /** The streams handed out so far. */
+    private ArrayList<StreamRandom> streams;
+
+    /** The server index of each stream handed out. */
+    private ArrayList<Long> streamServers;
+
+    /** The generator index of each stream handed out. */
+    private ArrayList<Integer> streamGenerators;
+
+    /** The start of the last server's streams, to derive the next from. */
+    private transient StreamRandom serverStart;
+
+    /** The server {@link #serverStart} belongs to. */
+    private transient long serverStartIndex;
+
+    /**
+     * Creates a new RandomStreams.
+     *
+     * @param theSeed - the seed to derive the streams from
+     */
+    public RandomStreams(final long theSeed) {
+        this.seed = theSeed;
+        this.antithetic = false;
+        this.streams = new ArrayList<StreamRandom>();
+        this.streamServers = new ArrayList<Long>();
+        this.streamGenerators = new ArrayList<Integer>();
+    }
+
+    /**
+     * Gets a new stream for a generator of a server.
+     *
+     * @param server - the index of the server
+     * @param generator - the index of the generator within the server
+     * (e.g., {@link #ARRIVAL_STREAM})
+     * @return the stream
+     */
+    public StreamRandom getStream(final long server, final int generator) {
+        if (server < 0 || generator < 0) {
+            Sim.fatalError("Stream indices must not be negative");
+        }
+        StreamRandom stream = new StreamRandom(this.seed);
+        stream.setAntithetic(this.antithetic);
+        this.position(stream, server, generator);
+        this.streams.add(stream);
+        this.streamServers.add(server);
+        this.streamGenerators.add(generator);
+
+        return stream;
+    }
+
+    /**
+     * Reseeds the streams, including those already handed out.
+     *
+     * @param theSeed - the seed to derive the streams from
+     */
+    public void setSeed(final long theSeed) {
+        this.seed = theSeed;
+        this.serverStart = null;
+        for (int i = 0; i < this.streams.size(); i++) {
+            this.position(this.streams.get(i),
+                          this.streamServers.get(i),
+                          this.streamGenerators.get(i));
+        }
+    }
+
+    /**
+     * Sets if the streams, including those already handed out, produce
+     * antithetic variates (see {@link StreamRandom#setAntithetic}).
+     *
+     * @param theAntithetic - if the streams produce antithetic variates
+     */
+    public void setAntithetic(final boolean theAntithetic) {
+        this.antithetic = theAntithetic;
+        for (int i = 0; i < this.streams.size(); i++) {
+            this.streams.get(i).setAntithetic(theAntithetic);
+        }
+    }
+
+    /**
+     * Gets if the streams produce antithetic variates.
+     *
+     * @return if the streams produce antithetic variates
+     */
+    public boolean isAntithetic() {
+        return this.antithetic;
+    }
+
+    /**
+     * Gets the seed the streams are derived from.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Moves a generator to the start of a stream.
+     *
+     * @param stream - the generator to move
+     * @param server - the index of the server
+     * @param generator - the index of the generator within the server
+     */
+    private void position(final StreamRandom stream,
+                          final long server,
+                          final int generator) {
+        if (this.serverStart == null || this.serverStartIndex > server) {
+            this.serverStart = new StreamRandom(this.seed);
+            this.serverStartIndex = 0;
+        }
+        while (this.serverStartIndex < server) {
+            this.serverStart.longJump();
+            this.serverStartIndex++;
+        }
+
+        stream.setState(this.serverStart);
+        for (int i = 0; i < generator; i++) {
+            stream.jump();
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package generator;
+
+import java.util.Random;
+
+import core.Sim;
+
+/**
+ * A xoshiro256** random number generator
+ * (http://prng.di.unimi.it/). Unlike {@link MTRandom} it isn't
+ * synchronized, so each stream must only be used by one thread, and it
+ * can jump ahead 2^128 or 2^192 numbers in constant time, which splits
+ * one seed into independent streams (see {@link RandomStreams}).
+ */
+public final class StreamRandom extends Random {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 1L;
+
+    /** The polynomial of a jump of 2^128 numbers. */
+    private static final long[] JUMP = {0x180ec6d33cfd0abaL,
+                                        0xd5a61266f0c9392cL,
+                                        0xa9582618e03fc9aaL,
+                                        0x39abdc4529b1661cL};
+
+    /** The polynomial of a jump of 2^192 numbers. */
+    private static final long[] LONG_JUMP = {0x76e15d3efefdcbbfL,
+                                             0xc5004e441c522fb3L,
+                                             0x77710069854ee241L,
+                                             0x39109bb02acbe635L};
+
+    /** The scale from 53 random bits to a double in [0, 1). */
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    /** The first word of the generator's state. */
+    private long s0;
+
+    /** The second word of the generator's state. */
+    private long s1;
+
+    /** The third word of the generator's state. */
+    private long s2;
+
+    /** The fourth word of the generator's state. */
+    private long s3;
+
+    /**
+     * If the generator produces antithetic variates: every uniform u
+     * it would produce is replaced by (1 - u).
+     */
+    private boolean antithetic;
+
+    /**
+     * Creates a new StreamRandom.
+     *
+     * @param seed - the seed, expanded to the full state with SplitMix64
+     */
+    public StreamRandom(final long seed) {
+        super(seed);
+    }
+
+    /**
+     * Creates a copy of another StreamRandom, at the same point in its
+     * sequence.
+     *
+     * @param other - the generator to copy
+     */
+    public StreamRandom(final StreamRandom other) {
+        super(0);
+        this.setState(other);
+    }
+
+    /**
+     * Seeds the generator, expanding the seed to the full state with
+     * SplitMix64.
+     *
+     * @param seed - the seed
+     */
+    @Override
+    public void setSeed(final long seed) {
+        super.setSeed(seed);
+        long z = seed;
+        z += 0x9e3779b97f4a7c15L;
+        this.s0 = mix(z);
+        z += 0x9e3779b97f4a7c15L;
+        this.s1 = mix(z);
+        z += 0x9e3779b97f4a7c15L;
+        this.s2 = mix(z);
+        z += 0x9e3779b97f4a7c15L;
+        this.s3 = mix(z);
+    }
+
+    /**
+     * Sets if the generator produces antithetic variates. A run with
+     * antithetic variates is negatively correlated with the same run
+     * without them, so averaging the two reduces variance.
+     *
+     * @param theAntithetic - if the generator produces antithetic variates
+     */
+    public void setAntithetic(final boolean theAntithetic) {
+        this.antithetic = theAntithetic;
+    }
+
+    /**
+     * Gets if the generator produces antithetic variates.
+     *
+     * @return if the generator produces antithetic variates
+     */
+    public boolean isAntithetic() {
+        return this.antithetic;
+    }
+
+    /**
+     * Sets the generator to the same point as another.
+     *
+     * @param other - the generator to copy
+     */
+    public void setState(final StreamRandom other) {
+        this.s0 = other.s0;
+        this.s1 = other.s1;
+        this.s2 = other.s2;
+        this.s3 = other.s3;
+    }
+
+    /**
+     * Sets the generator's state directly, e.g., to check it against
+     * the reference implementation. The state must not be all zeros.
+     *
+     * @param theS0 - the first word of the state
+     * @param theS1 - the second word of the state
+     * @param theS2 - the third word of the state
+     * @param theS3 - the fourth word of the state
+     */
+    public void setState(final long theS0,
+                         final long theS1,
+                         final long theS2,
+                         final long theS3) {
+        if ((theS0 | theS1 | theS2 | theS3) == 0) {
+            Sim.fatalError("A xoshiro256** state can't be all zeros");
+        }
+        this.s0 = theS0;
+        this.s1 = theS1;
+        this.s2 = theS2;
+        this.s3 = theS3;
+    }
+
+    /**
+     * The SplitMix64 output function.
+     *
+     * @param z - the value to mix
+     * @return the mixed value
+     */
+    private static long mix(final long z) {
+        long x = z;
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Generates the next 64 random bits.
+     *
+     * @return the next 64 random bits
+     */
+    @Override
+    public long nextLong() {
+        long bits = this.nextBits();
+        if (this.antithetic) {
+            return ~bits;
+        }
+
+        return bits;
+    }
+
+    /**
+     * Advances the generator.
+     *
+     * @return the next 64 random bits of the sequence
+     */
+    private long nextBits() {
+        long result = Long.rotateLeft(this.s1 * 5, 7) * 9;
+        long t = this.s1 << 17;
+        this.s2 ^= this.s0;
+        this.s3 ^= this.s1;
+        this.s1 ^= this.s2;
+        this.s0 ^= this.s3;
+        this.s2 ^= t;
+        this.s3 = Long.rotateLeft(this.s3, 45);
+
+        return result;
+    }
+
+    /**
+     * Generates the next random bits.
+     *
+     * @param bits - the number of random bits
+     * @return the random bits
+     */
+    @Override
+    protected int next(final int bits) {
+        return (int) (this.nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * Generates a random int.
+     *
+     * @return a random int
+     */
+    @Override
+    public int nextInt() {
+        return (int) (this.nextLong() >>> 32);
+    }
+
+    /**
+     * Generates a random double in [0, 1).
+     *
+     * @return a random double in [0, 1)
+     */
+    @Override
+    public double nextDouble() {
+        return (this.nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Moves the generator 2^128 numbers ahead.
+     */
+    public void jump() {
+        this.jump(JUMP);
+    }
+
+    /**
+     * Moves the generator 2^192 numbers ahead.
+     */
+    public void longJump() {
+        this.jump(LONG_JUMP);
+    }
+
+    /**
+     * Moves the generator ahead by a jump polynomial.
+     *
+     * @param polynomial - the jump polynomial
+     */
+    private void jump(final long[] polynomial) {
+        long t0 = 0;
+        long t1 = 0;
+        long t2 = 0;
+        long t3 = 0;
+        for (int i = 0; i < polynomial.length; i++) {
+            for (int b = 0; b < 64; b++) {
+                if ((polynomial[i] & (1L << b)) != 0) {
+                    t0 ^= this.s0;
+                    t1 ^= this.s1;
+                    t2 ^= this.s2;
+                    t3 ^= this.s3;
+                }
+                this.nextBits();
+            }
+        }
+        this.s0 = t0;
+        this.s1 = t1;
+        this.s2 = t2;
+        this.s3 = t3;
+    }
+
+}
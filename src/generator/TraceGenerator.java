@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package generator;
+
+/**
+ * Replays one column of a trace, e.g., the interarrival times of a
+ * production request log. A server's arrival and service generators
+ * should share a {@link TraceReader} so they replay the same records.
+ */
+public final class TraceGenerator extends Generator {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 1L;
+
+    /** The trace to replay. */
+    private TraceReader reader;
+
+    /** The column of the trace to replay. */
+    private TraceReader.Column column;
+
+    /** The scaling factor to multiply replayed times by. */
+    private double scale;
+
+    /**
+     * Creates a new TraceGenerator.
+     *
+     * @param aReader - the trace to replay
+     * @param aColumn - the column of the trace to replay
+     */
+    public TraceGenerator(final TraceReader aReader,
+                          final TraceReader.Column aColumn) {
+        this(aReader, aColumn, 1.0);
+    }
+
+    /**
+     * Creates a new TraceGenerator.
+     *
+     * @param aReader - the trace to replay
+     * @param aColumn - the column of the trace to replay
+     * @param theScale - a scaling factor to multiply replayed times by
+     */
+    public TraceGenerator(final TraceReader aReader,
+                          final TraceReader.Column aColumn,
+                          final double theScale) {
+        super(null);
+        this.reader = aReader;
+        this.column = aColumn;
+        this.scale = theScale;
+    }
+
+    /**
+     * Replays the next value of the column.
+     *
+     * @return the next value
+     */
+    @Override
+    public double next() {
+        return this.scale * this.reader.next(this.column);
+    }
+
+    /**
+     * Closes the trace the generator replays.
+     */
+    @Override
+    public void close() {
+        this.reader.close();
+    }
+
+    /**
+     * Gets the trace the generator replays.
+     *
+     * @return the trace the generator replays
+     */
+    public TraceReader getReader() {
+        return this.reader;
+    }
+
+    /**
+     * Gets the name of the generator.
+     *
+     * @return the name of the generator
+     */
+    @Override
+    public String getName() {
+        return "Trace " + this.column + " of " + this.reader.getFileName();
+    }
+
+}
@@ -0,0 +1,550 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package generator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import core.Sim;
+
+/**
+ * Streams (interarrival time, service time) records from a trace file,
+ * for replay by {@link TraceGenerator}s. Only a chunk of the trace is
+ * held in memory at a time, so traces can be much larger than the heap.
+ *
+ * Two formats are read:
+ * - binary files (ending in {@link #BINARY_EXTENSION}): a 16-byte
+ *   header (magic number, version, two reserved words) followed by
+ *   records of two big-endian doubles. These are mapped into memory a
+ *   chunk at a time and read sequentially, so the OS reads ahead.
+ * - text files: one record per line, the two times separated by a
+ *   comma or whitespace. Blank lines and lines starting with # are
+ *   skipped.
+ *
+ * A trace can be sharded between servers: shard s of n replays records
+ * s, s + n, s + 2n, ... A reader can also loop back to the start of its
+ * shard when it reaches the end, instead of stopping the simulation.
+ *
+ * A deserialized reader (e.g., in a restored checkpoint or a copy of an
+ * experiment) carries on from the record it had reached, reopening the
+ * trace when it is next used.
+ */
+public final class TraceReader implements Serializable {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 2L;
+
+    /** The extension of binary trace files. */
+    public static final String BINARY_EXTENSION = ".trace";
+
+    /** Marks the start of a binary trace file ("BTRC"). */
+    private static final int BINARY_MAGIC = 0x42545243;
+
+    /** The version of the binary trace format. */
+    private static final int BINARY_VERSION = 1;
+
+    /** The size of the binary header in bytes. */
+    private static final int BINARY_HEADER_SIZE = 16;
+
+    /** The size of a binary record in bytes. */
+    private static final int RECORD_SIZE = 16;
+
+    /** The number of records mapped into memory at a time. */
+    private static final int CHUNK_RECORDS = 1 << 19;
+
+    /** The size of the buffer for text traces in characters. */
+    private static final int TEXT_BUFFER_SIZE = 1 << 20;
+
+    /** The columns of a record. */
+    public static enum Column {
+        /** The time since the previous arrival. */
+        INTERARRIVAL,
+
+        /** The service time of the arriving job. */
+        SERVICE
+    }
+
+    /** The name of the trace file. */
+    private String fileName;
+
+    /** The shard of the trace this reader replays. */
+    private int shard;
+
+    /** The number of shards the trace is split into. */
+    private int nShards;
+
+    /** If the reader starts over at the end of the trace. */
+    private boolean loop;
+
+    /** If the trace is in the binary format. */
+    private boolean binary;
+
+    /** If the reader has opened the trace since it was created. */
+    private boolean opened;
+
+    /**
+     * If the trace file is open in this reader, which it isn't after
+     * deserialization.
+     */
+    private transient boolean fileOpen;
+
+    /** The values of the current record. */
+    private double[] record;
+
+    /** Which columns of the current record have been used. */
+    private boolean[] used;
+
+    /** The number of records this reader has replayed. */
+    private long nRecordsRead;
+
+    /** The binary trace file, or null. */
+    private transient RandomAccessFile binaryFile;
+
+    /** The number of records in the binary trace. */
+    private transient long nBinaryRecords;
+
+    /** The index in the binary trace of the next record to replay. */
+    private long nextBinaryRecord;
+
+    /** The mapped chunk of the binary trace. */
+    private transient MappedByteBuffer chunk;
+
+    /** The index in the binary trace of the chunk's first record. */
+    private transient long chunkStart;
+
+    /** The index in the binary trace of the record after the chunk. */
+    private transient long chunkEnd;
+
+    /** The text trace, or null. */
+    private transient BufferedReader textReader;
+
+    /** The number of records read from the text trace in this pass. */
+    private long textRecordIndex;
+
+    /**
+     * Creates a TraceReader replaying a whole trace once.
+     *
+     * @param theFileName - the name of the trace file
+     */
+    public TraceReader(final String theFileName) {
+        this(theFileName, 0, 1, false);
+    }
+
+    /**
+     * Creates a TraceReader replaying a shard of a trace.
+     *
+     * @param theFileName - the name of the trace file
+     * @param theShard - the shard to replay
+     * @param theNShards - the number of shards the trace is split into
+     * @param loopTrace - if the reader starts over at the end of its
+     * shard (otherwise running out is an error)
+     */
+    public TraceReader(final String theFileName,
+                       final int theShard,
+                       final int theNShards,
+                       final boolean loopTrace) {
+        if (theNShards < 1 || theShard < 0 || theShard >= theNShards) {
+            Sim.fatalError("Shard " + theShard + " of " + theNShards
+                           + " doesn't exist");
+        }
+        this.fileName = theFileName;
+        this.shard = theShard;
+        this.nShards = theNShards;
+        this.loop = loopTrace;
+        this.binary = theFileName.endsWith(BINARY_EXTENSION);
+    }
+
+    /**
+     * Gets the value of a column of the current record. Each column can
+     * be used once per record, using a column again moves on to the next
+     * record, so an arrival and a service generator stay in step.
+     *
+     * @param column - the column to get
+     * @return the value of the column
+     */
+    public double next(final Column column) {
+        if (!this.opened) {
+            this.open();
+        } else if (!this.fileOpen) {
+            this.reopen();
+        }
+
+        int index = column.ordinal();
+        if (this.used[index]) {
+            this.readRecord();
+        }
+        this.used[index] = true;
+
+        return this.record[index];
+    }
+
+    /**
+     * Gets the number of records this reader has replayed.
+     *
+     * @return the number of records replayed
+     */
+    public long getRecordsRead() {
+        return this.nRecordsRead;
+    }
+
+    /**
+     * Gets the name of the trace file.
+     *
+     * @return the name of the trace file
+     */
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    /**
+     * Closes the trace file. The reader keeps its place, and reopens the
+     * trace there if it is used again. The mapped chunk of a binary trace
+     * is unmapped once it is garbage collected.
+     */
+    public void close() {
+        this.chunk = null;
+        this.chunkStart = 0;
+        this.chunkEnd = 0;
+        try {
+            if (this.binaryFile != null) {
+                this.binaryFile.close();
+                this.binaryFile = null;
+            }
+            if (this.textReader != null) {
+                this.textReader.close();
+                this.textReader = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't close trace " + this.fileName
+                               + ": " + e.getMessage());
+        }
+        this.fileOpen = false;
+    }
+
+    /**
+     * Opens the trace and reads the first record.
+     */
+    private void open() {
+        this.opened = true;
+        this.record = new double[Column.values().length];
+        this.used = new boolean[Column.values().length];
+        this.nRecordsRead = 0;
+        try {
+            if (this.binary) {
+                this.openBinary();
+                this.nextBinaryRecord = this.shard;
+            } else {
+                this.openText();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            Sim.fatalError("Couldn't open trace " + this.fileName);
+        }
+        this.fileOpen = true;
+        this.readRecord();
+    }
+
+    /**
+     * Opens the trace again at the record the reader had reached, e.g.,
+     * after it was deserialized.
+     */
+    private void reopen() {
+        try {
+            if (this.binary) {
+                this.openBinary();
+            } else {
+                long index = this.textRecordIndex;
+                this.openText();
+                while (this.textRecordIndex < index) {
+                    if (this.readTextLine() == null) {
+                        Sim.fatalError("Trace " + this.fileName
+                                + " is shorter than when it was read");
+                    }
+                    this.textRecordIndex++;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            Sim.fatalError("Couldn't reopen trace " + this.fileName);
+        }
+        this.fileOpen = true;
+    }
+
+    /**
+     * Opens a binary trace and checks its header, leaving the position
+     * of the next record alone.
+     *
+     * @throws IOException if the trace can't be read
+     */
+    private void openBinary() throws IOException {
+        if (this.binaryFile != null) {
+            this.binaryFile.close();
+        }
+        this.binaryFile = new RandomAccessFile(this.fileName, "r");
+        long size = this.binaryFile.length();
+        if (size < BINARY_HEADER_SIZE
+                || this.binaryFile.readInt() != BINARY_MAGIC) {
+            Sim.fatalError(this.fileName + " isn't a binary trace");
+        }
+        int version = this.binaryFile.readInt();
+        if (version != BINARY_VERSION) {
+            Sim.fatalError("Unsupported trace version " + version
+                           + " in " + this.fileName);
+        }
+        if ((size - BINARY_HEADER_SIZE) % RECORD_SIZE != 0) {
+            Sim.fatalError(this.fileName + " ends in a partial record");
+        }
+        this.nBinaryRecords = (size - BINARY_HEADER_SIZE) / RECORD_SIZE;
+        this.chunk = null;
+        this.chunkStart = 0;
+        this.chunkEnd = 0;
+    }
+
+    /**
+     * Opens a text trace at its start.
+     *
+     * @throws IOException if the trace can't be read
+     */
+    private void openText() throws IOException {
+        if (this.textReader != null) {
+            this.textReader.close();
+        }
+        this.textReader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(this.fileName)), TEXT_BUFFER_SIZE);
+        this.textRecordIndex = 0;
+    }
+
+    /**
+     * Moves on to the next record of the shard.
+     */
+    private void readRecord() {
+        try {
+            if (this.binary) {
+                this.readBinaryRecord();
+            } else {
+                this.readTextRecord();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            Sim.fatalError("Couldn't read trace " + this.fileName);
+        }
+
+        for (int i = 0; i < this.record.length; i++) {
+            if (!(this.record[i] >= 0.0)) {
+                Sim.fatalError("Trace " + this.fileName + " has a bad time "
+                               + this.record[i] + " in record "
+                               + this.nRecordsRead);
+            }
+            this.used[i] = false;
+        }
+        this.nRecordsRead++;
+    }
+
+    /**
+     * Reads the next record of the shard from a binary trace, mapping
+     * the chunk it is in if needed.
+     *
+     * @throws IOException if the trace can't be read
+     */
+    private void readBinaryRecord() throws IOException {
+        if (this.nextBinaryRecord >= this.nBinaryRecords) {
+            if (!this.loop || this.shard >= this.nBinaryRecords) {
+                this.ranOut();
+            }
+            this.nextBinaryRecord = this.shard;
+        }
+
+        long index = this.nextBinaryRecord;
+        if (index < this.chunkStart || index >= this.chunkEnd) {
+            // Drop the old chunk first, so it can be unmapped
+            this.chunk = null;
+            this.chunkStart = index;
+            this.chunkEnd = Math.min(index + CHUNK_RECORDS,
+                                     this.nBinaryRecords);
+            this.chunk = this.binaryFile.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY,
+                    BINARY_HEADER_SIZE + this.chunkStart * RECORD_SIZE,
+                    (this.chunkEnd - this.chunkStart) * RECORD_SIZE);
+        }
+
+        int offset = (int) (index - this.chunkStart) * RECORD_SIZE;
+        this.record[0] = this.chunk.getDouble(offset);
+        this.record[1] = this.chunk.getDouble(offset + RECORD_SIZE / 2);
+        this.nextBinaryRecord += this.nShards;
+    }
+
+    /**
+     * Reads the next record of the shard from a text trace.
+     *
+     * @throws IOException if the trace can't be read
+     */
+    private void readTextRecord() throws IOException {
+        boolean startedOver = false;
+        while (true) {
+            String line = this.readTextLine();
+            if (line == null) {
+                // Only start over if the last pass found a record
+                if (!this.loop || startedOver
+                        || this.textRecordIndex <= this.shard) {
+                    this.ranOut();
+                }
+                this.openText();
+                startedOver = true;
+                continue;
+            }
+
+            long index = this.textRecordIndex;
+            this.textRecordIndex++;
+            if (index % this.nShards == this.shard) {
+                this.parseTextRecord(line);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the next line of a text trace that holds a record.
+     *
+     * @return the line, or null at the end of the trace
+     * @throws IOException if the trace can't be read
+     */
+    private String readTextLine() throws IOException {
+        String line = this.textReader.readLine();
+        while (line != null) {
+            line = line.trim();
+            if (line.length() != 0 && line.charAt(0) != '#') {
+                return line;
+            }
+            line = this.textReader.readLine();
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses a line of a text trace into the current record.
+     *
+     * @param line - the line holding the record
+     */
+    private void parseTextRecord(final String line) {
+        String[] parts = line.split("[,\\s]+");
+        if (parts.length < 2) {
+            Sim.fatalError("Trace " + this.fileName
+                           + " needs two times per line: " + line);
+        }
+        this.record[0] = Double.parseDouble(parts[0]);
+        this.record[1] = Double.parseDouble(parts[1]);
+    }
+
+    /**
+     * Stops the simulation since the trace has no more records.
+     */
+    private void ranOut() {
+        Sim.fatalError("Trace " + this.fileName + " (shard " + this.shard
+                       + " of " + this.nShards + ") ran out after "
+                       + this.nRecordsRead + " records");
+    }
+
+    /**
+     * Converts a text trace to the binary format, streaming it so the
+     * trace never has to fit in memory.
+     *
+     * @param textFileName - the name of the text trace
+     * @param binaryFileName - the name of the binary trace to write
+     * @return the number of records converted
+     */
+    public static long convertToBinary(final String textFileName,
+                                       final String binaryFileName) {
+        TraceReader reader = new TraceReader(textFileName);
+        long nRecords = 0;
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(binaryFileName),
+                            TEXT_BUFFER_SIZE));
+            try {
+                out.writeInt(BINARY_MAGIC);
+                out.writeInt(BINARY_VERSION);
+                out.writeInt(0);
+                out.writeInt(0);
+                reader.record = new double[Column.values().length];
+                reader.openText();
+                String line = reader.readTextLine();
+                while (line != null) {
+                    reader.parseTextRecord(line);
+                    out.writeDouble(reader.record[0]);
+                    out.writeDouble(reader.record[1]);
+                    nRecords++;
+                    line = reader.readTextLine();
+                }
+            } finally {
+                reader.close();
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            Sim.fatalError("Couldn't convert trace " + textFileName);
+        }
+
+        return nRecords;
+    }
+
+    /**
+     * Converts text traces to the binary format, next to the originals.
+     *
+     * @param args - the text traces to convert
+     */
+    public static void main(final String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReader trace.csv...");
+            System.exit(1);
+        }
+
+        for (String arg : args) {
+            String binaryName = arg;
+            int dot = arg.lastIndexOf('.');
+            if (dot > arg.lastIndexOf('/')) {
+                binaryName = arg.substring(0, dot);
+            }
+            binaryName += BINARY_EXTENSION;
+            long nRecords = convertToBinary(arg, binaryName);
+            System.out.println("Converted " + nRecords + " records from "
+                               + arg + " to " + binaryName);
+        }
+    }
+
+}
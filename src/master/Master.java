@@ -34,12 +34,17 @@ import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.Iterator;
 import java.util.Vector;
 
+import slave.LocalSlave;
+import slave.ProgressListener;
 import stat.StatisticsCollection;
 import core.Experiment;
+import core.Sim;
 
 /**
  * A Master controls the overall state of the simulation and is in
@@ -49,6 +54,15 @@ import core.Experiment;
  */
 public final class Master {
 
+    /**
+     * The default time (in milliseconds) a slave has to reach steady state
+     * after the first slave does, before it's left out as a straggler.
+     */
+    public static final long DEFAULT_STRAGGLER_TIMEOUT = 60000;
+
+    /** The seed of the first slave's replication. */
+    private static final int FIRST_SEED = 2;
+
     /**
      * Information about simulation slave are saved in this vector. This
      * information is found in a .cfg file.
@@ -71,11 +85,90 @@ public final class Master {
      */
     private Experiment[] slaveExperiments;
 
+    /**
+     * The time (in milliseconds) between progress reports slaves push,
+     * or 0 to poll the slaves instead.
+     */
+    private long reportPeriod;
+
+    /**
+     * The time (in milliseconds) each slave has to answer a call.
+     */
+    private long callDeadline;
+
+    /**
+     * The time (in milliseconds) a slave has to reach steady state after
+     * the first slave does, or 0 to wait for every slave.
+     */
+    private long stragglerTimeout;
+
+    /**
+     * When the first slave reached steady state, or 0 if none has.
+     */
+    private long firstSteadyTime;
+
+    /**
+     * The seed of the next replication to start.
+     */
+    private int nextSeed;
+
+    /**
+     * The slaves added on the master's host in place of failed ones.
+     */
+    private int nReplacements;
+
     /**
      * Constructs a new Master.
      */
     public Master() {
         this.slaves = new Vector<SlaveInfo>();
+        this.reportPeriod = 0;
+        this.callDeadline = SlaveInfo.DEFAULT_CALL_DEADLINE;
+        this.stragglerTimeout = DEFAULT_STRAGGLER_TIMEOUT;
+        this.firstSteadyTime = 0;
+        this.nextSeed = FIRST_SEED;
+        this.nReplacements = 0;
+    }
+
+    /**
+     * Has slaves push their progress to the master every so often,
+     * rather than the master polling each slave's full statistics every
+     * 10 seconds. The slaves are stopped as soon as their combined
+     * statistics converge.
+     *
+     * @param period - the time between reports (in milliseconds),
+     * or 0 to poll
+     */
+    public void setReportPeriod(final long period) {
+        this.reportPeriod = period;
+    }
+
+    /**
+     * Sets how long each slave has to answer a call. A slave that misses
+     * several deadlines in a row (or reports that late) is failed: it's
+     * left out of the results and its replication is relaunched with a
+     * fresh seed on a spare slave.
+     *
+     * @param deadline - the time (in milliseconds)
+     */
+    public void setCallDeadline(final long deadline) {
+        this.callDeadline = deadline;
+        Iterator<SlaveInfo> iter = this.slaves.iterator();
+        while (iter.hasNext()) {
+            iter.next().setCallDeadline(deadline);
+        }
+    }
+
+    /**
+     * Sets how long slaves have to reach steady state after the first
+     * slave does. Slaves that take longer are left out of the results,
+     * so the master stops waiting once the rest converge.
+     *
+     * @param timeout - the time (in milliseconds), or 0 to wait for
+     * every slave
+     */
+    public void setStragglerTimeout(final long timeout) {
+        this.stragglerTimeout = timeout;
     }
 
     /**
@@ -98,7 +191,7 @@ public final class Master {
             SlaveInfo slaveInfo = iter.next();
             String returnedString = "";
             try {
-                returnedString = slaveInfo.getInterface().sayHello();
+                returnedString = slaveInfo.sayHello();
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
@@ -113,9 +206,45 @@ public final class Master {
      */
     public void addSlave(final String serverName, final String rmiBinding) {
         SlaveInfo slaveInfo = new SlaveInfo(serverName, rmiBinding);
+        slaveInfo.setCallDeadline(this.callDeadline);
         this.slaves.add(slaveInfo);
     }
 
+    /**
+     * Adds slaves on the master's own host, which need no RMI registry
+     * or ssh. Forked slaves each run in a worker process with the
+     * master's class path, otherwise they run in threads of the master's
+     * process. Either way they behave as remote slaves do.
+     *
+     * @param nSlaves - the number of slaves to add
+     * @param forked - if each slave runs in its own process
+     */
+    public void addLocalSlaves(final int nSlaves, final boolean forked) {
+        for (int i = 0; i < nSlaves; i++) {
+            String name = "local_" + this.slaves.size();
+            LocalSlave slave;
+            if (forked) {
+                slave = LocalSlave.fork(name);
+            } else {
+                slave = LocalSlave.inProcess(name);
+            }
+            SlaveInfo slaveInfo = new SlaveInfo(slave);
+            slaveInfo.setCallDeadline(this.callDeadline);
+            this.slaves.add(slaveInfo);
+        }
+    }
+
+    /**
+     * Releases the slaves on the master's host, ending their worker
+     * processes. Call once their statistics are no longer needed.
+     */
+    public void releaseSlaves() {
+        Iterator<SlaveInfo> iter = this.slaves.iterator();
+        while (iter.hasNext()) {
+            iter.next().release();
+        }
+    }
+
     /**
      * Gets info about all the slaves of the master.
      * @return An Iterator of SlaveInfo of all the slaves
@@ -182,6 +311,20 @@ public final class Master {
      * @param experiment - The experiment to run
      */
     public void runMasterExperiment(final Experiment experiment) {
+        this.runMasterExperiment(experiment, false);
+    }
+
+    /**
+     * Locally run the experiment on the Master until it reaches steady state.
+     * With a warm start the Master fully calibrates the experiment, so
+     * {@link #forkSlaveExperiments()} can hand the slaves its warmed up
+     * state instead of having each slave warm up from scratch.
+     *
+     * @param experiment - The experiment to run
+     * @param warmStart - if the experiment is calibrated for forking
+     */
+    public void runMasterExperiment(final Experiment experiment,
+                                    final boolean warmStart) {
         startTime = System.currentTimeMillis();
         masterExperiment = experiment;
         System.out.println("Master starting simulation");
@@ -189,23 +332,54 @@ public final class Master {
         System.out.println("Checking connectivity");
         this.checkConnectivity();
         System.out.println("Running to steady state on master");
-        masterExperiment.runToSteadyState();
+        if (warmStart) {
+            masterExperiment.calibrate();
+        } else {
+            masterExperiment.runToSteadyState();
+        }
         System.out.println("Done running to steady state");
     }
 
     /**
-     * This method runs the slave experiments.
+     * Forks the Master's calibrated experiment into one replication per
+     * slave, seeded as {@link #runSlaveExperiment(Experiment[])} seeds
+     * them. The slaves then only run the steady state phase.
      *
-     * @param experiments - an array of experiments
+     * @return an experiment for each slave
+     */
+    public Experiment[] forkSlaveExperiments() {
+        Experiment[] experiments = new Experiment[this.slaves.size()];
+        int uniqueSeed = 2;
+        for (int i = 0; i < experiments.length; i++) {
+            experiments[i] = masterExperiment.fork(uniqueSeed);
+            uniqueSeed++;
+        }
+
+        return experiments;
+    }
+
+    /**
+     * This method runs the slave experiments. Slaves that stop answering
+     * are failed and their replications relaunched on other slaves, and
+     * slaves that straggle reaching steady state are left out of the
+     * results.
+     *
+     * @param experiments - an array of experiments, one for each slave
+     * to run (any other slaves are spares)
      */
     public void runSlaveExperiment(final Experiment[] experiments) {
         //TODO Do we really need the experiments array?
         final long sleepTime = 10000;
         final double millisecondsPerSecond = 1000.0;
         slaveExperiments = experiments;
+        this.firstSteadyTime = 0;
+        if (this.reportPeriod > 0) {
+            this.runReportingSlaves();
+            return;
+        }
 
         System.out.println("Starting up slaves");
-        this.startAllSlaves();
+        this.startAllSlaves(null, null);
         boolean sleepHold = true;
         while (sleepHold) {
             try {
@@ -215,24 +389,15 @@ public final class Master {
             }
             boolean done = true;
 
-            Iterator<SlaveInfo> iter = this.slaves.iterator();
-            StatisticsCollection combinedStats = null;
             System.out.println("Checking if combined we're done");
-            while (iter.hasNext()) {
-                SlaveInfo slave = iter.next();
-                try {
-                    StatisticsCollection stats = slave.getInterface()
-                            .getExperimentStats();
-                    stats.printAllStatInfo();
-                    if (combinedStats == null) {
-                        combinedStats = stats;
-                    } else {
-                        combinedStats = combinedStats.combine(stats);
-                    }
-
-                } catch (RemoteException e) {
-                    e.printStackTrace();
+            this.pollSlaves();
+            StatisticsCollection combinedStats = this.combineCounted(false);
+            if (combinedStats == null) {
+                System.out.println("Waiting for slaves to reach steady state");
+                if (!this.hasRunningSlaves()) {
+                    Sim.fatalError("Every slave failed");
                 }
+                continue;
             }
             System.out.println("Combined info:");
             combinedStats.printAllStatInfo();
@@ -254,11 +419,254 @@ public final class Master {
         double execTime = (endTime - startTime) / millisecondsPerSecond;
         System.out.println("Combined Experiment time: " + execTime + " (s)");
 
+        this.stopAllSlaves();
+    }
+
+    /**
+     * Runs the slave experiments with slaves pushing their progress,
+     * and stops them once the combined statistics converge.
+     */
+    private void runReportingSlaves() {
+        final double millisecondsPerSecond = 1000.0;
+        ProgressCollector collector = new ProgressCollector();
+        StatisticsCollection totalStats = null;
+        // Slaves report at least this often unless they're in trouble
+        long reportDeadline = Math.max(this.callDeadline,
+                                       2 * this.reportPeriod);
+        try {
+            // Slaves on this host report straight to the collector
+            ProgressListener listener = collector;
+            if (this.hasRemoteSlaves()) {
+                listener = (ProgressListener)
+                        UnicastRemoteObject.exportObject(collector, 0);
+            }
+            System.out.println("Starting up reporting slaves");
+            this.startAllSlaves(listener, collector);
+            collector.startedAll();
+            while (!collector.waitUntilDone(reportDeadline)) {
+                this.checkReportingSlaves(listener, collector,
+                                          reportDeadline);
+            }
+            totalStats = collector.getCombinedStats();
+        } catch (RemoteException e) {
+            System.out.println("Couldn't listen for progress: " + e);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.stopAllSlaves();
+            try {
+                UnicastRemoteObject.unexportObject(collector, true);
+            } catch (NoSuchObjectException e) {
+                // Never exported
+            }
+        }
+
+        System.out.println("========== Final Statistics ==========");
+        if (totalStats != null) {
+            totalStats.printConvergedOutputs();
+        }
+        System.out.println("======================================");
+        long endTime = System.currentTimeMillis();
+        double execTime = (endTime - startTime) / millisecondsPerSecond;
+        System.out.println("Combined Experiment time: " + execTime + " (s)");
+    }
+
+    /**
+     * Checks that reporting slaves report in time, failing and
+     * replacing those that don't, and leaves out stragglers.
+     *
+     * @param listener - the listener slaves push progress to
+     * @param collector - the collector of the slaves' progress
+     * @param reportDeadline - the longest time (in milliseconds) a
+     * slave may go without reporting
+     */
+    private void checkReportingSlaves(final ProgressListener listener,
+                                      final ProgressCollector collector,
+                                      final long reportDeadline) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < this.slaves.size(); i++) {
+            if (this.firstSteadyTime == 0 && this.isCounted(i)
+                    && collector.hasStats(i)) {
+                this.firstSteadyTime = now;
+            }
+        }
+
+        for (int i = 0; i < this.slaves.size(); i++) {
+            SlaveInfo slave = this.slaves.get(i);
+            if (!this.isCounted(i) || collector.isFinished(i)) {
+                continue;
+            }
+            if (now - collector.getLastReport(i) > reportDeadline) {
+                System.out.println(slave.getRmiBinding()
+                                   + " missed its report deadline");
+                slave.missDeadline();
+                if (slave.getHealth() == SlaveInfo.Health.FAILED) {
+                    this.relaunch(slave, listener, collector);
+                }
+                continue;
+            }
+            slave.metDeadline();
+            if (!collector.hasStats(i) && this.isStraggling(slave, now)) {
+                System.out.println("Leaving out straggler "
+                                   + slave.getRmiBinding());
+                slave.setStraggling(true);
+                collector.exclude(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the latest statistics of every slave counted toward the
+     * results, failing and replacing slaves that don't answer.
+     * A slave that misses a deadline keeps its last statistics.
+     */
+    private void pollSlaves() {
+        for (int i = 0; i < this.slaves.size(); i++) {
+            SlaveInfo slave = this.slaves.get(i);
+            if (slave.getReplication() == null
+                    || slave.getHealth() == SlaveInfo.Health.FAILED) {
+                continue;
+            }
+            try {
+                slave.getStats().printAllStatInfo();
+            } catch (RemoteException e) {
+                e.printStackTrace();
+                if (slave.getHealth() == SlaveInfo.Health.FAILED) {
+                    this.relaunch(slave, null, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Combines the last statistics of the slaves counted toward the
+     * results. Slaves that don't reach steady state within the straggler
+     * timeout are left out until they do.
+     *
+     * @param partial - if slaves not yet in steady state are skipped
+     * rather than waited for
+     * @return the combined statistics, or null if some slave is still
+     * being waited for or none has statistics
+     */
+    private StatisticsCollection combineCounted(final boolean partial) {
+        long now = System.currentTimeMillis();
+        StatisticsCollection combined = null;
+        boolean waiting = false;
+        Iterator<SlaveInfo> iter = this.slaves.iterator();
+        while (iter.hasNext()) {
+            SlaveInfo slave = iter.next();
+            if (slave.getReplication() == null
+                    || slave.getHealth() == SlaveInfo.Health.FAILED) {
+                continue;
+            }
+
+            StatisticsCollection stats = slave.getLastStats();
+            if (stats != null && stats.allStatsSteadyState()) {
+                if (this.firstSteadyTime == 0) {
+                    this.firstSteadyTime = now;
+                }
+                slave.setStraggling(false);
+                if (combined == null) {
+                    combined = stats;
+                } else {
+                    combined = combined.combine(stats);
+                }
+            } else if (this.isStraggling(slave, now)) {
+                if (slave.getHealth() == SlaveInfo.Health.HEALTHY) {
+                    System.out.println("Leaving out straggler "
+                                       + slave.getRmiBinding());
+                    slave.setStraggling(true);
+                }
+            } else if (!partial) {
+                waiting = true;
+            }
+        }
+
+        if (waiting) {
+            return null;
+        }
+
+        return combined;
+    }
+
+    /**
+     * Checks if a slave has taken too long to reach steady state,
+     * measured from when it started or when the first slave reached
+     * steady state, whichever is later.
+     *
+     * @param slave - the slave
+     * @param now - the current time (in milliseconds)
+     * @return if the slave is straggling
+     */
+    private boolean isStraggling(final SlaveInfo slave, final long now) {
+        if (this.stragglerTimeout <= 0 || this.firstSteadyTime == 0) {
+            return false;
+        }
+
+        long since = Math.max(this.firstSteadyTime, slave.getStartTime());
+        return now - since > this.stragglerTimeout;
+    }
+
+    /**
+     * Checks if a slave runs a replication that counts toward the results.
+     *
+     * @param slaveIndex - the index of the slave
+     * @return if the slave is healthy and running a replication
+     */
+    private boolean isCounted(final int slaveIndex) {
+        SlaveInfo slave = this.slaves.get(slaveIndex);
+        return slave.getReplication() != null
+               && slave.getHealth() == SlaveInfo.Health.HEALTHY;
+    }
+
+    /**
+     * Checks if any slave is still running a replication.
+     *
+     * @return if any slave that hasn't failed runs a replication
+     */
+    private boolean hasRunningSlaves() {
+        Iterator<SlaveInfo> iter = this.slaves.iterator();
+        while (iter.hasNext()) {
+            SlaveInfo slave = iter.next();
+            if (slave.getReplication() != null
+                    && slave.getHealth() != SlaveInfo.Health.FAILED) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if any slave is reached through RMI.
+     *
+     * @return if any slave is reached through RMI
+     */
+    private boolean hasRemoteSlaves() {
+        Iterator<SlaveInfo> iter = this.slaves.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().isRemote()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops the experiments of all slaves.
+     */
+    private void stopAllSlaves() {
         Iterator<SlaveInfo> iter = this.slaves.iterator();
         while (iter.hasNext()) {
             SlaveInfo slave = iter.next();
+            if (slave.getReplication() == null
+                    || slave.getHealth() == SlaveInfo.Health.FAILED) {
+                continue;
+            }
             try {
-                slave.getInterface().stop();
+                slave.stop();
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
@@ -266,57 +674,153 @@ public final class Master {
     }
 
     /**
-     * This method combines and outputs the final statistics.
+     * This method combines and outputs the final statistics,
+     * leaving out failed and straggling slaves.
      */
     public void combine() {
         System.out.println("***** Starting combine phase ****");
-        StatisticsCollection totalStats = null;
-
         Iterator<SlaveInfo> iter = this.slaves.iterator();
         while (iter.hasNext()) {
             SlaveInfo slave = iter.next();
+            if (slave.getReplication() == null
+                    || slave.getHealth() == SlaveInfo.Health.FAILED) {
+                continue;
+            }
             try {
-                StatisticsCollection stats = slave.getInterface()
-                        .getExperimentStats();
-                if (totalStats == null) {
-                    totalStats = stats;
-                } else {
-                    totalStats = totalStats.combine(stats);
-                }
-
+                slave.getStats();
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
         }
+        StatisticsCollection totalStats = this.combineCounted(true);
 
         System.out.println("========== Final Statistics ==========");
-        totalStats.printConvergedOutputs();
+        if (totalStats != null) {
+            totalStats.printConvergedOutputs();
+        }
         System.out.println("======================================");
     }
 
     /**
      * This method runs experiments on Slaves.
+     *
+     * @param listener - the listener slaves push progress to,
+     * or null if they are polled
+     * @param collector - the collector of the slaves' progress,
+     * or null if they are polled
      */
-    private void startAllSlaves() {
+    private void startAllSlaves(final ProgressListener listener,
+                                final ProgressCollector collector) {
+        this.nextSeed = FIRST_SEED;
+        this.nReplacements = 0;
+        for (int i = 0; i < slaveExperiments.length; i++) {
+            slaveExperiments[i].setSeed(this.nextSeed);
+            this.nextSeed++;
+            this.launch(slaveExperiments[i], listener, collector);
+        }
+    }
 
-        int uniqueSeed = 2;
-        Iterator<SlaveInfo> iter = this.slaves.iterator();
-        int i = 0;
-        while (iter.hasNext()) {
-            SlaveInfo slave = iter.next();
-            slaveExperiments[i].setSeed(uniqueSeed);
+    /**
+     * Runs a replication on the first spare slave that accepts it.
+     * Slaves on the master's host that fail to start it are replaced.
+     *
+     * @param experiment - the replication
+     * @param listener - the listener slaves push progress to, or null
+     * @param collector - the collector of the slaves' progress, or null
+     * @return if a slave is running the replication
+     */
+    private boolean launch(final Experiment experiment,
+                           final ProgressListener listener,
+                           final ProgressCollector collector) {
+        SlaveInfo slave = this.findSpare();
+        while (slave != null) {
+            int index = this.slaves.indexOf(slave);
             System.out.println("Running experiment on " + slave.getServerName()
                     + "-" + slave.getRmiBinding());
+            if (collector != null) {
+                collector.include(index);
+            }
             try {
-                slave.getInterface().runExperiment(slaveExperiments[i]);
+                slave.runExperiment(experiment, listener, index,
+                                    this.reportPeriod);
+                return true;
             } catch (RemoteException e) {
                 System.out.println("Exception as string: " + e.toString());
                 e.printStackTrace();
+                slave.fail("couldn't start a replication");
+                slave.takeReplication();
+                if (collector != null) {
+                    collector.exclude(index);
+                }
+                this.replaceLocalSlave(slave);
+            }
+            slave = this.findSpare();
+        }
+
+        System.out.println("No slave left to run a replication");
+        return false;
+    }
+
+    /**
+     * Relaunches the replication of a failed slave with a fresh seed
+     * on a spare slave.
+     *
+     * @param failed - the failed slave
+     * @param listener - the listener slaves push progress to, or null
+     * @param collector - the collector of the slaves' progress, or null
+     */
+    private void relaunch(final SlaveInfo failed,
+                          final ProgressListener listener,
+                          final ProgressCollector collector) {
+        int failedIndex = this.slaves.indexOf(failed);
+        Experiment lost = failed.takeReplication();
+        if (lost != null) {
+            this.replaceLocalSlave(failed);
+            Experiment replacement = lost.copy();
+            replacement.setSeed(this.nextSeed);
+            System.out.println("Relaunching the replication of "
+                               + failed.getRmiBinding() + " with seed "
+                               + this.nextSeed);
+            this.nextSeed++;
+            this.launch(replacement, listener, collector);
+        }
+        if (collector != null) {
+            collector.exclude(failedIndex);
+        }
+    }
 
+    /**
+     * Adds a slave in place of a failed one on the master's host, which
+     * has the capacity the failed slave no longer uses. Each replication
+     * gets at most one replacement, so a deadline no slave can meet
+     * doesn't keep adding slaves.
+     *
+     * @param failed - the failed slave
+     */
+    private void replaceLocalSlave(final SlaveInfo failed) {
+        if (failed.getLocalSlave() != null
+                && this.nReplacements < slaveExperiments.length) {
+            this.nReplacements++;
+            this.addLocalSlaves(1, failed.getLocalSlave().isForked());
+        }
+    }
+
+    /**
+     * Finds a slave that hasn't failed and isn't running a replication.
+     *
+     * @return the spare slave, or null if there is none
+     */
+    private SlaveInfo findSpare() {
+        Iterator<SlaveInfo> iter = this.slaves.iterator();
+        while (iter.hasNext()) {
+            SlaveInfo slave = iter.next();
+            if (slave.getReplication() == null
+                    && slave.getHealth() != SlaveInfo.Health.FAILED) {
+                return slave;
             }
-            uniqueSeed++;
-            i++;
         }
+
+        return null;
     }
 
 }
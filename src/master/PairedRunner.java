@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package master;
+
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import stat.PairedDifference;
+import core.Experiment;
+import core.Sim;
+import core.Constants.StatName;
+
+/**
+ * Compares two configurations of an experiment (e.g., two scheduling
+ * policies on the same workload) with common random numbers. Each pair
+ * of replications runs both configurations with the same seed, so as
+ * long as the servers draw from the experiments'
+ * {@link Experiment#getRandomStreams() random streams} each job gets the
+ * same interarrival and service time under both configurations. Pairs
+ * are run in parallel until the confidence interval of the difference
+ * is tight enough.
+ *
+ * Optionally each replication is also run with antithetic variates and
+ * averaged with its antithetic twin, which reduces variance further.
+ */
+public final class PairedRunner {
+
+    /** The default relative half width of the difference to stop at. */
+    private static final double DEFAULT_TARGET_ACCURACY = .05;
+
+    /** The default confidence level of the difference. */
+    private static final double DEFAULT_CONFIDENCE = .95;
+
+    /** The default maximum number of pairs to run. */
+    private static final int DEFAULT_MAX_PAIRS = 100;
+
+    /** The number of pairs to run before checking the difference. */
+    private static final int MIN_PAIRS = 3;
+
+    /** The seed of the first pair (the master uses the same). */
+    private static final long FIRST_SEED = 2;
+
+    /** The number of threads to run replications in. */
+    private int nThreads;
+
+    /** If replications are averaged with antithetic twins. */
+    private boolean antithetic;
+
+    /** The relative half width of the difference to stop at. */
+    private double targetAccuracy;
+
+    /** The confidence level of the difference. */
+    private double confidence;
+
+    /** The maximum number of pairs to run. */
+    private int maxPairs;
+
+    /**
+     * Creates a runner with one thread per available processor.
+     */
+    public PairedRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a runner.
+     *
+     * @param theNThreads - the number of threads to run replications in
+     */
+    public PairedRunner(final int theNThreads) {
+        if (theNThreads < 1) {
+            Sim.fatalError("Need at least one thread");
+        }
+        this.nThreads = theNThreads;
+        this.antithetic = false;
+        this.targetAccuracy = DEFAULT_TARGET_ACCURACY;
+        this.confidence = DEFAULT_CONFIDENCE;
+        this.maxPairs = DEFAULT_MAX_PAIRS;
+    }
+
+    /**
+     * Sets if each replication is averaged with an antithetic twin.
+     *
+     * @param theAntithetic - if antithetic twins are run
+     */
+    public void setAntithetic(final boolean theAntithetic) {
+        this.antithetic = theAntithetic;
+    }
+
+    /**
+     * Sets the relative half width of the difference's confidence
+     * interval to stop at.
+     *
+     * @param accuracy - the relative half width to stop at
+     */
+    public void setTargetAccuracy(final double accuracy) {
+        this.targetAccuracy = accuracy;
+    }
+
+    /**
+     * Sets the confidence level of the difference.
+     *
+     * @param theConfidence - the confidence level (e.g., .95)
+     */
+    public void setConfidence(final double theConfidence) {
+        this.confidence = theConfidence;
+    }
+
+    /**
+     * Sets the maximum number of pairs to run, in case the
+     * configurations don't differ.
+     *
+     * @param theMaxPairs - the maximum number of pairs
+     */
+    public void setMaxPairs(final int theMaxPairs) {
+        this.maxPairs = theMaxPairs;
+    }
+
+    /**
+     * Runs pairs of replications of two configurations until the mean
+     * difference of a statistic is known to the target accuracy. The
+     * experiments themselves are not run; they are only copied.
+     *
+     * @param first - the first configuration
+     * @param second - the second configuration
+     * @param statName - the statistic to compare
+     * @return the difference (first - second) of the statistic's mean
+     */
+    public PairedDifference compare(final Experiment first,
+                                    final Experiment second,
+                                    final StatName statName) {
+        PairedDifference difference = new PairedDifference();
+        ExecutorService pool = Executors.newFixedThreadPool(this.nThreads);
+        long seed = FIRST_SEED;
+        try {
+            while (difference.getNPairs() < this.maxPairs) {
+                int nPairs = (int) Math.min(this.nThreads,
+                        this.maxPairs - difference.getNPairs());
+                Vector<Experiment[]> pairs = new Vector<Experiment[]>();
+                Vector<Future<?>> futures = new Vector<Future<?>>();
+                for (int i = 0; i < nPairs; i++) {
+                    Experiment[] runs = this.createRuns(first, second, seed);
+                    for (int j = 0; j < runs.length; j++) {
+                        futures.add(pool.submit(new RunTask(runs[j])));
+                    }
+                    pairs.add(runs);
+                    seed++;
+                }
+                waitFor(futures);
+
+                for (int i = 0; i < pairs.size(); i++) {
+                    Experiment[] runs = pairs.get(i);
+                    int half = runs.length / 2;
+                    difference.addPair(observe(runs, 0, half, statName),
+                            observe(runs, half, runs.length, statName));
+                }
+                System.out.println("After " + difference.getNPairs()
+                        + " pairs the difference is "
+                        + difference.getMeanDifference() + " +/- "
+                        + difference.getHalfWidth(this.confidence));
+                if (difference.getNPairs() >= MIN_PAIRS
+                        && difference.getRelativeHalfWidth(this.confidence)
+                            < this.targetAccuracy) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.println("========== Paired Difference ==========");
+        difference.printSummary(this.confidence);
+        System.out.println("=======================================");
+
+        return difference;
+    }
+
+    /**
+     * Creates the replications of a pair: the first configuration's
+     * (with its antithetic twin) followed by the second's.
+     *
+     * @param first - the first configuration
+     * @param second - the second configuration
+     * @param seed - the seed of the pair
+     * @return the replications of the pair
+     */
+    private Experiment[] createRuns(final Experiment first,
+                                    final Experiment second,
+                                    final long seed) {
+        Experiment[] configurations = {first, second};
+        int perConfiguration = 1;
+        if (this.antithetic) {
+            perConfiguration = 2;
+        }
+
+        Experiment[] runs = new Experiment[2 * perConfiguration];
+        for (int i = 0; i < runs.length; i++) {
+            Experiment run = configurations[i / perConfiguration].copy();
+            run.setSeed(seed);
+            run.getRandomStreams().setAntithetic(i % perConfiguration == 1);
+            runs[i] = run;
+        }
+
+        return runs;
+    }
+
+    /**
+     * Gets the mean of a statistic averaged over some replications.
+     *
+     * @param runs - the replications
+     * @param start - the first replication to average
+     * @param end - the replication after the last to average
+     * @param statName - the statistic
+     * @return the average of the statistic's means
+     */
+    private static double observe(final Experiment[] runs,
+                                  final int start,
+                                  final int end,
+                                  final StatName statName) {
+        double total = 0.0;
+        for (int i = start; i < end; i++) {
+            total += runs[i].getStats().getStat(statName).getAverage();
+        }
+
+        return total / (end - start);
+    }
+
+    /**
+     * Waits for replications to finish, failing if any failed.
+     *
+     * @param futures - the futures of the replications
+     */
+    private static void waitFor(final Vector<Future<?>> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                Sim.fatalError("Replication failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Sim.fatalError("Interrupted while running replications");
+            }
+        }
+    }
+
+    /**
+     * A task which runs one replication.
+     */
+    private static final class RunTask implements Runnable {
+
+        /** The experiment to run. */
+        private Experiment experiment;
+
+        /**
+         * Creates a new RunTask.
+         *
+         * @param anExperiment - the experiment to run
+         */
+        RunTask(final Experiment anExperiment) {
+            this.experiment = anExperiment;
+        }
+
+        /**
+         * Runs the experiment.
+         */
+        public void run() {
+            this.experiment.run();
+        }
+
+    }
+
+}
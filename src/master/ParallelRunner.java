@@ -0,0 +1,344 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package master;
+
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import stat.Statistic;
+import stat.StatisticsCollection;
+import core.Experiment;
+import core.Sim;
+
+/**
+ * Runs independent replications of an experiment in parallel on the
+ * local machine, without RMI slaves. Like the {@link Master}, it first
+ * runs the experiment to steady state to choose histogram bins, then
+ * runs copies of the experiment with distinct seeds (one per thread)
+ * and combines their statistics until the combined statistics converge.
+ * With a warm start the copies are forked from the calibrated pilot.
+ */
+public final class ParallelRunner {
+
+    /**
+     * The default time (in milliseconds) between convergence checks.
+     */
+    private static final long DEFAULT_CHECK_PERIOD = 10000;
+
+    /**
+     * The number of replications (and threads) to run.
+     */
+    private int nReplications;
+
+    /**
+     * The time (in milliseconds) between convergence checks.
+     */
+    private long checkPeriod;
+
+    /**
+     * If replications are forked from a calibrated pilot instead of
+     * warming up on their own.
+     */
+    private boolean warmStart;
+
+    /**
+     * Creates a runner with one replication per available processor.
+     */
+    public ParallelRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a runner.
+     *
+     * @param theNReplications - the number of replications
+     * (and threads) to run
+     */
+    public ParallelRunner(final int theNReplications) {
+        if (theNReplications < 1) {
+            Sim.fatalError("Need at least one replication");
+        }
+        this.nReplications = theNReplications;
+        this.checkPeriod = DEFAULT_CHECK_PERIOD;
+        this.warmStart = false;
+    }
+
+    /**
+     * Sets the time between convergence checks of the combined statistics.
+     *
+     * @param theCheckPeriod - the time between checks (in milliseconds)
+     */
+    public void setCheckPeriod(final long theCheckPeriod) {
+        this.checkPeriod = theCheckPeriod;
+    }
+
+    /**
+     * Sets if the replications are forked from the pilot run once it has
+     * calibrated, so they skip warm up and calibration and only run the
+     * steady state phase.
+     *
+     * @param warm - if replications start from the calibrated pilot
+     */
+    public void setWarmStart(final boolean warm) {
+        this.warmStart = warm;
+    }
+
+    /**
+     * Gets the number of replications the runner runs.
+     *
+     * @return the number of replications
+     */
+    public int getNReplications() {
+        return this.nReplications;
+    }
+
+    /**
+     * Runs replications of an experiment until their combined statistics
+     * converge. The experiment itself is not run; it is only copied.
+     *
+     * @param experiment - the experiment to replicate
+     * @return the combined statistics of the replications
+     */
+    public StatisticsCollection run(final Experiment experiment) {
+        final double millisecondsPerSecond = 1000.0;
+        long startTime = System.currentTimeMillis();
+
+        // Characterize the experiment to pick common histogram bins
+        System.out.println("Running to steady state to pick histogram bins");
+        Experiment pilot = experiment.copy();
+        if (this.warmStart) {
+            pilot.calibrate();
+        } else {
+            pilot.runToSteadyState();
+        }
+
+        int uniqueSeed = 2;
+        Vector<Experiment> replications = new Vector<Experiment>();
+        for (int i = 0; i < this.nReplications; i++) {
+            Experiment replication;
+            if (this.warmStart) {
+                replication = pilot.fork(uniqueSeed);
+            } else {
+                replication = experiment.copy();
+                replication.setSeed(uniqueSeed);
+                useHistogramBins(replication.getStats(), pilot.getStats());
+            }
+            replications.add(replication);
+            uniqueSeed++;
+        }
+
+        System.out.println("Starting " + this.nReplications + " replications");
+        ExecutorService pool = Executors.newFixedThreadPool(this.nReplications);
+        Vector<Future<?>> futures = new Vector<Future<?>>();
+        Iterator<Experiment> iter = replications.iterator();
+        while (iter.hasNext()) {
+            futures.add(pool.submit(new ReplicationTask(iter.next())));
+        }
+
+        try {
+            this.waitForConvergence(replications, futures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while running replications");
+        } finally {
+            iter = replications.iterator();
+            while (iter.hasNext()) {
+                iter.next().stop();
+            }
+            pool.shutdown();
+        }
+
+        try {
+            while (!pool.awaitTermination(this.checkPeriod,
+                                          TimeUnit.MILLISECONDS)) {
+                System.out.println("Waiting for replications to stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while stopping replications");
+        }
+        checkFailures(futures);
+
+        System.out.println("***** Starting combine phase ****");
+        StatisticsCollection totalStats = null;
+        iter = replications.iterator();
+        while (iter.hasNext()) {
+            StatisticsCollection stats = iter.next().getStats();
+            if (totalStats == null) {
+                totalStats = stats;
+            } else {
+                totalStats = totalStats.combine(stats);
+            }
+        }
+
+        System.out.println("========== Final Statistics ==========");
+        totalStats.printConvergedOutputs();
+        System.out.println("======================================");
+        long endTime = System.currentTimeMillis();
+        double execTime = (endTime - startTime) / millisecondsPerSecond;
+        System.out.println("Combined Experiment time: " + execTime + " (s)");
+
+        return totalStats;
+    }
+
+    /**
+     * Periodically combines the replications' statistics until they
+     * converge or every replication has finished.
+     *
+     * @param replications - the running replications
+     * @param futures - the futures of the running replications
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    private void waitForConvergence(final Vector<Experiment> replications,
+                                    final Vector<Future<?>> futures)
+            throws InterruptedException {
+        while (true) {
+            Thread.sleep(this.checkPeriod);
+            checkFailures(futures);
+
+            boolean allDone = true;
+            Iterator<Future<?>> futureIter = futures.iterator();
+            while (futureIter.hasNext()) {
+                if (!futureIter.next().isDone()) {
+                    allDone = false;
+                }
+            }
+            if (allDone) {
+                System.out.println("All replications finished");
+                return;
+            }
+
+            // Statistics can only be combined once histograms exist
+            StatisticsCollection combinedStats = null;
+            Iterator<Experiment> iter = replications.iterator();
+            while (iter.hasNext()) {
+                StatisticsCollection stats = iter.next().getStatsSnapshot();
+                if (!stats.allStatsSteadyState()) {
+                    combinedStats = null;
+                    break;
+                }
+                if (combinedStats == null) {
+                    combinedStats = stats;
+                } else {
+                    combinedStats = combinedStats.combine(stats);
+                }
+            }
+
+            if (combinedStats == null) {
+                System.out.println("Waiting for replications"
+                                   + " to reach steady state");
+                continue;
+            }
+
+            System.out.println("Combined info:");
+            combinedStats.printAllStatInfo();
+            if (combinedStats.allStatsConverged()) {
+                System.out.println("Combined statistics converged");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fails the simulation if any replication threw an exception.
+     *
+     * @param futures - the futures of the replications
+     */
+    private static void checkFailures(final Vector<Future<?>> futures) {
+        Iterator<Future<?>> iter = futures.iterator();
+        while (iter.hasNext()) {
+            Future<?> future = iter.next();
+            if (!future.isDone()) {
+                continue;
+            }
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Sim.fatalError("Replication failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Makes a replication's statistics use the histogram bins another
+     * experiment settled on, so the two can be combined.
+     *
+     * @param stats - the replication's statistics
+     * @param binStats - the statistics with the histogram bins to use
+     */
+    private static void useHistogramBins(final StatisticsCollection stats,
+                                         final StatisticsCollection binStats) {
+        Iterator<Statistic> iter = stats.getAllStats();
+        Iterator<Statistic> binIter = binStats.getAllStats();
+        while (iter.hasNext() && binIter.hasNext()) {
+            Statistic stat = iter.next();
+            Statistic binStat = binIter.next();
+            if (stat.getStatName() != binStat.getStatName()) {
+                Sim.fatalError("Statistics don't match: " + stat.getStatName()
+                               + " and " + binStat.getStatName());
+            }
+            if (binStat.getHistogramXValues() != null) {
+                stat.setHistogramXValues(binStat.getHistogramXValues());
+            }
+        }
+    }
+
+    /**
+     * A task which runs one replication.
+     */
+    private static final class ReplicationTask implements Runnable {
+
+        /** The experiment to run. */
+        private Experiment experiment;
+
+        /**
+         * Creates a new ReplicationTask.
+         *
+         * @param anExperiment - the experiment to run
+         */
+        public ReplicationTask(final Experiment anExperiment) {
+            this.experiment = anExperiment;
+        }
+
+        /**
+         * Runs the experiment.
+         */
+        public void run() {
+            this.experiment.run();
+        }
+
+    }
+
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package master;
+
+import java.util.Vector;
+
+import slave.ProgressListener;
+import stat.StatisticsCollection;
+import stat.StatisticsDelta;
+import core.Sim;
+
+/**
+ * Collects the progress slaves push to the master. Each slave's
+ * statistics are rebuilt from its deltas, and the combined statistics
+ * are updated as deltas arrive, so the master knows as soon as the
+ * combined statistics converge. Slaves which fail or straggle can be
+ * excluded, after which the combined statistics are those of the rest.
+ */
+public final class ProgressCollector implements ProgressListener {
+
+    /** The statistics of each slave, null until it reaches steady state. */
+    private Vector<StatisticsCollection> slaveStats;
+
+    /** If each slave's experiment has finished. */
+    private Vector<Boolean> finished;
+
+    /** If each slave is left out of the combined statistics. */
+    private Vector<Boolean> excluded;
+
+    /** When each slave last reported (in milliseconds). */
+    private Vector<Long> lastReport;
+
+    /** The combined statistics of all slaves, once they all have some. */
+    private StatisticsCollection combinedStats;
+
+    /** If the combined statistics converged or every slave finished. */
+    private boolean done;
+
+    /** The error applying a report, if one failed. */
+    private RuntimeException failure;
+
+    /** If slaves are still being started, so more are to be included. */
+    private boolean starting;
+
+    /**
+     * Creates a new ProgressCollector, which waits for no slaves until
+     * they're included.
+     */
+    public ProgressCollector() {
+        this.slaveStats = new Vector<StatisticsCollection>();
+        this.finished = new Vector<Boolean>();
+        this.excluded = new Vector<Boolean>();
+        this.lastReport = new Vector<Long>();
+        this.combinedStats = null;
+        this.done = false;
+        this.failure = null;
+        this.starting = true;
+    }
+
+    /**
+     * Starts counting a slave toward the combined statistics, as it
+     * starts a replication. It has no statistics until it reports.
+     *
+     * @param slaveIndex - the index of the slave
+     */
+    public synchronized void include(final int slaveIndex) {
+        while (this.slaveStats.size() <= slaveIndex) {
+            this.slaveStats.add(null);
+            this.finished.add(false);
+            this.excluded.add(true);
+            this.lastReport.add(0L);
+        }
+        this.slaveStats.set(slaveIndex, null);
+        this.finished.set(slaveIndex, false);
+        this.excluded.set(slaveIndex, false);
+        this.lastReport.set(slaveIndex, System.currentTimeMillis());
+        this.combinedStats = null;
+    }
+
+    /**
+     * Notes that every slave to start has been included, so the combined
+     * statistics of those reporting can be taken as final.
+     */
+    public synchronized void startedAll() {
+        this.starting = false;
+        this.checkDone();
+        this.notifyAll();
+    }
+
+    /**
+     * Applies a slave's report and checks if the combined statistics
+     * have converged. Reports from excluded slaves are ignored, as are
+     * reports once done, so the combined statistics stay final.
+     *
+     * @param slaveIndex - the index of the reporting slave
+     * @param delta - the change in the slave's statistics
+     */
+    public synchronized void reportProgress(final int slaveIndex,
+                                            final StatisticsDelta delta) {
+        if (this.done || this.excluded.get(slaveIndex)) {
+            return;
+        }
+
+        try {
+            this.lastReport.set(slaveIndex, System.currentTimeMillis());
+            StatisticsCollection stats = delta.applyTo(
+                    this.slaveStats.get(slaveIndex));
+            this.slaveStats.set(slaveIndex, stats);
+            if (delta.isFinished()) {
+                this.finished.set(slaveIndex, true);
+            }
+
+            if (this.combinedStats == null || !delta.isAdditive()) {
+                this.combinedStats = this.combineAll();
+            } else if (this.combinedStats != stats) {
+                // With one slave, its statistics are the combined statistics
+                delta.applyTo(this.combinedStats);
+            }
+            this.checkDone();
+        } catch (RuntimeException e) {
+            // Wake the master rather than leave it waiting forever
+            this.failure = e;
+            this.done = true;
+            throw e;
+        } finally {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Leaves a slave out of the combined statistics from now on.
+     *
+     * @param slaveIndex - the index of the slave
+     */
+    public synchronized void exclude(final int slaveIndex) {
+        this.excluded.set(slaveIndex, true);
+        if (this.done) {
+            return;
+        }
+        this.combinedStats = this.combineAll();
+        this.checkDone();
+        this.notifyAll();
+    }
+
+    /**
+     * Gets when a slave last reported.
+     *
+     * @param slaveIndex - the index of the slave
+     * @return the time of its last report (in milliseconds), or when it
+     * was included if it hasn't reported
+     */
+    public synchronized long getLastReport(final int slaveIndex) {
+        return this.lastReport.get(slaveIndex);
+    }
+
+    /**
+     * Checks if a slave's experiment has finished.
+     *
+     * @param slaveIndex - the index of the slave
+     * @return if the slave reported that it finished
+     */
+    public synchronized boolean isFinished(final int slaveIndex) {
+        return this.finished.get(slaveIndex);
+    }
+
+    /**
+     * Checks if a slave has reached steady state.
+     *
+     * @param slaveIndex - the index of the slave
+     * @return if the slave has reported statistics
+     */
+    public synchronized boolean hasStats(final int slaveIndex) {
+        return this.slaveStats.get(slaveIndex) != null;
+    }
+
+    /**
+     * Waits until the combined statistics converge or every slave
+     * finishes, or for a time, whichever is first.
+     *
+     * @param timeout - the longest time to wait (in milliseconds)
+     * @return if the combined statistics converged or every slave finished
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public synchronized boolean waitUntilDone(final long timeout)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        long left = timeout;
+        while (!this.done && left > 0) {
+            this.wait(left);
+            left = end - System.currentTimeMillis();
+        }
+
+        return this.done;
+    }
+
+    /**
+     * Gets the combined statistics.
+     *
+     * @return the combined statistics, or null if some slave never
+     * reached steady state
+     */
+    public synchronized StatisticsCollection getCombinedStats() {
+        if (this.failure != null) {
+            Sim.fatalError("Couldn't apply slave progress: " + this.failure);
+        }
+
+        return this.combinedStats;
+    }
+
+    /**
+     * Notes if the combined statistics converged or every slave finished.
+     */
+    private void checkDone() {
+        if (this.starting) {
+            return;
+        }
+        if (this.combinedStats != null
+                && this.combinedStats.allStatsConverged()) {
+            System.out.println("Combined statistics converged");
+            this.done = true;
+        }
+        if (this.allFinished()) {
+            System.out.println("All slaves finished");
+            this.done = true;
+        }
+    }
+
+    /**
+     * Combines the statistics of every slave not excluded.
+     *
+     * @return the combined statistics, or null if some slave has none yet
+     */
+    private StatisticsCollection combineAll() {
+        StatisticsCollection combined = null;
+        for (int i = 0; i < this.slaveStats.size(); i++) {
+            if (this.excluded.get(i)) {
+                continue;
+            }
+            StatisticsCollection stats = this.slaveStats.get(i);
+            if (stats == null) {
+                return null;
+            }
+            if (combined == null) {
+                combined = stats;
+            } else {
+                combined = combined.combine(stats);
+            }
+        }
+
+        return combined;
+    }
+
+    /**
+     * Checks if every slave not excluded has finished.
+     *
+     * @return if every slave has finished
+     */
+    private boolean allFinished() {
+        for (int i = 0; i < this.finished.size(); i++) {
+            if (!this.excluded.get(i) && !this.finished.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
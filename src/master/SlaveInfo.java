@@ -30,10 +30,24 @@
  */
 package master;
 
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import slave.LocalSlave;
+import slave.ProgressListener;
 import slave.SimInterface;
+import stat.StatisticsCodec;
+import stat.StatisticsCollection;
+import core.Experiment;
 
 /**
  * Tracks info about slaves in a simulation.
@@ -42,6 +56,29 @@ import slave.SimInterface;
  */
 public final class SlaveInfo {
 
+    /** The default time (in milliseconds) a slave has to answer a call. */
+    public static final long DEFAULT_CALL_DEADLINE = 30000;
+
+    /** The deadlines a slave can miss in a row before it's failed. */
+    private static final int MAX_MISSED_DEADLINES = 3;
+
+    /**
+     * How well a slave is keeping up.
+     */
+    public enum Health {
+        /** The slave answers in time and counts toward the results. */
+        HEALTHY,
+
+        /**
+         * The slave answers, but fell so far behind reaching steady state
+         * that its results are left out.
+         */
+        STRAGGLING,
+
+        /** The slave stopped answering. It's no longer called. */
+        FAILED
+    }
+
     /**
      * The name of the slave.
      */
@@ -57,6 +94,47 @@ public final class SlaveInfo {
      */
     private SimInterface simInterface;
 
+    /**
+     * The slave, if it's on the master's host rather than reached
+     * through RMI.
+     */
+    private LocalSlave localSlave;
+
+    /**
+     * The health of the slave.
+     */
+    private Health health;
+
+    /**
+     * The deadlines the slave has missed in a row.
+     */
+    private int missedDeadlines;
+
+    /**
+     * The time (in milliseconds) the slave has to answer a call.
+     */
+    private long callDeadline;
+
+    /**
+     * Makes calls to the slave, so a hung slave can't hang the master.
+     */
+    private ExecutorService caller;
+
+    /**
+     * The replication the slave runs, or null if it's a spare.
+     */
+    private Experiment replication;
+
+    /**
+     * When the slave started its replication.
+     */
+    private long startTime;
+
+    /**
+     * The last statistics the slave sent, or null.
+     */
+    private StatisticsCollection lastStats;
+
     /**
      * Creates a SlaveInfo to represent a slave.
      * @param name - The name of the slave.
@@ -65,6 +143,21 @@ public final class SlaveInfo {
     public SlaveInfo(final String name, final String binding) {
         this.serverName = name;
         this.rmiBinding = binding;
+        this.health = Health.HEALTHY;
+        this.callDeadline = DEFAULT_CALL_DEADLINE;
+    }
+
+    /**
+     * Creates a SlaveInfo to represent a slave on the master's host.
+     * @param slave - The slave.
+     */
+    public SlaveInfo(final LocalSlave slave) {
+        this.serverName = "localhost";
+        this.rmiBinding = slave.getName();
+        this.localSlave = slave;
+        this.simInterface = slave;
+        this.health = Health.HEALTHY;
+        this.callDeadline = DEFAULT_CALL_DEADLINE;
     }
 
     /**
@@ -91,10 +184,30 @@ public final class SlaveInfo {
         return this.simInterface;
     }
 
+    /**
+     * Gets the slave, if it's on the master's host.
+     * @return the slave, or null if it's reached through RMI
+     */
+    public LocalSlave getLocalSlave() {
+        return this.localSlave;
+    }
+
+    /**
+     * Checks if the slave is reached through RMI.
+     * @return if the slave is reached through RMI
+     */
+    public boolean isRemote() {
+        return this.localSlave == null;
+    }
+
     /**
      * Connects to the server referred to by this SlaveInfo.
      */
     public void connect() {
+        if (this.localSlave != null) {
+            // Connected when it was created
+            return;
+        }
         try {
             Registry registry = LocateRegistry.getRegistry(this.serverName);
             SimInterface stub = (SimInterface) registry
@@ -108,4 +221,244 @@ public final class SlaveInfo {
         }
     }
 
+    /**
+     * Releases the slave, if it's on the master's host, ending its
+     * worker process. Remote slaves keep running.
+     */
+    public void release() {
+        if (this.localSlave != null && this.health != Health.FAILED) {
+            this.localSlave.close();
+        }
+        if (this.caller != null) {
+            this.caller.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the health of the slave.
+     * @return the health of the slave
+     */
+    public Health getHealth() {
+        return this.health;
+    }
+
+    /**
+     * Marks the slave as straggling, so its results are left out,
+     * or as caught up.
+     * @param straggling - if the slave is straggling
+     */
+    public void setStraggling(final boolean straggling) {
+        if (this.health != Health.FAILED) {
+            this.health = straggling ? Health.STRAGGLING : Health.HEALTHY;
+        }
+    }
+
+    /**
+     * Marks the slave as failed. It isn't called again, and a slave on
+     * the master's host has its worker process killed.
+     * @param reason - why the slave failed
+     */
+    public void fail(final String reason) {
+        if (this.health == Health.FAILED) {
+            return;
+        }
+
+        System.out.println("Slave " + this.serverName + "-" + this.rmiBinding
+                           + " failed: " + reason);
+        this.health = Health.FAILED;
+        if (this.localSlave != null) {
+            this.localSlave.kill();
+        }
+        if (this.caller != null) {
+            this.caller.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts a deadline the slave missed, such as a progress report
+     * not arriving in time. The slave fails after missing
+     * several deadlines in a row.
+     */
+    public void missDeadline() {
+        this.missedDeadlines++;
+        if (this.missedDeadlines >= MAX_MISSED_DEADLINES) {
+            this.fail("missed " + this.missedDeadlines + " deadlines");
+        }
+    }
+
+    /**
+     * Counts the slave as having answered in time.
+     */
+    public void metDeadline() {
+        this.missedDeadlines = 0;
+    }
+
+    /**
+     * Sets the time the slave has to answer a call.
+     * @param deadline - the time (in milliseconds)
+     */
+    public void setCallDeadline(final long deadline) {
+        this.callDeadline = deadline;
+    }
+
+    /**
+     * Gets the time the slave has to answer a call.
+     * @return the time (in milliseconds)
+     */
+    public long getCallDeadline() {
+        return this.callDeadline;
+    }
+
+    /**
+     * Gets the replication the slave runs.
+     * @return the replication, as it was before it started,
+     * or null if the slave is a spare
+     */
+    public Experiment getReplication() {
+        return this.replication;
+    }
+
+    /**
+     * Gets when the slave started its replication.
+     * @return the start time (in milliseconds)
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * Takes the replication from the slave, so it can be run elsewhere.
+     * @return the replication, or null if the slave had none
+     */
+    public Experiment takeReplication() {
+        Experiment lost = this.replication;
+        this.replication = null;
+        return lost;
+    }
+
+    /**
+     * Gets the last statistics the slave sent.
+     * @return the statistics, or null if it hasn't sent any
+     */
+    public StatisticsCollection getLastStats() {
+        return this.lastStats;
+    }
+
+    /**
+     * Pings the slave, failing it if it doesn't answer in time.
+     * @return the slave's hello message
+     * @throws RemoteException - if the slave doesn't answer
+     */
+    public String sayHello() throws RemoteException {
+        return this.call(new Callable<String>() {
+            public String call() throws RemoteException {
+                return SlaveInfo.this.simInterface.sayHello();
+            }
+        });
+    }
+
+    /**
+     * Has the slave run a replication.
+     * @param experiment - the replication to run
+     * @param listener - the listener to push progress to,
+     * or null if the slave is polled
+     * @param slaveIndex - the index to report progress under
+     * @param reportPeriod - the time between reports (in milliseconds)
+     * @throws RemoteException - if the slave doesn't answer
+     */
+    public void runExperiment(final Experiment experiment,
+                              final ProgressListener listener,
+                              final int slaveIndex,
+                              final long reportPeriod)
+            throws RemoteException {
+        this.replication = experiment;
+        this.startTime = System.currentTimeMillis();
+        this.lastStats = null;
+        this.call(new Callable<Object>() {
+            public Object call() throws RemoteException {
+                if (listener == null) {
+                    SlaveInfo.this.simInterface.runExperiment(experiment);
+                } else {
+                    SlaveInfo.this.simInterface.runExperiment(experiment,
+                            listener, slaveIndex, reportPeriod);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets the slave's statistics, remembering them as its last.
+     * @return the slave's statistics
+     * @throws RemoteException - if the slave doesn't answer
+     */
+    public StatisticsCollection getStats() throws RemoteException {
+        byte[] encoded = this.call(new Callable<byte[]>() {
+            public byte[] call() throws RemoteException {
+                return SlaveInfo.this.simInterface.getEncodedExperimentStats();
+            }
+        });
+        this.lastStats = StatisticsCodec.decode(encoded);
+
+        return this.lastStats;
+    }
+
+    /**
+     * Stops the slave's replication.
+     * @throws RemoteException - if the slave doesn't answer
+     */
+    public void stop() throws RemoteException {
+        this.call(new Callable<Object>() {
+            public Object call() throws RemoteException {
+                SlaveInfo.this.simInterface.stop();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Calls the slave, waiting no longer than the call deadline.
+     * A slave that misses too many deadlines, or whose call fails,
+     * is failed.
+     * @param task - the call
+     * @param <T> - the type the call returns
+     * @return what the call returns
+     * @throws RemoteException - if the slave doesn't answer in time
+     */
+    private <T> T call(final Callable<T> task) throws RemoteException {
+        if (this.health == Health.FAILED) {
+            throw new RemoteException(this.rmiBinding + " has failed");
+        }
+        if (this.caller == null) {
+            this.caller = Executors.newSingleThreadExecutor(
+                    new ThreadFactory() {
+                        public Thread newThread(final Runnable r) {
+                            Thread thread = new Thread(r);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+
+        Future<T> future = this.caller.submit(task);
+        try {
+            T result = future.get(this.callDeadline, TimeUnit.MILLISECONDS);
+            this.metDeadline();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            this.missDeadline();
+            throw new RemoteException(this.rmiBinding
+                                      + " missed its deadline");
+        } catch (ExecutionException e) {
+            this.fail(e.getCause().toString());
+            throw new RemoteException(this.rmiBinding + " failed",
+                                      e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted calling "
+                                      + this.rmiBinding, e);
+        }
+    }
+
 }
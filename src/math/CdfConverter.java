@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package math;
+
+import java.io.File;
+
+/**
+ * Converts text distribution files ("xValue cdfValue" per line) to the
+ * binary format of {@link EmpiricalDistribution}, which loads without
+ * parsing. Each file is written next to the original, with the
+ * {@link EmpiricalDistribution#BINARY_EXTENSION} extension.
+ *
+ * Usage: CdfConverter (file.cdf | directory)...
+ * Directories are searched (not recursively) for .cdf files.
+ */
+public final class CdfConverter {
+
+    /**
+     * Not constructed, only provides {@link #main(String[])}.
+     */
+    private CdfConverter() {
+    }
+
+    /**
+     * Converts a text distribution file to a binary one.
+     *
+     * @param fileName - the name of the text file
+     * @return the name of the binary file written
+     */
+    public static String convert(final String fileName) {
+        EmpiricalDistribution distribution
+            = EmpiricalDistribution.loadTextDistribution(fileName, 1.0);
+        String binaryName = EmpiricalDistribution.getBinaryFileName(fileName);
+        distribution.saveBinaryDistribution(binaryName);
+
+        return binaryName;
+    }
+
+    /**
+     * Converts the files and directories named on the command line.
+     *
+     * @param args - the text files, or directories of them, to convert
+     */
+    public static void main(final String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: CdfConverter (file.cdf | directory)...");
+            System.exit(1);
+        }
+
+        for (String arg : args) {
+            File file = new File(arg);
+            File[] files = {file};
+            if (file.isDirectory()) {
+                files = file.listFiles();
+            }
+            for (File current : files) {
+                String name = current.getPath();
+                if (file.isDirectory()
+                        && !name.endsWith(EmpiricalDistribution.TEXT_EXTENSION)) {
+                    continue;
+                }
+                System.out.println("Converted " + name + " to "
+                                   + convert(name));
+            }
+        }
+    }
+
+}
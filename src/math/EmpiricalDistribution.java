@@ -30,12 +30,23 @@
  */
 package math;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -63,6 +74,31 @@ public final class EmpiricalDistribution implements Serializable {
     /** The serialization id. */
     private static final long serialVersionUID = 1L;
 
+    /** The extension of binary distribution files. */
+    public static final String BINARY_EXTENSION = ".cdfb";
+
+    /** The extension of text distribution files. */
+    public static final String TEXT_EXTENSION = ".cdf";
+
+    /** Marks the start of a binary distribution file ("BCDF"). */
+    private static final int BINARY_MAGIC = 0x42434446;
+
+    /** The version of the binary distribution format. */
+    private static final int BINARY_VERSION = 1;
+
+    /**
+     * The size of the binary header in bytes: the magic number, the
+     * version, the number of points and a reserved word.
+     */
+    private static final int BINARY_HEADER_SIZE = 16;
+
+    /**
+     * Distributions already loaded, by file name and scaling factor,
+     * so repeated experiments in a process share one instance.
+     */
+    private static final HashMap<String, EmpiricalDistribution> LOADED
+        = new HashMap<String, EmpiricalDistribution>();
+
     /** The x values. */
     private double[] xs;
 
@@ -75,6 +111,14 @@ public final class EmpiricalDistribution implements Serializable {
     /** The average value. */
     private double mean;
 
+    /**
+     * A guide table for inverse lookups: entry k is the bin the
+     * quantile k / length falls in, so a lookup only scans forward from
+     * there. With as many entries as bins this takes constant expected
+     * time per lookup.
+     */
+    private transient int[] guideTable;
+
     /**
      * Creates a new EmpiricalDistribution.
      *
@@ -107,6 +151,38 @@ public final class EmpiricalDistribution implements Serializable {
         this.xs = theXs;
         this.ys = theYs;
         this.mean = expectedValue;
+        this.buildGuideTable();
+    }
+
+    /**
+     * Builds the guide table for quantile lookups.
+     */
+    private void buildGuideTable() {
+        int nEntries = Math.max(this.ys.length, 1);
+        this.guideTable = new int[nEntries];
+        int last = this.ys.length - 1;
+        int bin = 0;
+        for (int i = 0; i < nEntries; i++) {
+            double quantile = (double) i / nEntries;
+            while (bin < last && this.ys[bin + 1] <= quantile) {
+                bin++;
+            }
+            this.guideTable[i] = bin;
+        }
+    }
+
+    /**
+     * Rebuilds the guide table after the distribution is deserialized.
+     *
+     * @param in - the stream the distribution is read from
+     * @throws IOException if the distribution can't be read
+     * @throws ClassNotFoundException if a class of the distribution
+     * can't be found
+     */
+    private void readObject(final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.buildGuideTable();
     }
 
     /**
@@ -119,21 +195,23 @@ public final class EmpiricalDistribution implements Serializable {
     }
 
     /**
-     * Get the x values of the distribution.
+     * Get the x values of the distribution. Loaded distributions are
+     * shared by every experiment in the process, so this is a copy.
      *
-     * @return the x values of the distribution
+     * @return a copy of the x values of the distribution
      */
     public double[] getXs() {
-        return this.xs;
+        return this.xs.clone();
     }
 
     /**
-     * Get the y values of the distribution.
+     * Get the y values of the distribution. Loaded distributions are
+     * shared by every experiment in the process, so this is a copy.
      *
-     * @return the y values of the distribution
+     * @return a copy of the y values of the distribution
      */
     public double[] getYs() {
-        return this.ys;
+        return this.ys.clone();
     }
 
     /**
@@ -155,6 +233,10 @@ public final class EmpiricalDistribution implements Serializable {
      * Files are in the format: "xValue cdfValue"
      * One entry per line.
      * The CDF should have 0 0 at the beginning and X 1.0 at the end.
+     * If a binary version of the file (see {@link #getBinaryFileName})
+     * exists and is at least as new, it is loaded instead.
+     * Distributions are cached, so loading the same file with the same
+     * scaling factor again returns the same instance.
      *
      * @param fileName - the name of the file
      * @param scalingFactor - a scaling factor to multiply x values in the
@@ -164,6 +246,82 @@ public final class EmpiricalDistribution implements Serializable {
     public static EmpiricalDistribution loadDistribution(
                                             final String fileName,
                                             final double scalingFactor) {
+        String key = fileName + "@" + scalingFactor;
+        synchronized (LOADED) {
+            EmpiricalDistribution distribution = LOADED.get(key);
+            if (distribution == null) {
+                distribution = readDistribution(fileName, scalingFactor);
+                LOADED.put(key, distribution);
+            }
+
+            return distribution;
+        }
+    }
+
+    /**
+     * Forgets the distributions loaded so far, e.g., after the files
+     * changed.
+     */
+    public static void clearLoadedDistributions() {
+        synchronized (LOADED) {
+            LOADED.clear();
+        }
+    }
+
+    /**
+     * Gets the name of the binary version of a text distribution file.
+     *
+     * @param fileName - the name of the text file
+     * @return the name of the binary file
+     */
+    public static String getBinaryFileName(final String fileName) {
+        if (fileName.endsWith(TEXT_EXTENSION)) {
+            return fileName.substring(0,
+                    fileName.length() - TEXT_EXTENSION.length())
+                    + BINARY_EXTENSION;
+        }
+
+        return fileName + BINARY_EXTENSION;
+    }
+
+    /**
+     * Reads a distribution file, preferring an up to date binary version.
+     *
+     * @param fileName - the name of the file
+     * @param scalingFactor - a scaling factor to multiply x values in the
+     * distribution by
+     * @return the empirical distribution represented by the file
+     */
+    private static EmpiricalDistribution readDistribution(
+                                            final String fileName,
+                                            final double scalingFactor) {
+        if (fileName.endsWith(BINARY_EXTENSION)) {
+            return loadBinaryDistribution(fileName, scalingFactor);
+        }
+
+        File textFile = new File(fileName);
+        File binaryFile = new File(getBinaryFileName(fileName));
+        if (binaryFile.isFile()
+                && binaryFile.lastModified() >= textFile.lastModified()) {
+            return loadBinaryDistribution(binaryFile.getPath(),
+                                          scalingFactor);
+        }
+
+        return loadTextDistribution(fileName, scalingFactor);
+    }
+
+    /**
+     * Loads an empirical distribution from a text file, bypassing the
+     * cache and any binary version.
+     *
+     * @param fileName - the name of the file
+     * @param scalingFactor - a scaling factor to multiply x values in the
+     * distribution by
+     * @return the empirical distribution represented by the file
+     */
+    static EmpiricalDistribution loadTextDistribution(
+                                            final String fileName,
+                                            final double scalingFactor) {
 
         // Use a vector since we don't know how many points there are
         Vector<XYPair> xypairs = new Vector<XYPair>();
@@ -178,7 +336,7 @@ public final class EmpiricalDistribution implements Serializable {
             String strLine;
 
             while ((strLine = br.readLine()) != null) {
-                String[] parts = strLine.split(" ");
+                String[] parts = strLine.trim().split("\\s+");
                 XYPair pair = new XYPair();
                 pair.x = Double.valueOf(parts[0]);
                 pair.y = Double.valueOf(parts[1]);
@@ -218,6 +376,100 @@ public final class EmpiricalDistribution implements Serializable {
         return distribution;
     }
 
+    /**
+     * Loads an empirical distribution from a binary file by mapping it
+     * into memory. The file has a header (magic number, version, number
+     * of points, reserved word) followed by the x values and then the
+     * CDF values, all big-endian.
+     *
+     * @param fileName - the name of the file
+     * @param scalingFactor - a scaling factor to multiply x values in the
+     * distribution by
+     * @return the empirical distribution represented by the file
+     */
+    static EmpiricalDistribution loadBinaryDistribution(
+                                            final String fileName,
+                                            final double scalingFactor) {
+        double[] xs = null;
+        double[] ys = null;
+        try {
+            RandomAccessFile file = new RandomAccessFile(fileName, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < BINARY_HEADER_SIZE
+                        || buffer.getInt() != BINARY_MAGIC) {
+                    Sim.fatalError(fileName
+                            + " isn't a binary distribution file");
+                }
+                int version = buffer.getInt();
+                if (version != BINARY_VERSION) {
+                    Sim.fatalError("Unsupported binary distribution version "
+                                   + version + " in " + fileName);
+                }
+                int entries = buffer.getInt();
+                buffer.getInt();
+                if (entries < 1 || buffer.remaining()
+                        != (long) entries * 2 * (Double.SIZE / Byte.SIZE)) {
+                    Sim.fatalError(fileName + " should have " + entries
+                                   + " points but has the wrong size");
+                }
+
+                DoubleBuffer values = buffer.asDoubleBuffer();
+                xs = new double[entries];
+                ys = new double[entries];
+                values.get(xs);
+                values.get(ys);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("File is " + fileName);
+            Sim.fatalError("Couldn't load distribution file");
+        }
+
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = xs[i] * scalingFactor;
+        }
+        if (xs[0] != 0 || ys[0] != 0) {
+            Sim.fatalError("The first point of a cdf file needs to be 0 0");
+        }
+
+        return new EmpiricalDistribution(xs, ys);
+    }
+
+    /**
+     * Saves the distribution in the binary format read by
+     * {@link #loadBinaryDistribution(String, double)}.
+     *
+     * @param fileName - the name of the file to write
+     */
+    public void saveBinaryDistribution(final String fileName) {
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(fileName)));
+            try {
+                out.writeInt(BINARY_MAGIC);
+                out.writeInt(BINARY_VERSION);
+                out.writeInt(this.xs.length);
+                out.writeInt(0);
+                for (int i = 0; i < this.xs.length; i++) {
+                    out.writeDouble(this.xs[i]);
+                }
+                for (int i = 0; i < this.ys.length; i++) {
+                    out.writeDouble(this.ys[i]);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            Sim.fatalError("Couldn't write distribution file " + fileName);
+        }
+    }
+
     /**
      *  Get the x value of a quantile of the CDF.
      *
@@ -225,7 +477,7 @@ public final class EmpiricalDistribution implements Serializable {
      *  @return the x value corresponding to the quantile
      */
     public double getQuantile(final double quantile) {
-        int bin = searchForBin(this.ys, quantile);
+        int bin = this.searchQuantileBin(quantile);
         // Note x and y are reversed
         double xValue = this.linearlyInterpolateBin(this.ys,
                                                     this.xs,
@@ -234,6 +486,33 @@ public final class EmpiricalDistribution implements Serializable {
         return xValue;
     }
 
+    /**
+     * Finds the biggest bin whose CDF value is at most a quantile,
+     * like {@link #searchForBin(double[], double)} on the CDF values,
+     * starting from the guide table.
+     *
+     * @param quantile - the quantile to search for
+     * @return the bin the quantile falls in
+     */
+    private int searchQuantileBin(final double quantile) {
+        if (!(quantile >= 0.0 && quantile < 1.0)) {
+            return searchForBin(this.ys, quantile);
+        }
+
+        int bin = this.guideTable[(int) (quantile * this.guideTable.length)];
+        int last = this.ys.length - 1;
+        while (bin < last && this.ys[bin + 1] <= quantile) {
+            bin++;
+        }
+
+        // Rounding put the quantile just below its guide entry
+        if (bin > 0 && this.ys[bin] > quantile) {
+            return searchForBin(this.ys, quantile);
+        }
+
+        return bin;
+    }
+
     /**
      * Find the CDF value at which the x value occurs.
      * This is an inverse distribution lookup.
@@ -0,0 +1,433 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package slave;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import stat.StatisticsCollection;
+import stat.StatisticsDelta;
+
+import core.Experiment;
+import core.Sim;
+
+/**
+ * A slave on the master's own host, reached without an RMI registry
+ * or ssh. The slave either runs in a thread of the master's process or
+ * in a worker process forked from it, and is served by a
+ * {@link SlaveHost} at the other end of a {@link MessageChannel}.
+ * Experiments and statistics are copied both ways, as they would be
+ * over RMI, so slaves behave the same however they're reached.
+ */
+public final class LocalSlave implements SimInterface {
+
+    /**
+     * The requests the master sends a slave. A request is sent as its
+     * command, its number and then its arguments.
+     */
+    enum Command {
+        /** Asks the slave to say hello. */
+        SAY_HELLO,
+
+        /** Runs an experiment. */
+        RUN_EXPERIMENT,
+
+        /** Runs an experiment, reporting progress back. */
+        RUN_REPORTING_EXPERIMENT,
+
+        /** Gets the slave's statistics. */
+        GET_EXPERIMENT_STATS,
+
+        /** Gets the slave's statistics, encoded compactly. */
+        GET_ENCODED_EXPERIMENT_STATS,
+
+        /** Stops the slave's experiment. */
+        STOP,
+
+        /** Stops serving the master. */
+        EXIT
+    }
+
+    /**
+     * The messages a slave sends the master. Results and failures carry
+     * the number of the request they answer before their value.
+     */
+    enum Reply {
+        /** The result of the last request. */
+        RESULT,
+
+        /** The exception the last request failed with. */
+        FAILURE,
+
+        /** A progress report from a running experiment. */
+        PROGRESS
+    }
+
+    /** The time (in milliseconds) a worker process has to exit. */
+    private static final long EXIT_TIMEOUT = 10000;
+
+    /** The name of the slave. */
+    private String name;
+
+    /** The channel to the slave. */
+    private MessageChannel channel;
+
+    /** The worker process, or null if the slave runs in this process. */
+    private Process process;
+
+    /** The slave, if it runs in this process, or null. */
+    private Slave inProcessSlave;
+
+    /** The thread serving the slave, if it runs in this process, or null. */
+    private Thread host;
+
+    /** The listener the slave's progress goes to. */
+    private volatile ProgressListener listener;
+
+    /** The number of the last request sent. */
+    private long requestNumber;
+
+    /** The reply to the request waiting for one. */
+    private Object[] reply;
+
+    /** If the channel to the slave has closed. */
+    private boolean closed;
+
+    /**
+     * Creates a new LocalSlave, and starts reading what the slave sends.
+     *
+     * @param theName - the name of the slave
+     * @param aChannel - the channel to the slave
+     * @param aProcess - the worker process, or null
+     */
+    private LocalSlave(final String theName,
+                       final MessageChannel aChannel,
+                       final Process aProcess) {
+        this.name = theName;
+        this.channel = aChannel;
+        this.process = aProcess;
+        this.closed = false;
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                LocalSlave.this.readMessages();
+            }
+        }, theName + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Creates a slave which runs in a thread of this process.
+     *
+     * @param theName - the name of the slave
+     * @return the slave
+     */
+    public static LocalSlave inProcess(final String theName) {
+        MessageChannel[] ends = MessageChannel.pipe();
+        Slave slave = new Slave(theName);
+        Thread host = new Thread(new SlaveHost(slave, ends[1]), theName);
+        host.setDaemon(true);
+        host.start();
+
+        LocalSlave localSlave = new LocalSlave(theName, ends[0], null);
+        localSlave.inProcessSlave = slave;
+        localSlave.host = host;
+
+        return localSlave;
+    }
+
+    /**
+     * Creates a slave which runs in a new worker process, a JVM with
+     * this process's class path. Its output goes to this process's
+     * standard error.
+     *
+     * @param theName - the name of the slave
+     * @return the slave
+     */
+    public static LocalSlave fork(final String theName) {
+        String java = System.getProperty("java.home") + File.separator
+                      + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                SlaveHost.class.getName(),
+                theName);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Process process = builder.start();
+            MessageChannel channel = MessageChannel.overStreams(
+                    process.getInputStream(), process.getOutputStream());
+
+            return new LocalSlave(theName, channel, process);
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't fork slave " + theName + ": " + e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the name of the slave.
+     *
+     * @return the name of the slave
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Says hello from the slave.
+     *
+     * @return a hello message
+     * @throws RemoteException - if the slave can't be reached
+     */
+    public String sayHello() throws RemoteException {
+        return (String) this.call(Command.SAY_HELLO);
+    }
+
+    /**
+     * Has the slave run an experiment.
+     *
+     * @param experiment - the experiment to run
+     * @throws RemoteException - if the slave can't be reached
+     */
+    public void runExperiment(final Experiment experiment)
+            throws RemoteException {
+        this.call(Command.RUN_EXPERIMENT, experiment);
+    }
+
+    /**
+     * Has the slave run an experiment, pushing its progress to a
+     * listener in this process.
+     *
+     * @param experiment - the experiment to run
+     * @param aListener - the listener to report progress to
+     * @param slaveIndex - the index to report progress under
+     * @param reportPeriod - the time between reports (in milliseconds)
+     * @throws RemoteException - if the slave can't be reached
+     */
+    public void runExperiment(final Experiment experiment,
+                              final ProgressListener aListener,
+                              final int slaveIndex,
+                              final long reportPeriod)
+            throws RemoteException {
+        this.listener = aListener;
+        this.call(Command.RUN_REPORTING_EXPERIMENT,
+                  experiment, slaveIndex, reportPeriod);
+    }
+
+    /**
+     * Gets a copy of the slave's statistics.
+     *
+     * @return the slave's statistics
+     * @throws RemoteException - if the slave can't be reached
+     */
+    public StatisticsCollection getExperimentStats() throws RemoteException {
+        return (StatisticsCollection) this.call(Command.GET_EXPERIMENT_STATS);
+    }
+
+    /**
+     * Gets the slave's statistics, encoded compactly.
+     *
+     * @return the encoded statistics
+     * @throws RemoteException - if the slave can't be reached
+     */
+    public byte[] getEncodedExperimentStats() throws RemoteException {
+        return (byte[]) this.call(Command.GET_ENCODED_EXPERIMENT_STATS);
+    }
+
+    /**
+     * Stops the slave's experiment.
+     *
+     * @throws RemoteException - if the slave can't be reached
+     */
+    public void stop() throws RemoteException {
+        this.call(Command.STOP);
+    }
+
+    /**
+     * Stops serving the slave, and waits for its worker process to exit,
+     * killing it if it doesn't exit in time.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!this.closed) {
+                try {
+                    this.channel.send(new Object[] {Command.EXIT});
+                } catch (IOException e) {
+                    // The slave is already gone
+                }
+            }
+        }
+        this.channel.close();
+        if (this.process != null) {
+            try {
+                if (!this.process.waitFor(EXIT_TIMEOUT,
+                                          TimeUnit.MILLISECONDS)) {
+                    this.process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Abandons a slave that stopped answering, killing its worker
+     * process rather than waiting for it to exit. A slave in this
+     * process has its experiment stopped instead, once its host has
+     * served the requests already sent, so it doesn't keep simulating
+     * alongside its replacement.
+     */
+    public void kill() {
+        // Killing the worker first unblocks any send to its full pipe
+        if (this.process != null) {
+            this.process.destroyForcibly();
+        }
+        this.channel.close();
+        if (this.host != null) {
+            try {
+                this.host.join(EXIT_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                this.inProcessSlave.stop();
+            } catch (RemoteException e) {
+                System.out.println("Couldn't stop slave " + this.name
+                                   + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Checks if the slave runs in its own worker process.
+     *
+     * @return if the slave runs in a worker process
+     */
+    public boolean isForked() {
+        return this.process != null;
+    }
+
+    /**
+     * Sends a request to the slave and waits for its reply.
+     *
+     * @param request - the request and its arguments
+     * @return the result of the request
+     * @throws RemoteException - if the slave can't be reached
+     * or fails the request
+     */
+    private synchronized Object call(final Object... request)
+            throws RemoteException {
+        if (this.closed) {
+            throw new RemoteException("Lost slave " + this.name);
+        }
+
+        this.requestNumber++;
+        Object[] message = new Object[request.length + 1];
+        message[0] = request[0];
+        message[1] = this.requestNumber;
+        System.arraycopy(request, 1, message, 2, request.length - 1);
+        this.reply = null;
+        try {
+            this.channel.send(message);
+            while (this.reply == null && !this.closed) {
+                this.wait();
+            }
+        } catch (IOException e) {
+            throw new RemoteException("Couldn't reach slave " + this.name, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted calling " + this.name, e);
+        }
+        if (this.reply == null) {
+            throw new RemoteException("Lost slave " + this.name);
+        }
+
+        if (this.reply[0] == Reply.FAILURE) {
+            Throwable failure = (Throwable) this.reply[2];
+            if (failure instanceof RemoteException) {
+                throw (RemoteException) failure;
+            }
+            throw new RemoteException(this.name + " failed", failure);
+        }
+
+        return this.reply[2];
+    }
+
+    /**
+     * Reads what the slave sends until the channel closes, handing
+     * replies to the waiting request and progress to the listener. A
+     * reply to an earlier request, e.g., one whose caller gave up
+     * waiting, is dropped.
+     */
+    private void readMessages() {
+        try {
+            Object[] message = this.channel.receive();
+            while (message != null) {
+                if (message[0] == Reply.PROGRESS) {
+                    this.reportProgress((Integer) message[1],
+                                        (StatisticsDelta) message[2]);
+                } else {
+                    synchronized (this) {
+                        if ((Long) message[1] == this.requestNumber) {
+                            this.reply = message;
+                            this.notifyAll();
+                        }
+                    }
+                }
+                message = this.channel.receive();
+            }
+        } catch (IOException e) {
+            System.out.println("Lost slave " + this.name + ": " + e);
+        } finally {
+            synchronized (this) {
+                this.closed = true;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Passes a progress report on to the listener.
+     *
+     * @param slaveIndex - the index of the reporting slave
+     * @param delta - the change in its statistics
+     */
+    private void reportProgress(final int slaveIndex,
+                                final StatisticsDelta delta) {
+        try {
+            this.listener.reportProgress(slaveIndex, delta);
+        } catch (RemoteException e) {
+            System.out.println("Couldn't pass on progress: " + e);
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package slave;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * One end of a two way channel which carries messages between a
+ * {@link LocalSlave} and the {@link SlaveHost} serving it. Messages are
+ * arrays of serializable objects, and are copied as they're sent, so
+ * the two ends share nothing, as with RMI.
+ */
+abstract class MessageChannel {
+
+    /**
+     * Sends a message to the other end.
+     *
+     * @param message - the message
+     * @throws IOException - if the message can't be sent
+     */
+    abstract void send(Object[] message) throws IOException;
+
+    /**
+     * Waits for a message from the other end.
+     *
+     * @return the message, or null if the other end closed the channel
+     * @throws IOException - if a message can't be received
+     */
+    abstract Object[] receive() throws IOException;
+
+    /**
+     * Closes this end of the channel.
+     */
+    abstract void close();
+
+    /**
+     * Creates the two ends of a channel within this process.
+     *
+     * @return the two ends of the channel
+     */
+    static MessageChannel[] pipe() {
+        LinkedBlockingQueue<byte[]> forward = new LinkedBlockingQueue<byte[]>();
+        LinkedBlockingQueue<byte[]> backward
+            = new LinkedBlockingQueue<byte[]>();
+
+        return new MessageChannel[] {new QueueChannel(backward, forward),
+                                     new QueueChannel(forward, backward)};
+    }
+
+    /**
+     * Creates an end of a channel over a pair of streams, such as the
+     * standard input and output of another process.
+     *
+     * @param in - the stream messages arrive on
+     * @param out - the stream messages are sent on
+     * @return the end of the channel
+     * @throws IOException - if the streams can't be written
+     */
+    static MessageChannel overStreams(final InputStream in,
+                                      final OutputStream out)
+            throws IOException {
+        return new StreamChannel(in, out);
+    }
+
+    /**
+     * An end of a channel within this process, which passes serialized
+     * messages through queues.
+     */
+    private static final class QueueChannel extends MessageChannel {
+
+        /** Marks that the sending end closed the channel. */
+        private static final byte[] CLOSED = new byte[0];
+
+        /** The queue messages arrive on. */
+        private LinkedBlockingQueue<byte[]> incoming;
+
+        /** The queue messages are sent on. */
+        private LinkedBlockingQueue<byte[]> outgoing;
+
+        /**
+         * Creates a new QueueChannel.
+         *
+         * @param theIncoming - the queue messages arrive on
+         * @param theOutgoing - the queue messages are sent on
+         */
+        private QueueChannel(final LinkedBlockingQueue<byte[]> theIncoming,
+                             final LinkedBlockingQueue<byte[]> theOutgoing) {
+            this.incoming = theIncoming;
+            this.outgoing = theOutgoing;
+        }
+
+        @Override
+        void send(final Object[] message) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(message);
+            out.close();
+            this.outgoing.add(bytes.toByteArray());
+        }
+
+        @Override
+        Object[] receive() throws IOException {
+            byte[] bytes;
+            try {
+                bytes = this.incoming.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted receiving a message");
+            }
+            if (bytes == CLOSED) {
+                // Leave the mark for any later receive
+                this.incoming.add(CLOSED);
+                return null;
+            }
+
+            ObjectInputStream in
+                = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (Object[]) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown message: " + e);
+            }
+        }
+
+        @Override
+        void close() {
+            this.outgoing.add(CLOSED);
+        }
+
+    }
+
+    /**
+     * An end of a channel over a pair of streams.
+     */
+    private static final class StreamChannel extends MessageChannel {
+
+        /** The stream messages arrive on. */
+        private InputStream inStream;
+
+        /** Reads messages, once the other end's stream header arrives. */
+        private ObjectInputStream in;
+
+        /** Writes messages. */
+        private ObjectOutputStream out;
+
+        /**
+         * Creates a new StreamChannel.
+         *
+         * @param theIn - the stream messages arrive on
+         * @param theOut - the stream messages are sent on
+         * @throws IOException - if the stream can't be written
+         */
+        private StreamChannel(final InputStream theIn,
+                              final OutputStream theOut)
+                throws IOException {
+            this.inStream = theIn;
+            this.out = new ObjectOutputStream(new BufferedOutputStream(theOut));
+            this.out.flush();
+        }
+
+        @Override
+        synchronized void send(final Object[] message) throws IOException {
+            this.out.writeObject(message);
+            // Don't keep references to sent objects, they change
+            this.out.reset();
+            this.out.flush();
+        }
+
+        @Override
+        Object[] receive() throws IOException {
+            try {
+                if (this.in == null) {
+                    this.in = new ObjectInputStream(this.inStream);
+                }
+                return (Object[]) this.in.readObject();
+            } catch (EOFException e) {
+                return null;
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown message: " + e);
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                // The other end is already gone
+            }
+        }
+
+    }
+
+}
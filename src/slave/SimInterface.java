@@ -59,12 +59,32 @@ public interface SimInterface extends Remote {
      */
     void runExperiment(Experiment experiment) throws RemoteException;
 
+    /** Runs an experiment remotely, pushing its progress to a listener.
+     * @param experiment - the experiment to run
+     * @param listener - the listener to report progress to
+     * @param slaveIndex - the index to report progress under
+     * @param reportPeriod - the time between reports (in milliseconds)
+     * @throws RemoteException - an exception if the remote interface fails
+     */
+    void runExperiment(Experiment experiment,
+                       ProgressListener listener,
+                       int slaveIndex,
+                       long reportPeriod) throws RemoteException;
+
     /** Gets a remote slave's statistics collection.
      * @throws RemoteException - an exception if the remote interface fails
      * @return the callee's statistics collection
      */
     StatisticsCollection getExperimentStats() throws RemoteException;
 
+    /** Gets a remote slave's statistics in the compact
+     * {@link stat.StatisticsCodec} encoding, which is much smaller
+     * to send than the collection itself.
+     * @throws RemoteException - an exception if the remote interface fails
+     * @return the callee's encoded statistics
+     */
+    byte[] getEncodedExperimentStats() throws RemoteException;
+
     /** Stops the remote slave's experiment.
      * @throws RemoteException - an exception if the remote interface fails
      */
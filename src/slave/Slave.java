@@ -37,7 +37,9 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 
+import stat.StatisticsCodec;
 import stat.StatisticsCollection;
+import stat.StatisticsDelta;
 
 import core.Experiment;
 
@@ -114,13 +116,15 @@ public final class Slave implements SimInterface {
     }
 
     /**
-     * Stops the slave.
+     * Stops the slave's experiment, if it has one.
      *
      * @throws RemoteException - if the stop fails
      */
     public void stop() throws RemoteException {
         System.out.println("Goodbye!");
-        this.experimentRunner.getExperiment().stop();
+        if (this.experimentRunner != null) {
+            this.experimentRunner.getExperiment().stop();
+        }
     }
 
     /**
@@ -138,6 +142,30 @@ public final class Slave implements SimInterface {
         System.out.println("Slave returned from run call");
     }
 
+    /**
+     * Has the slave run an experiment, pushing the change in its
+     * statistics to a listener periodically until the experiment stops.
+     *
+     * @param experiment - the experiment to run
+     * @param listener - the listener to report progress to
+     * @param slaveIndex - the index to report progress under
+     * @param reportPeriod - the time between reports (in milliseconds)
+     * @throws RemoteException - an exception if the remote interface fails
+     */
+    public void runExperiment(final Experiment experiment,
+                              final ProgressListener listener,
+                              final int slaveIndex,
+                              final long reportPeriod)
+            throws RemoteException {
+        this.runExperiment(experiment);
+        ProgressReporter reporter = new ProgressReporter(this.experimentRunner,
+                                                         listener,
+                                                         slaveIndex,
+                                                         reportPeriod);
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
     /**
      * Gets the statistics collection of the slave.
      *
@@ -148,6 +176,22 @@ public final class Slave implements SimInterface {
         return this.experimentRunner.getExperiment().getStats();
     }
 
+    /**
+     * Gets the statistics of the slave, encoded compactly.
+     *
+     * @return the encoded statistics of the slave
+     * @throws RemoteException - an exception if the remote interface fails
+     */
+    public byte[] getEncodedExperimentStats() throws RemoteException {
+        try {
+            return StatisticsCodec.encode(
+                    this.experimentRunner.getExperiment().getStatsSnapshot());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted getting statistics", e);
+        }
+    }
+
     /**
      * An experiment runner is a thread of execution which
      * runs an experiment.
@@ -184,4 +228,69 @@ public final class Slave implements SimInterface {
 
     }
 
+    /**
+     * A thread which periodically pushes the change in an experiment's
+     * statistics to a listener, until the experiment stops.
+     */
+    private static class ProgressReporter extends Thread {
+
+        /** The runner of the experiment to report on. */
+        private ExperimentRunner runner;
+
+        /** The listener to report to. */
+        private ProgressListener listener;
+
+        /** The index to report under. */
+        private int slaveIndex;
+
+        /** The time between reports (in milliseconds). */
+        private long reportPeriod;
+
+        /**
+         * Creates a new ProgressReporter.
+         *
+         * @param theRunner - the runner of the experiment to report on
+         * @param theListener - the listener to report to
+         * @param theSlaveIndex - the index to report under
+         * @param theReportPeriod - the time between reports
+         */
+        public ProgressReporter(final ExperimentRunner theRunner,
+                                final ProgressListener theListener,
+                                final int theSlaveIndex,
+                                final long theReportPeriod) {
+            this.runner = theRunner;
+            this.listener = theListener;
+            this.slaveIndex = theSlaveIndex;
+            this.reportPeriod = theReportPeriod;
+        }
+
+        /**
+         * Reports until the experiment stops, then sends a last report.
+         */
+        public void run() {
+            Experiment experiment = this.runner.getExperiment();
+            StatisticsCollection reported = null;
+            try {
+                boolean finished = false;
+                while (!finished) {
+                    this.runner.join(this.reportPeriod);
+                    finished = !this.runner.isAlive();
+                    StatisticsCollection stats
+                        = experiment.getStatsSnapshot();
+                    StatisticsDelta delta
+                        = StatisticsDelta.between(reported, stats);
+                    delta.setFinished(finished);
+                    this.listener.reportProgress(this.slaveIndex, delta);
+                    reported = stats;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RemoteException e) {
+                System.out.println("Couldn't report progress: " + e);
+                e.printStackTrace();
+            }
+        }
+
+    }
+
 }
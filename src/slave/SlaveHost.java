@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package slave;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import stat.StatisticsDelta;
+
+import core.Experiment;
+
+/**
+ * Serves a {@link Slave} to a {@link LocalSlave} over a
+ * {@link MessageChannel}, either in a thread of the master's process or
+ * as the main class of a worker process the master forks. Unlike
+ * {@link Slave#setup()}, this needs no RMI registry.
+ */
+public final class SlaveHost implements Runnable {
+
+    /** The slave being served. */
+    private Slave slave;
+
+    /** The channel to the master. */
+    private MessageChannel channel;
+
+    /**
+     * Creates a new SlaveHost.
+     *
+     * @param aSlave - the slave to serve
+     * @param aChannel - the channel to the master
+     */
+    SlaveHost(final Slave aSlave, final MessageChannel aChannel) {
+        this.slave = aSlave;
+        this.channel = aChannel;
+    }
+
+    /**
+     * Serves requests from the master until it exits or closes the
+     * channel.
+     */
+    public void run() {
+        try {
+            Object[] request = this.channel.receive();
+            while (request != null
+                    && request[0] != LocalSlave.Command.EXIT) {
+                Object[] reply;
+                try {
+                    reply = new Object[] {LocalSlave.Reply.RESULT,
+                                          request[1],
+                                          this.handle(request)};
+                } catch (Exception e) {
+                    reply = new Object[] {LocalSlave.Reply.FAILURE,
+                                          request[1], e};
+                }
+                this.channel.send(reply);
+                request = this.channel.receive();
+            }
+        } catch (IOException e) {
+            System.err.println("Lost the master: " + e);
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Carries out a request on the slave.
+     *
+     * @param request - the request
+     * @return the result of the request, or null if it has none
+     * @throws RemoteException - if the slave fails the request
+     */
+    private Object handle(final Object[] request) throws RemoteException {
+        switch ((LocalSlave.Command) request[0]) {
+            case SAY_HELLO:
+                return this.slave.sayHello();
+            case RUN_EXPERIMENT:
+                this.slave.runExperiment((Experiment) request[2]);
+                return null;
+            case RUN_REPORTING_EXPERIMENT:
+                this.slave.runExperiment((Experiment) request[2],
+                                         new ChannelListener(),
+                                         (Integer) request[3],
+                                         (Long) request[4]);
+                return null;
+            case GET_EXPERIMENT_STATS:
+                return this.slave.getExperimentStats();
+            case GET_ENCODED_EXPERIMENT_STATS:
+                return this.slave.getEncodedExperimentStats();
+            case STOP:
+                this.slave.stop();
+                return null;
+            default:
+                throw new RemoteException("Unknown request " + request[0]);
+        }
+    }
+
+    /**
+     * The main function of a forked worker process. Serves a slave over
+     * the standard input and output, so anything the simulation prints
+     * goes to the standard error instead.
+     *
+     * @param args - command line arguments.
+     * The first should be the slave's name.
+     * @throws IOException - if the standard output can't be written
+     */
+    public static void main(final String[] args) throws IOException {
+        FileOutputStream messages = new FileOutputStream(FileDescriptor.out);
+        System.setOut(System.err);
+        MessageChannel channel = MessageChannel.overStreams(
+                new BufferedInputStream(new FileInputStream(FileDescriptor.in)),
+                messages);
+        new SlaveHost(new Slave(args[0]), channel).run();
+        System.exit(0);
+    }
+
+    /**
+     * Forwards the progress the slave reports to the master.
+     */
+    private final class ChannelListener implements ProgressListener {
+
+        /**
+         * Sends a progress report to the master.
+         *
+         * @param slaveIndex - the index of the reporting slave
+         * @param delta - the change in its statistics
+         * @throws RemoteException - if the report can't be sent
+         */
+        public void reportProgress(final int slaveIndex,
+                                   final StatisticsDelta delta)
+                throws RemoteException {
+            try {
+                SlaveHost.this.channel.send(new Object[] {
+                        LocalSlave.Reply.PROGRESS, slaveIndex, delta});
+            } catch (IOException e) {
+                throw new RemoteException("Couldn't report progress", e);
+            }
+        }
+
+    }
+
+}
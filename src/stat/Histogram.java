@@ -296,4 +296,16 @@ public final class Histogram implements Serializable {
         return this.xValues;
     }
 
+    /**
+     * Adds counts to some bins of the histogram.
+     * @param bins - the bins to add to
+     * @param counts - the count to add to each bin
+     */
+    void addToBins(final int[] bins, final double[] counts) {
+        this.cdf = null;
+        for (int i = 0; i < bins.length; i++) {
+            this.yValues[bins[i]] += counts[i];
+        }
+    }
+
 }
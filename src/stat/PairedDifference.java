@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package stat;
+
+import java.io.Serializable;
+
+/**
+ * Estimates the difference between two configurations of an experiment
+ * from paired observations, e.g., the mean response time of two
+ * policies in replications that share a seed. With common random
+ * numbers the two observations of a pair are positively correlated, so
+ * the confidence interval of their difference is much narrower than the
+ * intervals of the two configurations alone would suggest.
+ */
+public class PairedDifference implements Serializable {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 1L;
+
+    /** The bisection steps when inverting the t cdf. */
+    private static final int QUANTILE_ITERATIONS = 60;
+
+    /** The observations of the first configuration. */
+    private SimpleStatistic first;
+
+    /** The observations of the second configuration. */
+    private SimpleStatistic second;
+
+    /** The differences of the pairs (first - second). */
+    private SimpleStatistic differences;
+
+    /**
+     * Creates a new PairedDifference with no pairs.
+     */
+    public PairedDifference() {
+        this.first = new SimpleStatistic();
+        this.second = new SimpleStatistic();
+        this.differences = new SimpleStatistic();
+    }
+
+    /**
+     * Adds a pair of observations made with the same random numbers.
+     *
+     * @param firstValue - the observation of the first configuration
+     * @param secondValue - the observation of the second configuration
+     */
+    public void addPair(final double firstValue, final double secondValue) {
+        this.first.addSample(firstValue);
+        this.second.addSample(secondValue);
+        this.differences.addSample(firstValue - secondValue);
+    }
+
+    /**
+     * Gets the number of pairs.
+     *
+     * @return the number of pairs
+     */
+    public long getNPairs() {
+        return this.differences.getCount();
+    }
+
+    /**
+     * Gets the mean difference (first - second).
+     *
+     * @return the mean difference
+     */
+    public double getMeanDifference() {
+        return this.differences.getAverage();
+    }
+
+    /**
+     * Gets the mean of the first configuration's observations.
+     *
+     * @return the mean of the first configuration
+     */
+    public double getFirstMean() {
+        return this.first.getAverage();
+    }
+
+    /**
+     * Gets the mean of the second configuration's observations.
+     *
+     * @return the mean of the second configuration
+     */
+    public double getSecondMean() {
+        return this.second.getAverage();
+    }
+
+    /**
+     * Gets the half width of the confidence interval of the mean
+     * difference, from the Student t distribution.
+     *
+     * @param confidence - the confidence level (e.g., .95)
+     * @return the half width, or infinity with fewer than two pairs
+     */
+    public double getHalfWidth(final double confidence) {
+        long n = this.getNPairs();
+        if (n < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double t = studentQuantile((int) (n - 1), (1 + confidence) / 2);
+        return t * this.differences.getStdDev() / Math.sqrt(n);
+    }
+
+    /**
+     * Gets an upper quantile of the Student t distribution by bisecting
+     * its cdf. The ssj t distribution needs an optimization package
+     * which isn't shipped with the ssj jar.
+     *
+     * @param degreesFreedom - the degrees of freedom
+     * @param p - the quantile (above .5)
+     * @return the quantile
+     */
+    private static double studentQuantile(final int degreesFreedom,
+                                          final double p) {
+        double low = 0.0;
+        double high = 1.0;
+        while (studentCdf(degreesFreedom, high) < p) {
+            low = high;
+            high *= 2;
+        }
+
+        for (int i = 0; i < QUANTILE_ITERATIONS; i++) {
+            double middle = (low + high) / 2;
+            if (studentCdf(degreesFreedom, middle) < p) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+
+        return (low + high) / 2;
+    }
+
+    /**
+     * Gets the cdf of the Student t distribution at a non-negative point,
+     * from the finite series for integer degrees of freedom
+     * (Abramowitz and Stegun 26.7.3 and 26.7.4).
+     *
+     * @param degreesFreedom - the degrees of freedom
+     * @param t - the point (non-negative)
+     * @return the cdf at t
+     */
+    private static double studentCdf(final int degreesFreedom,
+                                     final double t) {
+        double theta = Math.atan(t / Math.sqrt(degreesFreedom));
+        double sin = Math.sin(theta);
+        double cos2 = Math.cos(theta) * Math.cos(theta);
+
+        // The probability of falling within [-t, t]
+        double within;
+        if (degreesFreedom % 2 == 1) {
+            double sum = 0.0;
+            if (degreesFreedom > 1) {
+                double term = 1.0;
+                sum = term;
+                for (int i = 3; i < degreesFreedom; i += 2) {
+                    term *= cos2 * (i - 1) / i;
+                    sum += term;
+                }
+                sum *= sin * Math.cos(theta);
+            }
+            within = 2 / Math.PI * (theta + sum);
+        } else {
+            double term = 1.0;
+            double sum = term;
+            for (int i = 2; i < degreesFreedom; i += 2) {
+                term *= cos2 * (i - 1) / i;
+                sum += term;
+            }
+            within = sin * sum;
+        }
+
+        return (1 + within) / 2;
+    }
+
+    /**
+     * Gets the half width of the confidence interval relative to the
+     * magnitude of the mean difference.
+     *
+     * @param confidence - the confidence level (e.g., .95)
+     * @return the relative half width
+     */
+    public double getRelativeHalfWidth(final double confidence) {
+        return this.getHalfWidth(confidence)
+                / Math.abs(this.getMeanDifference());
+    }
+
+    /**
+     * Checks if the configurations differ, i.e., if the confidence
+     * interval of the difference excludes zero.
+     *
+     * @param confidence - the confidence level (e.g., .95)
+     * @return if the configurations differ significantly
+     */
+    public boolean isSignificant(final double confidence) {
+        return Math.abs(this.getMeanDifference())
+                > this.getHalfWidth(confidence);
+    }
+
+    /**
+     * Gets how many times smaller the variance of the difference is than
+     * it would be if the configurations were run independently.
+     * Pairs needed for a given precision shrink by the same factor.
+     *
+     * @return the variance reduction factor
+     */
+    public double getVarianceReduction() {
+        double firstStdDev = this.first.getStdDev();
+        double secondStdDev = this.second.getStdDev();
+        double diffStdDev = this.differences.getStdDev();
+
+        return (firstStdDev * firstStdDev + secondStdDev * secondStdDev)
+                / (diffStdDev * diffStdDev);
+    }
+
+    /**
+     * Prints the estimate of the difference.
+     *
+     * @param confidence - the confidence level (e.g., .95)
+     */
+    public void printSummary(final double confidence) {
+        System.out.println("Pairs: " + this.getNPairs());
+        System.out.println("First mean: " + this.getFirstMean());
+        System.out.println("Second mean: " + this.getSecondMean());
+        System.out.println("Difference: " + this.getMeanDifference()
+                + " +/- " + this.getHalfWidth(confidence)
+                + " (" + confidence * 100 + "% confidence)");
+        System.out.println("Significant: " + this.isSignificant(confidence));
+        System.out.println("Variance reduction vs independent runs: "
+                + this.getVarianceReduction());
+    }
+
+}
@@ -0,0 +1,653 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package stat;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import core.Sim;
+
+/**
+ * A mergeable quantile sketch with logarithmically sized buckets.
+ * Every sample falls in the bucket (gamma^(i-1), gamma^i] for some i,
+ * where gamma = (1 + a) / (1 - a) for a relative accuracy a, so any
+ * quantile is reported within a relative error of a of a sample at that
+ * rank. Unlike {@link Histogram}, the sketch needs no bounds up front,
+ * never clamps samples, and adds a sample in O(1).
+ * Sketches with the same relative accuracy can be combined exactly.
+ */
+public final class QuantileSketch implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default relative accuracy of the sketch (0.5%).
+     */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.005;
+
+    /**
+     * The smallest magnitude which is not treated as zero.
+     */
+    private static final double MIN_INDEXABLE_VALUE = 1e-300;
+
+    /**
+     * The relative accuracy of the sketch.
+     */
+    private double relativeAccuracy;
+
+    /**
+     * The ratio between the bounds of consecutive buckets.
+     */
+    private double gamma;
+
+    /**
+     * 1 / ln(gamma), to find a bucket with one log call.
+     */
+    private double inverseLogGamma;
+
+    /**
+     * The buckets of positive samples.
+     */
+    private BucketStore positiveBuckets;
+
+    /**
+     * The buckets of negative samples (indexed by magnitude).
+     */
+    private BucketStore negativeBuckets;
+
+    /**
+     * The number of samples which were zero (or too small to index).
+     */
+    private long zeroCount;
+
+    /**
+     * The total number of samples.
+     */
+    private long count;
+
+    /**
+     * The smallest sample seen.
+     */
+    private double minValue;
+
+    /**
+     * The largest sample seen.
+     */
+    private double maxValue;
+
+    /**
+     * Creates a new sketch with the default relative accuracy.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Creates a new sketch.
+     *
+     * @param theRelativeAccuracy - the relative accuracy of
+     * quantile estimates (e.g., .01 is within 1%)
+     */
+    public QuantileSketch(final double theRelativeAccuracy) {
+        if (theRelativeAccuracy <= 0 || theRelativeAccuracy >= 1) {
+            Sim.fatalError("Relative accuracy must be between 0 and 1");
+        }
+        this.relativeAccuracy = theRelativeAccuracy;
+        this.gamma = (1 + theRelativeAccuracy) / (1 - theRelativeAccuracy);
+        this.inverseLogGamma = 1.0d / Math.log(this.gamma);
+        this.positiveBuckets = new BucketStore();
+        this.negativeBuckets = new BucketStore();
+        this.zeroCount = 0;
+        this.count = 0;
+        this.minValue = Double.POSITIVE_INFINITY;
+        this.maxValue = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Gets the bucket index of a (positive) magnitude.
+     *
+     * @param magnitude - the magnitude
+     * @return the index of the bucket holding the magnitude
+     */
+    private int index(final double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) * this.inverseLogGamma);
+    }
+
+    /**
+     * Gets the value reported for a bucket.
+     * This is the point with equal relative error to both bucket bounds.
+     *
+     * @param index - the index of the bucket
+     * @return the value reported for the bucket
+     */
+    private double value(final int index) {
+        return 2 * Math.pow(this.gamma, index) / (this.gamma + 1);
+    }
+
+    /**
+     * Adds a sample to the sketch.
+     *
+     * @param value - the sample value
+     */
+    public void addSample(final double value) {
+        if (value > MIN_INDEXABLE_VALUE) {
+            this.positiveBuckets.add(this.index(value), 1);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            this.negativeBuckets.add(this.index(-value), 1);
+        } else {
+            this.zeroCount++;
+        }
+
+        this.count++;
+        this.minValue = Math.min(this.minValue, value);
+        this.maxValue = Math.max(this.maxValue, value);
+    }
+
+    /**
+     * Combines a sketch with this one.
+     *
+     * @param sketch - the sketch to combine with this one
+     * @return a new sketch holding the samples of both
+     */
+    public QuantileSketch combineSketch(final QuantileSketch sketch) {
+        if (Double.compare(this.relativeAccuracy,
+                           sketch.relativeAccuracy) != 0) {
+            Sim.fatalError("Cannot combine sketches"
+                           + " with different relative accuracies");
+        }
+
+        QuantileSketch combined = new QuantileSketch(this.relativeAccuracy);
+        combined.merge(this);
+        combined.merge(sketch);
+
+        return combined;
+    }
+
+    /**
+     * Adds the samples of another sketch to this one, e.g., the samples
+     * a copy of this sketch gained (see {@link #subtract}).
+     *
+     * @param sketch - the sketch whose samples to add
+     */
+    public void merge(final QuantileSketch sketch) {
+        if (Double.compare(this.relativeAccuracy,
+                           sketch.relativeAccuracy) != 0) {
+            Sim.fatalError("Cannot combine sketches"
+                           + " with different relative accuracies");
+        }
+
+        this.positiveBuckets.addAll(sketch.positiveBuckets);
+        this.negativeBuckets.addAll(sketch.negativeBuckets);
+        this.zeroCount += sketch.zeroCount;
+        this.count += sketch.count;
+        this.minValue = Math.min(this.minValue, sketch.minValue);
+        this.maxValue = Math.max(this.maxValue, sketch.maxValue);
+    }
+
+    /**
+     * Gets the samples this sketch gained since it was an earlier copy,
+     * bucket by bucket. The result keeps this sketch's smallest and
+     * largest samples, so merging it into the earlier copy (or into a
+     * combination including it) gives the right bounds.
+     *
+     * @param earlier - an earlier copy of this sketch
+     * @return a sketch of the samples gained, or null if the earlier
+     * sketch isn't an earlier copy (it has a different accuracy or
+     * samples this sketch doesn't)
+     */
+    public QuantileSketch subtract(final QuantileSketch earlier) {
+        if (Double.compare(this.relativeAccuracy,
+                           earlier.relativeAccuracy) != 0
+                || this.zeroCount < earlier.zeroCount) {
+            return null;
+        }
+
+        QuantileSketch difference = new QuantileSketch(this.relativeAccuracy);
+        if (!difference.positiveBuckets.addDifference(this.positiveBuckets,
+                                                      earlier.positiveBuckets)
+                || !difference.negativeBuckets.addDifference(
+                        this.negativeBuckets, earlier.negativeBuckets)) {
+            return null;
+        }
+        difference.zeroCount = this.zeroCount - earlier.zeroCount;
+        difference.count = this.count - earlier.count;
+        difference.minValue = this.minValue;
+        difference.maxValue = this.maxValue;
+
+        return difference;
+    }
+
+    /**
+     * Get the x value of a quantile from the sketch.
+     *
+     * @param quantile - the quantile
+     * @return the x value of the quantile, or 0 if the sketch is empty
+     */
+    public double getQuantile(final double quantile) {
+        if (this.count == 0) {
+            return 0.0d;
+        }
+
+        double rank = quantile * (this.count - 1);
+        double xValue;
+        long negativeCount = this.negativeBuckets.getTotal();
+        if (rank < negativeCount) {
+            // Negative buckets are ordered by magnitude, so walk them
+            // from the largest magnitude down
+            int index = this.negativeBuckets.getIndexAtRank(
+                            negativeCount - 1 - rank);
+            xValue = -this.value(index);
+        } else if (rank < negativeCount + this.zeroCount) {
+            xValue = 0.0d;
+        } else {
+            int index = this.positiveBuckets.getIndexAtRank(
+                            rank - negativeCount - this.zeroCount);
+            xValue = this.value(index);
+        }
+
+        return Math.max(this.minValue, Math.min(this.maxValue, xValue));
+    }
+
+    /**
+     * Get the fraction of samples at or below a value.
+     *
+     * @param xValue - the value
+     * @return the cdf value, or 0 if the sketch is empty
+     */
+    public double getCdfValue(final double xValue) {
+        if (this.count == 0) {
+            return 0.0d;
+        }
+
+        double below;
+        if (xValue > MIN_INDEXABLE_VALUE) {
+            below = this.negativeBuckets.getTotal() + this.zeroCount
+                    + this.positiveBuckets.getCountUpTo(this.index(xValue));
+        } else if (xValue < -MIN_INDEXABLE_VALUE) {
+            below = this.negativeBuckets.getTotal()
+                    - this.negativeBuckets.getCountUpTo(
+                          this.index(-xValue) - 1);
+        } else {
+            below = this.negativeBuckets.getTotal() + this.zeroCount;
+        }
+
+        return below / this.count;
+    }
+
+    /**
+     * Gets the number of samples in the sketch.
+     *
+     * @return the number of samples in the sketch
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the relative accuracy of the sketch.
+     *
+     * @return the relative accuracy of the sketch
+     */
+    public double getRelativeAccuracy() {
+        return this.relativeAccuracy;
+    }
+
+    /**
+     * Writes the sketch for {@link StatisticsCodec}: its relative
+     * accuracy, bounds and zero count, then the non-empty buckets of
+     * each sign as delta coded varints.
+     *
+     * @param out - the output to write to
+     * @throws IOException - if the output can't be written
+     */
+    void write(final DataOutput out) throws IOException {
+        out.writeDouble(this.relativeAccuracy);
+        out.writeDouble(this.minValue);
+        out.writeDouble(this.maxValue);
+        StatisticsCodec.writeVarLong(out, this.zeroCount);
+        this.positiveBuckets.write(out);
+        this.negativeBuckets.write(out);
+    }
+
+    /**
+     * Reads a sketch written by {@link #write(DataOutput)}.
+     *
+     * @param in - the input to read from
+     * @return the sketch
+     * @throws IOException - if the input can't be read
+     */
+    static QuantileSketch read(final DataInput in) throws IOException {
+        double accuracy = in.readDouble();
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IOException("Bad sketch accuracy " + accuracy);
+        }
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        sketch.minValue = in.readDouble();
+        sketch.maxValue = in.readDouble();
+        sketch.zeroCount = StatisticsCodec.readVarLong(in);
+        sketch.positiveBuckets.read(in);
+        sketch.negativeBuckets.read(in);
+        sketch.count = sketch.zeroCount + sketch.positiveBuckets.getTotal()
+                       + sketch.negativeBuckets.getTotal();
+
+        return sketch;
+    }
+
+    /**
+     * Prints the cdf of the sketch to standard out.
+     */
+    public void printCdf() {
+        System.out.println("X, CDF");
+        double running = 0.0d;
+        for (int i = this.negativeBuckets.getMaxIndex();
+                i >= this.negativeBuckets.getMinIndex(); i--) {
+            running += this.negativeBuckets.getCount(i);
+            System.out.println(-this.value(i) + ", " + running / this.count);
+        }
+        if (this.zeroCount > 0) {
+            running += this.zeroCount;
+            System.out.println("0.0, " + running / this.count);
+        }
+        for (int i = this.positiveBuckets.getMinIndex();
+                i <= this.positiveBuckets.getMaxIndex(); i++) {
+            running += this.positiveBuckets.getCount(i);
+            System.out.println(this.value(i) + ", " + running / this.count);
+        }
+    }
+
+    /**
+     * A contiguous, growable array of bucket counts.
+     */
+    private static final class BucketStore implements Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The initial number of buckets allocated.
+         */
+        private static final int INITIAL_CAPACITY = 128;
+
+        /**
+         * The bucket counts. counts[i] is the count of bucket offset + i.
+         */
+        private long[] counts;
+
+        /**
+         * The bucket index of counts[0].
+         */
+        private int offset;
+
+        /**
+         * The smallest bucket index with a sample.
+         */
+        private int minIndex;
+
+        /**
+         * The largest bucket index with a sample.
+         */
+        private int maxIndex;
+
+        /**
+         * The total count of all buckets.
+         */
+        private long total;
+
+        /**
+         * Creates an empty store.
+         */
+        BucketStore() {
+            this.counts = null;
+            this.offset = 0;
+            this.minIndex = Integer.MAX_VALUE;
+            this.maxIndex = Integer.MIN_VALUE;
+            this.total = 0;
+        }
+
+        /**
+         * Adds to the count of a bucket.
+         *
+         * @param index - the bucket index
+         * @param amount - the amount to add
+         */
+        void add(final int index, final long amount) {
+            if (this.counts == null) {
+                this.counts = new long[INITIAL_CAPACITY];
+                this.offset = index - INITIAL_CAPACITY / 2;
+            } else if (index < this.offset
+                    || index >= this.offset + this.counts.length) {
+                this.grow(index);
+            }
+
+            this.counts[index - this.offset] += amount;
+            this.total += amount;
+            this.minIndex = Math.min(this.minIndex, index);
+            this.maxIndex = Math.max(this.maxIndex, index);
+        }
+
+        /**
+         * Adds all the counts of another store to this one.
+         *
+         * @param store - the other store
+         */
+        void addAll(final BucketStore store) {
+            for (int i = store.minIndex; i <= store.maxIndex; i++) {
+                long amount = store.getCount(i);
+                if (amount > 0) {
+                    this.add(i, amount);
+                }
+            }
+        }
+
+        /**
+         * Adds the counts one store gained since it was another.
+         *
+         * @param store - the later store
+         * @param earlier - the earlier copy of the store
+         * @return false if the earlier store has counts the later one
+         * doesn't, so it isn't an earlier copy
+         */
+        boolean addDifference(final BucketStore store,
+                              final BucketStore earlier) {
+            if (earlier.total > 0 && (earlier.minIndex < store.minIndex
+                    || earlier.maxIndex > store.maxIndex)) {
+                return false;
+            }
+            for (int i = store.minIndex; i <= store.maxIndex; i++) {
+                long amount = store.getCount(i) - earlier.getCount(i);
+                if (amount < 0) {
+                    return false;
+                }
+                if (amount > 0) {
+                    this.add(i, amount);
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Writes the non-empty buckets: the smallest index, then the
+         * buckets from it as sparse counts.
+         *
+         * @param out - the output to write to
+         * @throws IOException - if the output can't be written
+         */
+        void write(final DataOutput out) throws IOException {
+            int nFilled = 0;
+            for (int i = this.minIndex; i <= this.maxIndex; i++) {
+                if (this.getCount(i) != 0) {
+                    nFilled++;
+                }
+            }
+            int base = 0;
+            if (nFilled > 0) {
+                base = this.minIndex;
+            }
+            int[] bins = new int[nFilled];
+            double[] filledCounts = new double[nFilled];
+            int index = 0;
+            for (int i = this.minIndex; i <= this.maxIndex; i++) {
+                long amount = this.getCount(i);
+                if (amount != 0) {
+                    bins[index] = i - base;
+                    filledCounts[index] = amount;
+                    index++;
+                }
+            }
+            StatisticsCodec.writeSignedVarLong(out, base);
+            StatisticsCodec.writeSparseCounts(out, bins, filledCounts);
+        }
+
+        /**
+         * Adds the buckets written by {@link #write(DataOutput)}.
+         *
+         * @param in - the input to read from
+         * @throws IOException - if the input can't be read
+         */
+        void read(final DataInput in) throws IOException {
+            int base = (int) StatisticsCodec.readSignedVarLong(in);
+            int[][] bins = new int[1][];
+            double[][] counts = new double[1][];
+            StatisticsCodec.readSparseCounts(in, bins, counts);
+            for (int i = 0; i < bins[0].length; i++) {
+                if (counts[0][i] < 0) {
+                    throw new IOException("Negative sketch bucket count");
+                }
+                this.add(base + bins[0][i], (long) counts[0][i]);
+            }
+        }
+
+        /**
+         * Makes room for a bucket index outside the current array.
+         *
+         * @param index - the bucket index
+         */
+        private void grow(final int index) {
+            int newMin = Math.min(index, this.minIndex);
+            int newMax = Math.max(index, this.maxIndex);
+            int needed = newMax - newMin + 1;
+            int capacity = this.counts.length;
+            while (capacity < needed) {
+                capacity *= 2;
+            }
+            int newOffset = newMin - (capacity - needed) / 2;
+            long[] newCounts = new long[capacity];
+            System.arraycopy(this.counts, this.minIndex - this.offset,
+                             newCounts, this.minIndex - newOffset,
+                             this.maxIndex - this.minIndex + 1);
+            this.counts = newCounts;
+            this.offset = newOffset;
+        }
+
+        /**
+         * Gets the count of a bucket.
+         *
+         * @param index - the bucket index
+         * @return the count of the bucket
+         */
+        long getCount(final int index) {
+            if (this.counts == null || index < this.offset
+                    || index >= this.offset + this.counts.length) {
+                return 0;
+            }
+
+            return this.counts[index - this.offset];
+        }
+
+        /**
+         * Gets the total count of the buckets up to and including an index.
+         *
+         * @param index - the bucket index
+         * @return the total count of buckets up to the index
+         */
+        long getCountUpTo(final int index) {
+            long running = 0;
+            int last = Math.min(index, this.maxIndex);
+            for (int i = this.minIndex; i <= last; i++) {
+                running += this.getCount(i);
+            }
+
+            return running;
+        }
+
+        /**
+         * Gets the index of the bucket holding a (0-based) rank.
+         *
+         * @param rank - the rank, from the smallest index
+         * @return the bucket index
+         */
+        int getIndexAtRank(final double rank) {
+            long running = 0;
+            for (int i = this.minIndex; i <= this.maxIndex; i++) {
+                running += this.getCount(i);
+                if (running > rank) {
+                    return i;
+                }
+            }
+
+            return this.maxIndex;
+        }
+
+        /**
+         * Gets the total count of all buckets.
+         *
+         * @return the total count of all buckets
+         */
+        long getTotal() {
+            return this.total;
+        }
+
+        /**
+         * Gets the smallest bucket index with a sample.
+         *
+         * @return the smallest bucket index with a sample
+         */
+        int getMinIndex() {
+            return this.minIndex;
+        }
+
+        /**
+         * Gets the largest bucket index with a sample.
+         *
+         * @return the largest bucket index with a sample
+         */
+        int getMaxIndex() {
+            return this.maxIndex;
+        }
+
+    }
+
+}
@@ -30,9 +30,11 @@
  */
 package stat;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Iterator;
-import java.util.Vector;
+import java.util.Arrays;
 
 import math.HelperFunctions;
 
@@ -54,8 +56,17 @@ public class Sequence implements Serializable {
      */
     private static final long serialVersionUID = 1L;
 
-    /** The sequence of numbers. */
-    private Vector<Double> sequence;
+    /** The initial capacity of the sequence. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The sequence of numbers.
+     * Only the first {@link #size} entries are used (and serialized).
+     */
+    private transient double[] sequence;
+
+    /** The number of values in the sequence. */
+    private int size;
 
     /** A simple statistic of the sequence. */
     private SimpleStatistic simpleStat;
@@ -64,7 +75,8 @@ public class Sequence implements Serializable {
      * Creates a new, empty sequence.
      */
     public Sequence() {
-        this.sequence = new Vector<Double>();
+        this.sequence = new double[INITIAL_CAPACITY];
+        this.size = 0;
         this.simpleStat = new SimpleStatistic();
     }
 
@@ -73,7 +85,11 @@ public class Sequence implements Serializable {
      * @param value - the value
      */
     public void insert(final double value) {
-        this.sequence.add(value);
+        if (this.size == this.sequence.length) {
+            this.sequence = Arrays.copyOf(this.sequence, 2 * this.size);
+        }
+        this.sequence[this.size] = value;
+        this.size++;
         this.simpleStat.addSample(value);
     }
 
@@ -83,15 +99,34 @@ public class Sequence implements Serializable {
      * @return an array of the values
      */
     public double[] getValues() {
-        double[] values = new double[this.sequence.size()];
-        Iterator<Double> iter = this.sequence.iterator();
-        int i = 0;
-        while (iter.hasNext()) {
-            values[i] = iter.next().doubleValue();
-            i++;
-        }
+        return Arrays.copyOf(this.sequence, this.size);
+    }
 
-        return values;
+    /**
+     * Serializes the sequence, leaving out its unused capacity.
+     *
+     * @param out - the stream to write to
+     * @throws IOException - if the sequence can't be written
+     */
+    private void writeObject(final ObjectOutputStream out)
+            throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(this.getValues());
+    }
+
+    /**
+     * Deserializes the sequence.
+     *
+     * @param in - the stream to read from
+     * @throws IOException - if the sequence can't be read
+     * @throws ClassNotFoundException - if the values can't be read
+     */
+    private void readObject(final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        double[] values = (double[]) in.readObject();
+        this.sequence = Arrays.copyOf(values,
+                Math.max(INITIAL_CAPACITY, values.length));
     }
 
     // TODO Document the library this depends on
@@ -148,6 +183,25 @@ public class Sequence implements Serializable {
      * @return the run counts
      */
     public static int[] getRunCounts(final double[] values, final int maxRun) {
+        return Sequence.getRunCounts(values, values.length, 1, maxRun);
+    }
+
+    /**
+     * Gets the run counts for every nth value of a sequence, without
+     * copying the spaced values out. Gives the same result as
+     * {@link #getRunCounts(double[], int)} on
+     * {@link #getSpacedSequence(double[], int)} of the first length values.
+     *
+     * @param values - the values in the sequence
+     * @param length - the number of values to use
+     * @param spacing - the nth element spacing
+     * @param maxRun - the maximum allowed run
+     * @return the run counts
+     */
+    public static int[] getRunCounts(final double[] values,
+                                     final int length,
+                                     final int spacing,
+                                     final int maxRun) {
 
         int[] runCounts = new int[maxRun];
 
@@ -156,9 +210,10 @@ public class Sequence implements Serializable {
 
         RunState state = RunState.FIRST;
 
-        for (int i = 0; i < values.length; i++) {
+        int nItems = length / spacing;
+        for (int i = 0; i < nItems; i++) {
 
-            double currentValue = values[i];
+            double currentValue = values[i * spacing];
             switch (state) {
 
             case SKIP:
@@ -282,7 +337,7 @@ public class Sequence implements Serializable {
      * @return the size (number of values) of the sequence
      */
     public int getSize() {
-        return this.sequence.size();
+        return this.size;
     }
 
     //TODO add a reference to the runs test
@@ -300,16 +355,15 @@ public class Sequence implements Serializable {
                                    final int maxRun,
                                    final double confidence) {
         int spacing = 1;
-        double[] values = this.getValues();
-        double[] spaced = Sequence.getSpacedSequence(values, spacing);
-        int[] runCounts = Sequence.getRunCounts(spaced, maxRun);
+        int[] runCounts = Sequence.getRunCounts(this.sequence, this.size,
+                                                spacing, maxRun);
         while (!Sequence.isIndependentByRunsTest(runCounts, confidence)) {
             spacing++;
             if (spacing > maxLagSpacing) {
                 Sim.fatalError("Needed lag spacing is too good");
             }
-            spaced = Sequence.getSpacedSequence(values, spacing);
-            runCounts = Sequence.getRunCounts(spaced, maxRun);
+            runCounts = Sequence.getRunCounts(this.sequence, this.size,
+                                              spacing, maxRun);
         }
 
         return spacing;
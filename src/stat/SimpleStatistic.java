@@ -107,6 +107,22 @@ public class SimpleStatistic implements Serializable {
         return combinedStat;
     }
 
+    /**
+     * Gets the samples added to this statistic since it was an earlier
+     * statistic. The extremes are this statistic's, as extremes can't be
+     * subtracted.
+     *
+     * @param earlier - an earlier state of this statistic
+     * @return the samples added since the earlier state
+     */
+    SimpleStatistic subtract(final SimpleStatistic earlier) {
+        return new SimpleStatistic(this.s0 - earlier.s0,
+                                   this.s1 - earlier.s1,
+                                   this.s2 - earlier.s2,
+                                   this.minValue,
+                                   this.maxValue);
+    }
+
     /**
      * Add a sample to the simple statistic.
      *
@@ -172,4 +188,13 @@ public class SimpleStatistic implements Serializable {
         return this.s1;
     }
 
+    /**
+     * Gets the sum of the squares of the values.
+     *
+     * @return the sum of the squares of the values
+     */
+    double getSumOfSquares() {
+        return this.s2;
+    }
+
 }
@@ -30,7 +30,11 @@
  */
 package stat;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import core.Constants;
 import core.Sim;
@@ -120,6 +124,17 @@ public class Statistic implements Serializable {
      */
     private Histogram histogram;
 
+    /**
+     * How the statistic estimates quantiles.
+     */
+    private QuantileEstimator quantileEstimator;
+
+    /**
+     * The sketch used to make quantile estimates,
+     * if the quantile estimator is {@link QuantileEstimator#SKETCH}.
+     */
+    private QuantileSketch sketch;
+
     /** The simple statistic used for simple statistical quantities. */
     private SimpleStatistic simpleStat;
 
@@ -132,6 +147,29 @@ public class Statistic implements Serializable {
     /** If this statistic was created by combining statistics. */
     private boolean combined;
 
+    /** The number of steady state samples to check convergence at next. */
+    private long nextConvergenceCheck;
+
+    /** If the statistic was converged at its last convergence check. */
+    private boolean convergedAtCheck;
+
+    /**
+     * The ways a statistic can estimate quantiles.
+     */
+    public static enum QuantileEstimator {
+        /**
+         * A histogram with fixed bins chosen during calibration.
+         * Samples outside the bins are clamped to the edge bins.
+         */
+        HISTOGRAM,
+
+        /**
+         * A {@link QuantileSketch}, which needs no bins and
+         * has bounded relative error over any range of samples.
+         */
+        SKETCH
+    }
+
     /**
      * The possible states the statistic can be in.
      */
@@ -249,11 +287,15 @@ public class Statistic implements Serializable {
                      final double theQuantile,
                      final double quantileAccuracy) {
         this.justBins = false;
+        this.quantileEstimator = QuantileEstimator.HISTOGRAM;
+        this.sketch = null;
         this.statCollection = aStatCollection;
         this.combined = false;
         this.statName = aStatName;
         this.otherStatsWarmed = false;
         this.steadyStateSamples = 0;
+        this.nextConvergenceCheck = Constants.MINIMUM_CONVERGE_SAMPLES;
+        this.convergedAtCheck = false;
         this.discardedWarmupSamples = 0;
         this.discardedSteadyStateSamples = 0;
         this.totalSamples = 0;
@@ -276,6 +318,45 @@ public class Statistic implements Serializable {
         this.justBins = justBins;
     }
 
+    /**
+     * Sets how the statistic estimates quantiles.
+     * Must be called before the statistic reaches steady state.
+     *
+     * @param estimator - the quantile estimator
+     */
+    public void setQuantileEstimator(final QuantileEstimator estimator) {
+        if (this.phase == Phase.STEADYSTATE) {
+            Sim.fatalError("Can't change the quantile estimator of "
+                           + this.statName + " in steady state");
+        }
+
+        this.quantileEstimator = estimator;
+        if (estimator == QuantileEstimator.SKETCH) {
+            this.sketch = new QuantileSketch();
+        } else {
+            this.sketch = null;
+        }
+    }
+
+    /**
+     * Gets how the statistic estimates quantiles.
+     *
+     * @return the quantile estimator
+     */
+    public QuantileEstimator getQuantileEstimator() {
+        return this.quantileEstimator;
+    }
+
+    /**
+     * Sets the sketch of a combined statistic.
+     *
+     * @param aSketch - the sketch
+     */
+    void setSketch(final QuantileSketch aSketch) {
+        this.quantileEstimator = QuantileEstimator.SKETCH;
+        this.sketch = aSketch;
+    }
+
     /**
      * Adds a samples to the statistc.
      * Handles this sample differently depending on
@@ -310,15 +391,17 @@ public class Statistic implements Serializable {
 
             if (this.calibrationSequence.getSize() > 100 && this.justBins) {
 
-                double minValue = this.calibrationSequence.getMinValue();
-                double maxValue = this.calibrationSequence.getMaxValue();
-                System.out.println("Creating histogram with min " + minValue
-                        + " maxValue " + maxValue);
-             // let's delay creating the histogram
-                this.histogram = new Histogram(10000,
-                                               minValue / 2,
-                                               maxValue * 2);
-                this.phase = Phase.STEADYSTATE;
+                if (this.sketch == null) {
+                    double minValue = this.calibrationSequence.getMinValue();
+                    double maxValue = this.calibrationSequence.getMaxValue();
+                    System.out.println("Creating histogram with min "
+                            + minValue + " maxValue " + maxValue);
+                    // let's delay creating the histogram
+                    this.histogram = new Histogram(10000,
+                                                   minValue / 2,
+                                                   maxValue * 2);
+                }
+                this.enterSteadyState();
                 System.out.println(this.statName
                         + " entered steady state and only took 100 samples");
 
@@ -339,14 +422,16 @@ public class Statistic implements Serializable {
 
                 double minValue = this.calibrationSequence.getMinValue();
                 double maxValue = this.calibrationSequence.getMaxValue();
-                System.out.println("Creating histogram with min " + minValue
-                                   + " maxValue " + maxValue);
-                if (this.histogram == null) {
+                if (this.sketch == null) {
+                    System.out.println("Creating histogram with min "
+                                       + minValue + " maxValue " + maxValue);
+                }
+                if (this.histogram == null && this.sketch == null) {
                     /** let's delay creating the histogram */
                     this.histogram = new Histogram(10000, minValue, maxValue);
                 }
 
-                this.phase = Phase.STEADYSTATE;
+                this.enterSteadyState();
                 System.out.println(this.statName
                         + " entered steady state, lag spacing of " + this.lag);
             }
@@ -394,10 +479,21 @@ public class Statistic implements Serializable {
                            + " unless they're the same kind");
         }
 
+        if (this.quantileEstimator != stat.quantileEstimator) {
+            Sim.fatalError("Cannot combine statistics"
+                           + " with different quantile estimators");
+        }
+
         SimpleStatistic combinedSimpleStat
             = this.simpleStat.combineSimpleStatistics(stat.simpleStat);
-        Histogram combinedHistogram
-            = this.histogram.combineHistogram(stat.histogram);
+        Histogram combinedHistogram = null;
+        QuantileSketch combinedSketch = null;
+        if (this.sketch != null) {
+            combinedSketch = this.sketch.combineSketch(stat.sketch);
+        } else {
+            combinedHistogram
+                = this.histogram.combineHistogram(stat.histogram);
+        }
 
         long combinedGoodSamples = this.steadyStateSamples
                                    + stat.steadyStateSamples;
@@ -420,6 +516,9 @@ public class Statistic implements Serializable {
                                     combinedGoodSamples,
                                     combinedTotalSamples,
                                     combinedDiscardedSamples);
+        if (combinedSketch != null) {
+            combinedStatistic.setSketch(combinedSketch);
+        }
 
         return combinedStatistic;
     }
@@ -460,8 +559,222 @@ public class Statistic implements Serializable {
      */
     private void keepSample(final double value) {
         this.simpleStat.addSample(value);
-        this.histogram.addSample(value);
+        if (this.sketch != null) {
+            this.sketch.addSample(value);
+        } else {
+            this.histogram.addSample(value);
+        }
         this.steadyStateSamples++;
+        if (this.steadyStateSamples >= this.nextConvergenceCheck
+                && this.statCollection != null) {
+            this.statCollection.scheduleConvergenceCheck();
+        }
+    }
+
+    /**
+     * Moves the statistic into steady state.
+     */
+    private void enterSteadyState() {
+        this.phase = Phase.STEADYSTATE;
+        if (this.statCollection != null) {
+            this.statCollection.scheduleConvergenceCheck();
+        }
+    }
+
+    /**
+     * Discards the samples kept in steady state, keeping the calibrated
+     * lag spacing and histogram bins, so estimates start over from here.
+     * Statistics that haven't reached steady state are left alone.
+     *
+     * @param time - the simulated time of the restart
+     */
+    void restartSteadyState(final double time) {
+        if (this.phase != Phase.STEADYSTATE) {
+            return;
+        }
+
+        this.simpleStat = new SimpleStatistic();
+        if (this.sketch != null) {
+            this.sketch = new QuantileSketch(this.sketch.getRelativeAccuracy());
+        } else if (this.histogram != null) {
+            this.histogram = new Histogram(this.histogram.getXValues());
+        }
+        this.totalSamples -= this.steadyStateSamples
+                             + this.discardedSteadyStateSamples;
+        this.steadyStateSamples = 0;
+        this.discardedSteadyStateSamples = 0;
+        this.nextConvergenceCheck = Constants.MINIMUM_CONVERGE_SAMPLES;
+        this.convergedAtCheck = false;
+    }
+
+    /**
+     * Gets how this statistic changed in steady state since an earlier
+     * copy of it.
+     *
+     * @param earlier - an earlier copy of this statistic
+     * @return the change, or null if the earlier copy wasn't in steady
+     * state or has different histogram bins or sketch buckets
+     */
+    StatisticsDelta.StatChange changeSince(final Statistic earlier) {
+        if (this.phase != Phase.STEADYSTATE
+                || earlier.phase != Phase.STEADYSTATE
+                || this.steadyStateSamples < earlier.steadyStateSamples
+                || (this.sketch == null) != (earlier.sketch == null)) {
+            return null;
+        }
+
+        StatisticsDelta.StatChange change = new StatisticsDelta.StatChange();
+        change.statName = this.statName;
+        change.steadyStateSamples = this.steadyStateSamples
+                                    - earlier.steadyStateSamples;
+        change.discardedSamples = this.discardedSteadyStateSamples
+                                  - earlier.discardedSteadyStateSamples;
+        change.moments = this.simpleStat.subtract(earlier.simpleStat);
+        if (this.sketch != null) {
+            change.sketch = this.sketch.subtract(earlier.sketch);
+            if (change.sketch == null) {
+                return null;
+            }
+            return change;
+        }
+
+        if (!Arrays.equals(this.histogram.getXValues(),
+                           earlier.histogram.getXValues())) {
+            return null;
+        }
+        double[] counts = this.histogram.getYValues();
+        double[] earlierCounts = earlier.histogram.getYValues();
+        int nChanged = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != earlierCounts[i]) {
+                nChanged++;
+            }
+        }
+        change.bins = new int[nChanged];
+        change.counts = new double[nChanged];
+        int index = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != earlierCounts[i]) {
+                change.bins[index] = i;
+                change.counts[index] = counts[i] - earlierCounts[i];
+                index++;
+            }
+        }
+
+        return change;
+    }
+
+    /**
+     * Applies a change made to another copy of this statistic.
+     *
+     * @param change - the change
+     */
+    void applyChange(final StatisticsDelta.StatChange change) {
+        this.simpleStat = this.simpleStat.combineSimpleStatistics(
+                                                        change.moments);
+        if (change.sketch != null) {
+            this.sketch.merge(change.sketch);
+        } else {
+            this.histogram.addToBins(change.bins, change.counts);
+        }
+        this.steadyStateSamples += change.steadyStateSamples;
+        this.discardedSteadyStateSamples += change.discardedSamples;
+        this.totalSamples += change.steadyStateSamples
+                             + change.discardedSamples;
+    }
+
+    /**
+     * Writes what estimates and convergence checks need of this statistic,
+     * for {@link StatisticsCodec}. Calibration samples aren't written.
+     *
+     * @param out - the output to write to
+     * @throws IOException - if the output can't be written
+     */
+    void writeSummary(final DataOutput out) throws IOException {
+        StatisticsCodec.writeVarLong(out, this.statName.ordinal());
+        StatisticsCodec.writeVarLong(out, this.phase.ordinal());
+        StatisticsCodec.writeVarLong(out, this.quantileEstimator.ordinal());
+        StatisticsCodec.writeVarLong(out, this.nWarmupSamples);
+        out.writeDouble(this.requiredMeanAccuracy);
+        out.writeDouble(this.quantile);
+        out.writeDouble(this.requiredQuantileAccuracy);
+        StatisticsCodec.writeVarLong(out, this.lag);
+        StatisticsCodec.writeVarLong(out, this.steadyStateSamples);
+        StatisticsCodec.writeVarLong(out, this.totalSamples);
+        StatisticsCodec.writeVarLong(out, this.discardedWarmupSamples);
+        StatisticsCodec.writeVarLong(out, this.discardedSteadyStateSamples);
+        StatisticsCodec.writeMoments(out, this.simpleStat);
+
+        out.writeBoolean(this.sketch != null);
+        if (this.sketch != null) {
+            this.sketch.write(out);
+        }
+
+        out.writeBoolean(this.histogram != null);
+        if (this.histogram != null) {
+            StatisticsCodec.writeHistogram(out, this.histogram);
+        }
+    }
+
+    /**
+     * Reads a statistic written by {@link #writeSummary(DataOutput)}.
+     * The statistic can be combined and checked for convergence,
+     * but not take more samples.
+     *
+     * @param in - the input to read from
+     * @param aStatCollection - the collection the statistic will belong to
+     * @return the statistic
+     * @throws IOException - if the input can't be read
+     */
+    static Statistic readSummary(final DataInput in,
+                                 final StatisticsCollection aStatCollection)
+            throws IOException {
+        StatName name
+            = StatName.values()[(int) StatisticsCodec.readVarLong(in)];
+        Phase thePhase
+            = Phase.values()[(int) StatisticsCodec.readVarLong(in)];
+        QuantileEstimator estimator = QuantileEstimator.values()[
+                (int) StatisticsCodec.readVarLong(in)];
+        int theNWarmupSamples = (int) StatisticsCodec.readVarLong(in);
+        double meanAccuracy = in.readDouble();
+        double theQuantile = in.readDouble();
+        double quantileAccuracy = in.readDouble();
+        int lagSpace = (int) StatisticsCodec.readVarLong(in);
+        long goodSamples = StatisticsCodec.readVarLong(in);
+        long theTotalSamples = StatisticsCodec.readVarLong(in);
+        long discardedSamples = StatisticsCodec.readVarLong(in);
+        long discardedGoodSamples = StatisticsCodec.readVarLong(in);
+        SimpleStatistic moments = StatisticsCodec.readMoments(in);
+
+        QuantileSketch theSketch = null;
+        if (in.readBoolean()) {
+            theSketch = QuantileSketch.read(in);
+        }
+
+        Histogram theHistogram = null;
+        if (in.readBoolean()) {
+            theHistogram = StatisticsCodec.readHistogram(in);
+        }
+
+        Statistic stat = new Statistic(aStatCollection,
+                                       name,
+                                       theNWarmupSamples,
+                                       meanAccuracy,
+                                       theQuantile,
+                                       quantileAccuracy,
+                                       moments,
+                                       theHistogram,
+                                       lagSpace,
+                                       goodSamples,
+                                       theTotalSamples,
+                                       discardedSamples);
+        stat.nWarmupSamples = theNWarmupSamples;
+        stat.phase = thePhase;
+        stat.quantileEstimator = estimator;
+        stat.sketch = theSketch;
+        stat.discardedSteadyStateSamples = discardedGoodSamples;
+
+        return stat;
     }
 
     /**
@@ -583,6 +896,38 @@ public class Statistic implements Serializable {
             && isSteadyState();
     }
 
+    /**
+     * Checks if the statistic has converged, if it has taken enough
+     * samples since its last check. Accuracy improves with the square
+     * root of the samples, so the next check is scheduled part of the
+     * way to where the statistic is estimated to converge (or stop
+     * being converged).
+     *
+     * @return if the statistic was converged at its last check
+     */
+    boolean checkConvergence() {
+        if (this.steadyStateSamples < this.nextConvergenceCheck) {
+            return this.convergedAtCheck;
+        }
+
+        this.convergedAtCheck = this.isConverged();
+        long samples = this.steadyStateSamples;
+        long step = Constants.MINIMUM_CONVERGE_SAMPLES - samples;
+        if (samples >= Constants.MINIMUM_CONVERGE_SAMPLES) {
+            double ratio = Math.max(
+                    this.getMeanAccuracy() / this.requiredMeanAccuracy,
+                    this.getQuantileAccuracy()
+                        / this.requiredQuantileAccuracy);
+            double neededSamples = samples * ratio * ratio;
+            step = (long) (Math.abs(neededSamples - samples)
+                           * Constants.CONVERGENCE_CHECK_FRACTION);
+            step = Math.min(step, samples);
+        }
+        this.nextConvergenceCheck = samples + Math.max(step, 1);
+
+        return this.convergedAtCheck;
+    }
+
     /**
      * Get the cdf value of the histogram for a given x value.
      *
@@ -590,6 +935,10 @@ public class Statistic implements Serializable {
      * @return the cdf value
      */
     public double getCdfValue(final double xValue) {
+        if (this.sketch != null) {
+            return this.sketch.getCdfValue(xValue);
+        }
+
         return this.histogram.getCdfValue(xValue);
     }
 
@@ -601,6 +950,10 @@ public class Statistic implements Serializable {
      */
     public double getQuantile(final double theQuantile) {
 
+        if (this.sketch != null) {
+            return this.sketch.getQuantile(theQuantile);
+        }
+
         if (this.histogram == null) {
             return 0.0d;
         }
@@ -621,6 +974,11 @@ public class Statistic implements Serializable {
      * Prints the cdf of the underlying histogram.
      */
     public void printCdf() {
+        if (this.sketch != null) {
+            this.sketch.printCdf();
+            return;
+        }
+
         this.histogram.printCdf();
     }
 
@@ -628,6 +986,11 @@ public class Statistic implements Serializable {
      * Prints the underlying histogram.
      */
     public void printHistogram() {
+        if (this.sketch != null) {
+            this.sketch.printCdf();
+            return;
+        }
+
         this.histogram.printHistogram();
     }
 
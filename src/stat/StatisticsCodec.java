@@ -0,0 +1,475 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package stat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Vector;
+
+import core.Sim;
+import core.Constants.StatName;
+
+/**
+ * A compact, versioned binary encoding of statistics snapshots, for
+ * sending statistics between master and slaves and for saving them to
+ * files. Only what estimates and convergence checks need is kept: the
+ * settings, sample counts and moments of each statistic, and its
+ * histogram (or quantile sketch) as delta coded varints of the
+ * non-empty bins (or buckets). Calibration
+ * sequences aren't kept, so decoded statistics can be combined and
+ * checked for convergence, but not take more samples.
+ *
+ * Only the named statistics are encoded, as those are the ones
+ * statistics are combined on, not the time weighted statistics.
+ */
+public final class StatisticsCodec {
+
+    /** The first bytes of every encoding ("BSTS"). */
+    private static final int MAGIC = 0x42535453;
+
+    /**
+     * The version of the encoding. Version 2 encodes sketches natively
+     * instead of as serialized objects.
+     */
+    private static final int VERSION = 2;
+
+    /** The mask of the low seven bits of a varint byte. */
+    private static final int VARINT_MASK = 0x7f;
+
+    /** The bit of a varint byte set if more bytes follow. */
+    private static final int VARINT_MORE = 0x80;
+
+    /** The bits in a varint byte. */
+    private static final int VARINT_BITS = 7;
+
+    /** Histogram x values are evenly spaced from 0. */
+    private static final int EVEN_BINS = 0;
+
+    /** Histogram x values are listed. */
+    private static final int LISTED_BINS = 1;
+
+    /** Histogram counts are whole numbers, written as varints. */
+    private static final int WHOLE_COUNTS = 0;
+
+    /** Histogram counts are written as doubles. */
+    private static final int FRACTIONAL_COUNTS = 1;
+
+    /**
+     * Should not be constructed.
+     */
+    private StatisticsCodec() {
+    }
+
+    /**
+     * Encodes statistics.
+     *
+     * @param stats - the statistics
+     * @return the encoded statistics
+     */
+    public static byte[] encode(final StatisticsCollection stats) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(stats, bytes);
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't encode statistics: " + e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes statistics.
+     *
+     * @param bytes - the encoded statistics
+     * @return the statistics
+     */
+    public static StatisticsCollection decode(final byte[] bytes) {
+        try {
+            return read(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't decode statistics: " + e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Saves statistics to a file.
+     *
+     * @param stats - the statistics
+     * @param fileName - the file to save to
+     */
+    public static void save(final StatisticsCollection stats,
+                            final String fileName) {
+        try {
+            OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(fileName));
+            try {
+                write(stats, out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't save statistics to " + fileName
+                           + ": " + e);
+        }
+    }
+
+    /**
+     * Loads statistics saved to a file.
+     *
+     * @param fileName - the file to load
+     * @return the statistics
+     */
+    public static StatisticsCollection load(final String fileName) {
+        try {
+            InputStream in = new BufferedInputStream(
+                    new FileInputStream(fileName));
+            try {
+                return read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't load statistics from " + fileName
+                           + ": " + e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes encoded statistics to a stream.
+     *
+     * @param stats - the statistics
+     * @param stream - the stream to write to
+     * @throws IOException - if the stream can't be written
+     */
+    private static void write(final StatisticsCollection stats,
+                              final OutputStream stream)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        writeVarLong(out, VERSION);
+        Vector<Statistic> named = new Vector<Statistic>();
+        StatName[] names = StatName.values();
+        for (int i = 0; i < names.length; i++) {
+            Statistic stat = stats.getStat(names[i]);
+            if (stat.getStatName() == names[i]) {
+                named.add(stat);
+            }
+        }
+        writeVarLong(out, named.size());
+        Iterator<Statistic> iter = named.iterator();
+        while (iter.hasNext()) {
+            iter.next().writeSummary(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads encoded statistics from a stream.
+     *
+     * @param stream - the stream to read from
+     * @return the statistics
+     * @throws IOException - if the stream can't be read
+     */
+    private static StatisticsCollection read(final InputStream stream)
+            throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not encoded statistics");
+        }
+        long version = readVarLong(in);
+        if (version != VERSION) {
+            throw new IOException("Unknown statistics version " + version);
+        }
+
+        StatisticsCollection stats = new StatisticsCollection();
+        long nStats = readVarLong(in);
+        for (long i = 0; i < nStats; i++) {
+            Statistic stat = Statistic.readSummary(in, stats);
+            stats.addStatistic(stat.getStatName(), stat);
+        }
+
+        return stats;
+    }
+
+    /**
+     * Writes a non-negative number in as few bytes as it needs,
+     * seven bits at a time.
+     *
+     * @param out - the output to write to
+     * @param value - the number (non-negative)
+     * @throws IOException - if the output can't be written
+     */
+    static void writeVarLong(final DataOutput out, final long value)
+            throws IOException {
+        long rest = value;
+        while ((rest & ~VARINT_MASK) != 0) {
+            out.writeByte((int) (rest & VARINT_MASK) | VARINT_MORE);
+            rest >>>= VARINT_BITS;
+        }
+        out.writeByte((int) rest);
+    }
+
+    /**
+     * Reads a number written by {@link #writeVarLong(DataOutput, long)}.
+     *
+     * @param in - the input to read from
+     * @return the number
+     * @throws IOException - if the input can't be read
+     */
+    static long readVarLong(final DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        } while ((b & VARINT_MORE) != 0);
+
+        return value;
+    }
+
+    /**
+     * Writes a number which may be negative, keeping small magnitudes
+     * short.
+     *
+     * @param out - the output to write to
+     * @param value - the number
+     * @throws IOException - if the output can't be written
+     */
+    static void writeSignedVarLong(final DataOutput out, final long value)
+            throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> (Long.SIZE - 1)));
+    }
+
+    /**
+     * Reads a number written by
+     * {@link #writeSignedVarLong(DataOutput, long)}.
+     *
+     * @param in - the input to read from
+     * @return the number
+     * @throws IOException - if the input can't be read
+     */
+    static long readSignedVarLong(final DataInput in) throws IOException {
+        long zigZag = readVarLong(in);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /**
+     * Writes the moments of a simple statistic.
+     *
+     * @param out - the output to write to
+     * @param stat - the simple statistic
+     * @throws IOException - if the output can't be written
+     */
+    static void writeMoments(final DataOutput out, final SimpleStatistic stat)
+            throws IOException {
+        writeVarLong(out, stat.getCount());
+        out.writeDouble(stat.getTotalAccumulation());
+        out.writeDouble(stat.getSumOfSquares());
+        out.writeDouble(stat.getMinValue());
+        out.writeDouble(stat.getMaxValue());
+    }
+
+    /**
+     * Reads moments written by
+     * {@link #writeMoments(DataOutput, SimpleStatistic)}.
+     *
+     * @param in - the input to read from
+     * @return the simple statistic
+     * @throws IOException - if the input can't be read
+     */
+    static SimpleStatistic readMoments(final DataInput in)
+            throws IOException {
+        long count = readVarLong(in);
+        double sum = in.readDouble();
+        double sumOfSquares = in.readDouble();
+        double minValue = in.readDouble();
+        double maxValue = in.readDouble();
+
+        return new SimpleStatistic(count, sum, sumOfSquares,
+                                   minValue, maxValue);
+    }
+
+    /**
+     * Writes a histogram: its bins, then its non-empty counts.
+     *
+     * @param out - the output to write to
+     * @param histogram - the histogram
+     * @throws IOException - if the output can't be written
+     */
+    static void writeHistogram(final DataOutput out,
+                               final Histogram histogram)
+            throws IOException {
+        double[] xValues = histogram.getXValues();
+        writeVarLong(out, xValues.length);
+        boolean even = true;
+        for (int i = 0; i < xValues.length && even; i++) {
+            even = xValues[i] == (i + 1) * xValues[0];
+        }
+        if (even) {
+            out.writeByte(EVEN_BINS);
+            out.writeDouble(xValues[0]);
+        } else {
+            out.writeByte(LISTED_BINS);
+            for (int i = 0; i < xValues.length; i++) {
+                out.writeDouble(xValues[i]);
+            }
+        }
+
+        double[] counts = histogram.getYValues();
+        int nFilled = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                nFilled++;
+            }
+        }
+        int[] bins = new int[nFilled];
+        double[] filledCounts = new double[nFilled];
+        int index = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                bins[index] = i;
+                filledCounts[index] = counts[i];
+                index++;
+            }
+        }
+        writeSparseCounts(out, bins, filledCounts);
+    }
+
+    /**
+     * Reads a histogram written by
+     * {@link #writeHistogram(DataOutput, Histogram)}.
+     *
+     * @param in - the input to read from
+     * @return the histogram
+     * @throws IOException - if the input can't be read
+     */
+    static Histogram readHistogram(final DataInput in) throws IOException {
+        int nBins = (int) readVarLong(in);
+        double[] xValues = new double[nBins];
+        if (in.readByte() == EVEN_BINS) {
+            double width = in.readDouble();
+            for (int i = 0; i < nBins; i++) {
+                xValues[i] = (i + 1) * width;
+            }
+        } else {
+            for (int i = 0; i < nBins; i++) {
+                xValues[i] = in.readDouble();
+            }
+        }
+
+        Histogram histogram = new Histogram(xValues);
+        int[][] bins = new int[1][];
+        double[][] counts = new double[1][];
+        readSparseCounts(in, bins, counts);
+        histogram.addToBins(bins[0], counts[0]);
+
+        return histogram;
+    }
+
+    /**
+     * Writes counts of some bins, in increasing bin order. Bins are
+     * written as the gap from the previous bin, and whole counts as
+     * varints.
+     *
+     * @param out - the output to write to
+     * @param bins - the bins, in increasing order
+     * @param counts - the count of each bin
+     * @throws IOException - if the output can't be written
+     */
+    static void writeSparseCounts(final DataOutput out,
+                                  final int[] bins,
+                                  final double[] counts)
+            throws IOException {
+        writeVarLong(out, bins.length);
+        boolean whole = true;
+        for (int i = 0; i < counts.length && whole; i++) {
+            whole = counts[i] == Math.rint(counts[i])
+                    && Math.abs(counts[i]) < Long.MAX_VALUE;
+        }
+        out.writeByte(whole ? WHOLE_COUNTS : FRACTIONAL_COUNTS);
+
+        int previous = -1;
+        for (int i = 0; i < bins.length; i++) {
+            writeVarLong(out, bins[i] - previous - 1);
+            previous = bins[i];
+            if (whole) {
+                writeSignedVarLong(out, (long) counts[i]);
+            } else {
+                out.writeDouble(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads counts written by
+     * {@link #writeSparseCounts(DataOutput, int[], double[])}.
+     *
+     * @param in - the input to read from
+     * @param bins - holds the bins read in its first element
+     * @param counts - holds the counts read in its first element
+     * @throws IOException - if the input can't be read
+     */
+    static void readSparseCounts(final DataInput in,
+                                 final int[][] bins,
+                                 final double[][] counts)
+            throws IOException {
+        int nBins = (int) readVarLong(in);
+        boolean whole = in.readByte() == WHOLE_COUNTS;
+        bins[0] = new int[nBins];
+        counts[0] = new double[nBins];
+        int previous = -1;
+        for (int i = 0; i < nBins; i++) {
+            bins[0][i] = previous + 1 + (int) readVarLong(in);
+            previous = bins[0][i];
+            if (whole) {
+                counts[0][i] = readSignedVarLong(in);
+            } else {
+                counts[0][i] = in.readDouble();
+            }
+        }
+    }
+
+}
@@ -70,6 +70,15 @@ public class StatisticsCollection implements Serializable {
      */
     private Vector<Statistic> warmStats;
 
+    /**
+     * If a statistic that must converge has taken enough samples to be
+     * checked again, or has changed phase.
+     */
+    private boolean convergenceCheckDue;
+
+    /** If all the statistics were converged at the last check. */
+    private boolean convergedAtCheck;
+
     //TODO double check we really need these
     /** A fake statistic to return if an unknown statistic name is requested. */
     private FakeStatistic fakeStatistic;
@@ -89,6 +98,8 @@ public class StatisticsCollection implements Serializable {
             = new HashMap<TimeWeightedStatName, TimeWeightedStatistic>();
         this.fakeStatistic = new FakeStatistic();
         this.twFakeStatistic = new FakeTimeWeightedStatistic();
+        this.convergenceCheckDue = true;
+        this.convergedAtCheck = false;
     }
 
     /**
@@ -157,6 +168,50 @@ public class StatisticsCollection implements Serializable {
         return allConverged;
     }
 
+    /**
+     * Notes that a statistic's convergence should be checked again.
+     */
+    void scheduleConvergenceCheck() {
+        this.convergenceCheckDue = true;
+    }
+
+    /**
+     * Checks if any statistic has taken enough samples, or changed
+     * phase, since the last call to {@link #checkConvergence()}.
+     * Cheap enough to call after every event.
+     *
+     * @return if the convergence of the statistics should be checked
+     */
+    public boolean isConvergenceCheckDue() {
+        return this.convergenceCheckDue;
+    }
+
+    /**
+     * Checks if all statistics have converged, like
+     * {@link #allStatsConverged()}, but only re-evaluates the
+     * statistics that have taken enough samples since they were last
+     * checked. A statistic is checked more often as it gets close
+     * to converging.
+     *
+     * @return if all statistics were converged at their last check
+     */
+    public boolean checkConvergence() {
+        if (!this.convergenceCheckDue) {
+            return this.convergedAtCheck;
+        }
+
+        this.convergenceCheckDue = false;
+        boolean allConverged = true;
+        for (int i = 0; i < this.convergeStats.size(); i++) {
+            if (!this.convergeStats.get(i).checkConvergence()) {
+                allConverged = false;
+            }
+        }
+        this.convergedAtCheck = allConverged;
+
+        return allConverged;
+    }
+
     /**
      * Reports that a statistic is warm by outputting a
      * message, removing it from the collection of statistics that
@@ -202,6 +257,20 @@ public class StatisticsCollection implements Serializable {
         }
     }
 
+    /**
+     * Sets how all the statistics in the collection estimate quantiles.
+     * Must be called before the statistics reach steady state.
+     *
+     * @param estimator - the quantile estimator
+     */
+    public void setQuantileEstimator(
+            final Statistic.QuantileEstimator estimator) {
+        Iterator<Statistic> iter = this.convergeStats.iterator();
+        while (iter.hasNext()) {
+            iter.next().setQuantileEstimator(estimator);
+        }
+    }
+
     /**
      * Returns an interator of the statistics in the collection.
      *
@@ -225,6 +294,37 @@ public class StatisticsCollection implements Serializable {
 
         this.statsMap.put(name, stat);
         this.convergeStats.add(stat);
+        this.convergenceCheckDue = true;
+    }
+
+    /**
+     * Sets if the time weighted statistics only receive samples when
+     * their value changes.
+     *
+     * @param driven - if samples are only added when values change
+     * @see TimeWeightedStatistic#setChangeDriven(boolean)
+     */
+    public void setTimeWeightedChangeDriven(final boolean driven) {
+        Iterator<TimeWeightedStatistic> iter
+            = this.twStatsMap.values().iterator();
+        while (iter.hasNext()) {
+            iter.next().setChangeDriven(driven);
+        }
+    }
+
+    /**
+     * Accounts for the current values of the time weighted statistics
+     * being held up to a time.
+     *
+     * @param time - the time the values are held until
+     * @see TimeWeightedStatistic#advanceTo(double)
+     */
+    public void advanceTimeWeightedStats(final double time) {
+        Iterator<TimeWeightedStatistic> iter
+            = this.twStatsMap.values().iterator();
+        while (iter.hasNext()) {
+            iter.next().advanceTo(time);
+        }
     }
 
     /**
@@ -242,6 +342,7 @@ public class StatisticsCollection implements Serializable {
 
         this.twStatsMap.put(name, stat);
         this.convergeStats.add(stat);
+        this.convergenceCheckDue = true;
     }
 
     //TODO comment these once we find out if they're still needed
@@ -302,6 +403,25 @@ public class StatisticsCollection implements Serializable {
         return allSteadyState;
     }
 
+    /**
+     * Discards the samples every statistic has kept in steady state,
+     * keeping their calibrated lag spacing and histogram bins. Time
+     * weighted statistics also drop their accumulated average and start
+     * a new window at the restart time.
+     * Used to start a new replication from a calibrated experiment.
+     *
+     * @param time - the simulated time of the restart
+     */
+    public void restartSteadyState(final double time) {
+        // Time weighted statistics are converge statistics too
+        Iterator<Statistic> iter = this.convergeStats.iterator();
+        while (iter.hasNext()) {
+            iter.next().restartSteadyState(time);
+        }
+        this.convergedAtCheck = false;
+        this.convergenceCheckDue = true;
+    }
+
     /**
      * Combines this statistic collection with another one.
      *
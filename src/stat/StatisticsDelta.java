@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package stat;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Vector;
+
+import core.Constants.StatName;
+
+/**
+ * The change in an experiment's statistics since its last progress
+ * report: the steady state moments and only the histogram bins (or
+ * sketch buckets) that gained samples. This is much smaller than the statistics themselves,
+ * which carry full histograms and calibration sequences. The first report
+ * once every statistic is in steady state carries the full statistics
+ * instead, as the baseline later deltas are applied to.
+ */
+public final class StatisticsDelta implements Serializable {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 2L;
+
+    /** The full statistics, if this delta is a new baseline. */
+    private transient StatisticsCollection baseline;
+
+    /** The change of each statistic, if this delta isn't a baseline. */
+    private transient Vector<StatChange> changes;
+
+    /** If the experiment has finished running. */
+    private transient boolean finished;
+
+    /**
+     * The change of one statistic in steady state.
+     */
+    static final class StatChange implements Serializable {
+
+        /** The serialization id. */
+        private static final long serialVersionUID = 1L;
+
+        /** The name of the statistic. */
+        StatName statName;
+
+        /** The number of samples kept. */
+        long steadyStateSamples;
+
+        /** The number of samples discarded between kept ones. */
+        long discardedSamples;
+
+        /** The moments of the samples kept. */
+        SimpleStatistic moments;
+
+        /** The histogram bins which gained samples. */
+        int[] bins;
+
+        /** The number of samples each bin gained. */
+        double[] counts;
+
+        /** The samples the sketch gained, if the statistic uses one. */
+        QuantileSketch sketch;
+
+    }
+
+    /**
+     * Creates a new StatisticsDelta.
+     *
+     * @param theBaseline - the full statistics, or null
+     * @param theChanges - the change of each statistic, or null
+     */
+    private StatisticsDelta(final StatisticsCollection theBaseline,
+                            final Vector<StatChange> theChanges) {
+        this.baseline = theBaseline;
+        this.changes = theChanges;
+        this.finished = false;
+    }
+
+    /**
+     * Gets the change in statistics between two copies of them.
+     *
+     * @param previous - the copy last reported, or null
+     * @param current - a copy of the statistics now
+     * @return the change, which is a new baseline if the previous copy
+     * can't be built on, and is empty until every statistic is in steady
+     * state
+     */
+    public static StatisticsDelta between(
+            final StatisticsCollection previous,
+            final StatisticsCollection current) {
+        if (!current.allStatsSteadyState()) {
+            return new StatisticsDelta(null, null);
+        }
+        if (previous == null || !previous.allStatsSteadyState()) {
+            return new StatisticsDelta(current, null);
+        }
+
+        Vector<StatChange> changes = new Vector<StatChange>();
+        Iterator<Statistic> iter = current.getAllStats();
+        while (iter.hasNext()) {
+            Statistic stat = iter.next();
+            Statistic earlier = previous.getStat(stat.getStatName());
+            StatChange change = null;
+            if (earlier != null) {
+                change = stat.changeSince(earlier);
+            }
+            if (change == null) {
+                return new StatisticsDelta(current, null);
+            }
+            changes.add(change);
+        }
+
+        return new StatisticsDelta(null, changes);
+    }
+
+    /**
+     * Applies this delta to the statistics last reported.
+     *
+     * @param stats - the statistics so far, or null if there are none
+     * @return the updated statistics (the baseline if this is one),
+     * or null if no statistics have been reported yet
+     */
+    public StatisticsCollection applyTo(final StatisticsCollection stats) {
+        if (this.baseline != null) {
+            return this.baseline;
+        }
+        if (this.changes == null || stats == null) {
+            return stats;
+        }
+
+        Iterator<StatChange> iter = this.changes.iterator();
+        while (iter.hasNext()) {
+            StatChange change = iter.next();
+            stats.getStat(change.statName).applyChange(change);
+        }
+
+        return stats;
+    }
+
+    /**
+     * Checks if this delta only adds samples, so it can also be applied to
+     * statistics combined from several experiments. Baselines replace the
+     * statistics instead.
+     *
+     * @return if this delta only adds samples
+     */
+    public boolean isAdditive() {
+        return this.baseline == null;
+    }
+
+    /**
+     * Checks if this delta carries the full statistics.
+     *
+     * @return if this delta is a new baseline
+     */
+    public boolean isBaseline() {
+        return this.baseline != null;
+    }
+
+    /**
+     * Marks if this is the last delta of an experiment that finished.
+     *
+     * @param isFinished - if the experiment has finished
+     */
+    public void setFinished(final boolean isFinished) {
+        this.finished = isFinished;
+    }
+
+    /**
+     * Checks if the experiment has finished running.
+     *
+     * @return if the experiment has finished
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Writes this delta compactly: a baseline in the
+     * {@link StatisticsCodec} encoding, and changes as moments and
+     * delta coded histogram bins or sketch buckets.
+     *
+     * @param out - the stream to write to
+     * @throws IOException - if the stream can't be written
+     */
+    private void writeObject(final ObjectOutputStream out)
+            throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(this.finished);
+
+        out.writeBoolean(this.baseline != null);
+        if (this.baseline != null) {
+            byte[] bytes = StatisticsCodec.encode(this.baseline);
+            StatisticsCodec.writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeBoolean(this.changes != null);
+        if (this.changes != null) {
+            StatisticsCodec.writeVarLong(out, this.changes.size());
+            Iterator<StatChange> iter = this.changes.iterator();
+            while (iter.hasNext()) {
+                StatChange change = iter.next();
+                StatisticsCodec.writeVarLong(out, change.statName.ordinal());
+                StatisticsCodec.writeVarLong(out, change.steadyStateSamples);
+                StatisticsCodec.writeVarLong(out, change.discardedSamples);
+                StatisticsCodec.writeMoments(out, change.moments);
+                out.writeBoolean(change.sketch != null);
+                if (change.sketch != null) {
+                    change.sketch.write(out);
+                } else {
+                    StatisticsCodec.writeSparseCounts(out,
+                                                      change.bins,
+                                                      change.counts);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a delta written by {@link #writeObject(ObjectOutputStream)}.
+     *
+     * @param in - the stream to read from
+     * @throws IOException - if the stream can't be read
+     * @throws ClassNotFoundException - if the delta's class can't be found
+     */
+    private void readObject(final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.finished = in.readBoolean();
+
+        if (in.readBoolean()) {
+            byte[] bytes = new byte[(int) StatisticsCodec.readVarLong(in)];
+            in.readFully(bytes);
+            this.baseline = StatisticsCodec.decode(bytes);
+        }
+
+        if (in.readBoolean()) {
+            long nChanges = StatisticsCodec.readVarLong(in);
+            this.changes = new Vector<StatChange>();
+            for (long i = 0; i < nChanges; i++) {
+                StatChange change = new StatChange();
+                change.statName
+                    = StatName.values()[(int) StatisticsCodec.readVarLong(in)];
+                change.steadyStateSamples = StatisticsCodec.readVarLong(in);
+                change.discardedSamples = StatisticsCodec.readVarLong(in);
+                change.moments = StatisticsCodec.readMoments(in);
+                if (in.readBoolean()) {
+                    change.sketch = QuantileSketch.read(in);
+                } else {
+                    int[][] bins = new int[1][];
+                    double[][] counts = new double[1][];
+                    StatisticsCodec.readSparseCounts(in, bins, counts);
+                    change.bins = bins[0];
+                    change.counts = counts[0];
+                }
+                this.changes.add(change);
+            }
+        }
+    }
+
+}
@@ -68,6 +68,12 @@ public class TimeWeightedStatistic extends Statistic {
     /** The name of the time weighted statistic. */
     private TimeWeightedStatName name;
 
+    /**
+     * If samples only come when the value changes, rather than after
+     * every event.
+     */
+    private boolean changeDriven;
+
     /**
      * Creates a new time weighted statistic.
      *
@@ -101,6 +107,31 @@ public class TimeWeightedStatistic extends Statistic {
         this.oldValue = 0.0d;
         this.oldValueSet = false;
 	this.windowAverage = 0.0d;
+        this.changeDriven = false;
+    }
+
+    /**
+     * Sets if samples are only added when the value changes.
+     * Samples repeating the last value are then ignored, and windows
+     * the value spans are completed lazily by the next change (or by
+     * {@link #advanceTo(double)}) with the value held over them.
+     *
+     * @param driven - if samples are only added when the value changes
+     */
+    public void setChangeDriven(final boolean driven) {
+        this.changeDriven = driven;
+    }
+
+    /**
+     * Accounts for the current value being held up to a time, e.g., at
+     * the end of a change-driven run.
+     *
+     * @param time - the time the value is held until
+     */
+    public void advanceTo(final double time) {
+        if (this.oldValueSet) {
+            this.accumulate(this.oldValue, time);
+        }
     }
 
     /**
@@ -117,6 +148,21 @@ public class TimeWeightedStatistic extends Statistic {
             return;
         }
 
+        if (this.changeDriven && newValue == this.oldValue) {
+            return;
+        }
+
+        this.accumulate(newValue, time);
+    }
+
+    /**
+     * Weights the value held since the last sample up to a time and
+     * completes any windows that end before it.
+     *
+     * @param newValue - the value from the time on
+     * @param time - the time the value changes
+     */
+    private void accumulate(final double newValue, final double time) {
         double value = this.oldValue;
         this.oldValue = newValue;
         double currentPeriodLength = time - this.sampleWindowStart;
@@ -163,21 +209,28 @@ public class TimeWeightedStatistic extends Statistic {
 
 	    double remainder = currentPeriodLength - this.windowSize;
 
+            // Per-event samples are close enough together to credit the
+            // rest to the new value, change-driven ones need the held value
+            double restValue = newValue;
+            if (this.changeDriven) {
+                restValue = value;
+            }
+
             // A window that is just one value
             int wholePeriods = (int) Math.floor(remainder / this.windowSize);
 
             for (int i = 0; i < wholePeriods; i++) {
-                super.addSample(newValue); //raw energy value??
+                super.addSample(restValue); //raw energy value??
 		this.accumWeight += this.windowSize; //weight is window size
-		this.averageAccum += this.windowSize*newValue;
+		this.averageAccum += this.windowSize*restValue;
             }
 
             // A new window with just a portion filled
 	    this.windowAverage = 0.0;
             remainder = remainder - this.windowSize * (wholePeriods);
-            this.averageAccum += remainder * newValue;
+            this.averageAccum += remainder * restValue;
             this.accumWeight += remainder;
-	    this.windowAverage += remainder * newValue;
+	    this.windowAverage += remainder * restValue;
             this.sampleWindowStart = this.windowSize * (wholePeriods + 1)
                     + this.sampleWindowStart;
             this.lastSampleTime = time;
@@ -197,6 +250,27 @@ public class TimeWeightedStatistic extends Statistic {
 
     }
 
+    /**
+     * Discards the samples kept in steady state, along with the time
+     * weighted average accumulated so far, and starts a new window at
+     * the restart time with the value currently held.
+     *
+     * @param time - the simulated time of the restart
+     */
+    @Override
+    void restartSteadyState(final double time) {
+        if (!this.isSteadyState()) {
+            return;
+        }
+
+        super.restartSteadyState(time);
+        this.averageAccum = 0.0d;
+        this.accumWeight = 0.0d;
+        this.windowAverage = 0.0d;
+        this.sampleWindowStart = time;
+        this.lastSampleTime = time;
+    }
+
     /**
      * Sets the window (in seconds) over which samples are weighted.
      *
@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package sweep;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Vector;
+
+import core.Sim;
+
+/**
+ * A grid of experiments to sweep: every combination of the workloads,
+ * loads, server counts, policies and caps it's given. A grid can be
+ * built in code or read from a file with one dimension per line, its
+ * name followed by its values, e.g.
+ *
+ * <pre>
+ * # workload x rho x servers x policy x cap
+ * workload csedns email
+ * rho .3 .5 .7
+ * servers 10 50
+ * policy NO_MANAGEMENT CORE_PARKING
+ * cap 65 80
+ * events 10000000
+ * </pre>
+ *
+ * The optional "events" line bounds how many events each point may
+ * simulate before giving up on convergence.
+ */
+public final class SweepGrid {
+
+    /**
+     * The names of the workloads.
+     */
+    private Vector<String> workloads;
+
+    /**
+     * The utilizations the arrivals are scaled to.
+     */
+    private Vector<Double> rhos;
+
+    /**
+     * The numbers of servers in the data center.
+     */
+    private Vector<Integer> serverCounts;
+
+    /**
+     * The power management policies of the servers.
+     */
+    private Vector<SweepPoint.Policy> policies;
+
+    /**
+     * The power caps, in watts per server.
+     */
+    private Vector<Double> caps;
+
+    /**
+     * The most events each point simulates, or 0 to run until
+     * convergence.
+     */
+    private int eventLimit;
+
+    /**
+     * Creates an empty grid.
+     */
+    public SweepGrid() {
+        this.workloads = new Vector<String>();
+        this.rhos = new Vector<Double>();
+        this.serverCounts = new Vector<Integer>();
+        this.policies = new Vector<SweepPoint.Policy>();
+        this.caps = new Vector<Double>();
+        this.eventLimit = 0;
+    }
+
+    /**
+     * Adds a workload to the grid.
+     *
+     * @param workload - the name of the workload
+     */
+    public void addWorkload(final String workload) {
+        this.workloads.add(workload);
+    }
+
+    /**
+     * Adds a load to the grid.
+     *
+     * @param rho - the utilization the arrivals are scaled to
+     */
+    public void addRho(final double rho) {
+        this.rhos.add(rho);
+    }
+
+    /**
+     * Adds a data center size to the grid.
+     *
+     * @param nServers - the number of servers in the data center
+     */
+    public void addServerCount(final int nServers) {
+        this.serverCounts.add(nServers);
+    }
+
+    /**
+     * Adds a power management policy to the grid.
+     *
+     * @param policy - the power management policy of the servers
+     */
+    public void addPolicy(final SweepPoint.Policy policy) {
+        this.policies.add(policy);
+    }
+
+    /**
+     * Adds a power cap to the grid.
+     *
+     * @param cap - the power cap, in watts per server
+     */
+    public void addCap(final double cap) {
+        this.caps.add(cap);
+    }
+
+    /**
+     * Sets the most events each point simulates. Points that hit the
+     * limit are reported as not converged.
+     *
+     * @param theEventLimit - the most events to simulate, or 0 to run
+     * each point until convergence
+     */
+    public void setEventLimit(final int theEventLimit) {
+        this.eventLimit = theEventLimit;
+    }
+
+    /**
+     * Gets the workloads of the grid.
+     *
+     * @return an iterator over the names of the workloads
+     */
+    public Iterator<String> getWorkloads() {
+        return this.workloads.iterator();
+    }
+
+    /**
+     * Gets every point of the grid. Caps vary fastest and workloads
+     * slowest, and each point's index is its position in the result.
+     *
+     * @return the points of the grid
+     */
+    public Vector<SweepPoint> getPoints() {
+        if (this.workloads.isEmpty() || this.rhos.isEmpty()
+                || this.serverCounts.isEmpty() || this.policies.isEmpty()
+                || this.caps.isEmpty()) {
+            Sim.fatalError("Sweep grid needs at least one workload, rho,"
+                    + " server count, policy and cap");
+        }
+
+        Vector<SweepPoint> points = new Vector<SweepPoint>();
+        for (String workload : this.workloads) {
+            for (double rho : this.rhos) {
+                for (int nServers : this.serverCounts) {
+                    for (SweepPoint.Policy policy : this.policies) {
+                        for (double cap : this.caps) {
+                            points.add(new SweepPoint(points.size(),
+                                    workload, rho, nServers, policy, cap,
+                                    this.eventLimit));
+                        }
+                    }
+                }
+            }
+        }
+
+        return points;
+    }
+
+    /**
+     * Reads a grid from a file. Lines starting with "#" and blank lines
+     * are ignored.
+     *
+     * @param fileName - the name of the file
+     * @return the grid the file describes
+     */
+    public static SweepGrid parse(final String fileName) {
+        SweepGrid grid = new SweepGrid();
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(fileName));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    // This line is a comment.
+                    if (line.length() == 0 || line.startsWith("#")) {
+                        continue;
+                    }
+                    grid.parseLine(line.split("\\s+"));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't read sweep grid " + fileName + ": "
+                    + e.getMessage());
+        }
+
+        return grid;
+    }
+
+    /**
+     * Adds the values on one line of a grid file to the grid.
+     *
+     * @param parts - the dimension's name followed by its values
+     */
+    private void parseLine(final String[] parts) {
+        String dimension = parts[0];
+        if (parts.length < 2) {
+            Sim.fatalError("Sweep grid line has no values: " + dimension);
+        }
+
+        try {
+            for (int i = 1; i < parts.length; i++) {
+                if (dimension.equals("workload")) {
+                    this.addWorkload(parts[i]);
+                } else if (dimension.equals("rho")) {
+                    this.addRho(Double.valueOf(parts[i]));
+                } else if (dimension.equals("servers")) {
+                    this.addServerCount(Integer.valueOf(parts[i]));
+                } else if (dimension.equals("policy")) {
+                    this.addPolicy(SweepPoint.Policy.valueOf(parts[i]));
+                } else if (dimension.equals("cap")) {
+                    this.addCap(Double.valueOf(parts[i]));
+                } else if (dimension.equals("events")) {
+                    this.setEventLimit(Integer.valueOf(parts[i]));
+                } else {
+                    Sim.fatalError("Unknown sweep grid dimension: "
+                            + dimension);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Sim.fatalError("Bad value for sweep grid dimension " + dimension
+                    + ": " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package sweep;
+
+import core.Experiment;
+import core.Sim;
+import datacenter.Core.CorePowerPolicy;
+import datacenter.Socket.SocketPowerPolicy;
+import experiment.PowerCappingExperiment;
+
+/**
+ * One point of a {@link SweepGrid}: a power capping experiment with a
+ * given workload, load, number of servers, power management policy and
+ * power cap. Points are immutable, so they can be handed to any thread.
+ */
+public final class SweepPoint {
+
+    /**
+     * The power management policies a sweep can compare.
+     */
+    public enum Policy {
+        /** Cores and sockets are never parked. */
+        NO_MANAGEMENT(CorePowerPolicy.NO_MANAGEMENT,
+                      SocketPowerPolicy.NO_MANAGEMENT),
+
+        /** Idle cores are parked. */
+        CORE_PARKING(CorePowerPolicy.CORE_PARKING,
+                     SocketPowerPolicy.NO_MANAGEMENT),
+
+        /** Idle sockets are parked. */
+        SOCKET_PARKING(CorePowerPolicy.NO_MANAGEMENT,
+                       SocketPowerPolicy.SOCKET_PARKING);
+
+        /**
+         * The policy of each server's cores.
+         */
+        private final CorePowerPolicy corePolicy;
+
+        /**
+         * The policy of each server's sockets.
+         */
+        private final SocketPowerPolicy socketPolicy;
+
+        /**
+         * Creates a policy.
+         *
+         * @param theCorePolicy - the policy of each server's cores
+         * @param theSocketPolicy - the policy of each server's sockets
+         */
+        private Policy(final CorePowerPolicy theCorePolicy,
+                       final SocketPowerPolicy theSocketPolicy) {
+            this.corePolicy = theCorePolicy;
+            this.socketPolicy = theSocketPolicy;
+        }
+
+        /**
+         * Gets the policy of each server's cores.
+         *
+         * @return the policy of the cores
+         */
+        public CorePowerPolicy getCorePolicy() {
+            return this.corePolicy;
+        }
+
+        /**
+         * Gets the policy of each server's sockets.
+         *
+         * @return the policy of the sockets
+         */
+        public SocketPowerPolicy getSocketPolicy() {
+            return this.socketPolicy;
+        }
+    }
+
+    /**
+     * The headings of the columns {@link #toString()} gives.
+     */
+    public static final String COLUMNS
+            = "workload\trho\tservers\tpolicy\tcap";
+
+    /**
+     * The position of the point in its grid.
+     */
+    private final int index;
+
+    /**
+     * The name of the workload.
+     */
+    private final String workload;
+
+    /**
+     * The utilization the arrivals are scaled to.
+     */
+    private final double rho;
+
+    /**
+     * The number of servers in the data center.
+     */
+    private final int nServers;
+
+    /**
+     * The power management policy of the servers.
+     */
+    private final Policy policy;
+
+    /**
+     * The power cap, in watts per server.
+     */
+    private final double cap;
+
+    /**
+     * The most events to simulate, or 0 to run until convergence.
+     */
+    private final int eventLimit;
+
+    /**
+     * Creates a point.
+     *
+     * @param theIndex - the position of the point in its grid
+     * @param theWorkload - the name of the workload
+     * @param theRho - the utilization the arrivals are scaled to
+     * @param theNServers - the number of servers in the data center
+     * @param thePolicy - the power management policy of the servers
+     * @param theCap - the power cap, in watts per server
+     * @param theEventLimit - the most events to simulate, or 0 to run
+     * until convergence
+     */
+    public SweepPoint(final int theIndex,
+                      final String theWorkload,
+                      final double theRho,
+                      final int theNServers,
+                      final Policy thePolicy,
+                      final double theCap,
+                      final int theEventLimit) {
+        if (theRho <= 0 || theRho >= 1) {
+            Sim.fatalError("Sweep rho must be between 0 and 1: " + theRho);
+        }
+        if (theNServers < 1) {
+            Sim.fatalError("Sweep needs at least one server: " + theNServers);
+        }
+        if (theCap <= 0) {
+            Sim.fatalError("Sweep cap must be positive: " + theCap);
+        }
+        this.index = theIndex;
+        this.workload = theWorkload;
+        this.rho = theRho;
+        this.nServers = theNServers;
+        this.policy = thePolicy;
+        this.cap = theCap;
+        this.eventLimit = theEventLimit;
+    }
+
+    /**
+     * Gets the position of the point in its grid.
+     *
+     * @return the position of the point
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Gets the name of the workload.
+     *
+     * @return the name of the workload
+     */
+    public String getWorkload() {
+        return this.workload;
+    }
+
+    /**
+     * Gets the utilization the arrivals are scaled to.
+     *
+     * @return the target utilization
+     */
+    public double getRho() {
+        return this.rho;
+    }
+
+    /**
+     * Gets the number of servers in the data center.
+     *
+     * @return the number of servers
+     */
+    public int getNServers() {
+        return this.nServers;
+    }
+
+    /**
+     * Gets the power management policy of the servers.
+     *
+     * @return the power management policy
+     */
+    public Policy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Gets the power cap.
+     *
+     * @return the power cap, in watts per server
+     */
+    public double getCap() {
+        return this.cap;
+    }
+
+    /**
+     * Sets up the point's experiment without running it. The workload's
+     * distributions come from the cache in
+     * {@link math.EmpiricalDistribution#loadDistribution(String, double)},
+     * so every point of a workload shares one copy of them.
+     *
+     * @param workloadDir - the directory holding the workloads directory
+     * @return the experiment, ready to run
+     */
+    public Experiment createExperiment(final String workloadDir) {
+        Experiment experiment = new PowerCappingExperiment().createExperiment(
+                workloadDir, this.workload, this.nServers, 0, this.rho,
+                this.cap, this.policy.getCorePolicy(),
+                this.policy.getSocketPolicy());
+        if (this.eventLimit > 0) {
+            experiment.setEventLimit(this.eventLimit);
+        }
+
+        return experiment;
+    }
+
+    /**
+     * Gets the point's parameters as tab separated columns, in the
+     * order of {@link #COLUMNS}.
+     *
+     * @return the point's parameters
+     */
+    @Override
+    public String toString() {
+        return this.workload + "\t" + this.rho + "\t" + this.nServers
+                + "\t" + this.policy + "\t" + this.cap;
+    }
+
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package sweep;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import math.EmpiricalDistribution;
+import stat.Statistic;
+import stat.StatisticsCollection;
+import core.Experiment;
+import core.Sim;
+import core.Constants.StatName;
+
+/**
+ * Runs every point of a {@link SweepGrid} in one process and writes a
+ * single table of results. Each point runs on its own until its
+ * statistics converge, so the points are spread over a work stealing
+ * pool: a thread that finishes its short points takes work queued for
+ * threads still busy with long ones. Each workload's distributions are
+ * loaded once and shared by all of its points.
+ */
+public final class SweepRunner {
+
+    /**
+     * The statistics reported for each point.
+     */
+    private static final StatName[] OUTPUTS
+            = {StatName.SOJOURN_TIME, StatName.SERVER_LEVEL_CAP};
+
+    /**
+     * The directory holding the workloads directory.
+     */
+    private String workloadDir;
+
+    /**
+     * The number of threads to run points on.
+     */
+    private int nThreads;
+
+    /**
+     * The table being written, one row per finished point.
+     */
+    private PrintWriter results;
+
+    /**
+     * The number of points finished so far.
+     */
+    private int nFinished;
+
+    /**
+     * The number of points that failed or didn't converge.
+     */
+    private int nUnconverged;
+
+    /**
+     * Creates a runner with one thread per available processor.
+     *
+     * @param theWorkloadDir - the directory holding the workloads
+     * directory
+     */
+    public SweepRunner(final String theWorkloadDir) {
+        this.workloadDir = theWorkloadDir;
+        this.nThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the number of threads points run on.
+     *
+     * @param theNThreads - the number of threads
+     */
+    public void setThreads(final int theNThreads) {
+        if (theNThreads < 1) {
+            Sim.fatalError("Need at least one thread");
+        }
+        this.nThreads = theNThreads;
+    }
+
+    /**
+     * Runs every point of a grid and writes their results to a tab
+     * separated table. Rows are written as points finish, so they're in
+     * no particular order; the first column is the point's index in the
+     * grid. A point that fails is reported in its row and doesn't stop
+     * the others.
+     *
+     * @param grid - the grid to sweep
+     * @param resultsFile - the file to write the table to
+     * @return the number of points that failed or didn't converge
+     */
+    public int run(final SweepGrid grid, final String resultsFile) {
+        final double millisecondsPerSecond = 1000.0;
+        long startTime = System.currentTimeMillis();
+        Vector<SweepPoint> points = grid.getPoints();
+        this.loadWorkloads(grid);
+
+        try {
+            this.results = new PrintWriter(new BufferedWriter(
+                    new FileWriter(resultsFile)));
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't write sweep results " + resultsFile
+                    + ": " + e.getMessage());
+        }
+        this.nFinished = 0;
+        this.nUnconverged = 0;
+        this.writeRow(getHeader());
+
+        System.out.println("Sweeping " + points.size() + " points on "
+                + this.nThreads + " threads");
+        ForkJoinPool pool = new ForkJoinPool(this.nThreads);
+        try {
+            pool.invoke(new PointRange(points, 0, points.size()));
+        } finally {
+            pool.shutdown();
+            this.results.close();
+        }
+        if (this.results.checkError()) {
+            Sim.fatalError("Couldn't write sweep results " + resultsFile);
+        }
+
+        long endTime = System.currentTimeMillis();
+        System.out.println("Sweep of " + points.size() + " points took "
+                + (endTime - startTime) / millisecondsPerSecond
+                + " seconds, " + this.nUnconverged + " didn't converge");
+
+        return this.nUnconverged;
+    }
+
+    /**
+     * Loads the distributions of every workload in a grid before any
+     * point runs, so a missing workload is found up front and the
+     * points only ever hit the distribution cache.
+     *
+     * @param grid - the grid whose workloads to load
+     */
+    private void loadWorkloads(final SweepGrid grid) {
+        Iterator<String> iter = grid.getWorkloads();
+        while (iter.hasNext()) {
+            String workload = iter.next();
+            // The same files and scaling the points' experiments load
+            String prefix = this.workloadDir + "workloads/" + workload;
+            EmpiricalDistribution.loadDistribution(prefix + ".arrival.cdf",
+                                                   1e-3);
+            EmpiricalDistribution.loadDistribution(prefix + ".service.cdf",
+                                                   1e-3);
+        }
+    }
+
+    /**
+     * Runs one point until its statistics converge and writes its row.
+     *
+     * @param point - the point to run
+     */
+    private void runPoint(final SweepPoint point) {
+        final double millisecondsPerSecond = 1000.0;
+        long startTime = System.currentTimeMillis();
+        StringBuilder row = new StringBuilder();
+        row.append(point.getIndex()).append('\t').append(point);
+
+        boolean converged = false;
+        long nEvents = 0;
+        String error = "";
+        try {
+            Experiment experiment = point.createExperiment(this.workloadDir);
+            experiment.run();
+            StatisticsCollection stats = experiment.getStats();
+            for (int i = 0; i < OUTPUTS.length; i++) {
+                Statistic stat = stats.getStat(OUTPUTS[i]);
+                row.append('\t').append(stat.getAverage());
+                row.append('\t').append(
+                        stat.getQuantile(stat.getQuantileSetting()));
+            }
+            nEvents = experiment.getNEventsSimulated();
+            converged = stats.allStatsConverged();
+        } catch (RuntimeException e) {
+            row.setLength(0);
+            row.append(point.getIndex()).append('\t').append(point);
+            for (int i = 0; i < OUTPUTS.length; i++) {
+                row.append("\tNaN\tNaN");
+            }
+            error = String.valueOf(e);
+        }
+
+        long endTime = System.currentTimeMillis();
+        row.append('\t').append(nEvents);
+        row.append('\t').append(converged);
+        row.append('\t').append((endTime - startTime) / millisecondsPerSecond);
+        row.append('\t').append(error);
+
+        synchronized (this) {
+            this.nFinished++;
+            if (!converged) {
+                this.nUnconverged++;
+            }
+            System.out.println("Finished sweep point " + point.getIndex()
+                    + " (" + this.nFinished + " done): " + point);
+        }
+        this.writeRow(row.toString());
+    }
+
+    /**
+     * Writes a row of the results table.
+     *
+     * @param row - the row, without a line break
+     */
+    private void writeRow(final String row) {
+        synchronized (this.results) {
+            this.results.println(row);
+            this.results.flush();
+        }
+    }
+
+    /**
+     * Gets the headings of the results table's columns.
+     *
+     * @return the tab separated headings
+     */
+    static String getHeader() {
+        StringBuilder header = new StringBuilder();
+        header.append("point\t").append(SweepPoint.COLUMNS);
+        for (int i = 0; i < OUTPUTS.length; i++) {
+            header.append('\t').append(OUTPUTS[i]).append("_mean");
+            header.append('\t').append(OUTPUTS[i]).append("_quantile");
+        }
+        header.append("\tevents\tconverged\tseconds\terror");
+
+        return header.toString();
+    }
+
+    /**
+     * A range of points to run. Ranges of more than one point split in
+     * half, leaving one half queued for an idle thread to steal.
+     */
+    private final class PointRange extends RecursiveAction {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The points of the grid.
+         */
+        private final Vector<SweepPoint> points;
+
+        /**
+         * The first point of the range.
+         */
+        private final int start;
+
+        /**
+         * One past the last point of the range.
+         */
+        private final int end;
+
+        /**
+         * Creates a range of points.
+         *
+         * @param thePoints - the points of the grid
+         * @param theStart - the first point of the range
+         * @param theEnd - one past the last point of the range
+         */
+        PointRange(final Vector<SweepPoint> thePoints,
+                   final int theStart,
+                   final int theEnd) {
+            this.points = thePoints;
+            this.start = theStart;
+            this.end = theEnd;
+        }
+
+        /**
+         * Runs the range's points, or splits it if it has more than one.
+         */
+        @Override
+        protected void compute() {
+            if (this.end - this.start == 1) {
+                runPoint(this.points.get(this.start));
+            } else if (this.end - this.start > 1) {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new PointRange(this.points, this.start, middle),
+                          new PointRange(this.points, middle, this.end));
+            }
+        }
+    }
+
+    /**
+     * Sweeps a grid. Arguments are the directory holding the workloads
+     * directory, the grid file, the results file and, optionally, the
+     * number of threads.
+     *
+     * @param args - the command line arguments
+     */
+    public static void main(final String[] args) {
+        final int minArgs = 3;
+        if (args.length < minArgs) {
+            System.err.println("Usage: SweepRunner workloadDir gridFile"
+                    + " resultsFile [threads]");
+            System.exit(1);
+        }
+        SweepRunner runner = new SweepRunner(args[0]);
+        if (args.length > minArgs) {
+            runner.setThreads(Integer.valueOf(args[minArgs]));
+        }
+        runner.run(SweepGrid.parse(args[1]), args[2]);
+    }
+
+}
@@ -34,8 +34,18 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import test.core.EventQueueTest;
+import test.core.ExperimentTest;
+import test.core.PartitionedEngineTest;
+import test.datacenter.CoreTest;
+import test.datacenter.DataCenterTest;
+import test.generator.RandomStreamsTest;
+import test.generator.TraceReaderTest;
 import test.master.MasterTest;
+import test.math.EmpiricalDistributionTest;
+import test.slave.LocalSlaveTest;
 import test.stat.AllStatTests;
+import test.sweep.SweepGridTest;
 
 /**
  * Top level test suite. Tests everything in BigHouse.
@@ -43,7 +53,12 @@ import test.stat.AllStatTests;
  * @author David Meisner (meisner@umich.edu)
  */
 @RunWith(Suite.class)
-@SuiteClasses({ AllStatTests.class, MasterTest.class })
+@SuiteClasses({ AllStatTests.class, MasterTest.class, EventQueueTest.class,
+    ExperimentTest.class, PartitionedEngineTest.class, CoreTest.class,
+    DataCenterTest.class,
+    EmpiricalDistributionTest.class, RandomStreamsTest.class,
+    TraceReaderTest.class,
+    SweepGridTest.class, LocalSlaveTest.class })
 public class AllTests {
 
 }
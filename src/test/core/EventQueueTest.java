@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.AbstractEvent;
+import core.Event;
+import core.EventQueue;
+import core.EventQueue.QueueType;
+
+/**
+ * Tests for the {@link EventQueue} class.
+ */
+public class EventQueueTest extends TestCase {
+
+    /**
+     * An event which does nothing when processed.
+     */
+    private static final class TestEvent extends AbstractEvent {
+
+        /** The serialization id. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new TestEvent.
+         * @param time - the time the event occurs
+         */
+        TestEvent(final double time) {
+            super(time, null);
+        }
+
+        @Override
+        public void process() {
+        }
+
+    }
+
+    /**
+     * Runs the same random mix of adds, cancels and polls through a queue.
+     *
+     * @param queueType - the data structure backing the queue
+     * @return the events in the order they were polled
+     */
+    private Event[] runMix(final QueueType queueType) {
+        final int nEvents = 20000;
+        Random random = new Random(1);
+        EventQueue queue = new EventQueue(queueType);
+        TestEvent[] added = new TestEvent[nEvents];
+        Event[] polled = new Event[nEvents];
+        int nPolled = 0;
+        double now = 0.0d;
+        for (int i = 0; i < nEvents; i++) {
+            // Coarse times so plenty of events share a time
+            double time = now + Math.floor(random.nextDouble() * 50) / 10;
+            added[i] = new TestEvent(time);
+            queue.addEvent(added[i]);
+            if (i > 0 && random.nextInt(10) == 0) {
+                TestEvent victim = added[random.nextInt(i)];
+                if (victim.getTime() >= now && !contains(polled, victim)) {
+                    queue.cancelEvent(victim);
+                    polled[nPolled] = victim;
+                    nPolled++;
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                Event event = queue.nextEvent();
+                now = event.getTime();
+                polled[nPolled] = event;
+                nPolled++;
+            }
+        }
+        while (queue.size() > 0) {
+            polled[nPolled] = queue.nextEvent();
+            nPolled++;
+        }
+
+        return polled;
+    }
+
+    /**
+     * Checks if an event is in an array.
+     * @param events - the array
+     * @param event - the event
+     * @return if the event is in the array
+     */
+    private static boolean contains(final Event[] events, final Event event) {
+        for (int i = 0; i < events.length; i++) {
+            if (events[i] == event) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests that events come out in time order, ties first in first out.
+     */
+    @Test
+    public void testOrdering() {
+        EventQueue queue = new EventQueue(QueueType.CALENDAR);
+        TestEvent first = new TestEvent(1.0);
+        TestEvent second = new TestEvent(1.0);
+        TestEvent early = new TestEvent(0.5);
+        queue.addEvent(first);
+        queue.addEvent(second);
+        queue.addEvent(early);
+        assertSame(early, queue.nextEvent());
+        assertSame(first, queue.nextEvent());
+        assertSame(second, queue.nextEvent());
+        assertNull(queue.nextEvent());
+    }
+
+    /**
+     * Tests that the calendar queue and the heap order events identically.
+     */
+    @Test
+    public void testCalendarMatchesHeap() {
+        Event[] heapOrder = this.runMix(QueueType.HEAP);
+        Event[] calendarOrder = this.runMix(QueueType.CALENDAR);
+        assertEquals(heapOrder.length, calendarOrder.length);
+        for (int i = 0; i < heapOrder.length; i++) {
+            assertEquals(heapOrder[i].getTime(), calendarOrder[i].getTime());
+            assertEquals(heapOrder[i].getSequenceNumber(),
+                         calendarOrder[i].getSequenceNumber());
+        }
+    }
+
+    /**
+     * Tests that cancelled events are never returned and that an event
+     * can't be cancelled once it has been taken off the queue.
+     */
+    @Test
+    public void testCancelEvent() {
+        EventQueue queue = new EventQueue();
+        TestEvent[] events = new TestEvent[100];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new TestEvent(i);
+            queue.addEvent(events[i]);
+        }
+        for (int i = 0; i < events.length; i += 2) {
+            queue.cancelEvent(events[i]);
+        }
+        assertEquals(50, queue.size());
+        for (int i = 1; i < events.length; i += 2) {
+            assertSame(events[i], queue.nextEvent());
+        }
+
+        try {
+            queue.cancelEvent(events[1]);
+            fail("Cancelled an event that was already processed");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Tests that changing the queue type keeps pending events.
+     */
+    @Test
+    public void testSetQueueType() {
+        EventQueue queue = new EventQueue();
+        for (int i = 10; i > 0; i--) {
+            queue.addEvent(new TestEvent(i));
+        }
+        queue.setQueueType(QueueType.CALENDAR);
+        assertEquals(QueueType.CALENDAR, queue.getQueueType());
+        assertEquals(10, queue.size());
+        for (int i = 1; i <= 10; i++) {
+            assertEquals((double) i, queue.nextEvent().getTime());
+        }
+    }
+
+    /**
+     * Tests that peeking returns the event the next poll will, for events
+     * far apart in time as well as close together.
+     */
+    @Test
+    public void testPeekEvent() {
+        QueueType[] types = {QueueType.HEAP, QueueType.CALENDAR};
+        for (int t = 0; t < types.length; t++) {
+            EventQueue queue = new EventQueue(types[t]);
+            assertNull(queue.peekEvent());
+            Random random = new Random(1);
+            for (int i = 0; i < 1000; i++) {
+                double time = random.nextDouble() * 10;
+                if (i % 100 == 0) {
+                    time += 1e6;
+                }
+                queue.addEvent(new TestEvent(time));
+            }
+            while (queue.size() > 0) {
+                Event peeked = queue.peekEvent();
+                assertSame(peeked, queue.peekEvent());
+                assertSame(peeked, queue.nextEvent());
+            }
+            assertNull(queue.peekEvent());
+        }
+    }
+
+    /**
+     * Tests that a serialized queue hands back its events in the same
+     * order, and keeps numbering new events after the old ones.
+     *
+     * @throws Exception - if the queue can't be serialized
+     */
+    @Test
+    public void testSerialization() throws Exception {
+        QueueType[] types = {QueueType.HEAP, QueueType.CALENDAR};
+        for (int t = 0; t < types.length; t++) {
+            EventQueue queue = new EventQueue(types[t]);
+            Random random = new Random(1);
+            for (int i = 0; i < 1000; i++) {
+                queue.addEvent(new TestEvent(random.nextInt(100)));
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(queue);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            EventQueue copy = (EventQueue) in.readObject();
+            in.close();
+
+            assertEquals(types[t], copy.getQueueType());
+            assertEquals(queue.size(), copy.size());
+            queue.addEvent(new TestEvent(50));
+            copy.addEvent(new TestEvent(50));
+            while (queue.size() > 0) {
+                Event event = queue.nextEvent();
+                Event copied = copy.nextEvent();
+                assertEquals(event.getTime(), copied.getTime());
+                assertEquals(event.getSequenceNumber(),
+                             copied.getSequenceNumber());
+            }
+            assertEquals(0, copy.size());
+        }
+    }
+
+}
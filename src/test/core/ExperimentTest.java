@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.core;
+
+import generator.MTRandom;
+import generator.TraceGenerator;
+import generator.TraceReader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.Statistic;
+import stat.StatisticsCollection;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Constants.StatName;
+import core.Constants.TimeWeightedStatName;
+import datacenter.DataCenter;
+import datacenter.Server;
+
+/**
+ * Tests checkpointing and copying a trace-driven {@link Experiment}.
+ */
+public class ExperimentTest extends TestCase {
+
+    /**
+     * The number of servers in the test datacenter.
+     */
+    private static final int N_SERVERS = 2;
+
+    /**
+     * The number of records in the test trace.
+     */
+    private static final int N_RECORDS = 5000;
+
+    /**
+     * The number of events the test experiments run.
+     */
+    private static final int N_EVENTS = 40000;
+
+    /**
+     * The number of events before the checkpoint or copy.
+     */
+    private static final int N_EVENTS_BEFORE = 15000;
+
+    /**
+     * A text trace of random interarrival and service times.
+     */
+    private File textTrace;
+
+    /**
+     * The text trace converted to the binary format.
+     */
+    private File binaryTrace;
+
+    /**
+     * Writes the test trace in both formats.
+     *
+     * @throws IOException - if the traces can't be written
+     */
+    @Override
+    protected void setUp() throws IOException {
+        MTRandom random = new MTRandom(1);
+        this.textTrace = File.createTempFile("trace", ".csv");
+        this.textTrace.deleteOnExit();
+        FileWriter out = new FileWriter(this.textTrace);
+        for (int i = 0; i < N_RECORDS; i++) {
+            double interarrival = -.7 * Math.log(1 - random.nextDouble());
+            double service = -Math.log(1 - random.nextDouble());
+            out.write(interarrival + ", " + service + "\n");
+        }
+        out.close();
+
+        this.binaryTrace = File.createTempFile("trace",
+                                               TraceReader.BINARY_EXTENSION);
+        this.binaryTrace.deleteOnExit();
+        TraceReader.convertToBinary(this.textTrace.getPath(),
+                                    this.binaryTrace.getPath());
+    }
+
+    /**
+     * Creates an experiment whose servers each replay a shard of a
+     * trace, looping over it.
+     *
+     * @param trace - the trace to replay
+     * @param nEvents - the number of events to run
+     * @return the experiment, ready to run
+     */
+    private Experiment createExperiment(final File trace, final int nEvents) {
+        ExperimentInput input = new ExperimentInput();
+        ExperimentOutput output = new ExperimentOutput();
+        output.addOutput(StatName.SOJOURN_TIME, 1e-6, .95, 1e-6, 5000);
+        output.addTimeWeightedOutput(TimeWeightedStatName.CLUSTER_POWER,
+                                     1e-6, .95, 1e-6, 100, 1.0);
+        Experiment experiment = new Experiment("Trace test", new MTRandom(1),
+                                               input, output);
+        experiment.setEventLimit(nEvents);
+
+        DataCenter dataCenter = new DataCenter(experiment);
+        for (int i = 0; i < N_SERVERS; i++) {
+            TraceReader reader = new TraceReader(trace.getPath(), i,
+                                                 N_SERVERS, true);
+            Server server = new Server(1, 2, experiment,
+                    new TraceGenerator(reader, TraceReader.Column.INTERARRIVAL),
+                    new TraceGenerator(reader, TraceReader.Column.SERVICE));
+            server.setCoreActivePower(20);
+            server.setCoreIdlePower(4);
+            dataCenter.addServer(server);
+        }
+        input.setDataCenter(dataCenter);
+
+        return experiment;
+    }
+
+    /**
+     * Checks that two experiments ended with the same statistics.
+     *
+     * @param expected - the uninterrupted experiment
+     * @param actual - the resumed experiment
+     */
+    private void assertSameStats(final Experiment expected,
+                                 final Experiment actual) {
+        StatisticsCollection expectedStats = expected.getStats();
+        StatisticsCollection actualStats = actual.getStats();
+        Statistic[] expectedStat = {
+            expectedStats.getStat(StatName.SOJOURN_TIME),
+            expectedStats.getTimeWeightedStat(
+                    TimeWeightedStatName.CLUSTER_POWER)};
+        Statistic[] actualStat = {
+            actualStats.getStat(StatName.SOJOURN_TIME),
+            actualStats.getTimeWeightedStat(
+                    TimeWeightedStatName.CLUSTER_POWER)};
+        for (int i = 0; i < expectedStat.length; i++) {
+            assertTrue(expectedStat[i].getTotalSamples() > 0);
+            assertEquals(expectedStat[i].getTotalSamples(),
+                         actualStat[i].getTotalSamples());
+            assertEquals(expectedStat[i].getAverage(),
+                         actualStat[i].getAverage(), 0);
+        }
+    }
+
+    /**
+     * Runs a trace-driven experiment part way, writes a checkpoint,
+     * restores it and runs it to the end, checking it gives the same
+     * statistics as an uninterrupted run.
+     *
+     * @param trace - the trace to replay
+     * @throws Exception - if the checkpoint can't be written
+     */
+    private void checkCheckpointRestore(final File trace) throws Exception {
+        Experiment uninterrupted = this.createExperiment(trace, N_EVENTS);
+        uninterrupted.run();
+
+        Experiment interrupted = this.createExperiment(trace,
+                                                       N_EVENTS_BEFORE);
+        interrupted.run();
+        File checkpoint = File.createTempFile("experiment", ".ckpt");
+        checkpoint.deleteOnExit();
+        interrupted.checkpoint(checkpoint.getPath());
+        Experiment restored = Experiment.restore(checkpoint.getPath());
+        restored.setEventLimit(N_EVENTS);
+        restored.run();
+
+        this.assertSameStats(uninterrupted, restored);
+    }
+
+    /**
+     * Tests that a restored text trace-driven experiment carries on
+     * from where its checkpoint was written.
+     *
+     * @throws Exception - if the checkpoint can't be written
+     */
+    @Test
+    public void testCheckpointRestoreTextTrace() throws Exception {
+        this.checkCheckpointRestore(this.textTrace);
+    }
+
+    /**
+     * Tests that a restored binary trace-driven experiment carries on
+     * from where its checkpoint was written.
+     *
+     * @throws Exception - if the checkpoint can't be written
+     */
+    @Test
+    public void testCheckpointRestoreBinaryTrace() throws Exception {
+        this.checkCheckpointRestore(this.binaryTrace);
+    }
+
+    /**
+     * Tests that a copy of a trace-driven experiment made part way
+     * through carries on like the original.
+     */
+    @Test
+    public void testCopyTraceDriven() {
+        Experiment uninterrupted = this.createExperiment(this.binaryTrace,
+                                                         N_EVENTS);
+        uninterrupted.run();
+
+        Experiment original = this.createExperiment(this.binaryTrace,
+                                                    N_EVENTS_BEFORE);
+        original.run();
+        Experiment copy = original.copy();
+        copy.setEventLimit(N_EVENTS);
+        copy.run();
+
+        this.assertSameStats(uninterrupted, copy);
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.core;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.Statistic;
+import stat.StatisticsCollection;
+import core.Experiment;
+import core.Constants.StatName;
+import experiment.PowerCappingExperiment;
+
+/**
+ * Tests that partitioned runs give the same statistics as sequential
+ * ones.
+ */
+public class PartitionedEngineTest extends TestCase {
+
+    /**
+     * The directory holding the workloads directory.
+     */
+    private static final String WORKLOAD_DIR = "./";
+
+    /**
+     * The number of servers in the test datacenter.
+     */
+    private static final int N_SERVERS = 4;
+
+    /**
+     * The number of events each test experiment runs.
+     */
+    private static final int N_EVENTS = 400000;
+
+    /**
+     * Runs a small power capping experiment, whose servers each have
+     * their own random streams and are scheduled uniformly.
+     *
+     * @param partitions - the number of partitions
+     * @return the statistics of the experiment
+     */
+    private StatisticsCollection run(final int partitions) {
+        Experiment experiment = new PowerCappingExperiment()
+            .createExperiment(WORKLOAD_DIR, "csedns", N_SERVERS, partitions);
+        experiment.setEventLimit(N_EVENTS);
+        experiment.run();
+
+        return experiment.getStats();
+    }
+
+    /**
+     * Tests that running the experiment in 2 and 4 partitions gives the
+     * same statistics as running it in one.
+     */
+    @Test
+    public void testPartitionedMatchesSequential() {
+        StatisticsCollection sequential = this.run(1);
+        assertTrue(sequential.getStat(StatName.SOJOURN_TIME)
+                   .getGoodSamples() > 0);
+        int[] partitions = {2, 4};
+        for (int p = 0; p < partitions.length; p++) {
+            StatisticsCollection partitioned = this.run(partitions[p]);
+            Iterator<Statistic> iter = sequential.getAllStats();
+            while (iter.hasNext()) {
+                Statistic expected = iter.next();
+                Statistic actual
+                    = partitioned.getStat(expected.getStatName());
+                assertTrue(expected.getTotalSamples() > 0);
+                assertEquals(expected.getTotalSamples(),
+                             actual.getTotalSamples());
+                assertEquals(expected.getGoodSamples(),
+                             actual.getGoodSamples());
+                assertEquals(expected.getAverage(), actual.getAverage(), 0);
+                assertEquals(expected.getQuantile(.95),
+                             actual.getQuantile(.95), 0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.datacenter;
+
+import generator.ExponentialGenerator;
+import generator.MTRandom;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Job;
+import datacenter.Core;
+import datacenter.Server;
+
+/**
+ * Tests the {@link Core} class.
+ */
+public class CoreTest extends TestCase {
+
+    /**
+     * Tests changing the DVFS speed of a core that was given a job while
+     * parked, and is transitioning to active: the job has no finish
+     * event to move yet, and once the core exits park it finishes at the
+     * new speed.
+     */
+    @Test
+    public void testDvfsSpeedWhileTransitioningToActive() {
+        MTRandom random = new MTRandom(1);
+        Experiment experiment = new Experiment("Core test", random,
+                new ExperimentInput(), new ExperimentOutput());
+        Server server = new Server(1, 1, experiment,
+                new ExponentialGenerator(random, 1.0),
+                new ExponentialGenerator(random, 1.0));
+        Core core = server.getSockets().get(0).getCore(0);
+
+        core.enterPark(0);
+        Job job = new Job(1.0, 0);
+        core.insertJob(.1, job);
+        core.setDvfsSpeed(.2, .5);
+        assertNull(job.getJobFinishEvent());
+
+        core.exitPark(.3);
+        assertEquals(.5, job.getJobFinishEvent().getFinishSpeed(), 0);
+        double slowdown = .1 + .9 / .5;
+        assertEquals(.3 + slowdown, job.getJobFinishEvent().getTime(), 1e-12);
+    }
+
+}
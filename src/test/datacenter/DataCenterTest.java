@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.datacenter;
+
+import generator.ExponentialGenerator;
+import generator.MTRandom;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.TimeWeightedStatistic;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Constants.StatName;
+import core.Constants.TimeWeightedStatName;
+import datacenter.DataCenter;
+import datacenter.Server;
+
+/**
+ * Tests the statistics the {@link DataCenter} keeps.
+ */
+public class DataCenterTest extends TestCase {
+
+    /**
+     * The number of servers in the test datacenter.
+     */
+    private static final int N_SERVERS = 3;
+
+    /**
+     * The number of events each test experiment runs.
+     */
+    private static final int N_EVENTS = 200000;
+
+    /**
+     * Creates a small datacenter experiment whose statistics won't
+     * converge before the event limit.
+     *
+     * @param changeDriven - if time weighted statistics are change-driven
+     * @return the experiment, ready to run
+     */
+    private Experiment createExperiment(final boolean changeDriven) {
+        MTRandom random = new MTRandom(1);
+        ExperimentInput input = new ExperimentInput();
+        ExperimentOutput output = new ExperimentOutput();
+        output.addOutput(StatName.SOJOURN_TIME, 1e-6, .95, 1e-6, 5000);
+        output.addTimeWeightedOutput(TimeWeightedStatName.CLUSTER_POWER,
+                                     1e-6, .95, 1e-6, 100, 1.0);
+        output.addTimeWeightedOutput(TimeWeightedStatName.SERVER_POWER,
+                                     1e-6, .95, 1e-6, 100, 1.0);
+        Experiment experiment = new Experiment("Change-driven test", random,
+                                               input, output);
+        experiment.setEventLimit(N_EVENTS);
+        experiment.setChangeDrivenStatistics(changeDriven);
+
+        DataCenter dataCenter = new DataCenter(experiment);
+        for (int i = 0; i < N_SERVERS; i++) {
+            Server server = new Server(1, 2, experiment,
+                    new ExponentialGenerator(random, 1.5),
+                    new ExponentialGenerator(random, 1.0));
+            server.setCoreActivePower(20);
+            server.setCoreIdlePower(4);
+            server.setCoreParkPower(0);
+            server.setSocketActivePower(10);
+            server.setSocketParkPower(0);
+            dataCenter.addServer(server);
+        }
+        input.setDataCenter(dataCenter);
+
+        return experiment;
+    }
+
+    /**
+     * Tests that change-driven statistics give the same cluster power as
+     * per-event ones for a datacenter of several servers, and that
+     * neither mode feeds the per-server statistics (which all servers
+     * would share).
+     */
+    @Test
+    public void testChangeDrivenStatisticsMatchPerEvent() {
+        Experiment perEvent = this.createExperiment(false);
+        perEvent.run();
+        Experiment changeDriven = this.createExperiment(true);
+        changeDriven.run();
+
+        TimeWeightedStatistic perEventPower = perEvent.getStats()
+                .getTimeWeightedStat(TimeWeightedStatName.CLUSTER_POWER);
+        TimeWeightedStatistic changeDrivenPower = changeDriven.getStats()
+                .getTimeWeightedStat(TimeWeightedStatName.CLUSTER_POWER);
+        assertTrue(perEventPower.getTotalSamples() > 0);
+        assertEquals(perEventPower.getTotalSamples(),
+                     changeDrivenPower.getTotalSamples(), 1);
+        assertEquals(perEventPower.getAverage(),
+                     changeDrivenPower.getAverage(),
+                     1e-3 * perEventPower.getAverage());
+
+        TimeWeightedStatName[] unfed = {TimeWeightedStatName.SERVER_POWER,
+                TimeWeightedStatName.SERVER_UTILIZATION};
+        for (int i = 0; i < unfed.length; i++) {
+            assertEquals(perEvent.getStats().getTimeWeightedStat(unfed[i])
+                            .getTotalSamples(),
+                         changeDriven.getStats().getTimeWeightedStat(unfed[i])
+                            .getTotalSamples());
+        }
+    }
+
+}
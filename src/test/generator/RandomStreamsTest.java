@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.generator;
+
+import generator.RandomStreams;
+import generator.StreamRandom;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link StreamRandom} and the streams {@link RandomStreams}
+ * derives from one seed.
+ */
+public class RandomStreamsTest extends TestCase {
+
+    /**
+     * The number of values compared from each stream.
+     */
+    private static final int N_VALUES = 8;
+
+    /**
+     * The number of servers whose streams are compared.
+     */
+    private static final int N_SERVERS = 6;
+
+    /**
+     * Reads the first values of a stream.
+     *
+     * @param stream - the stream
+     * @return the stream's next values
+     */
+    private long[] firstValues(final StreamRandom stream) {
+        long[] values = new long[N_VALUES];
+        for (int i = 0; i < N_VALUES; i++) {
+            values[i] = stream.nextLong();
+        }
+        return values;
+    }
+
+    /**
+     * Tests that StreamRandom gives the outputs of the reference
+     * xoshiro256** implementation, before and after a jump.
+     */
+    @Test
+    public void testReferenceOutputs() {
+        StreamRandom random = new StreamRandom(0);
+        random.setState(1, 2, 3, 4);
+        long[] expected = {11520L, 0L, 1509978240L, 1215971899390074240L,
+                           1216172134540287360L, 607988272756665600L};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], random.nextLong());
+        }
+
+        random.setState(1, 2, 3, 4);
+        random.jump();
+        long[] expectedAfterJump = {-4912596984176294952L,
+                                    7126240192422241655L,
+                                    3805973808039778091L};
+        for (int i = 0; i < expectedAfterJump.length; i++) {
+            assertEquals(expectedAfterJump[i], random.nextLong());
+        }
+    }
+
+    /**
+     * Tests that a stream only depends on its indices, not on the order
+     * streams are requested in.
+     */
+    @Test
+    public void testStreamsIndependentOfOrder() {
+        final long seed = 42;
+        RandomStreams inOrder = new RandomStreams(seed);
+        long[][][] expected = new long[N_SERVERS][2][];
+        for (int server = 0; server < N_SERVERS; server++) {
+            expected[server][RandomStreams.ARRIVAL_STREAM] = this.firstValues(
+                    inOrder.getStream(server, RandomStreams.ARRIVAL_STREAM));
+            expected[server][RandomStreams.SERVICE_STREAM] = this.firstValues(
+                    inOrder.getStream(server, RandomStreams.SERVICE_STREAM));
+        }
+
+        int[] shuffledServers = {4, 1, 5, 0, 3, 2};
+        int[] shuffledGenerators = {1, 0, 1, 1, 0, 0};
+        RandomStreams shuffled = new RandomStreams(seed);
+        for (int i = 0; i < shuffledServers.length; i++) {
+            int server = shuffledServers[i];
+            int generator = shuffledGenerators[i];
+            long[] values = this.firstValues(
+                    shuffled.getStream(server, generator));
+            for (int j = 0; j < N_VALUES; j++) {
+                assertEquals(expected[server][generator][j], values[j]);
+            }
+        }
+
+        // Distinct indices give distinct streams
+        assertFalse(expected[0][0][0] == expected[0][1][0]);
+        assertFalse(expected[0][0][0] == expected[1][0][0]);
+    }
+
+    /**
+     * Tests that reseeding re-derives the streams already handed out.
+     */
+    @Test
+    public void testSetSeedRederivesStreams() {
+        final long firstSeed = 1;
+        final long secondSeed = 7;
+        RandomStreams streams = new RandomStreams(firstSeed);
+        StreamRandom stream = streams.getStream(3, 1);
+        long[] firstValues = this.firstValues(stream);
+
+        streams.setSeed(secondSeed);
+        long[] reseeded = this.firstValues(stream);
+        long[] expected = this.firstValues(
+                new RandomStreams(secondSeed).getStream(3, 1));
+        for (int i = 0; i < N_VALUES; i++) {
+            assertEquals(expected[i], reseeded[i]);
+        }
+        assertFalse(firstValues[0] == reseeded[0]);
+
+        streams.setSeed(firstSeed);
+        long[] back = this.firstValues(stream);
+        for (int i = 0; i < N_VALUES; i++) {
+            assertEquals(firstValues[i], back[i]);
+        }
+    }
+
+}
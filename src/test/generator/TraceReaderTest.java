@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.generator;
+
+import generator.TraceReader;
+import generator.TraceReader.Column;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+/**
+ * Tests replaying text and binary traces with {@link TraceReader}.
+ */
+public class TraceReaderTest extends TestCase {
+
+    /**
+     * The number of records in the test trace.
+     */
+    private static final int N_RECORDS = 10;
+
+    /**
+     * The text trace: record i has interarrival time i and service
+     * time i + .5.
+     */
+    private File textTrace;
+
+    /**
+     * The text trace converted to the binary format.
+     */
+    private File binaryTrace;
+
+    /**
+     * Writes the test trace in both formats.
+     *
+     * @throws IOException - if the traces can't be written
+     */
+    @Override
+    protected void setUp() throws IOException {
+        this.textTrace = File.createTempFile("trace", ".csv");
+        this.textTrace.deleteOnExit();
+        FileWriter out = new FileWriter(this.textTrace);
+        out.write("# interarrival, service\n");
+        for (int i = 0; i < N_RECORDS; i++) {
+            if (i == N_RECORDS / 2) {
+                out.write("\n");
+            }
+            if (i % 2 == 0) {
+                out.write(i + ", " + (i + .5) + "\n");
+            } else {
+                out.write(i + " " + (i + .5) + "\n");
+            }
+        }
+        out.close();
+
+        this.binaryTrace = File.createTempFile("trace",
+                                               TraceReader.BINARY_EXTENSION);
+        this.binaryTrace.deleteOnExit();
+        assertEquals(N_RECORDS, TraceReader.convertToBinary(
+                this.textTrace.getPath(), this.binaryTrace.getPath()));
+    }
+
+    /**
+     * Checks that a reader replays the given records next.
+     *
+     * @param reader - the reader
+     * @param records - the indices of the records it should replay
+     */
+    private void assertRecords(final TraceReader reader,
+                               final int[] records) {
+        for (int i = 0; i < records.length; i++) {
+            assertEquals((double) records[i],
+                         reader.next(Column.INTERARRIVAL));
+            assertEquals(records[i] + .5, reader.next(Column.SERVICE));
+        }
+    }
+
+    /**
+     * Checks that a reader fails on its next record.
+     *
+     * @param reader - the reader
+     */
+    private void assertRunsOut(final TraceReader reader) {
+        try {
+            reader.next(Column.INTERARRIVAL);
+            reader.next(Column.INTERARRIVAL);
+            fail("Reader should have run out of records");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Tests that shard s of n replays records s, s + n, ... and then
+     * runs out, in both formats.
+     */
+    @Test
+    public void testShards() {
+        String[] traces = {this.textTrace.getPath(),
+                           this.binaryTrace.getPath()};
+        for (int t = 0; t < traces.length; t++) {
+            this.assertRecords(new TraceReader(traces[t]),
+                               new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+            TraceReader reader = new TraceReader(traces[t], 2, 3, false);
+            this.assertRecords(reader, new int[] {2, 5, 8});
+            assertEquals(3, reader.getRecordsRead());
+            this.assertRunsOut(reader);
+        }
+    }
+
+    /**
+     * Tests that a looping reader starts over at the start of its shard,
+     * in both formats.
+     */
+    @Test
+    public void testLoop() {
+        String[] traces = {this.textTrace.getPath(),
+                           this.binaryTrace.getPath()};
+        for (int t = 0; t < traces.length; t++) {
+            TraceReader reader = new TraceReader(traces[t], 1, 4, true);
+            this.assertRecords(reader, new int[] {1, 5, 9, 1, 5, 9, 1});
+        }
+    }
+
+    /**
+     * Tests that a closed reader carries on from where it was, even part
+     * way through a record, in both formats.
+     */
+    @Test
+    public void testCloseKeepsPlace() {
+        String[] traces = {this.textTrace.getPath(),
+                           this.binaryTrace.getPath()};
+        for (int t = 0; t < traces.length; t++) {
+            TraceReader reader = new TraceReader(traces[t], 1, 4, true);
+            this.assertRecords(reader, new int[] {1, 5});
+            reader.close();
+            assertEquals(9.0, reader.next(Column.INTERARRIVAL));
+            reader.close();
+            reader.close();
+            assertEquals(9.5, reader.next(Column.SERVICE));
+            this.assertRecords(reader, new int[] {1, 5, 9});
+            reader.close();
+        }
+    }
+
+    /**
+     * Tests that a looping reader whose shard has no records fails
+     * rather than looping forever, in both formats.
+     */
+    @Test
+    public void testShardPastEnd() {
+        String[] traces = {this.textTrace.getPath(),
+                           this.binaryTrace.getPath()};
+        for (int t = 0; t < traces.length; t++) {
+            this.assertRunsOut(new TraceReader(traces[t], N_RECORDS + 1,
+                                               N_RECORDS + 2, true));
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.math;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import math.EmpiricalDistribution;
+
+import org.junit.Test;
+
+/**
+ * Tests loading and saving {@link EmpiricalDistribution}s.
+ */
+public class EmpiricalDistributionTest extends TestCase {
+
+    /**
+     * Writes a small text distribution file.
+     *
+     * @param scale - multiplies the x values, so files can differ
+     * @return the file
+     * @throws IOException - if the file can't be written
+     */
+    private File writeTextFile(final double scale) throws IOException {
+        File file = File.createTempFile("dist", EmpiricalDistribution
+                .TEXT_EXTENSION);
+        file.deleteOnExit();
+        FileWriter out = new FileWriter(file);
+        out.write("0 0\n");
+        out.write(0.1 * scale + " 0.25\n");
+        out.write(0.3 * scale + " 0.6\n");
+        out.write(1.7 * scale + " 0.95\n");
+        out.write(4.2 * scale + " 1.0\n");
+        out.close();
+        return file;
+    }
+
+    /**
+     * Tests that a distribution saved in the binary format loads back
+     * bit for bit the same as the text file it came from.
+     */
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        File text = this.writeTextFile(1.0);
+        EmpiricalDistribution.clearLoadedDistributions();
+        EmpiricalDistribution fromText
+            = EmpiricalDistribution.loadDistribution(text.getPath());
+
+        File binary = new File(EmpiricalDistribution
+                .getBinaryFileName(text.getPath()));
+        binary.deleteOnExit();
+        fromText.saveBinaryDistribution(binary.getPath());
+        EmpiricalDistribution fromBinary
+            = EmpiricalDistribution.loadDistribution(binary.getPath());
+
+        assertTrue(Arrays.equals(fromText.getXs(), fromBinary.getXs()));
+        assertTrue(Arrays.equals(fromText.getYs(), fromBinary.getYs()));
+        assertEquals(Double.doubleToLongBits(fromText.getMean()),
+                     Double.doubleToLongBits(fromBinary.getMean()));
+    }
+
+    /**
+     * Tests that a binary file is only used in place of its text file
+     * while it's at least as new.
+     */
+    @Test
+    public void testStaleBinaryIgnored() throws IOException {
+        final double binaryScale = 2.0;
+        File text = this.writeTextFile(1.0);
+        File binary = new File(EmpiricalDistribution
+                .getBinaryFileName(text.getPath()));
+        binary.deleteOnExit();
+        // A binary file that differs from the text file
+        File other = this.writeTextFile(binaryScale);
+        EmpiricalDistribution.clearLoadedDistributions();
+        EmpiricalDistribution.loadDistribution(other.getPath())
+            .saveBinaryDistribution(binary.getPath());
+
+        final long second = 1000;
+        assertTrue(binary.setLastModified(text.lastModified() - 10 * second));
+        EmpiricalDistribution.clearLoadedDistributions();
+        double[] xs = EmpiricalDistribution.loadDistribution(text.getPath())
+            .getXs();
+        assertEquals(4.2, xs[xs.length - 1]);
+
+        assertTrue(binary.setLastModified(text.lastModified() + 10 * second));
+        EmpiricalDistribution.clearLoadedDistributions();
+        xs = EmpiricalDistribution.loadDistribution(text.getPath()).getXs();
+        assertEquals(4.2 * binaryScale, xs[xs.length - 1]);
+        EmpiricalDistribution.clearLoadedDistributions();
+    }
+
+    /**
+     * Tests that changing the arrays a distribution hands out doesn't
+     * change the (shared) distribution.
+     */
+    @Test
+    public void testValuesAreCopies() throws IOException {
+        File text = this.writeTextFile(1.0);
+        EmpiricalDistribution distribution
+            = EmpiricalDistribution.loadDistribution(text.getPath());
+        distribution.getXs()[1] = -1.0;
+        distribution.getYs()[1] = -1.0;
+        assertEquals(0.1, distribution.getXs()[1]);
+        assertEquals(0.25, distribution.getYs()[1]);
+    }
+
+}
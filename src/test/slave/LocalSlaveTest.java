@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.slave;
+
+import generator.ExponentialGenerator;
+import generator.MTRandom;
+
+import java.rmi.RemoteException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import slave.LocalSlave;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Constants.StatName;
+import datacenter.DataCenter;
+import datacenter.Server;
+
+/**
+ * Tests the {@link LocalSlave} class.
+ */
+public class LocalSlaveTest extends TestCase {
+
+    /**
+     * Creates a one server experiment which runs for a while.
+     *
+     * @return the experiment, ready to run
+     */
+    private Experiment createExperiment() {
+        MTRandom random = new MTRandom(1);
+        ExperimentInput input = new ExperimentInput();
+        ExperimentOutput output = new ExperimentOutput();
+        output.addOutput(StatName.SOJOURN_TIME, 1e-6, .95, 1e-6, 5000);
+        Experiment experiment = new Experiment("Slow test", random,
+                                               input, output);
+        experiment.setEventLimit(5000000);
+
+        DataCenter dataCenter = new DataCenter(experiment);
+        dataCenter.addServer(new Server(1, 2, experiment,
+                new ExponentialGenerator(random, 1.5),
+                new ExponentialGenerator(random, 1.0)));
+        input.setDataCenter(dataCenter);
+
+        return experiment;
+    }
+
+    /**
+     * Tests that the late reply to a request whose caller gave up
+     * waiting isn't taken as the reply to the next request.
+     *
+     * @throws Exception - if the slave can't be reached
+     */
+    @Test
+    public void testLateReplyDropped() throws Exception {
+        final LocalSlave slave = LocalSlave.inProcess("test-slave");
+        final Experiment experiment = this.createExperiment();
+        Thread caller = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    slave.runExperiment(experiment);
+                } catch (RemoteException e) {
+                    // The caller gave up
+                }
+            }
+        });
+        caller.start();
+        Thread.sleep(50);
+        caller.interrupt();
+        caller.join();
+
+        String hello = slave.sayHello();
+        assertNotNull(hello);
+        assertTrue(hello.startsWith("Hello from"));
+        slave.close();
+    }
+
+}
@@ -43,7 +43,9 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({ HistogramTest.class,
                  SequenceTest.class,
                  SimpleStatisticTest.class,
-                 StatisticTest.class })
+                 StatisticTest.class,
+                 QuantileSketchTest.class,
+                 PairedDifferenceTest.class })
 public class AllStatTests {
 
 
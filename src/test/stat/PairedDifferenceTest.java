@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.stat;
+
+import generator.StreamRandom;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.PairedDifference;
+
+/**
+ * Tests for the {@link PairedDifference} class.
+ */
+public class PairedDifferenceTest extends TestCase {
+
+    /**
+     * Tests that correlated pairs give a tighter interval than the
+     * independent runs would.
+     */
+    @Test
+    public void testCorrelatedPairs() {
+        PairedDifference difference = new PairedDifference();
+        StreamRandom random = new StreamRandom(1);
+        for (int i = 0; i < 1000; i++) {
+            double common = random.nextDouble() * 10;
+            double noise = random.nextDouble() * .1;
+            difference.addPair(common + 1 + noise, common);
+        }
+
+        assertEquals(1000, difference.getNPairs());
+        assertEquals(1.05, difference.getMeanDifference(), .01);
+        assertEquals(difference.getFirstMean() - difference.getSecondMean(),
+                     difference.getMeanDifference(), 1e-9);
+        assertTrue(difference.isSignificant(.95));
+        assertTrue(difference.getVarianceReduction() > 100);
+    }
+
+    /**
+     * Tests {@link PairedDifference#getHalfWidth(double)} against a
+     * tabulated t quantile.
+     */
+    @Test
+    public void testHalfWidth() {
+        PairedDifference difference = new PairedDifference();
+        difference.addPair(1, 0);
+        assertEquals(Double.POSITIVE_INFINITY, difference.getHalfWidth(.95));
+        difference.addPair(3, 0);
+        difference.addPair(5, 0);
+        // sd = 2, n = 3, t(.975, 2) = 4.303
+        assertEquals(4.303 * 2 / Math.sqrt(3), difference.getHalfWidth(.95),
+                     .001);
+    }
+
+    /**
+     * Tests that antithetic streams complement the normal stream.
+     */
+    @Test
+    public void testAntitheticStream() {
+        StreamRandom normal = new StreamRandom(7);
+        StreamRandom antithetic = new StreamRandom(7);
+        antithetic.setAntithetic(true);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1.0, normal.nextDouble() + antithetic.nextDouble(),
+                         1e-9);
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.stat;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.QuantileSketch;
+
+/**
+ * Test for the {@link QuantileSketch} class.
+ */
+public class QuantileSketchTest extends TestCase {
+
+    /**
+     * Tests {@link QuantileSketch#getQuantile(double)} stays within
+     * the relative accuracy over a wide range of values.
+     */
+    @Test
+    public void testGetQuantile() {
+        double accuracy = .01;
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        for (int i = 1; i <= 1000; i++) {
+            sketch.addSample(i * 1e-3);
+        }
+        // A value far beyond the others is not clamped
+        sketch.addSample(1e6);
+
+        for (int i = 1; i < 10; i++) {
+            double expected = i * 100 * 1e-3;
+            double quantileValue = sketch.getQuantile(i / 10.0);
+            assertEquals(expected, quantileValue, expected * accuracy * 2);
+        }
+        assertEquals(1e6, sketch.getQuantile(1.0), 1e6 * accuracy);
+        assertEquals(1001, sketch.getCount());
+    }
+
+    /**
+     * Tests {@link QuantileSketch#getCdfValue(double)}.
+     */
+    @Test
+    public void testGetCdfValue() {
+        QuantileSketch sketch = new QuantileSketch(.01);
+        for (int i = 0; i < 10; i++) {
+            sketch.addSample(10.0 * (i + 1));
+        }
+
+        for (int i = 1; i <= 10; i++) {
+            double cdfValue = sketch.getCdfValue(10.0 * i);
+            assertEquals(i / 10.0, cdfValue, .001);
+        }
+        assertEquals(0.0, sketch.getCdfValue(0.0), .001);
+    }
+
+    /**
+     * Tests negative and zero samples.
+     */
+    @Test
+    public void testNegativeValues() {
+        QuantileSketch sketch = new QuantileSketch(.01);
+        sketch.addSample(-100.0);
+        sketch.addSample(-1.0);
+        sketch.addSample(0.0);
+        sketch.addSample(1.0);
+        sketch.addSample(100.0);
+
+        assertEquals(-100.0, sketch.getQuantile(0.0), 1.0);
+        assertEquals(-1.0, sketch.getQuantile(.25), .01);
+        assertEquals(0.0, sketch.getQuantile(.5), .001);
+        assertEquals(1.0, sketch.getQuantile(.75), .01);
+        assertEquals(100.0, sketch.getQuantile(1.0), 1.0);
+        assertEquals(.6, sketch.getCdfValue(0.0), .001);
+    }
+
+    /**
+     * Tests combining sketches gives the same result as one sketch.
+     */
+    @Test
+    public void testCombine() {
+        QuantileSketch sketch1 = new QuantileSketch(.01);
+        QuantileSketch sketch2 = new QuantileSketch(.01);
+        QuantileSketch both = new QuantileSketch(.01);
+        for (int i = 1; i <= 500; i++) {
+            sketch1.addSample(i);
+            both.addSample(i);
+            sketch2.addSample(i * 1000.0);
+            both.addSample(i * 1000.0);
+        }
+
+        QuantileSketch combined = sketch1.combineSketch(sketch2);
+        assertEquals(1000, combined.getCount());
+        for (int i = 0; i <= 10; i++) {
+            assertEquals(both.getQuantile(i / 10.0),
+                         combined.getQuantile(i / 10.0), 1e-9);
+        }
+    }
+
+}
@@ -30,6 +30,10 @@
  */
 package test.stat;
 
+import generator.MTRandom;
+
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Test;
@@ -95,6 +99,29 @@ public class SequenceTest extends TestCase {
         assertEquals(2, runCounts[5]);
     }
 
+    /**
+     * Tests {@link Sequence#getRunCounts(double[], int, int, int)} matches
+     * counting runs on a copied spaced sequence.
+     */
+    @Test
+    public void testGetStridedRunCounts() {
+        Sequence sequence = new Sequence();
+        MTRandom random = new MTRandom(1);
+        for (int i = 0; i < 5000; i++) {
+            sequence.insert(random.nextDouble());
+        }
+        double[] values = sequence.getValues();
+        assertEquals(5000, values.length);
+
+        for (int spacing = 1; spacing <= 7; spacing++) {
+            int[] expected = Sequence.getRunCounts(
+                    Sequence.getSpacedSequence(values, spacing), 10);
+            int[] actual = Sequence.getRunCounts(values, values.length,
+                                                 spacing, 10);
+            assertTrue(Arrays.equals(expected, actual));
+        }
+    }
+
     /**
      * Tests {@link Sequence#calculateLagSpacing(int, int, double)}.
      */
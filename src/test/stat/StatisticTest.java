@@ -32,14 +32,25 @@ package test.stat;
 
 import generator.ExponentialGenerator;
 import generator.MTRandom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
 import stat.SimpleStatistic;
 import stat.Statistic;
+import stat.StatisticsCodec;
 import stat.StatisticsCollection;
+import stat.StatisticsDelta;
+import stat.TimeWeightedStatistic;
 import core.Constants.StatName;
+import core.Constants.TimeWeightedStatName;
 
 /**
  * Test the functionality of the {@link Statistic} class.
@@ -96,4 +107,319 @@ public class StatisticTest extends TestCase {
         assertEquals(expectedValue, actualValue, tolerance * expectedValue);
     }
 
+    /**
+     * Tests that {@link StatisticsCollection#checkConvergence()} only
+     * re-evaluates statistics occasionally but still finds convergence.
+     */
+    @Test
+    public void testBatchedConvergenceCheck() {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(1),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+
+        long nSamples = 0;
+        long nChecks = 0;
+        while (true) {
+            stat.addSample(exp.next());
+            nSamples++;
+            if (statCollection.isConvergenceCheckDue()) {
+                nChecks++;
+                if (statCollection.checkConvergence()) {
+                    break;
+                }
+            }
+        }
+
+        assertTrue(stat.isConverged());
+        assertTrue(statCollection.allStatsConverged());
+        assertTrue(nChecks * 10 < nSamples);
+    }
+
+    /**
+     * Tests that {@link StatisticsCollection#restartSteadyState(double)}
+     * drops steady state samples but keeps the calibrated histogram
+     * bins, and that time weighted statistics drop their accumulated
+     * average too.
+     */
+    @Test
+    public void testRestartSteadyState() {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(1),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+        TimeWeightedStatistic power = new TimeWeightedStatistic(
+                statCollection, TimeWeightedStatName.CLUSTER_POWER,
+                10, .05, .95, .05, 1.0);
+        statCollection.addTimeWeightedStatistic(
+                TimeWeightedStatName.CLUSTER_POWER, power);
+        power.setOtherStatsWarmed(true);
+        double time = 0;
+        for (int i = 0; i < 20000; i++) {
+            stat.addSample(exp.next());
+            power.addSample(exp.next(), time);
+            time += .5;
+        }
+        assertTrue(stat.isSteadyState());
+        assertTrue(stat.getGoodSamples() > 0);
+        assertTrue(power.isSteadyState());
+        assertTrue(power.getGoodSamples() > 0);
+        double[] bins = stat.getHistogramXValues();
+
+        statCollection.restartSteadyState(time);
+        assertTrue(stat.isSteadyState());
+        assertEquals(0, stat.getGoodSamples());
+        assertTrue(Arrays.equals(bins, stat.getHistogramXValues()));
+        assertTrue(statCollection.isConvergenceCheckDue());
+        assertEquals(0, power.getGoodSamples());
+
+        for (int i = 0; i < 20000; i++) {
+            stat.addSample(exp.next());
+            power.addSample(5.0, time);
+            time += .5;
+        }
+        assertTrue(stat.getGoodSamples() > 0);
+        assertEquals(2.0, stat.getAverage(), .2);
+        assertTrue(power.getGoodSamples() > 0);
+        assertEquals(5.0, power.getAverage(), 1e-9);
+    }
+
+    /**
+     * Tests that applying a {@link StatisticsDelta} to the statistics last
+     * reported reproduces the current statistics, and that the delta is
+     * much smaller than the statistics.
+     *
+     * @throws Exception - if the statistics can't be serialized
+     */
+    @Test
+    public void testStatisticsDelta() throws Exception {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(1),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+
+        StatisticsCollection reported = null;
+        StatisticsCollection rebuilt = null;
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5000; j++) {
+                stat.addSample(exp.next());
+            }
+            byte[] current = serialize(statCollection);
+            StatisticsCollection snapshot
+                = (StatisticsCollection) deserialize(current);
+            StatisticsDelta delta = StatisticsDelta.between(reported,
+                                                            snapshot);
+            assertEquals(i == 0, delta.isBaseline());
+            if (i > 0) {
+                assertTrue(serialize(delta).length * 4 < current.length);
+            }
+            rebuilt = delta.applyTo(rebuilt);
+            reported = snapshot;
+
+            Statistic rebuiltStat = rebuilt.getStat(StatName.SOJOURN_TIME);
+            assertEquals(stat.getGoodSamples(), rebuiltStat.getGoodSamples());
+            assertEquals(stat.getAverage(), rebuiltStat.getAverage(), 1e-9);
+            assertEquals(stat.getQuantile(.95), rebuiltStat.getQuantile(.95),
+                         1e-9);
+        }
+    }
+
+    /**
+     * Tests that deltas of sketch statistics only carry the buckets that
+     * gained samples, so they can be added to statistics combined from
+     * several experiments as they arrive.
+     *
+     * @throws Exception - if the statistics can't be serialized
+     */
+    @Test
+    public void testSketchStatisticsDelta() throws Exception {
+        final int nExperiments = 2;
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(1),
+                .5);
+        StatisticsCollection[] stats = new StatisticsCollection[nExperiments];
+        for (int k = 0; k < nExperiments; k++) {
+            stats[k] = new StatisticsCollection();
+            Statistic stat = new Statistic(stats[k], StatName.SOJOURN_TIME,
+                    10, .05, .95, .05);
+            stat.setQuantileEstimator(Statistic.QuantileEstimator.SKETCH);
+            stats[k].addStatistic(StatName.SOJOURN_TIME, stat);
+            stat.setOtherStatsWarmed(true);
+        }
+
+        StatisticsCollection[] reported
+            = new StatisticsCollection[nExperiments];
+        StatisticsCollection[] rebuilt
+            = new StatisticsCollection[nExperiments];
+        StatisticsCollection combined = null;
+        for (int i = 0; i < 5; i++) {
+            for (int k = 0; k < nExperiments; k++) {
+                for (int j = 0; j < 5000; j++) {
+                    stats[k].getStat(StatName.SOJOURN_TIME)
+                        .addSample(exp.next());
+                }
+                StatisticsCollection snapshot = (StatisticsCollection)
+                    deserialize(serialize(stats[k]));
+                StatisticsDelta delta = (StatisticsDelta) deserialize(
+                    serialize(StatisticsDelta.between(reported[k],
+                                                      snapshot)));
+                assertEquals(i == 0, delta.isBaseline());
+                assertEquals(i > 0, delta.isAdditive());
+                rebuilt[k] = delta.applyTo(rebuilt[k]);
+                if (i > 0) {
+                    delta.applyTo(combined);
+                }
+                reported[k] = snapshot;
+            }
+            if (i == 0) {
+                combined = rebuilt[0].combine(rebuilt[1]);
+            }
+
+            Statistic expected = stats[0].combine(stats[1])
+                .getStat(StatName.SOJOURN_TIME);
+            Statistic actual = combined.getStat(StatName.SOJOURN_TIME);
+            assertEquals(expected.getGoodSamples(), actual.getGoodSamples());
+            assertEquals(expected.getAverage(), actual.getAverage(), 1e-9);
+            assertEquals(expected.getQuantile(.95), actual.getQuantile(.95));
+            assertEquals(expected.getQuantile(.5), actual.getQuantile(.5));
+        }
+    }
+
+    /**
+     * Tests that encoded statistics give the same estimates and are
+     * much smaller than serialized ones.
+     */
+    @Test
+    public void testStatisticsCodec() throws Exception {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(1),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+        for (int i = 0; i < 20000; i++) {
+            stat.addSample(exp.next());
+        }
+
+        byte[] encoded = StatisticsCodec.encode(statCollection);
+        assertTrue(encoded.length * 10 < serialize(statCollection).length);
+
+        StatisticsCollection decoded = StatisticsCodec.decode(encoded);
+        Statistic decodedStat = decoded.getStat(StatName.SOJOURN_TIME);
+        assertTrue(decodedStat.isSteadyState());
+        assertEquals(stat.getGoodSamples(), decodedStat.getGoodSamples());
+        assertEquals(stat.getTotalSamples(), decodedStat.getTotalSamples());
+        assertEquals(stat.getAverage(), decodedStat.getAverage(), 0);
+        assertEquals(stat.getStdDev(), decodedStat.getStdDev(), 0);
+        assertEquals(stat.getQuantile(.95), decodedStat.getQuantile(.95), 0);
+        assertEquals(stat.isConverged(), decodedStat.isConverged());
+    }
+
+    /**
+     * Tests that statistics with a quantile sketch, including negative
+     * and zero samples, encode to the same estimates and much smaller
+     * than serialized ones.
+     */
+    @Test
+    public void testSketchStatisticsCodec() throws Exception {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(1),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        stat.setQuantileEstimator(Statistic.QuantileEstimator.SKETCH);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+        for (int i = 0; i < 20000; i++) {
+            if (i % 100 == 0) {
+                stat.addSample(0);
+            } else {
+                stat.addSample(exp.next() - 1);
+            }
+        }
+
+        byte[] encoded = StatisticsCodec.encode(statCollection);
+        assertTrue(encoded.length * 5 < serialize(statCollection).length);
+
+        StatisticsCollection decoded = StatisticsCodec.decode(encoded);
+        Statistic decodedStat = decoded.getStat(StatName.SOJOURN_TIME);
+        assertEquals(stat.getGoodSamples(), decodedStat.getGoodSamples());
+        assertEquals(stat.getAverage(), decodedStat.getAverage(), 0);
+        double[] quantiles = {.01, .25, .5, .75, .95, .99};
+        for (int i = 0; i < quantiles.length; i++) {
+            assertEquals(stat.getQuantile(quantiles[i]),
+                         decodedStat.getQuantile(quantiles[i]), 0);
+        }
+    }
+
+    /**
+     * Serializes an object.
+     *
+     * @param object - the object
+     * @return the serialized object
+     * @throws Exception - if the object can't be serialized
+     */
+    private static byte[] serialize(final Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an object.
+     *
+     * @param bytes - the serialized object
+     * @return the object
+     * @throws Exception - if the object can't be deserialized
+     */
+    private static Object deserialize(final byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes));
+        return in.readObject();
+    }
+
+    /**
+     * Tests that a change-driven {@link TimeWeightedStatistic} gives the
+     * same windows and average as one sampled after every event.
+     */
+    @Test
+    public void testChangeDrivenTimeWeightedStatistic() {
+        MTRandom random = new MTRandom(1);
+        TimeWeightedStatistic perEvent = new TimeWeightedStatistic(
+                new StatisticsCollection(),
+                TimeWeightedStatName.CLUSTER_POWER, 10, .05, .5, .05, 1.0);
+        TimeWeightedStatistic changeDriven = new TimeWeightedStatistic(
+                new StatisticsCollection(),
+                TimeWeightedStatName.CLUSTER_POWER, 10, .05, .5, .05, 1.0);
+        changeDriven.setChangeDriven(true);
+
+        double time = 0.0;
+        double value = 1.0;
+        for (int i = 0; i < 200000; i++) {
+            time += random.nextDouble() * .01;
+            if (random.nextDouble() < .01) {
+                value = Math.floor(random.nextDouble() * 10);
+            }
+            perEvent.addSample(value, time);
+            changeDriven.addSample(value, time);
+        }
+        changeDriven.advanceTo(time);
+
+        assertEquals(perEvent.getTotalSamples(),
+                     changeDriven.getTotalSamples());
+        assertEquals(perEvent.getAverage(), changeDriven.getAverage(),
+                     1e-3 * perEvent.getAverage());
+    }
+
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package test.sweep;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import sweep.SweepGrid;
+import sweep.SweepPoint;
+
+/**
+ * Tests the enumeration and parsing of sweep grids.
+ */
+public class SweepGridTest extends TestCase {
+
+    /**
+     * Tests that a grid has every combination of its values, with caps
+     * varying fastest, and that each point knows its position.
+     */
+    @Test
+    public final void testGetPoints() {
+        SweepGrid grid = new SweepGrid();
+        grid.addWorkload("a");
+        grid.addWorkload("b");
+        grid.addRho(.3);
+        grid.addRho(.5);
+        grid.addRho(.7);
+        grid.addServerCount(10);
+        grid.addPolicy(SweepPoint.Policy.NO_MANAGEMENT);
+        grid.addPolicy(SweepPoint.Policy.CORE_PARKING);
+        grid.addCap(65);
+        grid.addCap(80);
+
+        Vector<SweepPoint> points = grid.getPoints();
+        assertEquals(2 * 3 * 2 * 2, points.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(i, points.get(i).getIndex());
+        }
+        assertEquals(80.0, points.get(1).getCap());
+        assertEquals(SweepPoint.Policy.CORE_PARKING,
+                     points.get(2).getPolicy());
+        assertEquals(.5, points.get(4).getRho());
+        assertEquals("b", points.get(12).getWorkload());
+    }
+
+    /**
+     * Tests that a grid file gives the same points as building the grid
+     * in code.
+     */
+    @Test
+    public final void testParse() throws IOException {
+        File file = File.createTempFile("grid", ".txt");
+        file.deleteOnExit();
+        FileWriter out = new FileWriter(file);
+        out.write("# a comment\n\nworkload csedns\nrho .3 .5\n"
+                + "servers 5 10 20\npolicy SOCKET_PARKING\ncap 70\n");
+        out.close();
+
+        Vector<SweepPoint> points = SweepGrid.parse(file.getPath())
+                .getPoints();
+        assertEquals(2 * 3, points.size());
+        SweepPoint last = points.get(points.size() - 1);
+        assertEquals("csedns", last.getWorkload());
+        assertEquals(.5, last.getRho());
+        assertEquals(20, last.getNServers());
+        assertEquals(SweepPoint.Policy.SOCKET_PARKING, last.getPolicy());
+        assertEquals(70.0, last.getCap());
+    }
+
+}